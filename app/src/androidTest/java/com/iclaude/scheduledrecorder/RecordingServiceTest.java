@@ -29,6 +29,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import javax.inject.Inject;
@@ -132,8 +134,9 @@ public class RecordingServiceTest {
         RecordingService service = ((RecordingService.LocalBinder) binder).getService();
         assertNotNull("Service reference is null", service);
 
-        // Start recording.
+        // Start recording (asynchronous).
         service.startRecording(0);
+        waitForState(service, RecordingService.RecorderState.RECORDING);
         assertTrue("Service is not recording, but it should", service.isRecording());
         try {
             Thread.sleep(3000);
@@ -141,8 +144,9 @@ public class RecordingServiceTest {
             e.printStackTrace();
         }
 
-        // Stop recording.
+        // Stop recording (asynchronous).
         service.stopRecording();
+        waitForState(service, RecordingService.RecorderState.IDLE);
         assertFalse("Service is recording, but it should not", service.isRecording());
 
     }
@@ -170,6 +174,11 @@ public class RecordingServiceTest {
             e.printStackTrace();
         }
         service.stopRecording();
+        try {
+            assertTrue("The recorder didn't go back to IDLE", listener.idle.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
 
         assertTrue("The start of the recording was not communicated to the listener",
                 listener.isRecordingStarted());
@@ -183,6 +192,50 @@ public class RecordingServiceTest {
         service.setOnRecordingStatusChangedListener(null);
     }
 
+    /*
+        Test that start requests made while the recorder is not IDLE are ignored, and that a stop
+        requested while the recorder is being prepared is executed after the start.
+     */
+    @Test
+    public void testStartAndStopSerialised() throws TimeoutException {
+        // Bind to Service.
+        Intent serviceIntent = RecordingService.makeIntent(InstrumentationRegistry.getTargetContext(), true);
+        IBinder binder = mServiceRule.bindService(serviceIntent);
+        RecordingService service = ((RecordingService.LocalBinder) binder).getService();
+        assertNotNull("Service reference is null", service);
+
+        MyOnRecordingStatusChangedListener listener = new MyOnRecordingStatusChangedListener();
+        service.setOnRecordingStatusChangedListener(listener);
+        service.startRecording(0);
+        service.startRecording(0);
+        service.stopRecording();
+        try {
+            assertTrue("The recorder didn't go back to IDLE", listener.idle.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        assertEquals("Start requests not serialised", 1, listener.getStartedCount());
+        assertTrue("The stop of the recording was not communicated to the listener",
+                listener.isRecordingStopped());
+        assertFalse("Service is recording, but it should not", service.isRecording());
+
+        service.setOnRecordingStatusChangedListener(null);
+    }
+
+    // The recorder changes state on its own thread.
+    private void waitForState(RecordingService service, RecordingService.RecorderState state) {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (service.getState() != state && System.currentTimeMillis() < timeout) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        assertEquals("Unexpected recorder state", state, service.getState());
+    }
+
     /*
         Delete all the data added by the tests.
      */
@@ -202,14 +255,21 @@ public class RecordingServiceTest {
     }
 
     private class MyOnRecordingStatusChangedListener implements RecordingService.OnRecordingStatusChangedListener {
-        private boolean recordingStarted;
-        private boolean recordingStopped;
-        private int elapsedSeconds;
-        private String filePath;
+        private final CountDownLatch idle = new CountDownLatch(1); // after the recording has stopped
+        private volatile int startedCount;
+        private volatile boolean recordingStopped;
+        private volatile int elapsedSeconds;
+        private volatile String filePath;
 
         @Override
         public void onRecordingStarted() {
-            recordingStarted = true;
+            startedCount++;
+        }
+
+        @Override
+        public void onStateChanged(RecordingService.RecorderState state) {
+            if (state == RecordingService.RecorderState.IDLE && recordingStopped)
+                idle.countDown();
         }
 
         @Override
@@ -224,11 +284,15 @@ public class RecordingServiceTest {
         }
 
         public boolean isRecordingStarted() {
-            return recordingStarted;
+            return startedCount > 0;
+        }
+
+        public int getStartedCount() {
+            return startedCount;
         }
 
         @Override
-        public void onAmplitudeInfo(int amplitude) {
+        public void onAmplitudeInfo(int peak, int rms, int clippedSamples) {
 
         }
 
@@ -1,8 +1,11 @@
 package com.iclaude.scheduledrecorder.database;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Room;
+import android.arch.persistence.room.RoomDatabase;
 import android.content.Context;
+import android.support.annotation.NonNull;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.LargeTest;
 import android.support.test.runner.AndroidJUnit4;
@@ -15,6 +18,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -38,7 +43,14 @@ public class DBSavedRecordingsTest {
     @Before
     public void createDatabase() {
         Context context = InstrumentationRegistry.getTargetContext();
-        appDatabase = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        appDatabase = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(new RoomDatabase.Callback() {
+                    @Override
+                    public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                        AppDatabase.createSearchIndex(db);
+                    }
+                })
+                .build();
         recordingsDao = appDatabase.recordingsDao();
     }
 
@@ -105,6 +117,25 @@ public class DBSavedRecordingsTest {
         assertRecording(loaded, 25, updatedRecording.getName(), updatedRecording.getPath(), updatedRecording.getLength(), updatedRecording.getTimeAdded());
     }
 
+    @Test
+    public void renameSegmentKeepsSession() {
+        // Given the second segment of a recording
+        Recording segment = new Recording(25, "recording_name", "recording_path", 15000, 55000);
+        segment.setSessionId(12345);
+        segment.setSegmentIndex(2);
+        recordingsDao.insertRecording(segment);
+
+        // When the segment is renamed
+        int renamed = recordingsDao.renameRecording(25, "new_name", "new_path");
+        assertThat("Number of renamed records should be 1 but was " + renamed, renamed, is(1));
+
+        // Name and path are updated, the other columns are kept
+        Recording loaded = recordingsDao.getRecordingById(25);
+        assertRecording(loaded, 25, "new_name", "new_path", 15000, 55000);
+        assertThat("Session lost", loaded.getSessionId(), is(12345L));
+        assertThat("Segment index lost", loaded.getSegmentIndex(), is(2));
+    }
+
     @Test
     public void deleteRecordingByIdAndGettingRecordings() throws Exception {
         //Given a recording inserted
@@ -168,6 +199,74 @@ public class DBSavedRecordingsTest {
         assertThat("Table is not empty", recordingsDao.getRecordingsCount(), is(0));
     }
 
+    @Test
+    public void testRecordingsPages() {
+        // Recordings 1-2 and 3-4 have the same time_added.
+        recordingsDao.insertRecording(new Recording(1, "recording1", "path1", 1000, 10000));
+        recordingsDao.insertRecording(new Recording(2, "recording2", "path2", 1000, 10000));
+        recordingsDao.insertRecording(new Recording(3, "recording3", "path3", 1000, 20000));
+        recordingsDao.insertRecording(new Recording(4, "recording4", "path4", 1000, 20000));
+        recordingsDao.insertRecording(new Recording(5, "recording5", "path5", 1000, 30000));
+
+        List<Recording> page = recordingsDao.getNewestRecordings(2);
+        assertThat("Wrong first page", ids(page), equalTo(Arrays.asList(5, 4)));
+        page = recordingsDao.getRecordingsOlderThan(20000, 4, 2);
+        assertThat("Wrong next page", ids(page), equalTo(Arrays.asList(3, 2)));
+        page = recordingsDao.getRecordingsFrom(20000, 3, 10);
+        assertThat("Wrong page from the key", ids(page), equalTo(Arrays.asList(3, 2, 1)));
+        page = recordingsDao.getRecordingsNewerThan(10000, 2, 2);
+        assertThat("Wrong previous page", ids(page), equalTo(Arrays.asList(3, 4)));
+        assertThat("Wrong position", recordingsDao.getRecordingsCountNewerThan(20000, 3), is(2));
+    }
+
+    @Test
+    public void testDeleteRecordingsByIds() {
+        for (int i = 1; i <= 5; i++) {
+            recordingsDao.insertRecording(new Recording(i, "recording" + i, "path" + i, 1000, 10000 * i));
+        }
+
+        // Id 6 doesn't exist.
+        int num = recordingsDao.deleteRecordings(Arrays.asList(1, 3, 5, 6));
+        assertThat("Wrong number of recordings deleted", num, is(3));
+        assertThat("Wrong recordings left", ids(recordingsDao.getNewestRecordings(10)), equalTo(Arrays.asList(4, 2)));
+    }
+
+    @Test
+    public void testSearch() {
+        recordingsDao.insertRecording(new Recording(1, "myrec1000", "path1", 1000, 10000));
+        recordingsDao.insertRecording(new Recording(2, "Lecture interview", "path2", 1000, 20000));
+        recordingsDao.insertRecording(new Recording(3, "Interview 12 may", "path3", 1000, 30000));
+        Recording inProgress = new Recording(4, "interview in progress", "path4", 1000, 40000);
+        inProgress.setInProgress(true);
+        recordingsDao.insertRecording(inProgress);
+
+        // The index follows the changes of saved_recordings (triggers).
+        recordingsDao.updateRecording(new Recording(1, "Interview 3", "path1", 1000, 10000));
+        recordingsDao.insertRecording(new Recording(2, "Lecture", "path2", 1000, 20000)); // REPLACE
+        recordingsDao.deleteRecordings(Arrays.asList(3));
+
+        RecordingsSearchDataSource search = new RecordingsSearchDataSource(appDatabase, "inter");
+        assertThat("Wrong number of matches", search.countMatches(), is(1));
+        assertThat("Wrong matches", ids(search.loadMatches(0, 10)), equalTo(Arrays.asList(1)));
+
+        recordingsDao.insertRecording(new Recording(5, "Lecture interview", "path5", 1000, 50000));
+        recordingsDao.insertRecording(new Recording(6, "Interview 3b", "path6", 1000, 5000));
+        search = new RecordingsSearchDataSource(appDatabase, "Interview 3");
+        // Names starting with the search first, then newest first.
+        assertThat("Wrong ranking", ids(search.loadMatches(0, 10)), equalTo(Arrays.asList(1, 6)));
+        search = new RecordingsSearchDataSource(appDatabase, "interview");
+        assertThat("Wrong ranking", ids(search.loadMatches(0, 10)), equalTo(Arrays.asList(1, 6, 5)));
+        assertThat("Wrong page", ids(search.loadMatches(1, 1)), equalTo(Arrays.asList(6)));
+    }
+
+    private List<Integer> ids(List<Recording> recordings) {
+        List<Integer> ids = new ArrayList<>();
+        for (Recording recording : recordings) {
+            ids.add(recording.getId());
+        }
+        return ids;
+    }
+
     private void assertRecording(Recording recording, int id, String name,
                                  String path, long length, long timeAdded) {
         assertThat(recording, notNullValue());
@@ -0,0 +1,126 @@
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Tests for "schedule_executions" table in the database.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class DBScheduleExecutionsTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private AppDatabase appDatabase;
+    private RecordingsDao recordingsDao;
+
+
+    @Before
+    public void createDatabase() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        appDatabase = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        recordingsDao = appDatabase.recordingsDao();
+    }
+
+    @After
+    public void closeDatabase() throws IOException {
+        appDatabase.close();
+    }
+
+    @Test
+    public void testStartLagPercentiles() {
+        assertNull(recordingsDao.getStartLagPercentile(0, 50));
+
+        // Lags 1, 2, ..., 100 ms.
+        for (int i = 1; i <= 100; i++) {
+            long start = DAY + i * 10000;
+            recordingsDao.insertScheduleExecution(execution(i, start, start + i));
+        }
+        // Never started: not counted.
+        recordingsDao.insertScheduleExecution(execution(101, DAY, 0));
+
+        assertEquals(1, (long) recordingsDao.getStartLagPercentile(0, 0));
+        assertEquals(50, (long) recordingsDao.getStartLagPercentile(0, 50));
+        assertEquals(95, (long) recordingsDao.getStartLagPercentile(0, 95));
+        assertEquals(99, (long) recordingsDao.getStartLagPercentile(0, 99));
+        assertEquals(100, (long) recordingsDao.getStartLagPercentile(0, 100));
+        assertEquals(100, (long) recordingsDao.getStartLagPercentile(DAY + 1000000, 0)); // only the last one
+    }
+
+    @Test
+    public void testStartLagNearestRank() {
+        // Lags 10, 20, 30, 40 ms: the 95th percentile is the 4th (ceil(3.8)).
+        for (int i = 1; i <= 4; i++) {
+            long start = DAY + i * 10000;
+            recordingsDao.insertScheduleExecution(execution(i, start, start + i * 10));
+        }
+        // Hand-off after the alarm: not counted.
+        ScheduleExecution handOff = execution(5, 2 * DAY, 2 * DAY + 5000);
+        handOff.setReason(ScheduleExecution.REASON_HAND_OFF);
+        recordingsDao.insertScheduleExecution(handOff);
+
+        assertEquals(20, (long) recordingsDao.getStartLagPercentile(0, 50));
+        assertEquals(40, (long) recordingsDao.getStartLagPercentile(0, 95));
+        assertEquals(40, (long) recordingsDao.getStartLagPercentile(0, 100));
+    }
+
+    @Test
+    public void testDailyMissRates() {
+        recordingsDao.insertScheduleExecution(execution(1, 10 * DAY, 10 * DAY + 5));
+        recordingsDao.insertScheduleExecution(execution(2, 10 * DAY + 1000, 0));
+        recordingsDao.insertScheduleExecution(execution(3, 12 * DAY, 12 * DAY + 5));
+        recordingsDao.insertScheduleExecution(execution(4, 20 * DAY, 0)); // not ended yet
+        // Two executions of the same recording: counted once, as started.
+        ScheduleExecution skipped = execution(3, 12 * DAY, 0);
+        skipped.skip(ScheduleExecution.OUTCOME_SKIPPED, ScheduleExecution.REASON_RECORDER_BUSY);
+        recordingsDao.insertScheduleExecution(skipped);
+
+        List<DailyMissRate> missRates = recordingsDao.getDailyMissRates(0, 15 * DAY);
+        int total = 0, missed = 0;
+        for (DailyMissRate missRate : missRates) {
+            total += missRate.total;
+            missed += missRate.missed;
+        }
+        assertEquals(3, total);
+        assertEquals(1, missed);
+    }
+
+    @Test
+    public void testUpdateAndDeleteOld() {
+        ScheduleExecution execution = execution(1, DAY, 0);
+        execution.setId((int) recordingsDao.insertScheduleExecution(execution));
+        execution.setCaptureStart(DAY + 10);
+        execution.setOutcome(ScheduleExecution.OUTCOME_COMPLETED);
+        assertEquals(1, recordingsDao.updateScheduleExecution(execution));
+
+        List<ScheduleExecution> executions = recordingsDao.getScheduleExecutions();
+        assertEquals(1, executions.size());
+        assertEquals(DAY + 10, executions.get(0).getCaptureStart());
+        assertEquals(ScheduleExecution.OUTCOME_COMPLETED, executions.get(0).getOutcome());
+
+        assertEquals(1, recordingsDao.deleteOldScheduleExecutions(2 * DAY));
+        assertEquals(0, recordingsDao.getScheduleExecutions().size());
+    }
+
+    private static ScheduleExecution execution(int scheduledId, long start, long captureStart) {
+        ScheduleExecution execution = new ScheduleExecution(0, scheduledId, start, start + 60000);
+        execution.setAlarmTime(start);
+        execution.setCaptureStart(captureStart);
+        return execution;
+    }
+}
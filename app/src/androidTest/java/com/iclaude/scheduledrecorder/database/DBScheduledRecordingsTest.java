@@ -15,6 +15,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
@@ -230,6 +231,45 @@ public class DBScheduledRecordingsTest {
         assertThat("Error: this times are free", numScheduled, is(0));
     }
 
+    @Test
+    public void testBackToBackRecordingsAllowed() throws Exception {
+        recordingsDao.insertScheduledRecording(new ScheduledRecording(100, 200));
+
+        int numScheduled = recordingsDao.getNumRecordingsAlreadyScheduled(200, 300, -1);
+        assertThat("Error: a recording can start when the previous one ends", numScheduled, is(0));
+        numScheduled = recordingsDao.getNumRecordingsAlreadyScheduled(50, 100, -1);
+        assertThat("Error: a recording can end when the next one starts", numScheduled, is(0));
+        numScheduled = recordingsDao.getNumRecordingsAlreadyScheduled(199, 300, -1);
+        assertThat("Error: this times are not free", numScheduled, is(1));
+    }
+
+    @Test
+    public void testGetScheduledRecordingsInRange() throws Exception {
+        recordingsDao.insertScheduledRecording(new ScheduledRecording(300, 400));
+        recordingsDao.insertScheduledRecording(new ScheduledRecording(100, 200));
+        recordingsDao.insertScheduledRecording(new ScheduledRecording(150, 250)); // across the start of the range
+        recordingsDao.insertScheduledRecording(new ScheduledRecording(500, 600));
+
+        List<ScheduledRecording> recordings = LiveDataTestUtil.getValue(recordingsDao.getScheduledRecordingsInRange(200, 500));
+        assertEquals("Wrong number of recordings in the range", 2, recordings.size());
+        assertEquals("Recordings not sorted by start", 150, recordings.get(0).getStart());
+        assertEquals("Recordings not sorted by start", 300, recordings.get(1).getStart());
+    }
+
+    @Test
+    public void testInsertScheduledRecordings() {
+        recordingsDao.insertScheduledRecording(new ScheduledRecording(100, 200));
+        List<ScheduledRecording> batch = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            batch.add(new ScheduledRecording(i * 1000, i * 1000 + 500));
+        }
+
+        long[] ids = recordingsDao.insertScheduledRecordings(batch);
+        assertEquals("Wrong number of ids", 100, ids.length);
+        assertEquals("Wrong number of recordings", 101, recordingsDao.getScheduledRecordingsCount());
+        assertRecording(recordingsDao.getScheduledRecordingById(ids[49]), (int) ids[49], 50000, 50500);
+    }
+
     private void assertRecording(ScheduledRecording recording, int id, long start, long end) {
         assertThat(recording, notNullValue());
         assertThat(recording.getId(), is(id));
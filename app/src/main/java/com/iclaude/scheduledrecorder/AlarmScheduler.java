@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder;
+
+/**
+ * The two alarms of the next scheduled recording, used by RecordingScheduler (provided by
+ * AppModule, see AndroidAlarmScheduler). Setting an alarm replaces the previous one of the
+ * same kind.
+ */
+public interface AlarmScheduler {
+
+    int ALARM_START = 0;
+    int ALARM_WARM_UP = 1;
+
+    // Time in ms from epoch (wall clock).
+    void set(int alarm, long time);
+
+    void cancel(int alarm);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+/**
+ * AlarmScheduler using the AlarmManager: the alarms start RecordingService and are delivered
+ * even when the device is idle.
+ */
+public class AndroidAlarmScheduler implements AlarmScheduler {
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+
+
+    public AndroidAlarmScheduler(Context context, AlarmManager alarmManager) {
+        this.context = context;
+        this.alarmManager = alarmManager;
+    }
+
+    @Override
+    public void set(int alarm, long time) {
+        PendingIntent pendingIntent = makePendingIntent(alarm);
+        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP_MR1)  // API 19-22
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, time, pendingIntent);
+        else  // API 23+
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time, pendingIntent);
+    }
+
+    @Override
+    public void cancel(int alarm) {
+        alarmManager.cancel(makePendingIntent(alarm));
+    }
+
+    // The same PendingIntent is used to set and cancel an alarm (the request code is the alarm).
+    private PendingIntent makePendingIntent(int alarm) {
+        Intent intent = alarm == ALARM_WARM_UP ? RecordingService.makeWarmUpIntent(context) : RecordingService.makeIntent(context, false);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return PendingIntent.getService(context, alarm, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        else
+            return PendingIntent.getForegroundService(context, alarm, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
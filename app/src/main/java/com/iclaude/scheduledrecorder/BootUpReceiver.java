@@ -10,18 +10,41 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 
+import com.iclaude.scheduledrecorder.didagger2.App;
+import com.iclaude.scheduledrecorder.utils.Clock;
+
+import javax.inject.Inject;
+
 /**
  * When the device is rebooted alarms set with the AlarmManager are cancelled.
- * So we need to use a BroadcastReceiver that gets triggered at bootup in order to start
- * the ScheduledRecordingService and set the next alarm.
+ * So we need to use a BroadcastReceiver that gets triggered at bootup in order to set the next
+ * alarm. If the snapshot of the next alarm is still valid the alarms are set again directly:
+ * nothing on this path opens the database (App.onCreate() doesn't either, the interrupted
+ * recordings are recovered when the UI is opened) and the database is read a minute later by
+ * RecordingScheduler. Otherwise the ScheduledRecordingService is started to read the next
+ * recording from the database.
  */
 public class BootUpReceiver extends BroadcastReceiver {
 
+    @Inject
+    RecordingScheduler recordingScheduler;
+    @Inject
+    Clock clock;
+
     @Override
     public void onReceive(Context context, Intent intent) {
         if (intent.getAction() == null || !intent.getAction().equals("android.intent.action.BOOT_COMPLETED"))
             return;
 
+        App.getComponent().inject(this);
+        NextAlarmSnapshot snapshot = NextAlarmSnapshot.read(context);
+        if (snapshot != null && snapshot.getStart() > clock.currentTimeMillis()) {
+            PendingResult pendingResult = goAsync();
+            recordingScheduler.restoreAlarms(snapshot, pendingResult::finish);
+            return;
+        }
+
+        // No alarm or missed during the reboot: old recordings must be deleted.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
             context.startForegroundService(ScheduledRecordingService.makeIntent(context));
         else
@@ -9,17 +9,73 @@ import android.preference.PreferenceManager;
  */
 
 public class MySharedPreferences {
-    private static String PREF_HIGH_QUALITY = "pref_high_quality";
+    private static String PREF_HIGH_QUALITY = "pref_high_quality"; // replaced by PREF_RECORDING_PROFILE
+    private static String PREF_RECORDING_PROFILE = "pref_recording_profile"; // ListPreference (String value)
+    private static String PREF_PCM_ENGINE = "pref_pcm_engine";
+    private static String PREF_PRE_ROLL = "pref_pre_roll";
+    private static String PREF_VAD = "pref_vad";
+    private static String PREF_VAD_THRESHOLD = "pref_vad_threshold"; // ListPreference (String value)
+    private static String PREF_VAD_HANGOVER = "pref_vad_hangover"; // ListPreference (String value)
 
-    public static void setPrefHighQuality(Context context, boolean isEnabled) {
+    public static void setPrefRecordingProfile(Context context, String profileKey) {
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
         SharedPreferences.Editor editor = preferences.edit();
-        editor.putBoolean(PREF_HIGH_QUALITY, isEnabled);
+        editor.putString(PREF_RECORDING_PROFILE, profileKey);
         editor.apply();
     }
 
-    public static boolean getPrefHighQuality(Context context) {
+    // Key of a RecordingProfile. Until a profile is chosen the old high quality setting is honored.
+    public static String getPrefRecordingProfile(Context context) {
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        return preferences.getBoolean(PREF_HIGH_QUALITY, false);
+        String defaultProfile = preferences.getBoolean(PREF_HIGH_QUALITY, false) ? "high" : "standard";
+        return preferences.getString(PREF_RECORDING_PROFILE, defaultProfile);
+    }
+
+    public static void setPrefPcmEngine(Context context, boolean isEnabled) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putBoolean(PREF_PCM_ENGINE, isEnabled);
+        editor.apply();
+    }
+
+    public static boolean getPrefPcmEngine(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        return preferences.getBoolean(PREF_PCM_ENGINE, false);
+    }
+
+    public static void setPrefPreRoll(Context context, boolean isEnabled) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putBoolean(PREF_PRE_ROLL, isEnabled);
+        editor.apply();
+    }
+
+    public static boolean getPrefPreRoll(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        return preferences.getBoolean(PREF_PRE_ROLL, false);
+    }
+
+    public static void setPrefVad(Context context, boolean isEnabled) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putBoolean(PREF_VAD, isEnabled);
+        editor.apply();
+    }
+
+    public static boolean getPrefVad(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        return preferences.getBoolean(PREF_VAD, false);
+    }
+
+    // Silence threshold in dBFS.
+    public static int getPrefVadThreshold(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        return Integer.parseInt(preferences.getString(PREF_VAD_THRESHOLD, "-45"));
+    }
+
+    // Hangover in ms.
+    public static int getPrefVadHangover(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        return Integer.parseInt(preferences.getString(PREF_VAD_HANGOVER, "2000"));
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+/**
+ * Copy of the next scheduled recording whose alarms are set, saved by RecordingScheduler every
+ * time the alarms change. It's kept in its own small preferences file so that BootUpReceiver can
+ * set the alarms again without opening the database.
+ */
+public class NextAlarmSnapshot {
+
+    private static final String PREFS_NAME = "next_alarm";
+    private static final String KEY_ID = "id";
+    private static final String KEY_START = "start";
+
+    private final int id;
+    private final long start;
+
+    public NextAlarmSnapshot(int id, long start) {
+        this.id = id;
+        this.start = start;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    // Returns null if no alarm was set.
+    @Nullable
+    public static NextAlarmSnapshot read(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!preferences.contains(KEY_START)) return null;
+
+        return new NextAlarmSnapshot(preferences.getInt(KEY_ID, 0), preferences.getLong(KEY_START, 0));
+    }
+
+    public static void write(Context context, NextAlarmSnapshot snapshot) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        editor.putInt(KEY_ID, snapshot.id);
+        editor.putLong(KEY_START, snapshot.start);
+        editor.apply();
+    }
+
+    public static void clear(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder;
+
+import com.iclaude.scheduledrecorder.database.ScheduleExecution;
+import com.iclaude.scheduledrecorder.database.ScheduledRecording;
+
+/**
+ * Scheduled recording that the running engine continues in a new file when the current one
+ * ends (back-to-back recordings, see RecordingService.prepareHandOff()).
+ * The engine switches file at a boundary of its sample clock, a little after the start time,
+ * so the start alarm of the next recording can be delivered before the hand-off: then only the
+ * delivery time is kept, for the execution created by the hand-off. The recording isn't started
+ * (or skipped because the recorder is busy) a second time.
+ */
+public class PendingHandOff {
+
+    private final ScheduledRecording next;
+    private final String filePath;
+    private long alarmTime = 0; // 0 = not delivered yet
+    private int startId = 0; // start of the Service by the alarm
+
+
+    public PendingHandOff(ScheduledRecording next, String filePath) {
+        this.next = next;
+        this.filePath = filePath;
+    }
+
+    public ScheduledRecording getNext() {
+        return next;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    // Returns false if the alarm isn't the one of the next recording.
+    public boolean onStartAlarm(ScheduledRecording recording, long alarmTime, int startId) {
+        if (recording.getId() != next.getId()) return false;
+
+        this.alarmTime = alarmTime;
+        this.startId = startId;
+        return true;
+    }
+
+    /*
+        The alarm was delivered before the hand-off: the recording isn't in the schedule anymore,
+        so it must be started if the current one is stopped before the boundary.
+     */
+    public boolean isAlarmDelivered() {
+        return alarmTime > 0;
+    }
+
+    public long getAlarmTime() {
+        return alarmTime;
+    }
+
+    public int getStartId() {
+        return startId;
+    }
+
+    // Execution of the next recording, whose capture started with the hand-off.
+    public ScheduleExecution createExecution(long captureStart) {
+        ScheduleExecution execution = new ScheduleExecution(next);
+        execution.setAlarmTime(alarmTime);
+        execution.setCaptureStart(captureStart);
+        execution.skip(ScheduleExecution.OUTCOME_PENDING, ScheduleExecution.REASON_HAND_OFF);
+        return execution;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.iclaude.scheduledrecorder.database.RecordingsContract;
+import com.iclaude.scheduledrecorder.database.RecordingsRepository;
+import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
+import com.iclaude.scheduledrecorder.database.ScheduledRecording;
+import com.iclaude.scheduledrecorder.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the alarms of the next scheduled recording in sync with the database (one instance for
+ * the whole app, see AppModule).
+ * The repository notifies every change of the scheduled recordings: changes made in a short time
+ * (i.e. a bulk edit) are merged, then the next recording is read from the database and the
+ * alarms are updated only if it's not the one already armed. Two alarms are set for each
+ * recording: a warm-up alarm, some seconds before the start, that prepares the recorder, and an
+ * alarm at the start time (see RecordingService). The armed recording is saved in a
+ * NextAlarmSnapshot, used at boot to set the alarms again before reading the database.
+ * All the fields are used on the main thread.
+ */
+public class RecordingScheduler implements RecordingsRepositoryInterface.OnScheduleChangedListener {
+
+    private static final String TAG = "SCHEDULED_RECORDER_TAG";
+    private final String CLASS_NAME = getClass().getSimpleName();
+    private static final long DEBOUNCE_MS = 500; // changes closer than this are merged
+    private static final long BOOT_RECONCILE_DELAY = 1000 * 60; // full pass after an alarm restored at boot
+    private static final long OLD_RECORDINGS_MARGIN = 1000 * 60 * 5; // recordings not started 5 minutes after their start are deleted
+    private static final int NONE = -1;
+
+    private final Context context;
+    private final Clock clock;
+    private final AlarmScheduler alarmScheduler;
+    private final RecordingsRepository recordingsRepository;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable reconcileRunnable = this::reconcile;
+    private final List<Runnable> onDoneCallbacks = new ArrayList<>();
+
+    // Recording whose alarms are set.
+    private int armedId = NONE;
+    private long armedStart = 0;
+
+    private boolean reconciling = false;
+    private boolean changedWhileReconciling = false;
+
+
+    public RecordingScheduler(Context context, Clock clock, AlarmScheduler alarmScheduler, RecordingsRepository recordingsRepository) {
+        this.context = context;
+        this.clock = clock;
+        this.alarmScheduler = alarmScheduler;
+        this.recordingsRepository = recordingsRepository;
+        recordingsRepository.setOnScheduleChangedListener(this);
+    }
+
+    // Called by the repository on the diskIO thread.
+    @Override
+    public void onScheduleChanged() {
+        handler.removeCallbacks(reconcileRunnable);
+        handler.postDelayed(reconcileRunnable, DEBOUNCE_MS);
+    }
+
+    /*
+        Sets the alarms again even if the next recording hasn't changed (i.e. after a reboot the
+        alarms are lost). onDone, if not null, is called on the main thread when the alarms are set.
+     */
+    public void reschedule(@Nullable Runnable onDone) {
+        handler.post(() -> {
+            armedId = NONE;
+            if (onDone != null) onDoneCallbacks.add(onDone);
+            handler.removeCallbacks(reconcileRunnable);
+            reconcile();
+        });
+    }
+
+    /*
+        Sets the alarms of the recording saved in the snapshot without reading the database (after
+        a reboot), unless they were already set. The full pass is deferred: the snapshot was
+        saved after the last change of the schedule, so it's still the next recording.
+        onDone is called on the main thread.
+     */
+    public void restoreAlarms(NextAlarmSnapshot snapshot, Runnable onDone) {
+        handler.post(() -> {
+            if (armedId == NONE && !reconciling) {
+                setAlarms(snapshot.getId(), snapshot.getStart());
+                handler.removeCallbacks(reconcileRunnable);
+                handler.postDelayed(reconcileRunnable, BOOT_RECONCILE_DELAY);
+            }
+            onDone.run();
+        });
+    }
+
+    /*
+        Deletes the recordings never started, copies the next occurrences of the recurrence rules
+        and arms the next recording. Only one pass at a time: changes notified in the meantime
+        cause another pass at the end.
+     */
+    private void reconcile() {
+        if (reconciling) {
+            changedWhileReconciling = true;
+            return;
+        }
+        reconciling = true;
+        changedWhileReconciling = false;
+
+        long now = clock.currentTimeMillis();
+        recordingsRepository.deleteOldScheduledRecordings(now - OLD_RECORDINGS_MARGIN, new RecordingsRepositoryInterface.OperationResult() {
+            @Override
+            public void onSuccess() {
+                recordingsRepository.expandRecurrenceRules(now, new RecordingsRepositoryInterface.OperationResult() {
+                    @Override
+                    public void onSuccess() {
+                        armNextRecording();
+                    }
+
+                    @Override
+                    public void onFailure() {
+                        armNextRecording();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure() {
+                armNextRecording();
+            }
+        });
+    }
+
+    private void armNextRecording() {
+        recordingsRepository.getNextScheduledRecording(new RecordingsRepositoryInterface.GetScheduledRecordingCallback() {
+            @Override
+            public void onSuccess(ScheduledRecording recording) {
+                if (recording.getId() != armedId || recording.getStart() != armedStart)
+                    setAlarms(recording.getId(), recording.getStart());
+                reconciled();
+            }
+
+            @Override
+            public void onFailure() { // no scheduled recordings
+                if (armedId != NONE)
+                    disarm();
+                reconciled();
+            }
+        });
+    }
+
+    private void reconciled() {
+        reconciling = false;
+        if (changedWhileReconciling) {
+            reconcile();
+            return;
+        }
+
+        for (Runnable onDone : onDoneCallbacks) {
+            onDone.run();
+        }
+        onDoneCallbacks.clear();
+    }
+
+    // The new alarms replace the previous ones.
+    private void setAlarms(int id, long start) {
+        long warmUpTime = start - RecordingsContract.SCHEDULE_WARM_UP;
+        if (warmUpTime > clock.currentTimeMillis())
+            alarmScheduler.set(AlarmScheduler.ALARM_WARM_UP, warmUpTime);
+        else
+            alarmScheduler.cancel(AlarmScheduler.ALARM_WARM_UP);
+        alarmScheduler.set(AlarmScheduler.ALARM_START, start);
+
+        armedId = id;
+        armedStart = start;
+        NextAlarmSnapshot.write(context, new NextAlarmSnapshot(id, start));
+        Log.i(TAG, CLASS_NAME + " - setAlarms(): " + "next scheduled recording at " + start);
+    }
+
+    private void disarm() {
+        alarmScheduler.cancel(AlarmScheduler.ALARM_START);
+        alarmScheduler.cancel(AlarmScheduler.ALARM_WARM_UP);
+        armedId = NONE;
+        NextAlarmSnapshot.clear(context);
+    }
+}
@@ -16,32 +16,50 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.media.MediaRecorder;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Message;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.support.annotation.RequiresApi;
 import android.support.annotation.VisibleForTesting;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
+import android.util.Pair;
 
+import com.iclaude.scheduledrecorder.audio.LevelMeter;
+import com.iclaude.scheduledrecorder.audio.MediaRecorderEngine;
+import com.iclaude.scheduledrecorder.audio.Mp4Concatenator;
+import com.iclaude.scheduledrecorder.audio.PcmRecorderEngine;
+import com.iclaude.scheduledrecorder.audio.RecorderEngine;
+import com.iclaude.scheduledrecorder.audio.RecordingProfile;
+import com.iclaude.scheduledrecorder.audio.SegmentedMuxer;
 import com.iclaude.scheduledrecorder.database.Recording;
+import com.iclaude.scheduledrecorder.database.RecordingsContract;
+import com.iclaude.scheduledrecorder.database.RecordingsRecovery;
 import com.iclaude.scheduledrecorder.database.RecordingsRepository;
 import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
+import com.iclaude.scheduledrecorder.database.ScheduleExecution;
 import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.didagger2.App;
 import com.iclaude.scheduledrecorder.ui.activities.MainActivity;
+import com.iclaude.scheduledrecorder.utils.AppExecutors;
+import com.iclaude.scheduledrecorder.utils.Clock;
 import com.iclaude.scheduledrecorder.utils.Utils;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
 import javax.inject.Inject;
 
-import static android.media.MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED;
-
 /**
  * Edited by iClaude on 25/09/2017.
  * Service used to record audio. This class implements an hybrid Service (bound and started
@@ -49,27 +67,80 @@ import static android.media.MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACH
  * Compared with the original Service, this class adds 2 new features:
  * 1) record scheduled recordings
  * 2) bound Service features to connect this Service to an Activity
+ * Scheduled recordings are split in segments (if supported by the engine), so that a crash
+ * during a long recording doesn't corrupt the whole file. Each segment is saved in the database
+ * as soon as it's finalized, with the starting time of the recording as session id.
+ * Every file is inserted in the database "in progress" when it's created and updated
+ * periodically (journal), so that it can be recovered at the next start of the app if the
+ * recording is interrupted by a crash or a reboot (see RecordingsRecovery).
+ * If enabled in the settings, the engine can be armed before the recording starts (pre-roll), so
+ * that the first seconds are not lost while the recorder is being started.
+ * Scheduled recordings can skip silent stretches (voice activity detection).
+ * The recorder is a state machine (see RecorderState) driven by messages on a dedicated thread:
+ * engines are prepared, stopped and finalized there, so the main thread never waits for them and
+ * start/stop requests are executed in the order they are made.
+ * Scheduled recordings are prepared by a warm-up alarm some seconds before their start (see
+ * RecordingScheduler), then the engine is started at the exact time by the recorder
+ * thread. The end of a scheduled recording is a deadline: if it starts late, it's shorter.
+ * What happens to each scheduled recording (alarm delivery, start lag, skips) is saved in the
+ * database (see ScheduleExecution).
  */
 
-public class RecordingService extends Service {
+public class RecordingService extends Service implements Handler.Callback {
     private static final String TAG = "SCHEDULED_RECORDER_TAG";
     private final String CLASS_NAME = getClass().getSimpleName();
     private static final String EXTRA_ACTIVITY_STARTER = "com.iclaude.scheduledrecorder.EXTRA_ACTIVITY_STARTER";
+    private static final String EXTRA_WARM_UP = "com.iclaude.scheduledrecorder.EXTRA_WARM_UP";
     private static final int NOTIFICATION_RECORDING = 2;
+    private static final int METERING_INTERVAL_MS = 100; // audio levels published every 100 ms
+    private static final int PRE_ROLL_MS = 3000; // audio kept in memory before the start of a recording
+    private static final int MSG_START = 1;
+    private static final int MSG_STOP = 2;
+    private static final int MSG_PAUSE = 3;
+    private static final int MSG_RESUME = 4;
+    private static final int MSG_ARM = 5;
+    private static final int MSG_DISARM = 6;
+    private static final int MSG_WARM_UP = 7;
+    private static final int MSG_WARM_START = 8;
+    private static final int MSG_SCHEDULED_START = 9;
+    private static final int MSG_DEADLINE = 10;
 
     @Inject
     RecordingsRepository recordingsRepository;
+    @Inject
+    AppExecutors appExecutors;
+    @Inject
+    Clock clock;
 
     private String mFileName = null;
     private String mFilePath = null;
-    private MediaRecorder mRecorder = null;
+    private RecorderEngine mRecorder = null;
+    private RecorderEngine mArmedRecorder = null;
+    private RecordingProfile mArmedProfile = null;
+    private RecordingProfile mProfile = null;
+    private long mRecordingEnd = 0; // when the engine reaches the max duration (scheduled recordings)
+    private PendingHandOff mHandOff = null; // next scheduled recording, continued by the current engine
+    private volatile boolean mPausable = false; // only recordings started from the UI
+    private volatile boolean mPaused = false;
+    private long mPausedAtMillis = 0;
+    private long mPausedMillis = 0; // total time spent paused
+    private final List<String> mPartPaths = new ArrayList<>(); // engines without pause: one file per stretch
     private long mStartingTimeMillis = 0;
     private long mElapsedMillis = 0;
+    private boolean mSegmented = false; // if true each segment is saved in the database separately
+    private String mJournalPath = null; // file currently being written
+    private String mDiscardedPath = null; // last file deleted by the engine because empty
+    private long mJournalStartMillis = 0; // elapsed time when the current file was created
+    private PowerManager.WakeLock mWarmUpWakeLock = null; // held from the warm-up to the start
+    private long mWarmUpEnd = 0; // end of the scheduled recording prepared by the warm-up
+    private ScheduleExecution mExecution = null; // scheduled recording being warmed up or recorded
 
     private TimerTask mIncrementTimerTask = null;
 
+    private Handler mRecorderHandler; // the fields above are used on the recorder thread
+    private volatile RecorderState mState = RecorderState.IDLE;
+
     private final IBinder myBinder = new LocalBinder();
-    private boolean isRecording = false;
 
     // Just for testing.
     @VisibleForTesting(otherwise = VisibleForTesting.NONE)
@@ -90,6 +161,13 @@ public class RecordingService extends Service {
         return intent;
     }
 
+    // Intent of the warm-up alarm, set before the start of a scheduled recording.
+    public static Intent makeWarmUpIntent(Context context) {
+        Intent intent = makeIntent(context, false);
+        intent.putExtra(EXTRA_WARM_UP, true);
+        return intent;
+    }
+
     /*
         The following code implements a bound Service used to connect this Service to an Activity.
     */
@@ -104,17 +182,30 @@ public class RecordingService extends Service {
         return myBinder;
     }
 
+    /*
+        States of the recorder. Transitions happen on the recorder thread:
+        IDLE -> PREPARING -> RECORDING -> STOPPING -> FINALIZING -> IDLE
+        (PREPARING -> IDLE if the engine can't be started).
+     */
+    public enum RecorderState {
+        IDLE, PREPARING, RECORDING, STOPPING, FINALIZING
+    }
+
     /*
         Interface used to communicate to a connected component changes in the status of a
         recording:
         - recording started
         - recording stopped (with file path)
-        - seconds elapsed and max amplitude (useful for graphical effects)
+        - state of the recorder
+        - seconds elapsed; this method is called from a background thread
+        - audio levels: peak, RMS and clipped samples of the last block (useful for graphical
+          effects); this method is called from a background thread
      */
     public interface OnRecordingStatusChangedListener {
         void onRecordingStarted();
+        void onStateChanged(RecorderState state);
         void onTimerChanged(int seconds);
-        void onAmplitudeInfo(int amplitude);
+        void onAmplitudeInfo(int peak, int rms, int clippedSamples);
         void onRecordingStopped(String filePath);
     }
 
@@ -131,25 +222,49 @@ public class RecordingService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         onStartCommandCalls++;
         boolean activityStarter = intent.getBooleanExtra(EXTRA_ACTIVITY_STARTER, false);
-        if (!activityStarter) { // automatic scheduled recording
+        long alarmTime = clock.currentTimeMillis();
+        // Alarms start the Service with startForegroundService() (API 26+).
+        if (!activityStarter) startForeground(NOTIFICATION_RECORDING, createNotification());
+
+        if (intent.getBooleanExtra(EXTRA_WARM_UP, false)) { // a scheduled recording starts in a few seconds
+            recordingsRepository.getNextScheduledRecording(
+                    new RecordingsRepositoryInterface.GetScheduledRecordingCallback() {
+                        @Override
+                        public void onSuccess(ScheduledRecording recording) {
+                            Message message = mRecorderHandler.obtainMessage(MSG_WARM_UP, startId, 0, Pair.create(recording, alarmTime));
+                            mRecorderHandler.sendMessage(message);
+                        }
+
+                        @Override
+                        public void onFailure() {
+                            Log.e(TAG, CLASS_NAME + " - getNextScheduledRecording(): " + "error in retrieving next scheduled recording");
+                            mRecorderHandler.post(() -> stopForegroundIfIdle(startId));
+                        }
+                    }
+            );
+        } else if (!activityStarter) { // automatic scheduled recording
             // Get next recording data.
             recordingsRepository.getNextScheduledRecording(
                     new RecordingsRepositoryInterface.GetScheduledRecordingCallback() {
                         @Override
                         public void onSuccess(ScheduledRecording recording) {
-                            int duration = (int) (recording.getEnd() - recording.getStart());
-                            if (!isRecording && hasPermissions()) {
-                                startRecording(duration);
+                            // Already recorded by a hand-off: the alarm of the next one is being set.
+                            if (recording.getStart() > clock.currentTimeMillis() + RecordingsContract.SCHEDULE_TOLERANCE) {
+                                mRecorderHandler.post(() -> stopForegroundIfIdle(startId));
+                                return;
                             }
 
-                            // Remove scheduled recording from database and schedule next recording.
+                            Message message = mRecorderHandler.obtainMessage(MSG_SCHEDULED_START, startId, 0, Pair.create(recording, alarmTime));
+                            mRecorderHandler.sendMessage(message);
+
+                            // Remove scheduled recording from database (RecordingScheduler sets the next one).
                             recordingsRepository.deleteScheduledRecording(recording,null);
-                            startService(ScheduledRecordingService.makeIntent(RecordingService.this));
                         }
 
                         @Override
                         public void onFailure() {
                             Log.e(TAG, CLASS_NAME + " - getNextScheduledRecording(): " + "error in retrieving next scheduled recording");
+                            mRecorderHandler.post(() -> stopForegroundIfIdle(startId));
                         }
                     }
             );
@@ -158,6 +273,20 @@ public class RecordingService extends Service {
         return START_NOT_STICKY;
     }
 
+    /*
+        Called on the recorder thread when an alarm doesn't start a recording: the Service leaves
+        the foreground and, if no Activity is connected, stops (unless started again in the
+        meantime).
+     */
+    private void stopForegroundIfIdle(int startId) {
+        if (mState != RecorderState.IDLE) return;
+
+        stopForeground(true);
+        appExecutors.mainThread().execute(() -> {
+            if (onRecordingStatusChangedListener == null) stopSelf(startId);
+        });
+    }
+
     /*
         The following code is shared by both started and bound Service.
      */
@@ -167,60 +296,382 @@ public class RecordingService extends Service {
         onCreateCalls++;
         super.onCreate();
         App.getComponent().inject(this);
+
+        // Start the recorder thread.
+        HandlerThread handlerThread = new HandlerThread("RecorderThread");
+        handlerThread.start();
+        mRecorderHandler = new Handler(handlerThread.getLooper(), this);
     }
 
     @Override
     public void onDestroy() {
         onDestroyCalls++;
         super.onDestroy();
-        if (mRecorder != null) {
+        if (isRecording()) {
             stopRecording();
         }
+        disarmRecorder();
+        mRecorderHandler.post(this::releaseWarmUpWakeLock);
+        // The recording is finalized before the thread quits.
+        mRecorderHandler.getLooper().quitSafely();
 
         if (onRecordingStatusChangedListener != null) onRecordingStatusChangedListener = null;
     }
 
+    @Override
+    public boolean handleMessage(Message message) {
+        switch (message.what) {
+            case MSG_START:
+                doStartRecording(message.arg1, (String) message.obj);
+                break;
+            case MSG_STOP:
+            case MSG_DEADLINE:
+                doStopRecording();
+                break;
+            case MSG_PAUSE:
+                doPauseRecording();
+                break;
+            case MSG_RESUME:
+                doResumeRecording();
+                break;
+            case MSG_ARM:
+                doArmRecorder();
+                break;
+            case MSG_DISARM:
+                doDisarmRecorder();
+                break;
+            case MSG_WARM_UP: {
+                @SuppressWarnings("unchecked")
+                Pair<ScheduledRecording, Long> warmUp = (Pair<ScheduledRecording, Long>) message.obj;
+                doWarmUp(warmUp.first, warmUp.second, message.arg1);
+                break;
+            }
+            case MSG_WARM_START:
+                doWarmStart();
+                break;
+            case MSG_SCHEDULED_START: {
+                @SuppressWarnings("unchecked")
+                Pair<ScheduledRecording, Long> start = (Pair<ScheduledRecording, Long>) message.obj;
+                doScheduledStart(start.first, start.second, message.arg1);
+                break;
+            }
+        }
+
+        return true;
+    }
+
+    // Listeners are notified on the main thread.
+    private void setState(RecorderState state) {
+        mState = state;
+        appExecutors.mainThread().execute(() -> {
+            if (onRecordingStatusChangedListener != null)
+                onRecordingStatusChangedListener.onStateChanged(state);
+        });
+    }
+
+    public RecorderState getState() {
+        return mState;
+    }
+
+    // Listeners of the recorder engines (more than one engine per recording after a pause), called on the recorder thread.
+    private final RecorderEngine.Listener mRecorderListener = new RecorderEngine.Listener() {
+        @Override
+        public void onMaxDurationReached() {
+            stopRecording();
+        }
+
+        // The engine can't write anymore: the recording is stopped and what was written is saved.
+        @Override
+        public void onError() {
+            Log.e(TAG, CLASS_NAME + " - onError(): " + "error while recording");
+            if (mState != RecorderState.RECORDING) return;
+
+            if (mExecution != null)
+                mExecution.skip(ScheduleExecution.OUTCOME_FAILED, ScheduleExecution.REASON_ENGINE_ERROR);
+            doStopRecording();
+        }
+
+        @Override
+        public void onSegmentFinished(String filePath, int index, long durationMs) {
+            saveSegment(filePath, index, durationMs);
+        }
+
+        @Override
+        public void onSegmentDiscarded(String filePath, int segmentIndex) {
+            discardFile(filePath);
+        }
+
+        @Override
+        public void onHandOff(String filePath, int segmentIndex, long durationMs) {
+            handOff(filePath, segmentIndex, durationMs);
+        }
+    };
+
+    private final LevelMeter.Listener mLevelListener = (peak, rms, clippedSamples) -> {
+        OnRecordingStatusChangedListener listener = onRecordingStatusChangedListener;
+        if (listener != null) {
+            listener.onAmplitudeInfo(peak, rms, clippedSamples);
+        }
+    };
+
     public void startRecording(int duration) {
+        startRecording(duration, null);
+    }
+
+    /*
+        profileKey: key of the RecordingProfile to use (see RecordingProfile.getKey()), null
+        to use the one selected in the settings.
+        The recording starts asynchronously: if the recorder is not IDLE when the request is
+        executed (i.e. start tapped twice), it's ignored.
+     */
+    public void startRecording(int duration, String profileKey) {
+        Message message = mRecorderHandler.obtainMessage(MSG_START, duration, 0, profileKey);
+        mRecorderHandler.sendMessage(message);
+    }
+
+    private void doStartRecording(int duration, String profileKey) {
+        if (mState != RecorderState.IDLE) return;
+
+        mExecution = null; // not a scheduled recording
+        setState(RecorderState.PREPARING);
+        RecordingProfile profile = profileKey != null ? RecordingProfile.fromKey(profileKey) : getDefaultProfile();
+        if (prepareEngine(profile, duration))
+            startEngine(duration);
+    }
+
+    /*
+        Creates and prepares the engine (PREPARING state). If it can't be prepared, the state goes
+        back to IDLE and false is returned.
+     */
+    private boolean prepareEngine(RecordingProfile profile, int duration) {
         startForeground(NOTIFICATION_RECORDING, createNotification());
 
-        setFileNameAndPath();
-        mRecorder = new MediaRecorder();
-        mRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-        mRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-        mRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-        mRecorder.setOutputFile(mFilePath);
-
-        mRecorder.setMaxDuration(duration); // if this is a scheduled recording, set the max duration, after which the Service is stopped
-        mRecorder.setAudioChannels(1);
-        if (MySharedPreferences.getPrefHighQuality(this)) {
-            mRecorder.setAudioSamplingRate(44100);
-            mRecorder.setAudioEncodingBitRate(192000);
-        }
-        // Called only if a max duration has been set (scheduled recordings).
-        mRecorder.setOnInfoListener((mediaRecorder, what, extra) -> {
-            if (what == MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
-                stopRecording();
-            }
-        });
+        mProfile = profile;
+        setFileNameAndPath(profile);
+        if (mArmedRecorder != null && mArmedProfile == profile) { // pre-roll already in memory
+            mRecorder = mArmedRecorder;
+            mArmedRecorder = null;
+        } else {
+            doDisarmRecorder();
+            mRecorder = createRecorderEngine(profile);
+        }
+        mRecorder.setListener(mRecorderListener);
+        mSegmented = duration > 0 && mRecorder.setSegmentation(RecordingsContract.SEGMENT_MAX_DURATION, RecordingsContract.SEGMENT_MAX_SIZE);
+        if (duration > 0 && MySharedPreferences.getPrefVad(this)) {
+            mRecorder.setVoiceActivityDetection(MySharedPreferences.getPrefVadThreshold(this), MySharedPreferences.getPrefVadHangover(this));
+        }
+        mRecorder.setLevelListener(mLevelListener, METERING_INTERVAL_MS);
 
         try {
-            mRecorder.prepare();
-            mRecorder.start();
-            mStartingTimeMillis = System.currentTimeMillis();
-            isRecording = true;
-
-            startTimer();
+            mRecorder.prepare(mFilePath, duration);
         } catch (IOException e) {
             Log.e(TAG, CLASS_NAME + " - startRecording(): " + "prepare() failed" + e.toString());
+            mRecorder.release();
+            mRecorder = null;
+            stopForeground(true);
+            setState(RecorderState.IDLE);
+            if (mExecution != null) { // kept: the start alarm tries again after a failed warm-up
+                mExecution.skip(ScheduleExecution.OUTCOME_FAILED, ScheduleExecution.REASON_PREPARE_FAILED);
+                recordingsRepository.saveScheduleExecution(mExecution);
+            }
+            return false;
         }
+        return true;
+    }
+
+    /*
+        Alarm at the start time of a scheduled recording (alarmTime = delivery time). If the
+        recording has been warmed up, only the delivery time is saved, otherwise it's started now.
+        The end is a deadline: a late start doesn't move it. startId: start of the Service by the
+        alarm, stopped if nothing is recorded.
+     */
+    private void doScheduledStart(ScheduledRecording recording, long alarmTime, int startId) {
+        if (mHandOff != null && mHandOff.onStartAlarm(recording, alarmTime, startId))
+            return; // the engine continues in its file at the boundary, see handOff()
 
-        if (onRecordingStatusChangedListener != null) {
-            onRecordingStatusChangedListener.onRecordingStarted();
+        boolean warmedUp = mExecution != null && mExecution.getScheduledId() == recording.getId();
+        ScheduleExecution execution = warmedUp ? mExecution : new ScheduleExecution(recording);
+        execution.setAlarmTime(alarmTime);
+        if (warmedUp && mState != RecorderState.IDLE) {
+            recordingsRepository.saveScheduleExecution(execution);
+            return;
         }
+
+        int duration = (int) (recording.getEnd() - clock.currentTimeMillis());
+        if (mState != RecorderState.IDLE) {
+            execution.skip(ScheduleExecution.OUTCOME_SKIPPED, ScheduleExecution.REASON_RECORDER_BUSY);
+        } else if (!hasPermissions()) {
+            execution.skip(ScheduleExecution.OUTCOME_SKIPPED, ScheduleExecution.REASON_NO_PERMISSIONS);
+        } else if (duration <= 0) {
+            execution.skip(ScheduleExecution.OUTCOME_SKIPPED, ScheduleExecution.REASON_END_PASSED);
+        } else {
+            execution.skip(ScheduleExecution.OUTCOME_PENDING, ScheduleExecution.REASON_NONE);
+            mExecution = execution;
+            setState(RecorderState.PREPARING);
+            RecordingProfile profile = recording.getProfile() != null ? RecordingProfile.fromKey(recording.getProfile()) : getDefaultProfile();
+            if (prepareEngine(profile, duration))
+                startEngine(duration);
+            else
+                stopForegroundIfIdle(startId);
+            return;
+        }
+        Log.w(TAG, CLASS_NAME + " - doScheduledStart(): " + "scheduled recording skipped, reason " + execution.getReason());
+        recordingsRepository.saveScheduleExecution(execution);
+        stopForegroundIfIdle(startId); // recorder busy: the foreground is kept
     }
 
-    private void setFileNameAndPath() {
-        mFileName = "myrec" + System.currentTimeMillis();
+    // Starts the prepared engine (PREPARING -> RECORDING).
+    private void startEngine(int duration) {
+        mDiscardedPath = null;
+        mRecorder.start();
+        mStartingTimeMillis = clock.currentTimeMillis();
+        if (mExecution != null) {
+            mExecution.setCaptureStart(mStartingTimeMillis);
+            recordingsRepository.saveScheduleExecution(mExecution);
+        }
+        mPausedMillis = 0;
+        mPausable = duration == 0;
+        if (mSegmented)
+            journalRecording(SegmentedMuxer.getSegmentPath(mFilePath, 1), 1, 0);
+        else
+            journalRecording(mFilePath, 0, 0);
+        startTimer();
+        setState(RecorderState.RECORDING);
+
+        appExecutors.mainThread().execute(() -> {
+            if (onRecordingStatusChangedListener != null) {
+                onRecordingStatusChangedListener.onRecordingStarted();
+            }
+        });
+
+        if (duration > 0) { // scheduled recording
+            mRecordingEnd = mStartingTimeMillis + duration;
+            prepareHandOff();
+        }
+    }
+
+    /*
+        Warm-up of a scheduled recording: the engine is prepared now and started at the exact
+        start time, so the time spent creating the engine and the encoder doesn't delay the
+        recording. The device is kept awake until then. The alarm at the start time only removes
+        the recording from the database (the recorder is not IDLE anymore).
+     */
+    private void doWarmUp(ScheduledRecording recording, long warmUpTime, int startId) {
+        long delay = recording.getStart() - clock.currentTimeMillis();
+        if (mState != RecorderState.IDLE || !hasPermissions() || delay > 2 * RecordingsContract.SCHEDULE_WARM_UP || recording.getEnd() <= clock.currentTimeMillis()) {
+            stopForegroundIfIdle(startId);
+            return;
+        }
+
+        mExecution = new ScheduleExecution(recording);
+        mExecution.setWarmUpTime(warmUpTime);
+        setState(RecorderState.PREPARING);
+        RecordingProfile profile = recording.getProfile() != null ? RecordingProfile.fromKey(recording.getProfile()) : getDefaultProfile();
+        if (!prepareEngine(profile, (int) (recording.getEnd() - Math.max(recording.getStart(), clock.currentTimeMillis()))))
+            return; // not stopped: the start alarm tries again with the same execution
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null) {
+            mWarmUpWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "ScheduledRecorder:WarmUp");
+            mWarmUpWakeLock.acquire(delay + RecordingsContract.SCHEDULE_WARM_UP);
+        }
+        mWarmUpEnd = recording.getEnd();
+        mRecorderHandler.sendEmptyMessageAtTime(MSG_WARM_START, SystemClock.uptimeMillis() + Math.max(0, delay));
+    }
+
+    /*
+        The engine was prepared with the duration expected at the warm-up: if the start is late
+        the limit is shortened, so the end stays a deadline. Engines that can't change it are
+        stopped by MSG_DEADLINE.
+     */
+    private void doWarmStart() {
+        releaseWarmUpWakeLock();
+        if (mState != RecorderState.PREPARING || mRecorder == null) return;
+
+        int duration = (int) (mWarmUpEnd - clock.currentTimeMillis());
+        if (duration <= 0) {
+            cancelWarmUp();
+            return;
+        }
+        if (!mRecorder.setMaxDuration(duration))
+            mRecorderHandler.sendEmptyMessageDelayed(MSG_DEADLINE, duration);
+        startEngine(duration);
+    }
+
+    // The engine prepared by the warm-up is released without starting.
+    private void cancelWarmUp() {
+        mRecorderHandler.removeMessages(MSG_WARM_START);
+        releaseWarmUpWakeLock();
+        mRecorder.release();
+        mRecorder = null;
+        stopForeground(true);
+        setState(RecorderState.IDLE);
+        if (mExecution != null) {
+            mExecution.skip(ScheduleExecution.OUTCOME_SKIPPED, ScheduleExecution.REASON_CANCELLED);
+            recordingsRepository.saveScheduleExecution(mExecution);
+            mExecution = null;
+        }
+    }
+
+    private void releaseWarmUpWakeLock() {
+        if (mWarmUpWakeLock == null) return;
+
+        if (mWarmUpWakeLock.isHeld()) mWarmUpWakeLock.release();
+        mWarmUpWakeLock = null;
+    }
+
+    /*
+        Arms a recorder engine that starts capturing audio before startRecording() is called.
+        It has no effect if pre-roll is disabled in the settings or not supported by the engine.
+     */
+    public void armRecorder() {
+        Message message = mRecorderHandler.obtainMessage(MSG_ARM);
+        mRecorderHandler.sendMessage(message);
+    }
+
+    private void doArmRecorder() {
+        if (mState != RecorderState.IDLE || mArmedRecorder != null || !MySharedPreferences.getPrefPreRoll(this) || !hasPermissions())
+            return;
+
+        RecordingProfile profile = getDefaultProfile();
+        RecorderEngine engine = createRecorderEngine(profile);
+        if (engine.arm(PRE_ROLL_MS)) {
+            mArmedRecorder = engine;
+            mArmedProfile = profile;
+        } else
+            engine.release();
+    }
+
+    public void disarmRecorder() {
+        Message message = mRecorderHandler.obtainMessage(MSG_DISARM);
+        mRecorderHandler.sendMessage(message);
+    }
+
+    private void doDisarmRecorder() {
+        if (mArmedRecorder == null) return;
+
+        mArmedRecorder.release(); // disarms the engine
+        mArmedRecorder = null;
+    }
+
+    private RecordingProfile getDefaultProfile() {
+        return RecordingProfile.fromKey(MySharedPreferences.getPrefRecordingProfile(this));
+    }
+
+    /*
+        The PCM engine (AudioRecord + MediaCodec) can be enabled in the settings, otherwise
+        MediaRecorder is used. Profiles that MediaRecorder can't produce always use the PCM engine.
+     */
+    private RecorderEngine createRecorderEngine(RecordingProfile profile) {
+        if (profile.requiresPcmEngine() || MySharedPreferences.getPrefPcmEngine(this)) {
+            return new PcmRecorderEngine(profile);
+        }
+
+        return new MediaRecorderEngine(profile);
+    }
+
+    private void setFileNameAndPath(RecordingProfile profile) {
+        mFileName = "myrec" + clock.currentTimeMillis() + profile.getExtension();
         mFilePath = Utils.getDirectoryPath(this) + "/" + mFileName;
         Log.d(TAG, "mFilePath =  " + mFilePath);
     }
@@ -233,60 +684,310 @@ public class RecordingService extends Service {
         mIncrementTimerTask = new TimerTask() {
             @Override
             public void run() {
+                if (mPaused) return;
+
                 mElapsedMillis += 100;
+                if (mElapsedMillis % RecordingsContract.CHECKPOINT_INTERVAL == 0) {
+                    recordingsRepository.checkpointRecording(mJournalPath, mElapsedMillis - mJournalStartMillis);
+                }
                 if (onRecordingStatusChangedListener != null) {
                     onRecordingStatusChangedListener.onTimerChanged((int) mElapsedMillis / 1000);
                 }
-                if (onRecordingStatusChangedListener != null && mRecorder != null) {
-                    try {
-                        onRecordingStatusChangedListener.onAmplitudeInfo(mRecorder.getMaxAmplitude());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
             }
         };
         mTimer.scheduleAtFixedRate(mIncrementTimerTask, 100, 100);
     }
 
+    /*
+        Pauses a recording started from the UI. If the engine can't pause, it's stopped and a new
+        engine records the next stretch in another file: the files are joined by stopRecording().
+        Returns false if the recording can't be paused.
+     */
+    public boolean pauseRecording() {
+        if (mState != RecorderState.RECORDING || !mPausable) return false;
+
+        Message message = mRecorderHandler.obtainMessage(MSG_PAUSE);
+        mRecorderHandler.sendMessage(message);
+        return true;
+    }
+
+    private void doPauseRecording() {
+        if (mState != RecorderState.RECORDING || mPaused) return;
+
+        if (!mRecorder.pause()) {
+            mRecorder.stop();
+            mRecorder.release();
+            mRecorder = null;
+            if (mPartPaths.isEmpty()) mPartPaths.add(mFilePath);
+        }
+        mPaused = true;
+        mPausedAtMillis = clock.currentTimeMillis();
+    }
+
+    public boolean resumeRecording() {
+        if (mState != RecorderState.RECORDING) return false;
+
+        Message message = mRecorderHandler.obtainMessage(MSG_RESUME);
+        mRecorderHandler.sendMessage(message);
+        return true;
+    }
+
+    // If the next stretch can't be recorded, the recording is stopped and the parts are saved.
+    private void doResumeRecording() {
+        if (mState != RecorderState.RECORDING || !mPaused) return;
+
+        if (mRecorder != null) {
+            mRecorder.resume();
+        } else {
+            String partPath = getPartPath(mFilePath, mPartPaths.size() + 1);
+            mRecorder = createRecorderEngine(mProfile);
+            mRecorder.setListener(mRecorderListener);
+            mRecorder.setLevelListener(mLevelListener, METERING_INTERVAL_MS);
+            try {
+                mRecorder.prepare(partPath, 0);
+                mRecorder.start();
+                mPartPaths.add(partPath);
+            } catch (IOException e) {
+                Log.e(TAG, CLASS_NAME + " - resumeRecording(): " + "prepare() failed" + e.toString());
+                mRecorder.release();
+                mRecorder = null;
+                doStopRecording();
+                return;
+            }
+        }
+        mPaused = false;
+        mPausedMillis += clock.currentTimeMillis() - mPausedAtMillis;
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /*
+        The recording is stopped and finalized asynchronously: the connected component is
+        notified with onRecordingStopped() and the state goes back to IDLE.
+     */
     public void stopRecording() {
-        mRecorder.stop();
-        long mElapsedMillis = (System.currentTimeMillis() - mStartingTimeMillis);
-        mRecorder.release();
-        isRecording = false;
-        mRecorder = null;
+        Message message = mRecorderHandler.obtainMessage(MSG_STOP);
+        mRecorderHandler.sendMessage(message);
+    }
 
-        // Communicate the file path to the connected Activity.
-        if (onRecordingStatusChangedListener != null) {
-            onRecordingStatusChangedListener.onRecordingStopped(mFilePath);
+    private void doStopRecording() {
+        if (mState == RecorderState.PREPARING && mRecorder != null) { // warmed up, not started yet
+            cancelWarmUp();
+            return;
+        }
+        if (mState != RecorderState.RECORDING) return; // already stopped
+
+        mRecorderHandler.removeMessages(MSG_DEADLINE);
+        setState(RecorderState.STOPPING);
+        PendingHandOff handOff = mHandOff; // not deleted yet: it will start with its alarm
+        mHandOff = null;
+        if (mRecorder != null) { // null if paused with an engine that can't pause
+            mRecorder.stop(); // segmented recording: the last segment is saved here
+            mRecorder.release();
+            mRecorder = null;
+        }
+        if (mPaused) {
+            mPausedMillis += clock.currentTimeMillis() - mPausedAtMillis;
+            mPaused = false;
+        }
+        long length = clock.currentTimeMillis() - mStartingTimeMillis - mPausedMillis;
+        if (mExecution != null) {
+            mExecution.setActualEnd(clock.currentTimeMillis());
+            if (mExecution.getOutcome() == ScheduleExecution.OUTCOME_PENDING) // not failed
+                mExecution.setOutcome(ScheduleExecution.OUTCOME_COMPLETED);
+            recordingsRepository.saveScheduleExecution(mExecution);
+            mExecution = null;
         }
 
+        // Stop timer.
+        if (mIncrementTimerTask != null) {
+            mIncrementTimerTask.cancel();
+            mIncrementTimerTask = null;
+        }
 
         // Save the recording data in the database.
-        Recording recording = new Recording(mFileName, mFilePath, mElapsedMillis, System.currentTimeMillis());
+        setState(RecorderState.FINALIZING);
+        if (!mSegmented) {
+            if (mPartPaths.isEmpty()) {
+                if (!mFilePath.equals(mDiscardedPath)) saveRecording(mFilePath, 0, length);
+            } else {
+                joinAndSaveParts(length);
+            }
+        }
+        stopForeground(true);
+
+        // Communicate the file path to the connected Activity.
+        String filePath = mSegmented ? mJournalPath : mFilePath;
+        boolean startNext = handOff != null && handOff.isAlarmDelivered();
+        appExecutors.mainThread().execute(() -> {
+            if (onRecordingStatusChangedListener != null) {
+                onRecordingStatusChangedListener.onRecordingStopped(filePath);
+            } else if (!startNext) {
+                stopSelf(); // no Activity connected -> stop the Service (scheduled recording)
+            }
+        });
+        setState(RecorderState.IDLE);
+
+        // Stopped before the boundary, but the alarm of the next one was already delivered.
+        if (startNext)
+            doScheduledStart(handOff.getNext(), handOff.getAlarmTime(), handOff.getStartId());
+    }
+
+    /*
+        Back-to-back scheduled recordings: if the next one starts when the current one ends (or
+        before), the engine continues in a new file at the boundary instead of stopping, so no
+        audio is lost between them. The next scheduled recording stays in the database until the
+        hand-off happens (if this recording is stopped before, it starts with its alarm, or right
+        away if the alarm was already delivered).
+     */
+    private void prepareHandOff() {
+        recordingsRepository.getNextScheduledRecording(new RecordingsRepositoryInterface.GetScheduledRecordingCallback() {
+            @Override
+            public void onSuccess(ScheduledRecording next) {
+                mRecorderHandler.post(() -> {
+                    if (mState != RecorderState.RECORDING || mHandOff != null || next.getStart() - mRecordingEnd > RecordingsContract.SCHEDULE_TOLERANCE)
+                        return;
+
+                    // The codec can't change without restarting the engine.
+                    RecordingProfile profile = next.getProfile() != null ? RecordingProfile.fromKey(next.getProfile()) : getDefaultProfile();
+                    int duration = (int) (next.getEnd() - mRecordingEnd);
+                    if (profile != mProfile || duration <= 0) return;
+
+                    String nextFilePath = Utils.getDirectoryPath(RecordingService.this) + "/myrec" + mRecordingEnd + profile.getExtension();
+                    if (mRecorder.handOff(nextFilePath, duration))
+                        mHandOff = new PendingHandOff(next, nextFilePath);
+                });
+            }
+
+            @Override
+            public void onFailure() {
+                // No other scheduled recordings.
+            }
+        });
+    }
+
+    // The engine switched to the file of mHandOff: save the previous recording and journal the new one.
+    private void handOff(String filePath, int segmentIndex, long durationMs) {
+        if (filePath != null) saveRecording(filePath, segmentIndex, durationMs);
+        if (mState != RecorderState.RECORDING || mHandOff == null) return;
+
+        ScheduledRecording next = mHandOff.getNext();
+        mFilePath = mHandOff.getFilePath();
+        mFileName = new File(mFilePath).getName();
+        mStartingTimeMillis = clock.currentTimeMillis();
+        if (mExecution != null) {
+            mExecution.setActualEnd(mStartingTimeMillis);
+            mExecution.setOutcome(ScheduleExecution.OUTCOME_COMPLETED);
+            recordingsRepository.saveScheduleExecution(mExecution);
+        }
+        mExecution = mHandOff.createExecution(mStartingTimeMillis); // the capture never stopped
+        recordingsRepository.saveScheduleExecution(mExecution);
+        mRecordingEnd = next.getEnd();
+        if (mSegmented)
+            journalRecording(SegmentedMuxer.getSegmentPath(mFilePath, 1), 1, mElapsedMillis);
+        else
+            journalRecording(mFilePath, 0, mElapsedMillis);
+
+        if (!mHandOff.isAlarmDelivered()) // else already deleted by onStartCommand()
+            recordingsRepository.deleteScheduledRecording(next, null);
+        mHandOff = null;
+        prepareHandOff(); // the following one may be contiguous too
+    }
+
+    /*
+        The parts are joined on the recorder thread (FINALIZING state), remuxed and not
+        re-encoded, into a temporary file that replaces the first part; the other parts are
+        deleted only after that. If something goes wrong every part is saved as a separate
+        recording. The parts are valid audio files (see getPartPath()): if the app is killed
+        before they are joined, they are registered by the recovery.
+     */
+    private void joinAndSaveParts(long length) {
+        File joined = new File(mFilePath + ".tmp");
+        boolean done;
+        try {
+            Mp4Concatenator.concatenate(mPartPaths, joined.getAbsolutePath());
+            done = joined.renameTo(new File(mFilePath));
+            if (!done) Log.e(TAG, CLASS_NAME + " - joinAndSaveParts(): " + "rename failed");
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, CLASS_NAME + " - joinAndSaveParts(): " + e.toString());
+            done = false;
+        }
+
+        if (done) {
+            for (String partPath : mPartPaths.subList(1, mPartPaths.size())) {
+                //noinspection ResultOfMethodCallIgnored
+                new File(partPath).delete();
+            }
+            saveRecording(mFilePath, 0, length);
+        } else {
+            //noinspection ResultOfMethodCallIgnored
+            joined.delete();
+            for (String partPath : mPartPaths) {
+                saveRecording(partPath, 0, Math.max(0, RecordingsRecovery.readDurationMs(partPath)));
+            }
+        }
+        mPartPaths.clear();
+    }
+
+    // Part of a paused recording: myrec123.m4a -> myrec123_part2.m4a
+    private static String getPartPath(String filePath, int index) {
+        int dot = filePath.lastIndexOf('.');
+        if (dot <= filePath.lastIndexOf(File.separatorChar))
+            return filePath + "_part" + index;
+
+        return filePath.substring(0, dot) + "_part" + index + filePath.substring(dot);
+    }
+
+    // Inserts the file being written in the database, marked as in progress.
+    private void journalRecording(String filePath, int segmentIndex, long elapsedMillis) {
+        mJournalPath = filePath;
+        mJournalStartMillis = elapsedMillis;
+        Recording recording = new Recording(new File(filePath).getName(), filePath, 0, clock.currentTimeMillis());
+        recording.setSessionId(segmentIndex > 0 ? mStartingTimeMillis : 0);
+        recording.setSegmentIndex(segmentIndex);
+        recording.setInProgress(true);
         recordingsRepository.insertRecording(recording, new RecordingsRepositoryInterface.OperationResult() {
             @Override
             public void onSuccess() {
-                Log.i(TAG, CLASS_NAME + " - stopRecording(): " + "recording added to database");
             }
 
             @Override
             public void onFailure() {
-                Log.e(TAG, CLASS_NAME + " - stopRecording(): " + "error in adding recording to database");
+                Log.e(TAG, CLASS_NAME + " - journalRecording(): " + "error in adding recording to database");
             }
         });
+    }
 
-        // Stop timer.
-        if (mIncrementTimerTask != null) {
-            mIncrementTimerTask.cancel();
-            mIncrementTimerTask = null;
-        }
+    // Segments are saved as soon as they are finalized, then the next segment is journaled.
+    private void saveSegment(String filePath, int index, long durationMs) {
+        saveRecording(filePath, index, durationMs);
+        if (mState == RecorderState.RECORDING)
+            journalRecording(SegmentedMuxer.getSegmentPath(mFilePath, index + 1), index + 1, mElapsedMillis);
+    }
 
-        // No Activity connected -> stop the Service (scheduled recording).
-        if (onRecordingStatusChangedListener == null)
-            stopSelf();
+    // The engine deleted an empty file: its journal entry is removed too.
+    private void discardFile(String filePath) {
+        mDiscardedPath = filePath;
+        recordingsRepository.discardRecording(filePath);
+    }
 
-        stopForeground(true);
+    private void saveRecording(String filePath, int segmentIndex, long length) {
+        Recording recording = new Recording(new File(filePath).getName(), filePath, length, clock.currentTimeMillis());
+        recording.setSessionId(segmentIndex > 0 ? mStartingTimeMillis : 0);
+        recording.setSegmentIndex(segmentIndex);
+        recordingsRepository.finishRecording(recording, new RecordingsRepositoryInterface.OperationResult() {
+            @Override
+            public void onSuccess() {
+                Log.i(TAG, CLASS_NAME + " - saveRecording(): " + "recording added to database");
+            }
+
+            @Override
+            public void onFailure() {
+                Log.e(TAG, CLASS_NAME + " - saveRecording(): " + "error in adding recording to database");
+            }
+        });
     }
 
     private Notification createNotification() {
@@ -324,8 +1025,9 @@ public class RecordingService extends Service {
         return channelId;
     }
 
+    // True also while the engine is being prepared, so that a second start request is not made.
     public boolean isRecording() {
-        return isRecording;
+        return mState == RecorderState.PREPARING || mState == RecorderState.RECORDING;
     }
 
     /*
@@ -5,56 +5,39 @@
 
 package com.iclaude.scheduledrecorder;
 
-import android.app.AlarmManager;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Color;
 import android.os.Binder;
 import android.os.Build;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Message;
 import android.support.annotation.RequiresApi;
 import android.support.annotation.VisibleForTesting;
 import android.support.v4.app.NotificationCompat;
-import android.util.Log;
 
-import com.iclaude.scheduledrecorder.database.RecordingsRepository;
-import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
-import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.didagger2.App;
 
 import java.util.Objects;
 
 import javax.inject.Inject;
 
-import static com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface.GetScheduledRecordingCallback;
-
 /**
  * This Service gets triggered at boot time and sets the next scheduled recording using an
- * AlarmManager. Scheduled recordings are retrieved from the database and loaded in a separate
- * thread.
+ * AlarmManager (the alarms are lost after a reboot). While the app is running the alarms are kept
+ * in sync with the database by RecordingScheduler, so this Service is only needed when the
+ * process is started by the system.
  * This class (started Service) also implements the Local Binder pattern just for testing purposes.
  */
-public class ScheduledRecordingService extends Service implements Handler.Callback {
+public class ScheduledRecordingService extends Service {
 
-    private final int SCHEDULE_RECORDINGS = 1;
-    private static final String TAG = "SCHEDULED_RECORDER_TAG";
     private static final int NOTIFICATION_SCHEDULING = 0;
-    protected static final String EXTRA_WAKEFUL = "com.danielkim.soundrecorder.WAKEFUL";
 
     @Inject
-    RecordingsRepository recordingsRepository;
-
-    protected AlarmManager alarmManager;
-    protected Context context;
-    private Handler mHandler;
+    protected RecordingScheduler recordingScheduler;
 
     // Just for testing.
     @VisibleForTesting(otherwise = VisibleForTesting.NONE)
@@ -75,28 +58,15 @@ public class ScheduledRecordingService extends Service implements Handler.Callba
     @Override
     public void onCreate() {
         super.onCreate();
-        App.getComponent().inject(this);
+        if (recordingScheduler == null) App.getComponent().inject(this);
 
         onCreateCalls++; // just for testing
-
-        if (alarmManager == null)
-            alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
-
-        if (context == null) context = this;
-
-        // Start background thread with a Looper.
-        HandlerThread handlerThread = new HandlerThread("BackgroundThread");
-        handlerThread.start();
-        mHandler = new Handler(handlerThread.getLooper(), this);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         onDestroyCalls++; // just for testing
-
-        // Stop background thread.
-        mHandler.getLooper().quit();
     }
 
     @Override
@@ -105,77 +75,19 @@ public class ScheduledRecordingService extends Service implements Handler.Callba
 
         startForeground(NOTIFICATION_SCHEDULING, null);
 
-        Message message = mHandler.obtainMessage(SCHEDULE_RECORDINGS);
-        mHandler.sendMessage(message);
+        scheduleNextRecording(startId);
 
         return START_REDELIVER_INTENT;
     }
 
-    @Override
-    public boolean handleMessage(Message message) {
-        if (message.what == SCHEDULE_RECORDINGS) {
-            resetAlarmManager(); // cancel all pending alarms
-            deleteOldRecordingsAndScheduleNext();
-        }
-
-        return true;
-    }
-
-    // Cancels all pending alarms already set in the AlarmManager.
-    protected void resetAlarmManager() {
-        Intent intent = new Intent(context, RecordingService.class);
-        PendingIntent pendingIntent = PendingIntent.getService(context, 0, intent, 0);
-        alarmManager.cancel(pendingIntent);
-    }
-
-    // Delete expired scheduled recordings from database.
-    protected void deleteOldRecordingsAndScheduleNext() {
-        recordingsRepository.deleteOldScheduledRecordings(System.currentTimeMillis() - 1000*60*5, new RecordingsRepositoryInterface.OperationResult() {
-            @Override
-            public void onSuccess() {
-                scheduleNextRecording();
-            }
-
-            @Override
-            public void onFailure() {
-            }
+    // Sets the alarms of the next scheduled recording even if they were already set.
+    protected void scheduleNextRecording(int startId) {
+        recordingScheduler.reschedule(() -> {
+            stopForeground(false);
+            stopSelf(startId);
         });
     }
 
-    // Get scheduled recordings from database and set the AlarmManager.
-    protected void scheduleNextRecording() {
-        GetScheduledRecordingCallback callback = new GetScheduledRecordingCallback() {
-            @Override
-            public void onSuccess(ScheduledRecording recording) {
-                if (recording != null) {
-                    Intent intent = RecordingService.makeIntent(context, false);
-
-                    PendingIntent pendingIntent;
-                    if(Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
-                        pendingIntent = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-                    else
-                        pendingIntent = PendingIntent.getForegroundService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-                    if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP_MR1)  // API 19-22
-                        alarmManager.setExact(AlarmManager.RTC_WAKEUP, recording.getStart(), pendingIntent);
-                     else  // API 23+
-                        alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, recording.getStart(), pendingIntent);
-
-                }
-
-                stopForeground(false);
-            }
-
-            @Override
-            public void onFailure() {
-                Log.e(TAG, getClass().getSimpleName() + " - scheduleNextRecording(): error in getting the next scheduled recording");
-                stopForeground(false);
-            }
-        };
-
-        recordingsRepository.getNextScheduledRecording(callback);
-    }
-
     private Notification createNotification() {
         String channelId;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the frames produced by an audio encoder (MediaCodec) to a file, in the container used
+ * by the RecordingProfile (MPEG-4, raw FLAC stream, Ogg).
+ * All methods are called from the encoder thread.
+ */
+public interface ContainerWriter {
+
+    // Creates the file immediately, so that I/O errors are detected before the recording starts.
+    interface Factory {
+        ContainerWriter create(String filePath) throws IOException;
+    }
+
+    /*
+        Called before the first frame. format is the output format of the encoder, codecConfig
+        the content of the BUFFER_FLAG_CODEC_CONFIG buffers (null if the encoder didn't produce
+        any).
+     */
+    void start(MediaFormat format, ByteBuffer codecConfig) throws IOException;
+
+    // Presentation times start from 0 in every file.
+    void writeSampleData(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException;
+
+    // Finalizes the file.
+    void stop() throws IOException;
+
+    void release();
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * ContainerWriter for native FLAC files: the "fLaC" marker and the metadata produced by the
+ * encoder (codec config), followed by the encoded frames.
+ * If the encoder doesn't provide the metadata, a STREAMINFO block is generated with unknown
+ * frame sizes, total samples and MD5 (allowed by the FLAC format).
+ */
+public class FlacWriter implements ContainerWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int STREAMINFO_LENGTH = 34;
+
+    private final OutputStream out;
+    private byte[] frame = new byte[16 * 1024]; // grows if necessary, then reused
+
+
+    public FlacWriter(String filePath) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(filePath), BUFFER_SIZE));
+    }
+
+    FlacWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void start(MediaFormat format, ByteBuffer codecConfig) throws IOException {
+        if (codecConfig != null && codecConfig.remaining() > 8 && codecConfig.get(codecConfig.position()) == 'f') {
+            byte[] header = new byte[codecConfig.remaining()];
+            codecConfig.duplicate().get(header);
+            writeHeader(header);
+        } else {
+            writeHeader(buildHeader(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                    format.getInteger(MediaFormat.KEY_CHANNEL_COUNT)));
+        }
+    }
+
+    void writeHeader(byte[] header) throws IOException {
+        setLastMetadataBlock(header);
+        out.write(header);
+    }
+
+    @Override
+    public void writeSampleData(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException {
+        if (frame.length < info.size) frame = new byte[info.size];
+
+        data.get(frame, 0, info.size);
+        out.write(frame, 0, info.size);
+    }
+
+    @Override
+    public void stop() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void release() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+    }
+
+    // "fLaC" + STREAMINFO (last metadata block).
+    static byte[] buildHeader(int sampleRate, int channels) {
+        byte[] header = new byte[4 + 4 + STREAMINFO_LENGTH];
+        header[0] = 'f';
+        header[1] = 'L';
+        header[2] = 'a';
+        header[3] = 'C';
+        header[4] = (byte) 0x80; // last block, type 0 (STREAMINFO)
+        header[7] = STREAMINFO_LENGTH;
+
+        int i = 8;
+        // Min and max block size: unknown, the whole allowed range.
+        header[i++] = 0;
+        header[i++] = 16;
+        header[i++] = (byte) 0xFF;
+        header[i++] = (byte) 0xFF;
+        i += 6; // min and max frame size: 0 = unknown
+        // Sample rate (20 bits), channels - 1 (3 bits), bits per sample - 1 (5 bits), total samples (36 bits, 0 = unknown).
+        header[i++] = (byte) (sampleRate >> 12);
+        header[i++] = (byte) (sampleRate >> 4);
+        header[i++] = (byte) (((sampleRate & 0x0F) << 4) | ((channels - 1) << 1) | ((BITS_PER_SAMPLE - 1) >> 4));
+        header[i] = (byte) (((BITS_PER_SAMPLE - 1) & 0x0F) << 4);
+        // MD5: 0 = unknown.
+        return header;
+    }
+
+    // Sets the "last metadata block" flag on the last block, so that decoders find the frames.
+    static void setLastMetadataBlock(byte[] header) {
+        int offset = 4;
+        while (offset + 4 <= header.length) {
+            int length = ((header[offset + 1] & 0xFF) << 16) | ((header[offset + 2] & 0xFF) << 8) | (header[offset + 3] & 0xFF);
+            int next = offset + 4 + length;
+            if (next >= header.length) {
+                header[offset] |= 0x80;
+                return;
+            }
+            header[offset] &= 0x7F;
+            offset = next;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+/**
+ * Computes peak, RMS and number of clipped samples over blocks of PCM samples and publishes
+ * them once per block. The block length is given by the publishing interval.
+ * It doesn't allocate anything, so it can run in the capture thread.
+ */
+public class LevelMeter {
+
+    public interface Listener {
+        // Called on the thread calling process().
+        void onLevels(int peak, int rms, int clippedSamples);
+    }
+
+    public static final int CLIP_LEVEL = Short.MAX_VALUE; // |sample| >= CLIP_LEVEL is clipped
+
+    private final int blockSamples;
+    private Listener listener;
+
+    private int peak = 0;
+    private long sumSquares = 0;
+    private int clipped = 0;
+    private int count = 0;
+
+    public LevelMeter(int sampleRate, int intervalMs) {
+        blockSamples = Math.max(1, sampleRate * intervalMs / 1000);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void process(short[] samples, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int sample = samples[i];
+            int abs = sample < 0 ? -sample : sample;
+            if (abs > peak) peak = abs;
+            if (abs >= CLIP_LEVEL) clipped++;
+            sumSquares += sample * sample;
+
+            if (++count == blockSamples) publish();
+        }
+    }
+
+    public void reset() {
+        peak = 0;
+        sumSquares = 0;
+        clipped = 0;
+        count = 0;
+    }
+
+    private void publish() {
+        Listener l = listener;
+        if (l != null) {
+            int rms = (int) Math.sqrt((double) sumSquares / count);
+            l.onLevels(Math.min(peak, Short.MAX_VALUE), rms, clipped);
+        }
+        reset();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+
+import static android.media.MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED;
+
+/**
+ * RecorderEngine backed by the platform MediaRecorder (AAC in MPEG-4 container), only for
+ * the profiles that don't require the PCM engine.
+ * MediaRecorder doesn't give access to the samples, so levels are obtained by polling
+ * getMaxAmplitude(): only the peak is available, RMS and clipped samples are reported as 0.
+ */
+public class MediaRecorderEngine implements RecorderEngine {
+    private static final String TAG = "SCHEDULED_RECORDER_TAG";
+    private final String CLASS_NAME = getClass().getSimpleName();
+
+    private final RecordingProfile profile;
+    private MediaRecorder mRecorder = null;
+    private Listener listener = null;
+    private LevelMeter.Listener levelListener = null;
+    private int levelIntervalMs;
+    private Handler levelHandler = new Handler(Looper.getMainLooper());
+    private final Runnable levelRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mRecorder == null || levelListener == null) return;
+
+            levelListener.onLevels(mRecorder.getMaxAmplitude(), 0, 0);
+            levelHandler.postDelayed(this, levelIntervalMs);
+        }
+    };
+
+    public MediaRecorderEngine(RecordingProfile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        // MediaRecorder calls its listeners on the Looper of the thread that creates it.
+        Looper looper = Looper.myLooper();
+        levelHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
+    }
+
+    // MediaRecorder can't switch output file without stopping (and losing audio).
+    @Override
+    public boolean setSegmentation(long maxSegmentMs, long maxSegmentBytes) {
+        return false;
+    }
+
+    // MediaRecorder doesn't give access to the samples.
+    @Override
+    public boolean setVoiceActivityDetection(int thresholdDb, int hangoverMs) {
+        return false;
+    }
+
+    // MediaRecorder can't capture before start().
+    @Override
+    public boolean arm(int preRollMs) {
+        return false;
+    }
+
+    @Override
+    public void disarm() {
+    }
+
+    @Override
+    public void setLevelListener(LevelMeter.Listener levelListener, int intervalMs) {
+        this.levelListener = levelListener;
+        this.levelIntervalMs = intervalMs;
+    }
+
+    @Override
+    public void prepare(String filePath, int maxDurationMs) throws IOException {
+        mRecorder = new MediaRecorder();
+        mRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
+        mRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+        mRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+        mRecorder.setOutputFile(filePath);
+
+        mRecorder.setMaxDuration(maxDurationMs); // if this is a scheduled recording, set the max duration, after which the Service is stopped
+        mRecorder.setAudioChannels(1);
+        mRecorder.setAudioSamplingRate(profile.getSampleRate());
+        mRecorder.setAudioEncodingBitRate(profile.getBitRate());
+        // Called only if a max duration has been set (scheduled recordings).
+        mRecorder.setOnInfoListener((mediaRecorder, what, extra) -> {
+            if (what == MEDIA_RECORDER_INFO_MAX_DURATION_REACHED && listener != null) {
+                listener.onMaxDurationReached();
+            }
+        });
+        mRecorder.setOnErrorListener((mediaRecorder, what, extra) -> {
+            if (listener != null) listener.onError();
+        });
+
+        mRecorder.prepare();
+    }
+
+    // MediaRecorder.setMaxDuration() must be called before prepare().
+    @Override
+    public boolean setMaxDuration(int maxDurationMs) {
+        return false;
+    }
+
+    @Override
+    public void start() {
+        mRecorder.start();
+        if (levelListener != null)
+            levelHandler.postDelayed(levelRunnable, levelIntervalMs);
+    }
+
+    // MediaRecorder.pause() is available only on API 24+.
+    @Override
+    public boolean pause() {
+        return false;
+    }
+
+    @Override
+    public void resume() {
+    }
+
+    // MediaRecorder switches file only when the max file size is reached, and only on API 26+.
+    @Override
+    public boolean handOff(String nextFilePath, int durationMs) {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        levelHandler.removeCallbacks(levelRunnable);
+        try {
+            mRecorder.stop();
+        } catch (RuntimeException e) { // after an error, or no audio recorded
+            Log.e(TAG, CLASS_NAME + " - stop(): " + e.toString());
+        }
+    }
+
+    @Override
+    public void release() {
+        levelHandler.removeCallbacks(levelRunnable);
+        if (mRecorder != null) {
+            mRecorder.release();
+            mRecorder = null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Joins MPEG-4 audio files with the same format (the parts of a paused recording) in a single
+ * file. The encoded access units are copied with MediaExtractor and MediaMuxer, shifting their
+ * presentation times: nothing is decoded or re-encoded, so the cost is only I/O.
+ * Parts that can't be read (i.e. empty) are skipped.
+ */
+public class Mp4Concatenator {
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private Mp4Concatenator() {
+    }
+
+    // Returns the duration of the output in microseconds.
+    @WorkerThread
+    public static long concatenate(List<String> inputPaths, String outputPath) throws IOException {
+        MediaMuxer muxer = null;
+        int outputTrack = -1;
+        ByteBuffer buffer = null;
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        long offsetUs = 0;
+
+        try {
+            for (String inputPath : inputPaths) {
+                MediaExtractor extractor = new MediaExtractor();
+                try {
+                    extractor.setDataSource(inputPath);
+                } catch (IOException | IllegalArgumentException e) { // damaged part: skipped
+                    extractor.release();
+                    continue;
+                }
+
+                try {
+                    int inputTrack = findAudioTrack(extractor);
+                    if (inputTrack < 0) continue;
+
+                    extractor.selectTrack(inputTrack);
+                    MediaFormat format = extractor.getTrackFormat(inputTrack);
+                    if (muxer == null) { // the format of the first part is used for the output
+                        muxer = new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+                        outputTrack = muxer.addTrack(format);
+                        muxer.start();
+                    }
+                    int bufferSize = format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE) ? format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : DEFAULT_BUFFER_SIZE;
+                    if (buffer == null || buffer.capacity() < bufferSize)
+                        buffer = ByteBuffer.allocateDirect(bufferSize);
+
+                    long lastSampleUs = 0;
+                    long frameUs = 0;
+                    int size;
+                    while ((size = extractor.readSampleData(buffer, 0)) >= 0) {
+                        long sampleUs = extractor.getSampleTime();
+                        info.set(0, size, offsetUs + sampleUs, extractor.getSampleFlags());
+                        muxer.writeSampleData(outputTrack, buffer, info);
+
+                        frameUs = sampleUs - lastSampleUs;
+                        lastSampleUs = sampleUs;
+                        extractor.advance();
+                    }
+                    offsetUs += lastSampleUs + frameUs; // the next part starts one frame after the last one
+                } finally {
+                    extractor.release();
+                }
+            }
+        } finally {
+            if (muxer != null) {
+                muxer.stop();
+                muxer.release();
+            }
+        }
+
+        if (muxer == null) throw new IOException("no readable input");
+        return offsetUs;
+    }
+
+    private static int findAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * ContainerWriter for MPEG-4 files (AAC), based on MediaMuxer. The codec specific data is taken
+ * from the output format of the encoder.
+ */
+public class Mp4Writer implements ContainerWriter {
+
+    private MediaMuxer muxer;
+    private int trackIndex = -1;
+    private boolean started = false;
+
+
+    public Mp4Writer(String filePath) throws IOException {
+        muxer = new MediaMuxer(filePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    }
+
+    @Override
+    public void start(MediaFormat format, ByteBuffer codecConfig) {
+        trackIndex = muxer.addTrack(format);
+        muxer.start();
+        started = true;
+    }
+
+    @Override
+    public void writeSampleData(ByteBuffer data, MediaCodec.BufferInfo info) {
+        muxer.writeSampleData(trackIndex, data, info);
+    }
+
+    @Override
+    public void stop() {
+        if (!started) return;
+
+        muxer.stop();
+        started = false;
+    }
+
+    @Override
+    public void release() {
+        if (muxer != null) {
+            muxer.release();
+            muxer = null;
+        }
+    }
+}
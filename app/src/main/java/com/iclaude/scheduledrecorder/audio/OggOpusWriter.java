@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * ContainerWriter for Opus in Ogg (RFC 7845): identification header (OpusHead), comment header
+ * (OpusTags) and audio pages of about 1 second. The headers are generated here, the codec config
+ * of the encoder is not used.
+ * Granule positions are computed from the duration of each packet (TOC byte), at 48 kHz as
+ * required by the specification.
+ * No memory is allocated after construction.
+ */
+public class OggOpusWriter implements ContainerWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GRANULE_RATE = 48000;
+    private static final int PAGE_DURATION = GRANULE_RATE; // 1 second
+    private static final int DEFAULT_PRE_SKIP = 312; // libopus lookahead at 48 kHz
+    private static final int MAX_SEGMENTS = 255;
+    private static final int HEADER_LENGTH = 27;
+    private static final byte FLAG_BOS = 0x02;
+    private static final byte FLAG_EOS = 0x04;
+    private static final String VENDOR = "ScheduledRecorder";
+    private static final int[] SILK_FRAME_SIZES = {480, 960, 1920, 2880}; // 10, 20, 40, 60 ms at 48 kHz
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04C11DB7 : r << 1;
+            }
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    private final OutputStream out;
+    private final int serialNumber;
+    private final byte[] header = new byte[HEADER_LENGTH];
+    private final byte[] segmentTable = new byte[MAX_SEGMENTS];
+    private final byte[] pageData = new byte[MAX_SEGMENTS * 255];
+    private final byte[] packet = new byte[MAX_SEGMENTS * 255];
+    private int segments = 0;
+    private int pageDataLength = 0;
+    private int pageSequence = 0;
+    private long granulePosition = 0;
+    private long pageStartGranule = 0;
+
+
+    public OggOpusWriter(String filePath) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(filePath), BUFFER_SIZE), (int) System.nanoTime());
+    }
+
+    OggOpusWriter(OutputStream out, int serialNumber) {
+        this.out = out;
+        this.serialNumber = serialNumber;
+    }
+
+    @Override
+    public void start(MediaFormat format, ByteBuffer codecConfig) throws IOException {
+        int preSkip = DEFAULT_PRE_SKIP;
+        ByteBuffer codecDelay = format.getByteBuffer("csd-1"); // codec delay in ns
+        if (codecDelay != null && codecDelay.remaining() >= 8) {
+            long delayNs = codecDelay.duplicate().order(ByteOrder.LITTLE_ENDIAN).getLong();
+            preSkip = (int) (delayNs * GRANULE_RATE / 1000000000L);
+        }
+        start(format.getInteger(MediaFormat.KEY_SAMPLE_RATE), format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), preSkip);
+    }
+
+    void start(int inputSampleRate, int channels, int preSkip) throws IOException {
+        // Identification header.
+        ByteBuffer head = ByteBuffer.wrap(packet).order(ByteOrder.LITTLE_ENDIAN);
+        head.put("OpusHead".getBytes(Charset.forName("US-ASCII")));
+        head.put((byte) 1); // version
+        head.put((byte) channels);
+        head.putShort((short) preSkip);
+        head.putInt(inputSampleRate);
+        head.putShort((short) 0); // output gain
+        head.put((byte) 0); // channel mapping family
+        addPacket(packet, head.position(), 0);
+        flushPage(FLAG_BOS);
+
+        // Comment header.
+        ByteBuffer tags = ByteBuffer.wrap(packet).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] vendor = VENDOR.getBytes(Charset.forName("UTF-8"));
+        tags.put("OpusTags".getBytes(Charset.forName("US-ASCII")));
+        tags.putInt(vendor.length);
+        tags.put(vendor);
+        tags.putInt(0); // no user comments
+        addPacket(packet, tags.position(), 0);
+        flushPage((byte) 0);
+    }
+
+    @Override
+    public void writeSampleData(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException {
+        int length = Math.min(info.size, packet.length);
+        data.get(packet, 0, length);
+        int samples = getPacketSamples(packet, length);
+        if (samples <= 0) return;
+
+        if (segments + length / 255 + 1 > MAX_SEGMENTS || granulePosition - pageStartGranule >= PAGE_DURATION)
+            flushPage((byte) 0);
+        addPacket(packet, length, samples);
+    }
+
+    @Override
+    public void stop() throws IOException {
+        flushPage(FLAG_EOS);
+        out.flush();
+    }
+
+    @Override
+    public void release() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+    }
+
+    private void addPacket(byte[] data, int length, int samples) {
+        System.arraycopy(data, 0, pageData, pageDataLength, length);
+        pageDataLength += length;
+
+        // Lacing values: 255 for each full segment, then the remainder (0 if multiple of 255).
+        int remaining = length;
+        while (remaining >= 255) {
+            segmentTable[segments++] = (byte) 255;
+            remaining -= 255;
+        }
+        segmentTable[segments++] = (byte) remaining;
+        granulePosition += samples;
+    }
+
+    private void flushPage(byte flags) throws IOException {
+        ByteBuffer h = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        h.put((byte) 'O').put((byte) 'g').put((byte) 'g').put((byte) 'S');
+        h.put((byte) 0); // version
+        h.put(flags);
+        h.putLong(granulePosition);
+        h.putInt(serialNumber);
+        h.putInt(pageSequence++);
+        h.putInt(0); // CRC, computed below
+        h.put((byte) segments);
+
+        int crc = crc(0, header, HEADER_LENGTH);
+        crc = crc(crc, segmentTable, segments);
+        crc = crc(crc, pageData, pageDataLength);
+        h.putInt(22, crc);
+
+        out.write(header, 0, HEADER_LENGTH);
+        out.write(segmentTable, 0, segments);
+        out.write(pageData, 0, pageDataLength);
+
+        segments = 0;
+        pageDataLength = 0;
+        pageStartGranule = granulePosition;
+    }
+
+    static int crc(int crc, byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) & 0xFF) ^ (data[i] & 0xFF)];
+        }
+        return crc;
+    }
+
+    // Number of samples at 48 kHz of an Opus packet (RFC 6716, section 3.1).
+    static int getPacketSamples(byte[] packet, int length) {
+        if (length < 1) return 0;
+
+        int toc = packet[0] & 0xFF;
+        int config = toc >> 3;
+        int frameSize;
+        if (config < 12) { // SILK: 10, 20, 40, 60 ms
+            frameSize = SILK_FRAME_SIZES[config & 3];
+        } else if (config < 16) { // hybrid: 10, 20 ms
+            frameSize = (config & 1) == 0 ? 480 : 960;
+        } else { // CELT: 2.5, 5, 10, 20 ms
+            frameSize = 120 << (config & 3);
+        }
+
+        int frames;
+        switch (toc & 3) {
+            case 0:
+                frames = 1;
+                break;
+            case 1:
+            case 2:
+                frames = 2;
+                break;
+            default:
+                frames = length > 1 ? packet[1] & 0x3F : 0;
+        }
+        return frames * frameSize;
+    }
+}
@@ -0,0 +1,602 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RecorderEngine that reads raw PCM samples with AudioRecord and encodes them with MediaCodec,
+ * using the codec and container of the RecordingProfile (AAC/MPEG-4, Opus/Ogg, FLAC).
+ * Two threads are used:
+ * 1) capture thread: reads from AudioRecord and writes into a preallocated lock-free ring buffer;
+ * it never blocks on the encoder
+ * 2) encoder thread: drains the ring buffer into the encoder and writes the encoded frames into
+ * the muxer
+ * Presentation times are computed from the number of samples encoded, so the output has no gaps.
+ * Audio levels are computed by a LevelMeter directly in the capture thread.
+ * The output can be split in several files (see SegmentedMuxer): segments are rotated by the
+ * encoder thread without stopping the capture.
+ * The engine can be armed before start(): the capture thread is started and the last seconds of
+ * audio are kept in a PreRollBuffer, which is written at the beginning of the recording, so the
+ * latency of prepare() and start() doesn't cut the first words.
+ * With voice activity detection, silent blocks are skipped by the capture thread before the
+ * encoder and a TimeMap is saved next to each file, to map positions to wall-clock time.
+ * While paused, captured blocks are skipped in the same way, without closing the file.
+ * The max duration is measured on the captured samples (wall-clock time), not on the encoded
+ * ones. When it's reached the recording can continue in a new file (hand-off): the capture thread
+ * marks the boundary and the encoder thread switches file at the first frame after it.
+ * Overruns (samples that didn't fit in the ring buffer) and late reads (gaps between two reads
+ * long enough to overflow the AudioRecord internal buffer) are counted, so that we can prove
+ * that no frame has been dropped. Read errors are retried with a back-off; the persistent ones
+ * stop the capture and are reported to the listener (see ReadErrorPolicy).
+ */
+public class PcmRecorderEngine implements RecorderEngine {
+    private static final String TAG = "SCHEDULED_RECORDER_TAG";
+    private final String CLASS_NAME = getClass().getSimpleName();
+
+    private static final int RING_BUFFER_SECONDS = 10; // encoder stalls up to 10 seconds are absorbed
+    private static final int CHUNK_MILLIS = 20; // size of a single AudioRecord read
+    private static final int AUDIO_RECORD_BUFFER_FACTOR = 4;
+    private static final long CODEC_TIMEOUT_US = 10000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int TIME_MAP_CAPACITY = 32 * 1024;
+
+    private final RecordingProfile profile;
+    private final int sampleRate;
+    private Handler listenerHandler = new Handler(Looper.getMainLooper());
+    private Listener listener = null;
+    private LevelMeter levelMeter = null;
+    private VoiceActivityDetector voiceActivityDetector = null;
+    private TimeMap timeMap = null;
+
+    private AudioRecord audioRecord;
+    private MediaCodec codec;
+    private SegmentedMuxer muxer;
+    private long maxSegmentMs = 0;
+    private long maxSegmentBytes = 0;
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    private PcmRingBuffer ringBuffer;
+    private PreRollBuffer preRollBuffer;
+    private short[] captureChunk;
+    private final ReadErrorPolicy readErrorPolicy = new ReadErrorPolicy(); // capture thread only
+    private short[] encoderChunk;
+    private int audioRecordBufferSamples;
+    private long maxSamples;
+
+    private Thread captureThread;
+    private Thread encoderThread;
+    private volatile boolean armed = false; // samples go to the pre-roll buffer
+    private volatile boolean capturing = false; // samples go to the ring buffer
+    private volatile long preRollSamples = 0; // samples of pre-roll, not counted in maxSamples
+    private volatile boolean maxDurationReached = false;
+    private volatile boolean paused = false; // samples are discarded, the output file stays open
+
+    // Hand-off: requested by the thread of the listener, applied by the capture thread, executed by the encoder thread.
+    private final Object handOffLock = new Object();
+    private String handOffPath = null; // guarded by handOffLock
+    private long handOffSamples = 0; // guarded by handOffLock
+    private volatile String switchPath = null;
+    private volatile long switchAtUs = -1; // presentation time of the first frame of the new file
+    private volatile long switchAtCaptured = 0; // samples captured at the boundary
+    private long wallOrigin = 0; // samples captured at the start of the current recording (set by the encoder thread)
+    private boolean handingOff = false; // encoder thread only
+
+    // Statistics.
+    private volatile long samplesCaptured = 0;
+    private volatile long samplesSkipped = 0;
+    private volatile long samplesEncoded = 0;
+    private volatile long readErrors = 0;
+    private volatile long lateReads = 0;
+
+
+    public PcmRecorderEngine(RecordingProfile profile) {
+        this.profile = profile;
+        this.sampleRate = profile.getSampleRate();
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        Looper looper = Looper.myLooper();
+        listenerHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
+    }
+
+    @Override
+    public boolean setSegmentation(long maxSegmentMs, long maxSegmentBytes) {
+        this.maxSegmentMs = maxSegmentMs;
+        this.maxSegmentBytes = maxSegmentBytes;
+        return true;
+    }
+
+    @Override
+    public boolean setVoiceActivityDetection(int thresholdDb, int hangoverMs) {
+        voiceActivityDetector = new VoiceActivityDetector(sampleRate, thresholdDb, hangoverMs);
+        return true;
+    }
+
+    @Override
+    public boolean arm(int preRollMs) {
+        if (armed) return true;
+
+        try {
+            openAudioRecord();
+        } catch (IOException e) {
+            Log.e(TAG, CLASS_NAME + " - arm(): " + e.toString());
+            return false;
+        }
+        preRollBuffer = new PreRollBuffer(Math.max(1, sampleRate * preRollMs / 1000));
+        captureChunk = new short[sampleRate * CHUNK_MILLIS / 1000];
+        audioRecord.startRecording();
+        armed = true;
+
+        captureThread = new Thread(this::captureLoop, "PcmCaptureThread");
+        captureThread.start();
+        return true;
+    }
+
+    @Override
+    public void disarm() {
+        if (!armed) return;
+
+        armed = false;
+        joinQuietly(captureThread);
+        captureThread = null;
+        if (audioRecord != null && audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING)
+            audioRecord.stop();
+        preRollBuffer = null;
+    }
+
+    @Override
+    public void setLevelListener(LevelMeter.Listener levelListener, int intervalMs) {
+        if (levelListener == null) {
+            levelMeter = null;
+            return;
+        }
+
+        levelMeter = new LevelMeter(sampleRate, intervalMs);
+        levelMeter.setListener(levelListener);
+    }
+
+    @Override
+    public void prepare(String filePath, int maxDurationMs) throws IOException {
+        if (audioRecord == null) openAudioRecord();
+
+        MediaFormat format = profile.createEncoderFormat();
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, 16 * 1024);
+        codec = MediaCodec.createEncoderByType(format.getString(MediaFormat.KEY_MIME));
+        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+
+        muxer = new SegmentedMuxer(filePath, profile.getWriterFactory(), maxSegmentMs, maxSegmentBytes);
+        muxer.setListener(new SegmentedMuxer.Listener() {
+            @Override
+            public void onSegmentFinished(String filePath, int index, long startUs, long endUs) {
+                PcmRecorderEngine.this.onSegmentFinished(filePath, index, startUs, endUs);
+            }
+
+            @Override
+            public void onSegmentDiscarded(String filePath, int index) {
+                PcmRecorderEngine.this.onSegmentDiscarded(filePath, index);
+            }
+        });
+        muxer.open();
+
+        // Preallocate everything used by the capture and encoder threads.
+        ringBuffer = new PcmRingBuffer(sampleRate * RING_BUFFER_SECONDS);
+        if (captureChunk == null) captureChunk = new short[sampleRate * CHUNK_MILLIS / 1000];
+        encoderChunk = new short[8 * 1024];
+        maxSamples = (long) maxDurationMs * sampleRate / 1000;
+        preRollSamples = 0;
+        maxDurationReached = false;
+        timeMap = voiceActivityDetector != null ? new TimeMap(TIME_MAP_CAPACITY) : null;
+        if (voiceActivityDetector != null) voiceActivityDetector.reset();
+        samplesCaptured = 0;
+        samplesSkipped = 0;
+        wallOrigin = 0;
+        samplesEncoded = 0;
+        readErrors = 0;
+        lateReads = 0;
+        if (levelMeter != null) levelMeter.reset();
+    }
+
+    @Override
+    public boolean setMaxDuration(int maxDurationMs) {
+        maxSamples = (long) maxDurationMs * sampleRate / 1000;
+        return true;
+    }
+
+    private void openAudioRecord() throws IOException {
+        int minBufferBytes = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferBytes <= 0)
+            throw new IOException("AudioRecord doesn't support " + sampleRate + " Hz");
+        int audioRecordBufferBytes = minBufferBytes * AUDIO_RECORD_BUFFER_FACTOR;
+        audioRecordBufferSamples = audioRecordBufferBytes / 2;
+
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, audioRecordBufferBytes);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            release();
+            throw new IOException("AudioRecord initialization failed");
+        }
+    }
+
+    @Override
+    public void start() {
+        codec.start();
+        encoderThread = new Thread(this::encodeLoop, "PcmEncoderThread");
+        encoderThread.start();
+
+        if (armed) { // the capture thread is already running: switch to the ring buffer
+            capturing = true;
+            armed = false;
+        } else {
+            audioRecord.startRecording();
+            capturing = true;
+            captureThread = new Thread(this::captureLoop, "PcmCaptureThread");
+            captureThread.start();
+        }
+    }
+
+    // The encoder keeps running: presentation times stay contiguous, no file has to be joined.
+    @Override
+    public boolean pause() {
+        paused = true;
+        return true;
+    }
+
+    @Override
+    public void resume() {
+        paused = false;
+    }
+
+    @Override
+    public boolean handOff(String nextFilePath, int durationMs) {
+        synchronized (handOffLock) {
+            if (!capturing || maxSamples == 0 || handOffPath != null) return false;
+
+            handOffPath = nextFilePath;
+            handOffSamples = (long) durationMs * sampleRate / 1000;
+            return true;
+        }
+    }
+
+    @Override
+    public void stop() {
+        capturing = false;
+        joinQuietly(captureThread);
+        if (encoderThread != null) LockSupport.unpark(encoderThread);
+        joinQuietly(encoderThread);
+        captureThread = null;
+        encoderThread = null;
+
+        if (audioRecord != null && audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING)
+            audioRecord.stop();
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) { // the encoder failed while recording
+                Log.e(TAG, CLASS_NAME + " - stop(): " + e.toString());
+            }
+        }
+        if (muxer != null) {
+            try {
+                muxer.stop(); // the last segment is notified on this thread
+            } catch (IOException | IllegalStateException e) {
+                Log.e(TAG, CLASS_NAME + " - stop(): " + e.toString());
+            }
+        }
+
+        logStatistics();
+    }
+
+    @Override
+    public void release() {
+        disarm();
+        if (audioRecord != null) {
+            audioRecord.release();
+            audioRecord = null;
+        }
+        if (codec != null) {
+            codec.release();
+            codec = null;
+        }
+        if (muxer != null) {
+            try {
+                muxer.release();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, CLASS_NAME + " - release(): " + e.toString());
+            }
+            muxer = null;
+        }
+    }
+
+    // Capture thread: AudioRecord -> ring buffer.
+    private void captureLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        long audioRecordBufferNanos = TimeUnit.SECONDS.toNanos(audioRecordBufferSamples) / sampleRate;
+        long lastReadNanos = SystemClock.elapsedRealtimeNanos();
+        boolean skipping = false;
+
+        while (capturing || armed) {
+            int read = audioRecord.read(captureChunk, 0, captureChunk.length);
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (now - lastReadNanos > audioRecordBufferNanos) lateReads++;
+            lastReadNanos = now;
+
+            if (read < 0) {
+                readErrors++;
+                long backoff = readErrorPolicy.onRead(read);
+                if (backoff == ReadErrorPolicy.FATAL) {
+                    // AudioRecord can't recover: stop the capture, the listener stops the recording.
+                    Log.e(TAG, CLASS_NAME + " - captureLoop(): " + "read error " + read + ", " + readErrorPolicy.getConsecutiveErrors() + " in a row");
+                    armed = false;
+                    capturing = false;
+                    listenerHandler.post(() -> {
+                        if (listener != null) listener.onError();
+                    });
+                    break;
+                }
+                SystemClock.sleep(backoff);
+                continue;
+            }
+            readErrorPolicy.onRead(read);
+
+            if (!capturing) { // armed
+                preRollBuffer.write(captureChunk, 0, read);
+                continue;
+            }
+            if (preRollBuffer != null) { // recording just started: pre-roll first
+                int preRoll = preRollBuffer.drainTo(ringBuffer);
+                preRollSamples = preRoll;
+                samplesCaptured += preRoll;
+                preRollBuffer = null;
+            }
+
+            if (maxSamples > 0)
+                read = (int) Math.min(read, maxSamples + preRollSamples - samplesCaptured);
+
+            boolean keep = !paused && (voiceActivityDetector == null || voiceActivityDetector.process(captureChunk, 0, read));
+            if (keep) {
+                if (skipping && timeMap != null) { // audio resumes after a silent stretch
+                    timeMap.add(samplesCaptured - samplesSkipped, samplesCaptured);
+                    skipping = false;
+                }
+                ringBuffer.write(captureChunk, 0, read);
+                LockSupport.unpark(encoderThread);
+            } else {
+                skipping = true;
+                samplesSkipped += read;
+            }
+            samplesCaptured += read;
+
+            if (levelMeter != null) levelMeter.process(captureChunk, 0, read);
+
+            if (maxSamples > 0 && samplesCaptured >= maxSamples + preRollSamples) {
+                synchronized (handOffLock) {
+                    if (handOffPath != null) { // back-to-back recording: new file, same capture
+                        maxSamples += handOffSamples;
+                        switchPath = handOffPath;
+                        switchAtCaptured = samplesCaptured;
+                        switchAtUs = (samplesCaptured - samplesSkipped) * 1000000L / sampleRate;
+                        handOffPath = null;
+                    } else {
+                        maxDurationReached = true;
+                        capturing = false;
+                    }
+                }
+            }
+        }
+        LockSupport.unpark(encoderThread);
+    }
+
+    // Encoder thread: ring buffer -> MediaCodec -> MediaMuxer.
+    private void encodeLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+
+        try {
+            while (true) {
+                int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                if (inIndex < 0) {
+                    drainEncoder(false);
+                    continue;
+                }
+
+                ByteBuffer input = codec.getInputBuffer(inIndex);
+                int read = fillInputBuffer(input);
+                long presentationTimeUs = samplesEncoded * 1000000L / sampleRate;
+                if (read == 0) { // capture finished and ring buffer empty
+                    codec.queueInputBuffer(inIndex, 0, 0, presentationTimeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    break;
+                }
+
+                codec.queueInputBuffer(inIndex, 0, read * 2, presentationTimeUs, 0);
+                samplesEncoded += read;
+                drainEncoder(false);
+            }
+            drainEncoder(true);
+        } catch (IllegalStateException | IOException e) {
+            // Nothing can be written anymore: stop the capture, the listener stops the recording.
+            Log.e(TAG, CLASS_NAME + " - encodeLoop(): " + e.toString());
+            capturing = false;
+            listenerHandler.post(() -> {
+                if (listener != null) listener.onError();
+            });
+            return;
+        }
+
+        if (maxDurationReached) {
+            listenerHandler.post(() -> {
+                if (listener != null) listener.onMaxDurationReached();
+            });
+        }
+    }
+
+    /*
+        Fills the codec input buffer with the samples available in the ring buffer, waiting for
+        new samples if necessary. Returns 0 only when the capture has finished and all samples
+        have been consumed.
+     */
+    private int fillInputBuffer(ByteBuffer input) {
+        input.clear();
+        ShortBuffer shorts = input.order(ByteOrder.nativeOrder()).asShortBuffer();
+        int max = Math.min(shorts.remaining(), encoderChunk.length);
+
+        int read;
+        while ((read = ringBuffer.read(encoderChunk, 0, max)) == 0) {
+            if (!capturing && ringBuffer.available() == 0) return 0;
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        shorts.put(encoderChunk, 0, read);
+        return read;
+    }
+
+    private void drainEncoder(boolean endOfStream) throws IOException {
+        while (true) {
+            int outIndex = codec.dequeueOutputBuffer(bufferInfo, endOfStream ? CODEC_TIMEOUT_US : 0);
+            if (outIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) return;
+            } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                muxer.setFormat(codec.getOutputFormat());
+            } else if (outIndex >= 0) {
+                ByteBuffer output = codec.getOutputBuffer(outIndex);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    if (bufferInfo.size > 0 && output != null)
+                        muxer.addCodecConfig(output, bufferInfo); // headers of FLAC files
+                    bufferInfo.size = 0;
+                }
+                if (bufferInfo.size > 0 && muxer.isStarted() && output != null) {
+                    if (switchAtUs >= 0 && bufferInfo.presentationTimeUs >= switchAtUs) {
+                        handingOff = true;
+                        muxer.switchTo(switchPath, bufferInfo.presentationTimeUs);
+                        handingOff = false;
+                        wallOrigin = switchAtCaptured; // the TimeMap of the new file starts at the boundary
+                        switchAtUs = -1;
+                    }
+                    output.position(bufferInfo.offset);
+                    output.limit(bufferInfo.offset + bufferInfo.size);
+                    muxer.writeSampleData(output, bufferInfo);
+                }
+                codec.releaseOutputBuffer(outIndex, false);
+                if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) return;
+            }
+        }
+    }
+
+    /*
+        Called on the encoder thread for the segments rotated during the recording and on the
+        thread of stop() for the last one. The listener is notified on its own thread (the one
+        that called setListener(), see RecorderEngine): the last segment before stop() returns.
+     */
+    private void onSegmentFinished(String filePath, int index, long startUs, long endUs) {
+        if (timeMap != null) {
+            try {
+                timeMap.write(new File(filePath + TimeMap.EXTENSION), startUs * sampleRate / 1000000L,
+                        endUs * sampleRate / 1000000L, wallOrigin, sampleRate);
+            } catch (IOException e) {
+                Log.e(TAG, CLASS_NAME + " - onSegmentFinished(): " + e.toString());
+            }
+        }
+        long durationMs = (endUs - startUs) / 1000;
+        if (handingOff) {
+            int segmentIndex = muxer.isSegmented() ? index : 0;
+            listenerHandler.post(() -> {
+                if (listener != null) listener.onHandOff(filePath, segmentIndex, durationMs);
+            });
+            return;
+        }
+        if (!muxer.isSegmented()) return;
+
+        notifyListener(() -> {
+            if (listener != null) listener.onSegmentFinished(filePath, index, durationMs);
+        });
+    }
+
+    // Also the single file of a recording that isn't segmented: the caller must not save it.
+    private void onSegmentDiscarded(String filePath, int index) {
+        int segmentIndex = muxer.isSegmented() ? index : 0;
+        if (handingOff) { // the previous recording has nothing more to save
+            listenerHandler.post(() -> {
+                if (listener == null) return;
+                listener.onSegmentDiscarded(filePath, segmentIndex);
+                listener.onHandOff(null, segmentIndex, 0);
+            });
+            return;
+        }
+
+        notifyListener(() -> {
+            if (listener != null) listener.onSegmentDiscarded(filePath, segmentIndex);
+        });
+    }
+
+    private void notifyListener(Runnable notification) {
+        if (Looper.myLooper() == listenerHandler.getLooper())
+            notification.run();
+        else
+            listenerHandler.post(notification);
+    }
+
+    private void joinQuietly(Thread thread) {
+        if (thread == null) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void logStatistics() {
+        Log.i(TAG, CLASS_NAME + " - captured=" + samplesCaptured + " encoded=" + samplesEncoded
+                + " skipped=" + samplesSkipped + " overruns=" + getOverrunCount() + " dropped=" + getDroppedSamples()
+                + " lateReads=" + lateReads + " readErrors=" + readErrors
+                + " highWaterMark=" + (ringBuffer != null ? ringBuffer.getHighWaterMark() : 0));
+    }
+
+    // Statistics.
+    public long getSamplesCaptured() {
+        return samplesCaptured;
+    }
+
+    public long getSamplesSkipped() {
+        return samplesSkipped;
+    }
+
+    public long getSamplesEncoded() {
+        return samplesEncoded;
+    }
+
+    public long getOverrunCount() {
+        return ringBuffer != null ? ringBuffer.getOverrunCount() : 0;
+    }
+
+    public long getDroppedSamples() {
+        return ringBuffer != null ? ringBuffer.getDroppedSamples() : 0;
+    }
+
+    public long getLateReads() {
+        return lateReads;
+    }
+
+    public long getReadErrors() {
+        return readErrors;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of 16 bit PCM samples.
+ * The capture thread is the only writer and the encoder thread the only reader: positions are
+ * published with ordered writes, so no locks are needed and nothing is allocated after
+ * construction.
+ * When the buffer is full the samples that don't fit are dropped and counted as overruns, so the
+ * producer never blocks.
+ */
+public class PcmRingBuffer {
+
+    private final short[] buffer;
+    private final int capacity;
+    private final int mask;
+
+    // Total number of samples written/read since the last clear().
+    private final AtomicLong writePos = new AtomicLong();
+    private final AtomicLong readPos = new AtomicLong();
+
+    // Statistics (updated only by the producer).
+    private volatile long overrunCount = 0;
+    private volatile long droppedSamples = 0;
+    private volatile int highWaterMark = 0;
+
+    public PcmRingBuffer(int minCapacity) {
+        if (minCapacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        // Round up to a power of 2 so that indexes can be computed with a mask.
+        int size = Integer.highestOneBit(minCapacity);
+        if (size < minCapacity) size <<= 1;
+        capacity = size;
+        mask = size - 1;
+        buffer = new short[size];
+    }
+
+    /*
+        Producer side. Copies up to length samples and returns the number of samples actually
+        written. Samples that don't fit are dropped and counted.
+     */
+    public int write(short[] src, int offset, int length) {
+        long w = writePos.get();
+        long r = readPos.get();
+        int free = capacity - (int) (w - r);
+        int n = Math.min(free, length);
+        if (n < length) {
+            overrunCount++;
+            droppedSamples += length - n;
+        }
+
+        int start = (int) (w & mask);
+        int firstPart = Math.min(n, capacity - start);
+        System.arraycopy(src, offset, buffer, start, firstPart);
+        if (n > firstPart)
+            System.arraycopy(src, offset + firstPart, buffer, 0, n - firstPart);
+
+        writePos.lazySet(w + n);
+
+        int fill = (int) (w + n - r);
+        if (fill > highWaterMark) highWaterMark = fill;
+
+        return n;
+    }
+
+    /*
+        Consumer side. Copies up to length samples and returns the number of samples actually
+        read (0 if the buffer is empty).
+     */
+    public int read(short[] dst, int offset, int length) {
+        long r = readPos.get();
+        long w = writePos.get();
+        int n = Math.min((int) (w - r), length);
+
+        int start = (int) (r & mask);
+        int firstPart = Math.min(n, capacity - start);
+        System.arraycopy(buffer, start, dst, offset, firstPart);
+        if (n > firstPart)
+            System.arraycopy(buffer, 0, dst, offset + firstPart, n - firstPart);
+
+        readPos.lazySet(r + n);
+        return n;
+    }
+
+    // Number of samples ready to be read.
+    public int available() {
+        return (int) (writePos.get() - readPos.get());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Number of write() calls that couldn't store all their samples.
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    // Maximum number of samples waiting in the buffer at the same time.
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    // Resets positions and statistics. Call only when neither producer nor consumer are running.
+    public void clear() {
+        writePos.set(0);
+        readPos.set(0);
+        overrunCount = 0;
+        droppedSamples = 0;
+        highWaterMark = 0;
+    }
+}
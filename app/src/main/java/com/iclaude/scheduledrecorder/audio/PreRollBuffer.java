@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+/**
+ * Fixed-size circular buffer of PCM samples that always keeps the most recent samples: when it
+ * is full, the oldest samples are overwritten. Used to keep the last seconds of audio before a
+ * recording starts (pre-roll).
+ * It's not thread-safe: it's written and drained by the capture thread only. No memory is
+ * allocated after construction.
+ */
+public class PreRollBuffer {
+
+    private final short[] buffer;
+    private int writeIndex = 0;
+    private int size = 0;
+
+
+    public PreRollBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+
+        buffer = new short[capacity];
+    }
+
+    public void write(short[] src, int offset, int length) {
+        // Only the last "capacity" samples can be kept.
+        if (length > buffer.length) {
+            offset += length - buffer.length;
+            length = buffer.length;
+        }
+
+        int first = Math.min(length, buffer.length - writeIndex);
+        System.arraycopy(src, offset, buffer, writeIndex, first);
+        System.arraycopy(src, offset + first, buffer, 0, length - first);
+        writeIndex = (writeIndex + length) % buffer.length;
+        size = Math.min(buffer.length, size + length);
+    }
+
+    // Moves the samples (oldest first) into the ring buffer. Returns the number of samples written.
+    public int drainTo(PcmRingBuffer ringBuffer) {
+        int start = (writeIndex - size + buffer.length) % buffer.length;
+        int first = Math.min(size, buffer.length - start);
+        int written = ringBuffer.write(buffer, start, first);
+        if (written == first)
+            written += ringBuffer.write(buffer, 0, size - first);
+        clear();
+        return written;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    public void clear() {
+        writeIndex = 0;
+        size = 0;
+    }
+}
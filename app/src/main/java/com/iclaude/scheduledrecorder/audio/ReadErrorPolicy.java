@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.AudioRecord;
+
+/**
+ * What the capture thread does after a failed AudioRecord.read(). A transient error is retried
+ * after a back-off that doubles at each consecutive error (from MIN_BACKOFF_MS up to
+ * MAX_BACKOFF_MS), so a persistent one doesn't spin the thread. ERROR_DEAD_OBJECT (the audio
+ * server died: the AudioRecord must be recreated) and MAX_CONSECUTIVE_ERRORS in a row are fatal.
+ * A successful read resets the count.
+ * It's not thread-safe: it's used by the capture thread only.
+ */
+public class ReadErrorPolicy {
+
+    public static final int MAX_CONSECUTIVE_ERRORS = 10;
+    public static final long MIN_BACKOFF_MS = 5;
+    public static final long MAX_BACKOFF_MS = 160;
+    public static final long FATAL = -1;
+
+    private int consecutiveErrors = 0;
+
+
+    // Result of AudioRecord.read(): ms to wait before the next read (0 = none) or FATAL.
+    public long onRead(int read) {
+        if (read >= 0) {
+            consecutiveErrors = 0;
+            return 0;
+        }
+
+        consecutiveErrors++;
+        if (read == AudioRecord.ERROR_DEAD_OBJECT || consecutiveErrors >= MAX_CONSECUTIVE_ERRORS) return FATAL;
+        return Math.min(MIN_BACKOFF_MS << (consecutiveErrors - 1), MAX_BACKOFF_MS);
+    }
+
+    public int getConsecutiveErrors() {
+        return consecutiveErrors;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import java.io.IOException;
+
+/**
+ * Common interface of the engines used by RecordingService to capture audio and write it to a
+ * file. The life cycle mirrors MediaRecorder: prepare(), start(), stop(), release().
+ */
+public interface RecorderEngine {
+
+    /*
+        Callbacks from the engine. They are delivered on the thread that called setListener()
+        (the main thread if it has no Looper). All the other methods must be called on that
+        thread too.
+     */
+    interface Listener {
+        void onMaxDurationReached();
+
+        void onError();
+
+        // A segment of a segmented recording has been finalized (index starts from 1).
+        void onSegmentFinished(String filePath, int index, long durationMs);
+
+        /*
+            A file has been deleted because no audio was written to it (i.e. the recording was
+            stopped right after a rotation or a hand-off): it must not be saved. segmentIndex = 0
+            if the recording is not segmented.
+         */
+        void onSegmentDiscarded(String filePath, int segmentIndex);
+
+        /*
+            The output has been switched to the file passed to handOff(). filePath is the last
+            file of the previous recording, already finalized (segmentIndex = 0 if the recording
+            is not segmented), or null if it was discarded.
+         */
+        void onHandOff(String filePath, int segmentIndex, long durationMs);
+    }
+
+    void setListener(Listener listener);
+
+    /*
+        Splits the output in several files of at most maxSegmentMs milliseconds or
+        maxSegmentBytes bytes (0 = no limit), named file_1.ext, file_2.ext, ... Must be called
+        before prepare(). Returns false if the engine doesn't support segmentation: in this case
+        a single file is written.
+     */
+    boolean setSegmentation(long maxSegmentMs, long maxSegmentBytes);
+
+    /*
+        Audio levels are published every intervalMs milliseconds while recording. Must be called
+        before prepare().
+     */
+    void setLevelListener(LevelMeter.Listener levelListener, int intervalMs);
+
+    /*
+        Skips silent stretches (RMS below thresholdDb dBFS for more than hangoverMs) and saves a
+        TimeMap next to each file. Must be called before prepare(). Returns false if the engine
+        doesn't support it.
+     */
+    boolean setVoiceActivityDetection(int thresholdDb, int hangoverMs);
+
+    /*
+        Starts capturing before start() and keeps the last preRollMs milliseconds of audio in
+        memory: they are written at the beginning of the recording when start() is called.
+        Returns false if the engine doesn't support it (or the microphone is not available).
+     */
+    boolean arm(int preRollMs);
+
+    // Stops capturing if the engine is armed and start() hasn't been called.
+    void disarm();
+
+    // maxDurationMs = 0 means no limit.
+    void prepare(String filePath, int maxDurationMs) throws IOException;
+
+    /*
+        Changes the max duration set by prepare() (i.e. the engine has been prepared in advance
+        and starts late). Must be called before start(). Returns false if the engine can't: the
+        limit of prepare() is kept.
+     */
+    boolean setMaxDuration(int maxDurationMs);
+
+    void start();
+
+    /*
+        Pauses the recording without closing the output file. Returns false if the engine can't:
+        in this case the caller must stop it and record the next stretch with a new engine.
+     */
+    boolean pause();
+
+    void resume();
+
+    /*
+        When the max duration is reached, instead of stopping, the recording continues for
+        durationMs milliseconds in nextFilePath, without interrupting the capture (back-to-back
+        scheduled recordings). Must be called after start(), only one hand-off can be pending.
+        Returns false if the engine doesn't support it or the max duration has already been
+        reached.
+     */
+    boolean handOff(String nextFilePath, int durationMs);
+
+    // Stops the recording and finalizes the output file.
+    void stop();
+
+    void release();
+}
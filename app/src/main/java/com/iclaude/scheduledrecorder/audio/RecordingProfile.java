@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+
+/**
+ * Named recording profiles: codec, sample rate, bit rate and container.
+ * - SPEECH: Opus in Ogg at low bit rate, for long recordings of voice (AAC if the device has no
+ * Opus encoder)
+ * - STANDARD: AAC in MPEG-4 at 16 kHz
+ * - HIGH: AAC in MPEG-4 at 44.1 kHz
+ * - LOSSLESS: FLAC at 44.1 kHz
+ * Profiles that aren't AAC need the PCM engine (MediaRecorder can't produce them).
+ */
+public enum RecordingProfile {
+    SPEECH("speech", MediaFormat.MIMETYPE_AUDIO_OPUS, 16000, 24000),
+    STANDARD("standard", MediaFormat.MIMETYPE_AUDIO_AAC, 16000, 48000),
+    HIGH("high", MediaFormat.MIMETYPE_AUDIO_AAC, 44100, 192000),
+    LOSSLESS("lossless", MediaFormat.MIMETYPE_AUDIO_FLAC, 44100, 0);
+
+    private static final int SPEECH_AAC_BIT_RATE = 32000;
+    private static final int FLAC_COMPRESSION_LEVEL = 5;
+    private static Boolean opusAvailable = null; // cached, MediaCodecList is slow
+
+    private final String key;
+    private final String encoderMime;
+    private final int sampleRate;
+    private final int bitRate;
+
+    RecordingProfile(String key, String encoderMime, int sampleRate, int bitRate) {
+        this.key = key;
+        this.encoderMime = encoderMime;
+        this.sampleRate = sampleRate;
+        this.bitRate = bitRate;
+    }
+
+    // Value saved in the preferences and in the database.
+    public String getKey() {
+        return key;
+    }
+
+    public String getEncoderMime() {
+        if (encoderMime.equals(MediaFormat.MIMETYPE_AUDIO_OPUS) && !isOpusAvailable())
+            return MediaFormat.MIMETYPE_AUDIO_AAC;
+
+        return encoderMime;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBitRate() {
+        if (this == SPEECH && !isOpusAvailable())
+            return SPEECH_AAC_BIT_RATE;
+
+        return bitRate;
+    }
+
+    public boolean requiresPcmEngine() {
+        return !getEncoderMime().equals(MediaFormat.MIMETYPE_AUDIO_AAC);
+    }
+
+    public String getExtension() {
+        return getExtension(getEncoderMime());
+    }
+
+    public MediaFormat createEncoderFormat() {
+        String mime = getEncoderMime();
+        MediaFormat format = MediaFormat.createAudioFormat(mime, sampleRate, 1);
+        switch (mime) {
+            case MediaFormat.MIMETYPE_AUDIO_AAC:
+                format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+                format.setInteger(MediaFormat.KEY_BIT_RATE, getBitRate());
+                break;
+            case MediaFormat.MIMETYPE_AUDIO_FLAC:
+                format.setInteger(MediaFormat.KEY_FLAC_COMPRESSION_LEVEL, FLAC_COMPRESSION_LEVEL);
+                break;
+            default:
+                format.setInteger(MediaFormat.KEY_BIT_RATE, getBitRate());
+        }
+        return format;
+    }
+
+    public ContainerWriter.Factory getWriterFactory() {
+        switch (getEncoderMime()) {
+            case MediaFormat.MIMETYPE_AUDIO_FLAC:
+                return FlacWriter::new;
+            case MediaFormat.MIMETYPE_AUDIO_OPUS:
+                return OggOpusWriter::new;
+            default:
+                return Mp4Writer::new;
+        }
+    }
+
+    // Returns STANDARD if the key is unknown.
+    public static RecordingProfile fromKey(String key) {
+        for (RecordingProfile profile : values()) {
+            if (profile.key.equals(key)) return profile;
+        }
+        return STANDARD;
+    }
+
+    // MIME type of a recording, from the extension of the file (old recordings have none: MPEG-4).
+    public static String getMimeType(String filePath) {
+        if (filePath.endsWith(getExtension(MediaFormat.MIMETYPE_AUDIO_OPUS)))
+            return "audio/ogg";
+        if (filePath.endsWith(getExtension(MediaFormat.MIMETYPE_AUDIO_FLAC)))
+            return "audio/flac";
+
+        return "audio/mp4";
+    }
+
+    private static String getExtension(String encoderMime) {
+        switch (encoderMime) {
+            case MediaFormat.MIMETYPE_AUDIO_FLAC:
+                return ".flac";
+            case MediaFormat.MIMETYPE_AUDIO_OPUS:
+                return ".opus";
+            default:
+                return ".m4a";
+        }
+    }
+
+    private static synchronized boolean isOpusAvailable() {
+        if (opusAvailable == null) {
+            MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_OPUS, SPEECH.sampleRate, 1);
+            opusAvailable = new MediaCodecList(MediaCodecList.REGULAR_CODECS).findEncoderForFormat(format) != null;
+        }
+        return opusAvailable;
+    }
+}
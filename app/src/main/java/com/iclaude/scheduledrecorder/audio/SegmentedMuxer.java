@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a single encoded audio track in several files (segments), written by the ContainerWriter
+ * of the recording profile. When the current segment exceeds the maximum duration or size, it
+ * is finalized and the next frame opens a new segment with the same format and codec config:
+ * the encoder is never stopped, so there is no gap in the audio.
+ * Segments are named base_1.ext, base_2.ext, ... If no limit is set a single file (basePath) is
+ * written.
+ * All methods must be called from the same thread (the encoder thread), except stop() and
+ * release() which are called once the encoder thread has finished.
+ */
+public class SegmentedMuxer {
+
+    /*
+        Called every time a segment is finalized (on the thread that caused it). startUs and
+        endUs are the presentation times of the segment in the encoded stream.
+        A segment without frames (i.e. stopped or switched right after a rotation) is discarded
+        instead: its file is deleted.
+     */
+    public interface Listener {
+        void onSegmentFinished(String filePath, int index, long startUs, long endUs);
+
+        void onSegmentDiscarded(String filePath, int index);
+    }
+
+    private String basePath;
+    private final ContainerWriter.Factory writerFactory;
+    private final long maxSegmentUs;
+    private final long maxSegmentBytes;
+    private Listener listener;
+
+    private ContainerWriter writer;
+    private MediaFormat format;
+    private ByteBuffer codecConfig;
+    private boolean started = false;
+
+    private int segmentIndex = 0;
+    private String segmentPath;
+    private long segmentStartUs = -1;
+    private long lastPresentationTimeUs = 0;
+    private long segmentBytes = 0;
+
+
+    // maxSegmentMs = 0 and maxSegmentBytes = 0 mean no segmentation.
+    public SegmentedMuxer(String basePath, ContainerWriter.Factory writerFactory, long maxSegmentMs, long maxSegmentBytes) {
+        this.basePath = basePath;
+        this.writerFactory = writerFactory;
+        this.maxSegmentUs = maxSegmentMs * 1000;
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isSegmented() {
+        return maxSegmentUs > 0 || maxSegmentBytes > 0;
+    }
+
+    // Creates the file for the first segment, so that I/O errors are detected early.
+    public void open() throws IOException {
+        openSegment();
+    }
+
+    // Called when the encoder output format is known.
+    public void setFormat(MediaFormat format) {
+        this.format = format;
+    }
+
+    // Called with the BUFFER_FLAG_CODEC_CONFIG buffers; the content is copied, it's needed by every segment.
+    public void addCodecConfig(ByteBuffer data, MediaCodec.BufferInfo info) {
+        int previous = codecConfig != null ? codecConfig.remaining() : 0;
+        ByteBuffer config = ByteBuffer.allocate(previous + info.size);
+        if (codecConfig != null) config.put(codecConfig);
+        data.position(info.offset);
+        data.limit(info.offset + info.size);
+        config.put(data);
+        config.flip();
+        codecConfig = config;
+    }
+
+    public boolean isStarted() {
+        return format != null;
+    }
+
+    public void writeSampleData(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException {
+        if (segmentStartUs >= 0 && shouldRotate(info.presentationTimeUs)) {
+            finishSegment(info.presentationTimeUs);
+            openSegment();
+        }
+        if (!started) {
+            writer.start(format, codecConfig != null ? codecConfig.duplicate() : null);
+            started = true;
+        }
+        if (segmentStartUs < 0) segmentStartUs = info.presentationTimeUs;
+
+        // Each segment starts at time 0.
+        long presentationTimeUs = info.presentationTimeUs;
+        info.presentationTimeUs = presentationTimeUs - segmentStartUs;
+        writer.writeSampleData(data, info);
+        info.presentationTimeUs = presentationTimeUs;
+
+        lastPresentationTimeUs = presentationTimeUs;
+        segmentBytes += info.size;
+    }
+
+    /*
+        Finalizes the current file and continues in newBasePath (segment numbers restart from 1).
+        endTimeUs is the presentation time of the first frame of the new file.
+     */
+    public void switchTo(String newBasePath, long endTimeUs) throws IOException {
+        finishSegment(endTimeUs);
+        basePath = newBasePath;
+        segmentIndex = 0;
+        openSegment();
+    }
+
+    // Finalizes the current segment (or discards it if it's empty).
+    public void stop() throws IOException {
+        if (writer == null) return; // already stopped, or the last segment couldn't be created
+
+        finishSegment(lastPresentationTimeUs);
+    }
+
+    public void release() {
+        if (writer != null) {
+            writer.release();
+            writer = null;
+        }
+    }
+
+    public String getSegmentPath() {
+        return segmentPath;
+    }
+
+    // The index is inserted before the extension: myrec123.m4a -> myrec123_1.m4a
+    public static String getSegmentPath(String basePath, int index) {
+        int dot = basePath.lastIndexOf('.');
+        if (dot <= basePath.lastIndexOf(File.separatorChar))
+            return basePath + "_" + index;
+
+        return basePath.substring(0, dot) + "_" + index + basePath.substring(dot);
+    }
+
+    private boolean shouldRotate(long presentationTimeUs) {
+        if (!isSegmented()) return false;
+
+        boolean durationReached = maxSegmentUs > 0 && presentationTimeUs - segmentStartUs >= maxSegmentUs;
+        boolean sizeReached = maxSegmentBytes > 0 && segmentBytes >= maxSegmentBytes;
+        return durationReached || sizeReached;
+    }
+
+    private void openSegment() throws IOException {
+        segmentIndex++;
+        segmentPath = isSegmented() ? getSegmentPath(basePath, segmentIndex) : basePath;
+        writer = writerFactory.create(segmentPath);
+        segmentStartUs = -1;
+        segmentBytes = 0;
+    }
+
+    private void finishSegment(long endTimeUs) throws IOException {
+        long startUs = segmentStartUs >= 0 ? segmentStartUs : endTimeUs;
+        boolean empty = !started;
+        try {
+            if (!empty) writer.stop();
+        } finally { // if the writer failed the file is notified anyway, it may be partly readable
+            writer.release();
+            writer = null;
+            started = false;
+
+            if (empty) {
+                //noinspection ResultOfMethodCallIgnored
+                new File(segmentPath).delete();
+                if (listener != null) listener.onSegmentDiscarded(segmentPath, segmentIndex);
+            } else if (listener != null) {
+                listener.onSegmentFinished(segmentPath, segmentIndex, startUs, endTimeUs);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Maps the position in a recording (media time) to the time elapsed since the start of the
+ * recording (wall-clock time), when silent stretches have been skipped by the voice activity
+ * detector.
+ * Each entry marks the point where audio resumes after a skipped stretch; between two entries
+ * media and wall-clock time advance together. The map is saved next to the audio file
+ * (filePath + EXTENSION) as text lines "media_ms wall_ms".
+ * Entries are added by a single thread (the capture thread) in preallocated arrays: other
+ * threads can read the entries already published.
+ */
+public class TimeMap {
+    public static final String EXTENSION = ".tmap";
+
+    private final long[] mediaTimes;
+    private final long[] wallTimes;
+    private volatile int count = 0;
+
+
+    public TimeMap(int capacity) {
+        mediaTimes = new long[capacity];
+        wallTimes = new long[capacity];
+    }
+
+    // If the map is full the entry is dropped (the following positions are less accurate).
+    public void add(long mediaTime, long wallTime) {
+        int n = count;
+        if (n == mediaTimes.length) return;
+
+        mediaTimes[n] = mediaTime;
+        wallTimes[n] = wallTime;
+        count = n + 1;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Same unit used for the entries.
+    public long toWallTime(long mediaTime) {
+        int n = count;
+        long media = 0, wall = 0;
+        for (int i = 0; i < n && mediaTimes[i] <= mediaTime; i++) {
+            media = mediaTimes[i];
+            wall = wallTimes[i];
+        }
+        return wall + (mediaTime - media);
+    }
+
+    /*
+        Writes the part of the map between media times from and to (a segment of the recording),
+        converted in milliseconds, with media time relative to the beginning of the segment and
+        wall-clock time relative to wallOrigin (the start of the recording the segment belongs
+        to, when the capture continues over several recordings).
+     */
+    public void write(File file, long from, long to, long wallOrigin, int unitsPerSecond) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("0 " + toMillis(toWallTime(from) - wallOrigin, unitsPerSecond) + "\n");
+            int n = count;
+            for (int i = 0; i < n; i++) {
+                if (mediaTimes[i] <= from || mediaTimes[i] >= to) continue;
+
+                writer.write(toMillis(mediaTimes[i] - from, unitsPerSecond) + " "
+                        + toMillis(wallTimes[i] - wallOrigin, unitsPerSecond) + "\n");
+            }
+        }
+    }
+
+    // Returns the map saved for an audio file (in milliseconds), or null if it doesn't exist.
+    public static TimeMap load(String audioFilePath) {
+        File file = new File(audioFilePath + EXTENSION);
+        if (!file.exists()) return null;
+
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            while (reader.readLine() != null) lines++;
+        } catch (IOException e) {
+            return null;
+        }
+
+        TimeMap timeMap = new TimeMap(lines);
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length != 2) continue;
+                timeMap.add(Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+        return timeMap;
+    }
+
+    private static long toMillis(long time, int unitsPerSecond) {
+        return time * 1000 / unitsPerSecond;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.audio;
+
+/**
+ * Simple streaming voice activity detector based on the energy of each block of samples.
+ * A block is "voice" if its RMS level is above the threshold (in dBFS). After the last voice
+ * block, audio is kept for the hangover time, so that pauses between words are not cut.
+ * The beginning of the stream is treated as the end of a voice block, so the first hangover is
+ * always kept and a recording is never empty.
+ * Not thread-safe: used by the capture thread only, without allocations.
+ */
+public class VoiceActivityDetector {
+
+    private final double thresholdMeanSquare;
+    private final long hangoverSamples;
+    private long silentSamples = 0; // consecutive samples below the threshold
+
+
+    public VoiceActivityDetector(int sampleRate, int thresholdDb, int hangoverMs) {
+        double thresholdRms = (Short.MAX_VALUE + 1) * Math.pow(10, thresholdDb / 20.0);
+        thresholdMeanSquare = thresholdRms * thresholdRms;
+        hangoverSamples = (long) sampleRate * hangoverMs / 1000;
+    }
+
+    // Returns true if the block must be kept (voice or hangover), false if it can be skipped.
+    public boolean process(short[] samples, int offset, int length) {
+        if (length <= 0) return true;
+
+        long sumOfSquares = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sumOfSquares += samples[i] * samples[i];
+        }
+
+        if ((double) sumOfSquares / length >= thresholdMeanSquare) {
+            silentSamples = 0;
+            return true;
+        }
+
+        silentSamples += length;
+        return silentSamples <= hangoverSamples;
+    }
+
+    public void reset() {
+        silentSamples = 0;
+    }
+}
@@ -5,11 +5,103 @@
 
 package com.iclaude.scheduledrecorder.database;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.RoomDatabase;
+import android.arch.persistence.room.migration.Migration;
+import android.support.annotation.NonNull;
 
 
-@Database(entities = {Recording.class, ScheduledRecording.class}, version = 1)
+@Database(entities = {Recording.class, ScheduledRecording.class, RecurrenceRule.class, ScheduleExecution.class}, version = 8)
 public abstract class AppDatabase extends RoomDatabase {
     public abstract RecordingsDao recordingsDao();
+
+    // Version 2: recordings split in segments (session_id, segment_index).
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE saved_recordings ADD COLUMN session_id INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE saved_recordings ADD COLUMN segment_index INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_saved_recordings_session_id ON saved_recordings (session_id)");
+        }
+    };
+
+    // Version 3: journal of the recordings in progress (in_progress).
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE saved_recordings ADD COLUMN in_progress INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // Version 4: recording profile of each scheduled recording (profile, null = settings).
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE scheduled_recordings ADD COLUMN profile TEXT");
+        }
+    };
+
+    // Version 5: recurring recordings (table recurrence_rules, rule_id of each occurrence).
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS recurrence_rules (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "start_time INTEGER NOT NULL, duration INTEGER NOT NULL, frequency INTEGER NOT NULL, "
+                    + "repeat_interval INTEGER NOT NULL, weekdays INTEGER NOT NULL, repeat_count INTEGER NOT NULL, "
+                    + "repeat_until INTEGER NOT NULL, exceptions TEXT, profile TEXT, expanded_until INTEGER NOT NULL)");
+            database.execSQL("ALTER TABLE scheduled_recordings ADD COLUMN rule_id INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_scheduled_recordings_rule_id ON scheduled_recordings (rule_id)");
+        }
+    };
+
+    // Version 6: telemetry of the scheduled recordings (table schedule_executions).
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS schedule_executions (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "scheduled_id INTEGER NOT NULL, intended_start INTEGER NOT NULL, intended_end INTEGER NOT NULL, "
+                    + "warm_up_time INTEGER NOT NULL, alarm_time INTEGER NOT NULL, capture_start INTEGER NOT NULL, "
+                    + "actual_end INTEGER NOT NULL, outcome INTEGER NOT NULL, reason INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_schedule_executions_intended_start ON schedule_executions (intended_start)");
+        }
+    };
+
+    // Version 7: index for the pages of the file viewer (see RecordingsDataSource).
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_saved_recordings_in_progress_time_added ON saved_recordings (in_progress, time_added)");
+        }
+    };
+
+    // Version 8: full-text search of the recordings (see createSearchIndex()).
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            createSearchIndex(database);
+        }
+    };
+
+    /*
+        FTS4 table saved_recordings_fts (docid = id of the recording) with the names of the
+        recordings, kept in sync by triggers on saved_recordings: the app never writes it.
+        Room 1.0 doesn't know virtual tables, so it's created here: by MIGRATION_7_8 for an
+        existing database and when the database is created (see DatabaseModule). The table
+        keeps its own copy of the names: with an external content table a REPLACE (see
+        RecordingsDao.insertRecording()) would remove the new name instead of the old one.
+     */
+    public static void createSearchIndex(@NonNull SupportSQLiteDatabase database) {
+        database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS saved_recordings_fts USING fts4(recording_name)");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS saved_recordings_fts_insert AFTER INSERT ON saved_recordings BEGIN "
+                + "DELETE FROM saved_recordings_fts WHERE docid = new.id; "
+                + "INSERT INTO saved_recordings_fts (docid, recording_name) VALUES (new.id, new.recording_name); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS saved_recordings_fts_update AFTER UPDATE OF id, recording_name ON saved_recordings BEGIN "
+                + "DELETE FROM saved_recordings_fts WHERE docid = old.id; "
+                + "INSERT INTO saved_recordings_fts (docid, recording_name) VALUES (new.id, new.recording_name); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS saved_recordings_fts_delete AFTER DELETE ON saved_recordings BEGIN "
+                + "DELETE FROM saved_recordings_fts WHERE docid = old.id; END");
+        database.execSQL("INSERT INTO saved_recordings_fts (docid, recording_name) "
+                + "SELECT id, recording_name FROM saved_recordings WHERE id NOT IN (SELECT docid FROM saved_recordings_fts)");
+    }
 }
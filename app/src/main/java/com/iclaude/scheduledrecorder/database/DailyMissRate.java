@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+/**
+ * Result of RecordingsDao.getDailyMissRates(): scheduled recordings of a day (local time,
+ * yyyy-MM-dd) and how many of them were not recorded.
+ */
+public class DailyMissRate {
+
+    public String day;
+    public int total;
+    public int missed;
+
+    public float getMissRate() {
+        return total > 0 ? (float) missed / total : 0;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.persistence.room.RoomDatabase;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface.OperationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the changes to the database submitted within a short window and applies them on
+ * the writer with a single transaction: one commit (and one notification of Room's
+ * InvalidationTracker, i.e. one reload of the lists) instead of one per change, e.g. when
+ * many recordings are deleted one after the other.
+ * Each change has its own result: a change that fails doesn't undo the others. The callbacks
+ * are called on the main thread after the commit; if the commit fails they all fail.
+ * Tasks run on the writer with execute() first apply the changes submitted before them, so
+ * the order of the changes is kept.
+ */
+public class MutationBatcher {
+    private static final String TAG = "SCHEDULED_RECORDER_TAG";
+    private final String CLASS_NAME = getClass().getSimpleName();
+
+    // A change, applied on the writer inside the transaction of the batch.
+    public interface Mutation {
+        // Returns false if nothing was changed (e.g. the row doesn't exist anymore).
+        boolean apply();
+    }
+
+    // Called on the writer after each batch.
+    public interface Listener {
+        // scheduleChanged: a change submitted with changesSchedule = true succeeded.
+        void onBatchCommitted(boolean scheduleChanged);
+
+        // The transaction was rolled back: changes to in-memory state made by apply() are wrong.
+        void onBatchRolledBack();
+    }
+
+    private static class Pending {
+        final Mutation mutation;
+        final boolean changesSchedule;
+        final OperationResult callback;
+        boolean succeeded;
+
+        Pending(Mutation mutation, boolean changesSchedule, OperationResult callback) {
+            this.mutation = mutation;
+            this.changesSchedule = changesSchedule;
+            this.callback = callback;
+        }
+    }
+
+    private final RoomDatabase database;
+    private final Executor writer;
+    private final Executor mainThread;
+    private final long windowMs;
+    private final Listener listener;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mutation-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private List<Pending> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    public MutationBatcher(RoomDatabase database, Executor writer, Executor mainThread, long windowMs, Listener listener) {
+        this.database = database;
+        this.writer = writer;
+        this.mainThread = mainThread;
+        this.windowMs = windowMs;
+        this.listener = listener;
+    }
+
+    /*
+        The first change of a batch starts the window: when it ends the batch is applied on the
+        writer, together with the changes submitted in the meantime.
+     */
+    public void submit(Mutation mutation, boolean changesSchedule, @Nullable OperationResult callback) {
+        synchronized (this) {
+            pending.add(new Pending(mutation, changesSchedule, callback));
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        timer.schedule(() -> writer.execute(this::flush), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs the task on the writer after the changes submitted before it.
+    public void execute(Runnable task) {
+        writer.execute(() -> {
+            flush();
+            task.run();
+        });
+    }
+
+    // Applies the changes submitted so far. Must be called on the writer.
+    public void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) return;
+
+        boolean committed = false;
+        boolean scheduleChanged = false;
+        try {
+            database.beginTransaction();
+            try {
+                for (Pending change : batch) {
+                    change.succeeded = apply(change.mutation);
+                    scheduleChanged |= change.succeeded && change.changesSchedule;
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            committed = true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, CLASS_NAME + " - flush(): " + e.toString());
+        }
+
+        if (committed)
+            listener.onBatchCommitted(scheduleChanged);
+        else
+            listener.onBatchRolledBack();
+
+        boolean success = committed;
+        mainThread.execute(() -> {
+            for (Pending change : batch) {
+                if (change.callback == null) continue;
+
+                if (success && change.succeeded)
+                    change.callback.onSuccess();
+                else
+                    change.callback.onFailure();
+            }
+        });
+    }
+
+    // A change that throws (e.g. a constraint violation) fails alone.
+    private boolean apply(Mutation mutation) {
+        try {
+            return mutation.apply();
+        } catch (RuntimeException e) {
+            Log.e(TAG, CLASS_NAME + " - apply(): " + e.toString());
+            return false;
+        }
+    }
+}
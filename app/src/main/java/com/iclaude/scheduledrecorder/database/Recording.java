@@ -3,6 +3,7 @@ package com.iclaude.scheduledrecorder.database;
 import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
 import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -11,9 +12,14 @@ import android.support.annotation.NonNull;
 
 /**
  * Table "saved_recordings".
+ * Long recordings can be split in several segments (files): all the segments of the same
+ * recording have the same session id and are ordered by segment index (starting from 1).
+ * Recordings made of a single file have session id and segment index 0.
+ * A recording is inserted "in progress" when it starts (journal) and is updated when the file
+ * is finalized: rows still in progress when the app starts belong to interrupted recordings.
  */
 
-@Entity(tableName = "saved_recordings")
+@Entity(tableName = "saved_recordings", indices = {@Index("session_id"), @Index(value = {"in_progress", "time_added"})})
 public class Recording implements Parcelable {
     @PrimaryKey(autoGenerate = true)
     private int id;
@@ -32,6 +38,15 @@ public class Recording implements Parcelable {
     @ColumnInfo(name = "time_added")
     private long timeAdded;
 
+    @ColumnInfo(name = "session_id")
+    private long sessionId;
+
+    @ColumnInfo(name = "segment_index")
+    private int segmentIndex;
+
+    @ColumnInfo(name = "in_progress")
+    private boolean inProgress;
+
     // Constructor for existing Recording (it already has an id).
     public Recording(int id, @NonNull String name, @NonNull String path, long length, long timeAdded) {
         this.id = id;
@@ -92,6 +107,30 @@ public class Recording implements Parcelable {
         this.timeAdded = timeAdded;
     }
 
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    public void setSegmentIndex(int segmentIndex) {
+        this.segmentIndex = segmentIndex;
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    public void setInProgress(boolean inProgress) {
+        this.inProgress = inProgress;
+    }
+
     // Implementation of Parcelable interface.
     protected Recording(Parcel in) {
         id = in.readInt();
@@ -99,6 +138,9 @@ public class Recording implements Parcelable {
         path = in.readString();
         length = in.readLong();
         timeAdded = in.readLong();
+        sessionId = in.readLong();
+        segmentIndex = in.readInt();
+        inProgress = in.readByte() != 0;
     }
 
     @Override
@@ -113,6 +155,9 @@ public class Recording implements Parcelable {
         dest.writeString(path);
         dest.writeLong(length);
         dest.writeLong(timeAdded);
+        dest.writeLong(sessionId);
+        dest.writeInt(segmentIndex);
+        dest.writeByte((byte) (inProgress ? 1 : 0));
     }
 
     @SuppressWarnings("unused")
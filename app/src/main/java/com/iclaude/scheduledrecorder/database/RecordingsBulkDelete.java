@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.iclaude.scheduledrecorder.audio.TimeMap;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Deletes many recordings at once (multi-selection of the file viewer): the files are
+ * unlinked in parallel on a small pool, then the rows of the recordings whose file is gone
+ * are deleted with one transaction, MAX_IDS at a time (DELETE ... WHERE id IN (...)).
+ * A recording whose file was already missing is deleted too; a recording whose file can't
+ * be deleted is kept and reported as failed.
+ */
+public class RecordingsBulkDelete {
+    private static final String TAG = "SCHEDULED_RECORDER_TAG";
+    private final String CLASS_NAME = getClass().getSimpleName();
+
+    static final int MAX_IDS = 500; // SQLite allows 999 parameters per statement
+
+    public static class Result {
+        public final List<Recording> deleted = new ArrayList<>();
+        public final List<Recording> failed = new ArrayList<>();
+    }
+
+    private final AppDatabase database;
+    private final Executor fileIO;
+
+    public RecordingsBulkDelete(AppDatabase database, Executor fileIO) {
+        this.database = database;
+        this.fileIO = fileIO;
+    }
+
+    // Runs on the writer: it waits for the files to be unlinked.
+    @WorkerThread
+    public Result delete(List<Recording> recordings) {
+        boolean[] unlinked = new boolean[recordings.size()];
+        CountDownLatch done = new CountDownLatch(recordings.size());
+        for (int i = 0; i < recordings.size(); i++) {
+            int index = i;
+            fileIO.execute(() -> {
+                try {
+                    unlinked[index] = unlink(recordings.get(index));
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        awaitUninterruptibly(done);
+
+        Result result = new Result();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < recordings.size(); i++) {
+            if (unlinked[i]) {
+                result.deleted.add(recordings.get(i));
+                ids.add(recordings.get(i).getId());
+            } else {
+                result.failed.add(recordings.get(i));
+            }
+        }
+        if (ids.isEmpty()) return result;
+
+        try {
+            database.beginTransaction();
+            try {
+                for (int from = 0; from < ids.size(); from += MAX_IDS) {
+                    database.recordingsDao().deleteRecordings(ids.subList(from, Math.min(ids.size(), from + MAX_IDS)));
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } catch (RuntimeException e) {
+            // The files are gone but the rows are still there.
+            Log.e(TAG, CLASS_NAME + " - delete(): " + e.toString());
+            result.failed.addAll(result.deleted);
+            result.deleted.clear();
+        }
+
+        return result;
+    }
+
+    private static boolean unlink(Recording recording) {
+        File file = new File(recording.getPath());
+        boolean deleted = file.delete() || !file.exists();
+        //noinspection ResultOfMethodCallIgnored
+        new File(recording.getPath() + TimeMap.EXTENSION).delete();
+        return deleted;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -20,6 +20,9 @@ public class RecordingsContract {
         public static final String COLUMN_NAME_RECORDING_FILE_PATH = "file_path";
         public static final String COLUMN_NAME_RECORDING_LENGTH = "length";
         public static final String COLUMN_NAME_TIME_ADDED = "time_added";
+        public static final String COLUMN_NAME_SESSION_ID = "session_id";
+        public static final String COLUMN_NAME_SEGMENT_INDEX = "segment_index";
+        public static final String COLUMN_NAME_IN_PROGRESS = "in_progress";
     }
 
     // Table "scheduled_recordings".
@@ -28,11 +31,49 @@ public class RecordingsContract {
 
         public static final String COLUMN_NAME_START = "start"; // start of the recording in ms from epoch
         public static final String COLUMN_NAME_END = "end"; // length of the recording in ms
+        public static final String COLUMN_NAME_PROFILE = "profile"; // key of the RecordingProfile, null = default
+        public static final String COLUMN_NAME_RULE_ID = "rule_id"; // id of the RecurrenceRule, 0 = single recording
+    }
+
+    // Table "recurrence_rules".
+    public static class TableRecurrenceRule implements BaseColumns {
+        public static final String TABLE_NAME = "recurrence_rules";
+
+        public static final String COLUMN_NAME_START = "start_time"; // start of the first occurrence
+        public static final String COLUMN_NAME_DURATION = "duration";
+        public static final String COLUMN_NAME_FREQUENCY = "frequency"; // daily or weekly
+        public static final String COLUMN_NAME_INTERVAL = "repeat_interval";
+        public static final String COLUMN_NAME_WEEKDAYS = "weekdays"; // bit mask, Monday = bit 0
+        public static final String COLUMN_NAME_COUNT = "repeat_count"; // 0 = no limit
+        public static final String COLUMN_NAME_UNTIL = "repeat_until"; // 0 = no limit
+        public static final String COLUMN_NAME_EXCEPTIONS = "exceptions"; // deleted occurrences
+        public static final String COLUMN_NAME_EXPANDED_UNTIL = "expanded_until"; // last occurrence in scheduled_recordings
+    }
+
+    // Table "schedule_executions".
+    public static class TableScheduleExecution implements BaseColumns {
+        public static final String TABLE_NAME = "schedule_executions";
+
+        public static final String COLUMN_NAME_SCHEDULED_ID = "scheduled_id";
+        public static final String COLUMN_NAME_INTENDED_START = "intended_start";
+        public static final String COLUMN_NAME_INTENDED_END = "intended_end";
+        public static final String COLUMN_NAME_WARM_UP_TIME = "warm_up_time"; // delivery of the warm-up alarm
+        public static final String COLUMN_NAME_ALARM_TIME = "alarm_time"; // delivery of the start alarm
+        public static final String COLUMN_NAME_CAPTURE_START = "capture_start";
+        public static final String COLUMN_NAME_ACTUAL_END = "actual_end";
+        public static final String COLUMN_NAME_OUTCOME = "outcome"; // see ScheduleExecution
+        public static final String COLUMN_NAME_REASON = "reason";
     }
 
     // Requirements.
     public static final int MIN_DURATION = 1000 * 60 * 5; // 5 minutes
     public static final int MAX_DURATION = 1000 * 60 * 60 * 3; // 3 hours
+    public static final long SCHEDULE_TOLERANCE = 5000; // scheduled times closer than 5 seconds are contiguous
+    public static final long SCHEDULE_WARM_UP = 10000; // the recorder is prepared 10 seconds before a scheduled start
+    public static final long SEGMENT_MAX_DURATION = 1000 * 60 * 30; // 30 minutes
+    public static final long SEGMENT_MAX_SIZE = 1024 * 1024 * 50; // 50 MB
+    public static final long CHECKPOINT_INTERVAL = 1000 * 30; // recordings in progress updated every 30 seconds
+    public static final long EXECUTIONS_RETENTION = 1000L * 60 * 60 * 24 * 90; // schedule executions kept for 90 days
 
     private RecordingsContract() {
     }
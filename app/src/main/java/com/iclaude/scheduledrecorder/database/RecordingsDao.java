@@ -24,26 +24,80 @@ public interface RecordingsDao {
     @Update
     int updateRecording(Recording recording);
 
+    // Only name and path: the other columns (i.e. session and segment index) are kept.
+    @Query("UPDATE saved_recordings SET recording_name = :name, file_path = :path WHERE id = :id")
+    int renameRecording(int id, String name, String path);
+
     @Delete
     int deleteRecording(Recording recording);
 
+    // At most 999 ids (SQLite's limit on the number of parameters).
+    @Query("DELETE FROM saved_recordings WHERE id IN (:ids)")
+    int deleteRecordings(List<Integer> ids);
+
     @Query("DELETE FROM saved_recordings")
     void deleteAllRecordings();
 
     @Query("SELECT * FROM saved_recordings WHERE id = :id")
     Recording getRecordingById(int id);
 
-    @Query("SELECT * FROM saved_recordings ORDER BY time_added DESC")
+    @Query("SELECT * FROM saved_recordings WHERE in_progress = 0 ORDER BY time_added DESC")
     LiveData<List<Recording>> getAllRecordings();
 
-    @Query("SELECT COUNT(*) FROM saved_recordings")
+    @Query("SELECT COUNT(*) FROM saved_recordings WHERE in_progress = 0")
     int getRecordingsCount();
 
+    /*
+        Pages of the saved recordings, newest first (see RecordingsDataSource): keyset on
+        (time_added, id). "time_added <= :timeAdded" (">=") bounds the scan of the index
+        (in_progress, time_added), whose rows are ordered by time_added and id (rowid).
+     */
+    @Query("SELECT * FROM saved_recordings WHERE in_progress = 0 ORDER BY time_added DESC, id DESC LIMIT :limit")
+    List<Recording> getNewestRecordings(int limit);
+
+    @Query("SELECT * FROM saved_recordings WHERE in_progress = 0 AND time_added <= :timeAdded AND (time_added < :timeAdded OR id < :id) "
+            + "ORDER BY time_added DESC, id DESC LIMIT :limit")
+    List<Recording> getRecordingsOlderThan(long timeAdded, int id, int limit);
+
+    // Same as getRecordingsOlderThan(), including the recording with the key.
+    @Query("SELECT * FROM saved_recordings WHERE in_progress = 0 AND time_added <= :timeAdded AND (time_added < :timeAdded OR id <= :id) "
+            + "ORDER BY time_added DESC, id DESC LIMIT :limit")
+    List<Recording> getRecordingsFrom(long timeAdded, int id, int limit);
+
+    // Oldest first: the nearest to the key.
+    @Query("SELECT * FROM saved_recordings WHERE in_progress = 0 AND time_added >= :timeAdded AND (time_added > :timeAdded OR id > :id) "
+            + "ORDER BY time_added, id LIMIT :limit")
+    List<Recording> getRecordingsNewerThan(long timeAdded, int id, int limit);
+
+    // Position of the recording with the key in the list.
+    @Query("SELECT COUNT(*) FROM saved_recordings WHERE in_progress = 0 AND time_added >= :timeAdded AND (time_added > :timeAdded OR id > :id)")
+    int getRecordingsCountNewerThan(long timeAdded, int id);
+
+    // Journal of the recordings in progress.
+    @Query("UPDATE saved_recordings SET length = :length WHERE file_path = :path AND in_progress = 1")
+    int checkpointRecording(String path, long length);
+
+    @Query("UPDATE saved_recordings SET length = :length, time_added = :timeAdded, in_progress = 0 WHERE file_path = :path")
+    int finishRecording(String path, long length, long timeAdded);
+
+    @Query("DELETE FROM saved_recordings WHERE file_path = :path AND in_progress = 1")
+    int discardRecording(String path);
+
+    @Query("SELECT * FROM saved_recordings WHERE in_progress = 1")
+    List<Recording> getUnfinishedRecordings();
+
+    @Query("SELECT file_path FROM saved_recordings")
+    List<String> getAllRecordingPaths();
+
 
     // Table "scheduled_recordings".
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     long insertScheduledRecording(ScheduledRecording scheduledRecording);
 
+    // Inserted in a single transaction (see ScheduleImporter): all or none.
+    @Insert
+    long[] insertScheduledRecordings(List<ScheduledRecording> scheduledRecordings);
+
     @Update
     int updateScheduledRecordings(ScheduledRecording... scheduledRecordings);
 
@@ -62,13 +116,102 @@ public interface RecordingsDao {
     @Query("SELECT * FROM scheduled_recordings")
     LiveData<List<ScheduledRecording>> getAllScheduledRecordings();
 
+    /*
+        Scheduled recordings of a period of the calendar (a month or a day), sorted by the index on
+        start_time. The index is scanned up to "to": the recordings already started are deleted
+        shortly after their start, so almost only the ones in the period are read.
+     */
+    @Query("SELECT * FROM scheduled_recordings WHERE start_time < :to AND end_time > :from ORDER BY start_time")
+    LiveData<List<ScheduledRecording>> getScheduledRecordingsInRange(long from, long to);
+
+    // Used to build the index of the scheduled recordings (see ScheduleIntervalTree).
+    @Query("SELECT * FROM scheduled_recordings WHERE end_time > :time")
+    List<ScheduledRecording> getScheduledRecordingsEndingAfter(long time);
+
+    @Query("SELECT * FROM scheduled_recordings WHERE id IN (:ids) ORDER BY start_time")
+    List<ScheduledRecording> getScheduledRecordingsByIds(List<Integer> ids);
+
     // Returns the next scheduled recording from now.
     @Query("SELECT * FROM scheduled_recordings ORDER BY start_time LIMIT 1")
     ScheduledRecording getNextScheduledRecording();
 
-    @Query("SELECT COUNT(*) FROM scheduled_recordings WHERE ((:start >= start_time AND :start <= end_time) OR (:end >= start_time AND :end <= end_time) OR (:start < start_time AND :end > end_time)) AND :exceptId != id")
+    // Back-to-back recordings (one starts when the previous one ends) don't overlap.
+    @Query("SELECT COUNT(*) FROM scheduled_recordings WHERE :start < end_time AND :end > start_time AND :exceptId != id")
     int getNumRecordingsAlreadyScheduled(long start, long end, long exceptId);
 
     @Query("SELECT COUNT(*) FROM scheduled_recordings")
     int getScheduledRecordingsCount();
+
+    @Query("SELECT COUNT(*) FROM scheduled_recordings WHERE rule_id = :ruleId")
+    int getScheduledRecordingsCountByRule(int ruleId);
+
+
+    // Table "recurrence_rules".
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    long insertRecurrenceRule(RecurrenceRule recurrenceRule);
+
+    @Update
+    int updateRecurrenceRule(RecurrenceRule recurrenceRule);
+
+    @Query("DELETE FROM recurrence_rules WHERE id = :id")
+    int deleteRecurrenceRule(int id);
+
+    @Query("SELECT * FROM recurrence_rules WHERE id = :id")
+    RecurrenceRule getRecurrenceRuleById(int id);
+
+    @Query("SELECT * FROM recurrence_rules")
+    LiveData<List<RecurrenceRule>> getAllRecurrenceRules();
+
+    @Query("SELECT * FROM recurrence_rules")
+    List<RecurrenceRule> getRecurrenceRules();
+
+    @Query("DELETE FROM recurrence_rules")
+    void deleteAllRecurrenceRules();
+
+    // The occurrences already in "scheduled_recordings" become single recordings.
+    @Query("UPDATE scheduled_recordings SET rule_id = 0 WHERE rule_id = :ruleId")
+    int detachScheduledRecordings(int ruleId);
+
+
+    // Table "schedule_executions".
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    long insertScheduleExecution(ScheduleExecution scheduleExecution);
+
+    @Insert
+    void insertScheduleExecutions(List<ScheduleExecution> scheduleExecutions);
+
+    @Update
+    int updateScheduleExecution(ScheduleExecution scheduleExecution);
+
+    @Query("DELETE FROM schedule_executions WHERE intended_start < :time")
+    int deleteOldScheduleExecutions(long time);
+
+    @Query("SELECT * FROM schedule_executions ORDER BY intended_start")
+    List<ScheduleExecution> getScheduleExecutions();
+
+    @Query("SELECT * FROM scheduled_recordings WHERE start_time < :time")
+    List<ScheduledRecording> getOldScheduledRecordings(long time);
+
+    /*
+        Start lag (capture start - intended start, in ms) below which are "percentile"% of the
+        recordings started by an alarm since "from": nearest rank, i.e. the value at position
+        ceil(percentile * count / 100) of the sorted lags. Hand-offs are excluded: their capture
+        never stopped, even if the alarm was delivered. Null if none.
+     */
+    @Query("SELECT capture_start - intended_start FROM schedule_executions "
+            + "WHERE capture_start > 0 AND reason != " + ScheduleExecution.REASON_HAND_OFF + " AND intended_start >= :from "
+            + "ORDER BY capture_start - intended_start LIMIT 1 OFFSET "
+            + "(SELECT (COUNT(*) * :percentile + 99) / 100 - 1 FROM schedule_executions "
+            + "WHERE capture_start > 0 AND reason != " + ScheduleExecution.REASON_HAND_OFF + " AND intended_start >= :from)")
+    Long getStartLagPercentile(long from, int percentile);
+
+    /*
+        Scheduled recordings never started, per day (local time). A recording counts once even if
+        it has more than one execution (started if any of them captured).
+     */
+    @Query("SELECT day, COUNT(*) AS total, SUM(started = 0) AS missed FROM "
+            + "(SELECT date(intended_start / 1000, 'unixepoch', 'localtime') AS day, MAX(capture_start > 0) AS started "
+            + "FROM schedule_executions WHERE intended_start >= :from AND intended_end < :now GROUP BY scheduled_id, intended_start) "
+            + "GROUP BY day ORDER BY day")
+    List<DailyMissRate> getDailyMissRates(long from, long now);
 }
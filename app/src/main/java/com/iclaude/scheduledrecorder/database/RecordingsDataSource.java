@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.paging.DataSource;
+import android.arch.paging.ItemKeyedDataSource;
+import android.arch.persistence.room.InvalidationTracker;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pages of the saved recordings (in_progress = 0), newest first, for the file viewer.
+ * Pages are read by key (time_added, id) of the first/last recording already loaded, on the
+ * index (in_progress, time_added): the cost of a page doesn't depend on the number of
+ * recordings, and pages don't skip or repeat rows when recordings are added or deleted in
+ * the meantime. Only the initial load counts the recordings, for the placeholders.
+ * The data source is invalidated when table "saved_recordings" changes: a new one is created
+ * by Factory and the list is reloaded around the recording that was shown.
+ */
+public class RecordingsDataSource extends ItemKeyedDataSource<Recording, Recording> {
+
+    public static class Factory extends DataSource.Factory<Recording, Recording> {
+        private final AppDatabase database;
+
+        public Factory(AppDatabase database) {
+            this.database = database;
+        }
+
+        @Override
+        public DataSource<Recording, Recording> create() {
+            return new RecordingsDataSource(database);
+        }
+    }
+
+    private final AppDatabase database;
+    private final RecordingsDao recordingsDao;
+
+
+    public RecordingsDataSource(AppDatabase database) {
+        this.database = database;
+        this.recordingsDao = database.recordingsDao();
+
+        InvalidationTracker.Observer observer = new InvalidationTracker.Observer("saved_recordings") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        database.getInvalidationTracker().addObserver(observer);
+        addInvalidatedCallback(() -> database.getInvalidationTracker().removeObserver(observer));
+    }
+
+    /*
+        With a key (reload after an invalidation) half of the page is before it, so that the
+        recordings shown don't move. Rows and position are read in the same transaction.
+     */
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<Recording> params, @NonNull LoadInitialCallback<Recording> callback) {
+        Recording key = params.requestedInitialKey;
+        List<Recording> recordings;
+        int position = 0;
+        int count = 0;
+        database.beginTransaction();
+        try {
+            if (key == null) {
+                recordings = recordingsDao.getNewestRecordings(params.requestedLoadSize);
+            } else {
+                recordings = new ArrayList<>(recordingsDao.getRecordingsNewerThan(key.getTimeAdded(), key.getId(), params.requestedLoadSize / 2));
+                Collections.reverse(recordings);
+                recordings.addAll(recordingsDao.getRecordingsFrom(key.getTimeAdded(), key.getId(), params.requestedLoadSize - recordings.size()));
+                if (!recordings.isEmpty()) {
+                    Recording first = recordings.get(0);
+                    position = recordingsDao.getRecordingsCountNewerThan(first.getTimeAdded(), first.getId());
+                }
+            }
+            if (params.placeholdersEnabled)
+                count = recordingsDao.getRecordingsCount();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (params.placeholdersEnabled)
+            callback.onResult(recordings, position, count);
+        else
+            callback.onResult(recordings);
+    }
+
+    // Older recordings (end of the list).
+    @Override
+    public void loadAfter(@NonNull LoadParams<Recording> params, @NonNull LoadCallback<Recording> callback) {
+        callback.onResult(recordingsDao.getRecordingsOlderThan(params.key.getTimeAdded(), params.key.getId(), params.requestedLoadSize));
+    }
+
+    // Newer recordings (start of the list), in the order of the list.
+    @Override
+    public void loadBefore(@NonNull LoadParams<Recording> params, @NonNull LoadCallback<Recording> callback) {
+        List<Recording> recordings = new ArrayList<>(recordingsDao.getRecordingsNewerThan(params.key.getTimeAdded(), params.key.getId(), params.requestedLoadSize));
+        Collections.reverse(recordings);
+        callback.onResult(recordings);
+    }
+
+    @NonNull
+    @Override
+    public Recording getKey(@NonNull Recording recording) {
+        return recording;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.iclaude.scheduledrecorder.audio.RecordingProfile;
+import com.iclaude.scheduledrecorder.audio.TimeMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Recovers the recordings interrupted by a crash, an OOM kill or a reboot. It runs once per
+ * process, when the UI is opened, and only looks at the files last modified before the process
+ * started (the others may be written by this process):
+ * 1) recordings still "in progress" in the database: if the file can be read (for example a
+ * segment that was already finalized) it's registered with its real duration; if it can't be
+ * read it's kept and registered as damaged, with length 0 (the audio may still be extracted by
+ * other tools); if the file is missing or empty the row is deleted
+ * 2) recording files in the directory without a row in the database (interrupted before the
+ * journal existed, or parts of a paused recording not joined yet) are registered if they can
+ * be read; temporary files are ignored
+ * Files containing audio are never deleted. An MPEG-4 file without the moov atom can't be played, but with
+ * segmented recordings only the last segment is affected.
+ */
+public class RecordingsRecovery {
+
+    // Returns the duration of the audio file in ms, or a negative number if it can't be read.
+    public interface DurationReader {
+        long getDurationMs(String filePath);
+    }
+
+    public static class Result {
+        public int recovered;
+        public int damaged;
+        public int removed; // rows without audio
+        public int registered;
+    }
+
+    private static final String FILE_PREFIX = "myrec";
+    private static final String TEMP_EXTENSION = ".tmp"; // join of paused parts not completed, the parts still exist
+
+    private final RecordingsDao recordingsDao;
+    private final DurationReader durationReader;
+
+    public RecordingsRecovery(@NonNull RecordingsDao recordingsDao, @NonNull DurationReader durationReader) {
+        this.recordingsDao = recordingsDao;
+        this.durationReader = durationReader;
+    }
+
+    // before: files modified after this time (ms from epoch) are ignored.
+    @WorkerThread
+    public Result recover(File directory, long before) {
+        Result result = new Result();
+
+        // Recordings in progress.
+        for (Recording recording : recordingsDao.getUnfinishedRecordings()) {
+            File file = new File(recording.getPath());
+            if (file.lastModified() >= before) continue; // being written by this process (0 if missing)
+
+            if (file.length() == 0) { // missing, or empty: nothing was written
+                recordingsDao.deleteRecording(recording);
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                result.removed++;
+                continue;
+            }
+            long duration = durationReader.getDurationMs(recording.getPath());
+            if (duration > 0) {
+                recordingsDao.finishRecording(recording.getPath(), duration, file.lastModified());
+                result.recovered++;
+            } else {
+                recordingsDao.finishRecording(recording.getPath(), 0, file.lastModified());
+                result.damaged++;
+            }
+        }
+
+        // Files not in the database.
+        File[] files = directory != null ? directory.listFiles() : null;
+        if (files == null) return result;
+
+        Set<String> knownPaths = new HashSet<>(recordingsDao.getAllRecordingPaths());
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().startsWith(FILE_PREFIX) || file.getName().endsWith(TimeMap.EXTENSION)
+                    || file.getName().endsWith(TEMP_EXTENSION) || file.lastModified() >= before || knownPaths.contains(file.getAbsolutePath()))
+                continue;
+
+            long duration = durationReader.getDurationMs(file.getAbsolutePath());
+            if (duration > 0) {
+                recordingsDao.insertRecording(new Recording(file.getName(), file.getAbsolutePath(), duration, file.lastModified()));
+                result.registered++;
+            }
+        }
+
+        return result;
+    }
+
+    /*
+        DurationReader based on MediaExtractor: fails for MPEG-4 files without index (moov atom).
+        Streamable files (Ogg, FLAC) may have no duration in the header: the frames are read up
+        to the last one.
+     */
+    public static long readDurationMs(String filePath) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(filePath);
+            if (extractor.getTrackCount() == 0) return -1;
+
+            MediaFormat format = extractor.getTrackFormat(0);
+            if (format.containsKey(MediaFormat.KEY_DURATION))
+                return format.getLong(MediaFormat.KEY_DURATION) / 1000;
+            if (RecordingProfile.getMimeType(filePath).equals("audio/mp4")) return -1;
+
+            long lastSampleUs = -1;
+            extractor.selectTrack(0);
+            do {
+                lastSampleUs = Math.max(lastSampleUs, extractor.getSampleTime());
+            } while (extractor.advance());
+            return lastSampleUs > 0 ? lastSampleUs / 1000 : -1;
+        } catch (IOException | IllegalArgumentException e) {
+            return -1;
+        } finally {
+            extractor.release();
+        }
+    }
+}
@@ -6,14 +6,31 @@
 package com.iclaude.scheduledrecorder.database;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.paging.DataSource;
 import android.content.Context;
+import android.util.Log;
 
+import com.iclaude.scheduledrecorder.audio.TimeMap;
 import com.iclaude.scheduledrecorder.didagger2.App;
 import com.iclaude.scheduledrecorder.utils.AppExecutors;
+import com.iclaude.scheduledrecorder.utils.Clock;
+import com.iclaude.scheduledrecorder.utils.DiskIOThreadExecutor;
 import com.iclaude.scheduledrecorder.utils.Utils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
@@ -21,17 +38,77 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Access point to the database and files.
+ * Conflicts between scheduled recordings are checked on an in-memory index
+ * (ScheduleIntervalTree) of the scheduled recordings that haven't ended yet: it's loaded the
+ * first time it's needed and kept in sync by the methods that change the table. The
+ * occurrences of the recurrence rules not in the table yet are checked too (ScheduleConflicts).
+ * Changes (and everything that uses the index) run in order on the diskIO thread, the only
+ * writer; the other reads run on the diskRead pool, in parallel with each other and with the
+ * writer (the database is in WAL mode, see DatabaseModule), so they don't wait behind file
+ * renames, deletions or imports. A read doesn't wait for the changes requested before it:
+ * callers that need them start the read from the callback of the change.
+ * Single-row changes are collected by a MutationBatcher and committed together with the
+ * others submitted within BATCH_WINDOW_MS; the other tasks on diskIO run through it, after
+ * the changes submitted before them.
+ * Every change of the scheduled recordings or of the recurrence rules is notified to the
+ * OnScheduleChangedListener (RecordingScheduler), on the diskIO thread (once per batch).
  */
 
 public class RecordingsRepository implements RecordingsRepositoryInterface {
+    private static final String TAG = "SCHEDULED_RECORDER_TAG";
+    private final String CLASS_NAME = getClass().getSimpleName();
+    private static final long BATCH_WINDOW_MS = 30; // see MutationBatcher
 
+    @Inject
+    AppDatabase appDatabase;
     @Inject
     RecordingsDao recordingsDao;
     @Inject
     AppExecutors appExecutors;
+    @Inject
+    Clock clock;
+
+    private final ScheduleIntervalTree scheduleIndex = new ScheduleIntervalTree();
+    private boolean scheduleIndexLoaded = false;
+    private volatile OnScheduleChangedListener onScheduleChangedListener = null;
+    private final MutationBatcher mutationBatcher;
+    private final AtomicBoolean recoveryStarted = new AtomicBoolean(false);
 
     public RecordingsRepository() {
         App.getComponent().inject(this);
+        mutationBatcher = new MutationBatcher(appDatabase, appExecutors.diskIO(), appExecutors.mainThread(),
+                BATCH_WINDOW_MS, new MutationBatcher.Listener() {
+            @Override
+            public void onBatchCommitted(boolean scheduleChanged) {
+                if (scheduleChanged) notifyScheduleChanged();
+            }
+
+            @Override
+            public void onBatchRolledBack() {
+                scheduleIndexLoaded = false;
+            }
+        });
+    }
+
+    @Override
+    public void setOnScheduleChangedListener(OnScheduleChangedListener listener) {
+        onScheduleChangedListener = listener;
+    }
+
+    private void notifyScheduleChanged() {
+        OnScheduleChangedListener listener = onScheduleChangedListener;
+        if (listener != null) listener.onScheduleChanged();
+    }
+
+    // Counters of the executors: tasks waiting and time spent waiting.
+    @Override
+    public DiskIOThreadExecutor.Stats getDiskReadStats() {
+        return appExecutors.getStats(appExecutors.diskRead());
+    }
+
+    @Override
+    public DiskIOThreadExecutor.Stats getDiskWriteStats() {
+        return appExecutors.getStats(appExecutors.diskIO());
     }
 
     // Table "saved_recordings".
@@ -39,26 +116,19 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
     @Override
     public void insertRecording(Recording recording, OperationResult callback) {
         checkNotNull(recording);
-        Runnable insertRunnable = () -> {
-            long id = recordingsDao.insertRecording(recording);
-
-            appExecutors.mainThread().execute(() -> {
-                if (id > 0)
-                    callback.onSuccess();
-                else
-                    callback.onFailure();
-            });
-        };
-        appExecutors.diskIO().execute(insertRunnable);
+        mutationBatcher.submit(() -> recordingsDao.insertRecording(recording) > 0, false, callback);
     }
 
     @Override
-    public void updateRecording(Recording recording, String newName, Context context, OperationResult callback) {
+    public void updateRecording(Recording recording, String name, Context context, OperationResult callback) {
         checkNotNull(recording);
+        // Keep the extension: it identifies the format of the file (see RecordingProfile).
+        String oldName = new File(recording.getPath()).getName();
+        int dot = oldName.lastIndexOf('.');
+        String newName = dot > 0 && !name.contains(".") ? name + oldName.substring(dot) : name;
         Runnable updateRunnable = () -> {
             // Rename the file.
-            String newPath = Utils.getDirectoryPath(context);
-            newPath += "/" + newName;
+            String newPath = Utils.getDirectoryPath(context) + "/" + newName;
             File f = new File(newPath);
             if (f.exists() && !f.isDirectory()) {
                 appExecutors.mainThread().execute(callback::onFailure);
@@ -71,18 +141,13 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
                 appExecutors.mainThread().execute(callback::onFailure);
                 return;
             }
+            //noinspection ResultOfMethodCallIgnored
+            new File(recording.getPath() + TimeMap.EXTENSION).renameTo(new File(newPath + TimeMap.EXTENSION));
 
             // Update the database.
-            Recording updatedRecording = new Recording(recording.getId(), newName, newPath, recording.getLength(), recording.getTimeAdded());
-            int num = recordingsDao.updateRecording(updatedRecording);
-            appExecutors.mainThread().execute(() -> {
-                if (num > 0)
-                    appExecutors.mainThread().execute(callback::onSuccess);
-                else
-                    appExecutors.mainThread().execute(callback::onFailure);
-            });
+            mutationBatcher.submit(() -> recordingsDao.renameRecording(recording.getId(), newName, newPath) > 0, false, callback);
         };
-        appExecutors.diskIO().execute(updateRunnable);
+        mutationBatcher.execute(updateRunnable);
     }
 
     @Override
@@ -96,17 +161,29 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
                 appExecutors.mainThread().execute(callback::onFailure);
                 return;
             }
+            //noinspection ResultOfMethodCallIgnored
+            new File(recording.getPath() + TimeMap.EXTENSION).delete();
 
             // Delete recording from database.
-            int num = recordingsDao.deleteRecording(recording);
-            appExecutors.mainThread().execute(() -> {
-                if (num > 0)
-                    appExecutors.mainThread().execute(callback::onSuccess);
-                else
-                    appExecutors.mainThread().execute(callback::onFailure);
-            });
+            mutationBatcher.submit(() -> recordingsDao.deleteRecording(recording) > 0, false, callback);
         };
-        appExecutors.diskIO().execute(deleteRunnable);
+        mutationBatcher.execute(deleteRunnable);
+    }
+
+    /*
+        Runs on the writer after the changes submitted before it: the files are unlinked on
+        the fileIO pool, the writer waits for them and then deletes the rows.
+     */
+    @Override
+    public void deleteRecordings(List<Recording> recordings, DeleteRecordingsCallback callback) {
+        checkNotNull(recordings);
+        List<Recording> toDelete = new ArrayList<>(recordings);
+        Runnable deleteRunnable = () -> {
+            RecordingsBulkDelete.Result result = new RecordingsBulkDelete(appDatabase, appExecutors.fileIO()).delete(toDelete);
+
+            appExecutors.mainThread().execute(() -> callback.onResult(result.deleted, result.failed));
+        };
+        mutationBatcher.execute(deleteRunnable);
     }
 
     @Override
@@ -115,7 +192,7 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
             recordingsDao.deleteAllRecordings();
         };
 
-        appExecutors.diskIO().execute(deleteRunnable);
+        mutationBatcher.execute(deleteRunnable);
     }
 
     @Override
@@ -132,7 +209,7 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
             });
         };
 
-        appExecutors.diskIO().execute(runnable);
+        appExecutors.diskRead().execute(runnable);
     }
 
     @Override
@@ -140,6 +217,17 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
         return recordingsDao.getAllRecordings();
     }
 
+    @Override
+    public DataSource.Factory<Recording, Recording> getRecordingsDataSourceFactory() {
+        return new RecordingsDataSource.Factory(appDatabase);
+    }
+
+    @Override
+    public DataSource.Factory<Integer, Recording> searchRecordings(String query) {
+        checkNotNull(query);
+        return new RecordingsSearchDataSource.Factory(appDatabase, query);
+    }
+
     @Override
     public void getRecordingsCount(GetRecordingsCountCallback callback) {
         Runnable runnable = () -> {
@@ -148,73 +236,169 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
             appExecutors.mainThread().execute(() -> callback.recordingsCount(count));
         };
 
-        appExecutors.diskIO().execute(runnable);
+        appExecutors.diskRead().execute(runnable);
+    }
+
+    @Override
+    public void checkpointRecording(String path, long length) {
+        checkNotNull(path);
+        mutationBatcher.submit(() -> recordingsDao.checkpointRecording(path, length) > 0, false, null);
+    }
+
+    /*
+        Updates the journal entry with the same path. If it doesn't exist (i.e. a segment
+        finalized before its journal entry was inserted) the recording is inserted.
+     */
+    @Override
+    public void finishRecording(Recording recording, OperationResult callback) {
+        checkNotNull(recording);
+        MutationBatcher.Mutation finish = () -> {
+            long num = recordingsDao.finishRecording(recording.getPath(), recording.getLength(), recording.getTimeAdded());
+            if (num == 0)
+                num = recordingsDao.insertRecording(recording);
+            return num > 0;
+        };
+        mutationBatcher.submit(finish, false, callback);
+    }
+
+    @Override
+    public void discardRecording(String path) {
+        checkNotNull(path);
+        mutationBatcher.submit(() -> recordingsDao.discardRecording(path) > 0, false, null);
+    }
+
+    /*
+        Called when the UI is opened, runs once per process. before is the start of the process:
+        the files modified after it may be recordings of this process (see RecordingsRecovery).
+     */
+    @Override
+    public void recoverUnfinishedRecordings(Context context, long before) {
+        if (!recoveryStarted.compareAndSet(false, true)) return;
+
+        File directory = new File(Utils.getDirectoryPath(context));
+        Runnable recoverRunnable = () -> {
+            RecordingsRecovery recovery = new RecordingsRecovery(recordingsDao, RecordingsRecovery::readDurationMs);
+            RecordingsRecovery.Result result = recovery.recover(directory, before);
+            if (result.recovered + result.damaged + result.removed + result.registered > 0) {
+                Log.i(TAG, CLASS_NAME + " - recoverUnfinishedRecordings(): recovered=" + result.recovered
+                        + " damaged=" + result.damaged + " removed=" + result.removed + " registered=" + result.registered);
+            }
+        };
+        mutationBatcher.execute(recoverRunnable);
     }
 
     // Table "scheduled_recordings".
     @Override
     public void insertScheduledRecording(ScheduledRecording recording, OperationResult callback) {
         checkNotNull(recording);
-        Runnable insertRunnable = () -> {
+        MutationBatcher.Mutation insert = () -> {
             long id = recordingsDao.insertScheduledRecording(recording);
+            if (id > 0 && scheduleIndexLoaded)
+                scheduleIndex.put((int) id, recording.getStart(), recording.getEnd());
+            return id > 0;
+        };
+        mutationBatcher.submit(insert, true, callback);
+    }
 
+    /*
+        Reads a CSV or iCalendar file (see ScheduleImporter) and inserts the accepted recordings
+        with a single transaction. The stream is closed.
+     */
+    @Override
+    public void importScheduledRecordings(InputStream inputStream, ImportScheduledRecordingsCallback callback) {
+        checkNotNull(inputStream);
+        Runnable importRunnable = () -> {
+            ScheduleImporter.Report report = null;
+            try (Reader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"))) {
+                ScheduleImporter importer = new ScheduleImporter(getScheduleConflicts(), clock.currentTimeMillis(), TimeZone.getDefault());
+                report = importer.read(reader);
+
+                List<ScheduledRecording> accepted = report.getAccepted();
+                if (!accepted.isEmpty()) {
+                    long[] ids = recordingsDao.insertScheduledRecordings(accepted);
+                    for (int i = 0; i < ids.length; i++) {
+                        accepted.get(i).setId((int) ids[i]);
+                        scheduleIndex.put((int) ids[i], accepted.get(i).getStart(), accepted.get(i).getEnd());
+                    }
+                    notifyScheduleChanged();
+                }
+            } catch (IOException | RuntimeException e) { // RuntimeException: SQLiteException, the transaction is rolled back
+                Log.e(TAG, CLASS_NAME + " - importScheduledRecordings(): " + e.toString());
+                report = null;
+            }
+
+            final ScheduleImporter.Report result = report;
             appExecutors.mainThread().execute(() -> {
-                if (id > 0)
-                    callback.onSuccess();
+                if (result != null)
+                    callback.onSuccess(result);
                 else
                     callback.onFailure();
             });
         };
-        appExecutors.diskIO().execute(insertRunnable);
+        mutationBatcher.execute(importRunnable);
     }
 
     @Override
     public void updateScheduledRecordings(OperationResult callback, ScheduledRecording... recordings) {
         checkNotNull(recordings);
-        Runnable updateRunnable = () -> {
+        MutationBatcher.Mutation update = () -> {
             int num = recordingsDao.updateScheduledRecordings(recordings);
-
-            appExecutors.mainThread().execute(() -> {
-                if (num > 0)
-                    callback.onSuccess();
-                else
-                    callback.onFailure();
-            });
+            if (num == recordings.length) {
+                if (scheduleIndexLoaded) {
+                    for (ScheduledRecording recording : recordings)
+                        scheduleIndex.put(recording.getId(), recording.getStart(), recording.getEnd());
+                }
+            } else {
+                scheduleIndexLoaded = false; // some recordings don't exist anymore: reload
+            }
+            return num > 0;
         };
-        appExecutors.diskIO().execute(updateRunnable);
+        mutationBatcher.submit(update, true, callback);
     }
 
     @Override
     public void deleteScheduledRecording(ScheduledRecording recording, OperationResult callback) {
         checkNotNull(recording);
-        Runnable deleteRunnable = () -> {
+        MutationBatcher.Mutation delete = () -> {
             int num = recordingsDao.deleteScheduledRecording(recording);
-
-            appExecutors.mainThread().execute(() -> {
-                if (callback == null) return;
-
-                if (num > 0)
-                    callback.onSuccess();
-                else
-                    callback.onFailure();
-            });
+            if (num > 0)
+                scheduleIndex.remove(recording.getId());
+            return num > 0;
         };
-        appExecutors.diskIO().execute(deleteRunnable);
+        mutationBatcher.submit(delete, true, callback);
     }
 
     @Override
     public void deleteAllScheduledRecordings() {
         Runnable deleteRunnable = () -> {
             recordingsDao.deleteAllScheduledRecordings();
+            recordingsDao.deleteAllRecurrenceRules();
+            scheduleIndex.clear();
+            scheduleIndexLoaded = true;
+            notifyScheduleChanged();
         };
 
-        appExecutors.diskIO().execute(deleteRunnable);
+        mutationBatcher.execute(deleteRunnable);
     }
 
     @Override
     public void deleteOldScheduledRecordings(long time, OperationResult callback) {
         Runnable deleteRunnable = () -> {
-            recordingsDao.deleteOldScheduledRecordings(time);
+            // Recordings still in the table have never been started: their alarm was not delivered.
+            List<ScheduleExecution> missed = new ArrayList<>();
+            for (ScheduledRecording recording : recordingsDao.getOldScheduledRecordings(time)) {
+                ScheduleExecution execution = new ScheduleExecution(recording);
+                execution.skip(ScheduleExecution.OUTCOME_MISSED, ScheduleExecution.REASON_ALARM_NOT_DELIVERED);
+                missed.add(execution);
+            }
+            if (!missed.isEmpty())
+                recordingsDao.insertScheduleExecutions(missed);
+            recordingsDao.deleteOldScheduleExecutions(time - RecordingsContract.EXECUTIONS_RETENTION);
+
+            if (recordingsDao.deleteOldScheduledRecordings(time) > 0) {
+                scheduleIndexLoaded = false;
+                notifyScheduleChanged();
+            }
 
             appExecutors.mainThread().execute(() -> {
                 if (callback == null) return;
@@ -222,7 +406,7 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
                 callback.onSuccess();
             });
         };
-        appExecutors.diskIO().execute(deleteRunnable);
+        mutationBatcher.execute(deleteRunnable);
     }
 
     @Override
@@ -239,7 +423,7 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
             });
         };
 
-        appExecutors.diskIO().execute(runnable);
+        appExecutors.diskRead().execute(runnable);
     }
 
     @Override
@@ -247,6 +431,11 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
         return recordingsDao.getAllScheduledRecordings();
     }
 
+    @Override
+    public LiveData<List<ScheduledRecording>> getScheduledRecordingsInRange(long from, long to) {
+        return recordingsDao.getScheduledRecordingsInRange(from, to);
+    }
+
     @Override
     public void getScheduledRecordingsCount(GetRecordingsCountCallback callback) {
         Runnable runnable = () -> {
@@ -255,7 +444,7 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
             appExecutors.mainThread().execute(() -> callback.recordingsCount(count));
         };
 
-        appExecutors.diskIO().execute(runnable);
+        appExecutors.diskRead().execute(runnable);
     }
 
     @Override
@@ -272,18 +461,309 @@ public class RecordingsRepository implements RecordingsRepositoryInterface {
             });
         };
 
-        appExecutors.diskIO().execute(runnable);
+        appExecutors.diskRead().execute(runnable);
     }
 
+    /*
+        The occurrences of the rules are counted too, except the ones of the rule of the
+        recording being edited (exceptId): the rule restarts from it or is deleted.
+     */
     @Override
     public void getNumRecordingsAlreadyScheduled(long start, long end, int exceptId, GetRecordingsCountCallback callback) {
         Runnable runnable = () -> {
-            final int count = recordingsDao.getNumRecordingsAlreadyScheduled(start, end, exceptId);
+            final int count = getScheduleConflicts().countOverlapping(start, end, exceptId, getRuleId(exceptId));
 
             appExecutors.mainThread().execute(() -> callback.recordingsCount(count));
         };
 
-        appExecutors.diskIO().execute(runnable);
+        mutationBatcher.execute(runnable);
+    }
+
+    @Override
+    public void getOverlappingScheduledRecordings(long start, long end, int exceptId, GetScheduledRecordingsCallback callback) {
+        Runnable runnable = () -> {
+            List<Integer> ids = getScheduleIndex().getOverlapping(start, end, exceptId);
+            final List<ScheduledRecording> recordings = ids.isEmpty() ? new ArrayList<>() : recordingsDao.getScheduledRecordingsByIds(ids);
+            List<ScheduledRecording> occurrences = getScheduleConflicts().getRuleOccurrences(start, end, getRuleId(exceptId));
+            if (!occurrences.isEmpty()) {
+                recordings.addAll(occurrences);
+                Collections.sort(recordings);
+            }
+
+            appExecutors.mainThread().execute(() -> callback.onSuccess(recordings));
+        };
+
+        mutationBatcher.execute(runnable);
+    }
+
+    // First time >= after when a recording of the given length doesn't overlap the others.
+    @Override
+    public void findFreeScheduleSlot(long after, long length, GetFreeSlotCallback callback) {
+        Runnable runnable = () -> {
+            final long start = getScheduleConflicts().findFreeSlot(after, length);
+
+            appExecutors.mainThread().execute(() -> callback.freeSlot(start));
+        };
+
+        mutationBatcher.execute(runnable);
+    }
+
+    // Table "recurrence_rules".
+
+    /*
+        The rule isn't saved (onFailure()) if one of its occurrences would overlap the schedule
+        (see ScheduleConflicts.overlaps()).
+     */
+    @Override
+    public void insertRecurrenceRule(RecurrenceRule rule, int exceptId, OperationResult callback) {
+        checkNotNull(rule);
+        Runnable insertRunnable = () -> {
+            long id = overlapsSchedule(rule, exceptId) ? 0 : recordingsDao.insertRecurrenceRule(rule);
+            if (id > 0) {
+                rule.setId((int) id);
+                notifyScheduleChanged(); // the first occurrence must be scheduled
+            }
+
+            appExecutors.mainThread().execute(() -> {
+                if (id > 0)
+                    callback.onSuccess();
+                else
+                    callback.onFailure();
+            });
+        };
+        mutationBatcher.execute(insertRunnable);
+    }
+
+    @Override
+    public void updateRecurrenceRule(RecurrenceRule rule, int exceptId, OperationResult callback) {
+        checkNotNull(rule);
+        Runnable updateRunnable = () -> {
+            int num = overlapsSchedule(rule, exceptId) ? 0 : recordingsDao.updateRecurrenceRule(rule);
+            if (num > 0) notifyScheduleChanged();
+
+            appExecutors.mainThread().execute(() -> {
+                if (num > 0)
+                    callback.onSuccess();
+                else
+                    callback.onFailure();
+            });
+        };
+        mutationBatcher.execute(updateRunnable);
+    }
+
+    // The occurrence already scheduled (if any) is kept as a single recording.
+    @Override
+    public void deleteRecurrenceRule(int ruleId, OperationResult callback) {
+        Runnable deleteRunnable = () -> {
+            recordingsDao.detachScheduledRecordings(ruleId);
+            int num = recordingsDao.deleteRecurrenceRule(ruleId);
+            if (num > 0) notifyScheduleChanged();
+
+            appExecutors.mainThread().execute(() -> {
+                if (callback == null) return;
+
+                if (num > 0)
+                    callback.onSuccess();
+                else
+                    callback.onFailure();
+            });
+        };
+        mutationBatcher.execute(deleteRunnable);
+    }
+
+    @Override
+    public void getRecurrenceRuleById(int id, GetRecurrenceRuleCallback callback) {
+        Runnable runnable = () -> {
+            final RecurrenceRule rule = recordingsDao.getRecurrenceRuleById(id);
+
+            appExecutors.mainThread().execute(() -> {
+                if (rule != null) {
+                    callback.onSuccess(rule);
+                } else {
+                    callback.onFailure();
+                }
+            });
+        };
+
+        appExecutors.diskRead().execute(runnable);
+    }
+
+    @Override
+    public LiveData<List<RecurrenceRule>> getAllRecurrenceRules() {
+        return recordingsDao.getAllRecurrenceRules();
     }
 
+    // skipped = true to delete a single occurrence, false to restore it.
+    @Override
+    public void setRecurrenceException(int ruleId, long occurrenceStart, boolean skipped, OperationResult callback) {
+        Runnable updateRunnable = () -> {
+            RecurrenceRule rule = recordingsDao.getRecurrenceRuleById(ruleId);
+            int num = 0;
+            if (rule != null) {
+                if (skipped)
+                    rule.addException(occurrenceStart);
+                else
+                    rule.removeException(occurrenceStart);
+                num = recordingsDao.updateRecurrenceRule(rule);
+            }
+            if (num > 0) notifyScheduleChanged();
+
+            final int result = num;
+            appExecutors.mainThread().execute(() -> {
+                if (callback == null) return;
+
+                if (result > 0)
+                    callback.onSuccess();
+                else
+                    callback.onFailure();
+            });
+        };
+        mutationBatcher.execute(updateRunnable);
+    }
+
+    /*
+        Copies in "scheduled_recordings" the next occurrence (starting at or after time) of the
+        rules that don't have one yet. Called by RecordingScheduler before setting the next
+        alarm: the table contains only one row per rule, however long the rule is. Rules
+        without other occurrences are deleted.
+     */
+    @Override
+    public void expandRecurrenceRules(long time, OperationResult callback) {
+        Runnable expandRunnable = () -> {
+            boolean changed = false;
+            for (RecurrenceRule rule : recordingsDao.getRecurrenceRules()) {
+                if (recordingsDao.getScheduledRecordingsCountByRule(rule.getId()) > 0) continue;
+
+                changed = true;
+                RecurrenceIterator iterator = new RecurrenceIterator(rule, Math.max(time, rule.getExpandedUntil() + 1), TimeZone.getDefault());
+                if (!iterator.hasNext()) {
+                    recordingsDao.deleteRecurrenceRule(rule.getId());
+                    continue;
+                }
+
+                ScheduledRecording occurrence = iterator.next();
+                long id = recordingsDao.insertScheduledRecording(occurrence);
+                if (id > 0 && scheduleIndexLoaded)
+                    scheduleIndex.put((int) id, occurrence.getStart(), occurrence.getEnd());
+                rule.setExpandedUntil(occurrence.getStart());
+                recordingsDao.updateRecurrenceRule(rule);
+            }
+            if (changed) notifyScheduleChanged();
+
+            appExecutors.mainThread().execute(() -> {
+                if (callback == null) return;
+
+                callback.onSuccess();
+            });
+        };
+        mutationBatcher.execute(expandRunnable);
+    }
+
+    /*
+        Occurrences after the one the rule is created from (expandedUntil) or, for a new rule,
+        from now. Must be called on the diskIO thread.
+     */
+    private boolean overlapsSchedule(RecurrenceRule rule, int exceptId) {
+        long from = Math.max(clock.currentTimeMillis(), rule.getExpandedUntil() + 1);
+        return getScheduleConflicts().overlaps(rule, from, exceptId);
+    }
+
+    // Rule of the scheduled recording with the given id, 0 if none. Must be called on the diskIO thread.
+    private int getRuleId(int id) {
+        if (id <= 0) return 0;
+
+        ScheduledRecording recording = recordingsDao.getScheduledRecordingById(id);
+        return recording != null ? recording.getRuleId() : 0;
+    }
+
+    // The rules are read each time: they are few and change rarely. Must be called on the diskIO thread.
+    private ScheduleConflicts getScheduleConflicts() {
+        return new ScheduleConflicts(getScheduleIndex(), recordingsDao.getRecurrenceRules(), TimeZone.getDefault());
+    }
+
+    // Must be called on the diskIO thread.
+    private ScheduleIntervalTree getScheduleIndex() {
+        if (!scheduleIndexLoaded) {
+            scheduleIndex.clear();
+            for (ScheduledRecording recording : recordingsDao.getScheduledRecordingsEndingAfter(clock.currentTimeMillis())) {
+                scheduleIndex.put(recording.getId(), recording.getStart(), recording.getEnd());
+            }
+            scheduleIndexLoaded = true;
+        }
+        return scheduleIndex;
+    }
+
+
+    // Table "schedule_executions".
+
+    /*
+        Inserts the execution the first time, then updates it. Called again each time the
+        execution changes (the executor keeps the order).
+     */
+    @Override
+    public void saveScheduleExecution(ScheduleExecution execution) {
+        checkNotNull(execution);
+        mutationBatcher.submit(() -> {
+            if (execution.getId() == 0)
+                execution.setId((int) recordingsDao.insertScheduleExecution(execution));
+            else
+                recordingsDao.updateScheduleExecution(execution);
+            return true;
+        }, false, null);
+    }
+
+    @Override
+    public void getStartLagPercentiles(long from, GetStartLagCallback callback) {
+        Runnable runnable = () -> {
+            Long p50 = recordingsDao.getStartLagPercentile(from, 50);
+            Long p95 = recordingsDao.getStartLagPercentile(from, 95);
+            Long p99 = recordingsDao.getStartLagPercentile(from, 99);
+
+            appExecutors.mainThread().execute(() -> {
+                if (p50 != null && p95 != null && p99 != null)
+                    callback.onSuccess(p50, p95, p99);
+                else
+                    callback.onFailure();
+            });
+        };
+        appExecutors.diskRead().execute(runnable);
+    }
+
+    @Override
+    public void getDailyMissRates(long from, GetDailyMissRatesCallback callback) {
+        Runnable runnable = () -> {
+            List<DailyMissRate> missRates = recordingsDao.getDailyMissRates(from, clock.currentTimeMillis());
+
+            appExecutors.mainThread().execute(() -> callback.onSuccess(missRates));
+        };
+        appExecutors.diskRead().execute(runnable);
+    }
+
+    // Writes all the executions in a CSV file (see ScheduleExecution.CSV_HEADER).
+    @Override
+    public void exportScheduleExecutions(File file, OperationResult callback) {
+        checkNotNull(file);
+        Runnable exportRunnable = () -> {
+            boolean success = true;
+            try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+                writer.println(ScheduleExecution.CSV_HEADER);
+                for (ScheduleExecution execution : recordingsDao.getScheduleExecutions()) {
+                    writer.println(execution.toCsv());
+                }
+                success = !writer.checkError();
+            } catch (IOException e) {
+                Log.e(TAG, CLASS_NAME + " - exportScheduleExecutions(): " + e.toString());
+                success = false;
+            }
+
+            final boolean result = success;
+            appExecutors.mainThread().execute(() -> {
+                if (result)
+                    callback.onSuccess();
+                else
+                    callback.onFailure();
+            });
+        };
+        appExecutors.diskRead().execute(exportRunnable);
+    }
 }
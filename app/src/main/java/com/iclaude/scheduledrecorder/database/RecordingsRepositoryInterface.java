@@ -6,8 +6,14 @@
 package com.iclaude.scheduledrecorder.database;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.paging.DataSource;
 import android.content.Context;
+import android.support.annotation.Nullable;
 
+import com.iclaude.scheduledrecorder.utils.DiskIOThreadExecutor;
+
+import java.io.File;
+import java.io.InputStream;
 import java.util.List;
 
 public interface RecordingsRepositoryInterface {
@@ -22,6 +28,20 @@ public interface RecordingsRepositoryInterface {
         void recordingsCount(int count);
     }
 
+    // Scheduled recordings or recurrence rules changed (called on a background thread).
+    interface OnScheduleChangedListener {
+        void onScheduleChanged();
+    }
+
+    void setOnScheduleChangedListener(OnScheduleChangedListener listener);
+
+    // Null if the executors don't keep counters (tests).
+    @Nullable
+    DiskIOThreadExecutor.Stats getDiskReadStats();
+
+    @Nullable
+    DiskIOThreadExecutor.Stats getDiskWriteStats();
+
     // Table "saved_recordings".
 
     interface GetRecordingCallback {
@@ -36,14 +56,37 @@ public interface RecordingsRepositoryInterface {
 
     void deleteRecording(Recording recording, OperationResult callback);
 
+    interface DeleteRecordingsCallback {
+        void onResult(List<Recording> deleted, List<Recording> failed);
+    }
+
+    // Deletes the files and then the rows with one transaction (see RecordingsBulkDelete).
+    void deleteRecordings(List<Recording> recordings, DeleteRecordingsCallback callback);
+
     void deleteAllRecordings();
 
     void getRecordingById(int id, GetRecordingCallback callback);
 
     LiveData<List<Recording>> getAllRecordings();
 
+    // Saved recordings newest first, a page at a time (see RecordingsDataSource).
+    DataSource.Factory<Recording, Recording> getRecordingsDataSourceFactory();
+
+    // Saved recordings whose name matches the search (see RecordingsSearchDataSource).
+    DataSource.Factory<Integer, Recording> searchRecordings(String query);
+
     void getRecordingsCount(GetRecordingsCountCallback callback);
 
+    // Journal of the recordings in progress.
+    void checkpointRecording(String path, long length);
+
+    void finishRecording(Recording recording, OperationResult callback);
+
+    // The file in progress was empty and has been deleted.
+    void discardRecording(String path);
+
+    void recoverUnfinishedRecordings(Context context, long before);
+
     // Table "scheduled_recordings".
 
     interface GetScheduledRecordingCallback {
@@ -58,8 +101,20 @@ public interface RecordingsRepositoryInterface {
         void onFailure();
     }
 
+    interface GetFreeSlotCallback {
+        void freeSlot(long start);
+    }
+
+    interface ImportScheduledRecordingsCallback {
+        void onSuccess(ScheduleImporter.Report report);
+
+        void onFailure(); // the file can't be read or the recordings can't be saved
+    }
+
     void insertScheduledRecording(ScheduledRecording recording, OperationResult callback);
 
+    void importScheduledRecordings(InputStream inputStream, ImportScheduledRecordingsCallback callback);
+
     void updateScheduledRecordings(OperationResult callback, ScheduledRecording... recordings);
 
     void deleteScheduledRecording(ScheduledRecording recording, OperationResult callback);
@@ -72,10 +127,60 @@ public interface RecordingsRepositoryInterface {
 
     LiveData<List<ScheduledRecording>> getAllScheduledRecordings();
 
+    // Scheduled recordings overlapping the interval from "from" (inclusive) to "to" (exclusive), ordered by start.
+    LiveData<List<ScheduledRecording>> getScheduledRecordingsInRange(long from, long to);
+
     void getScheduledRecordingsCount(GetRecordingsCountCallback callback);
 
     void getNextScheduledRecording(GetScheduledRecordingCallback callback);
 
     void getNumRecordingsAlreadyScheduled(long start, long end, int exceptId, GetRecordingsCountCallback callback);
 
+    void getOverlappingScheduledRecordings(long start, long end, int exceptId, GetScheduledRecordingsCallback callback);
+
+    void findFreeScheduleSlot(long after, long length, GetFreeSlotCallback callback);
+
+    // Table "recurrence_rules".
+
+    interface GetRecurrenceRuleCallback {
+        void onSuccess(RecurrenceRule rule);
+
+        void onFailure();
+    }
+
+    // Fail if an occurrence overlaps the schedule. exceptId: recording the rule is created from, ignored.
+    void insertRecurrenceRule(RecurrenceRule rule, int exceptId, OperationResult callback);
+
+    void updateRecurrenceRule(RecurrenceRule rule, int exceptId, OperationResult callback);
+
+    void deleteRecurrenceRule(int ruleId, OperationResult callback);
+
+    void getRecurrenceRuleById(int id, GetRecurrenceRuleCallback callback);
+
+    LiveData<List<RecurrenceRule>> getAllRecurrenceRules();
+
+    void setRecurrenceException(int ruleId, long occurrenceStart, boolean skipped, OperationResult callback);
+
+    void expandRecurrenceRules(long time, OperationResult callback);
+
+    // Table "schedule_executions".
+
+    interface GetStartLagCallback {
+        void onSuccess(long p50, long p95, long p99);
+
+        void onFailure(); // no recordings started
+    }
+
+    interface GetDailyMissRatesCallback {
+        void onSuccess(List<DailyMissRate> missRates);
+    }
+
+    void saveScheduleExecution(ScheduleExecution execution);
+
+    void getStartLagPercentiles(long from, GetStartLagCallback callback);
+
+    void getDailyMissRates(long from, GetDailyMissRatesCallback callback);
+
+    void exportScheduleExecutions(File file, OperationResult callback);
+
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.paging.DataSource;
+import android.arch.paging.PositionalDataSource;
+import android.arch.persistence.room.InvalidationTracker;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pages of the saved recordings whose name matches a search, for the file viewer.
+ * The search uses the full-text index saved_recordings_fts (see
+ * AppDatabase.createSearchIndex()), so its cost depends on the number of matches, not of
+ * recordings. Every word of the search is a prefix (e.g. "inter 12" finds "Interview 12 may")
+ * and all of them must match. Matches are ranked: names starting with the search first, then
+ * newest first.
+ * Room 1.0 can't check queries on virtual tables, so they're run with RoomDatabase.query().
+ * The data source is invalidated when table "saved_recordings" changes (the triggers update
+ * the index in the same transaction).
+ */
+public class RecordingsSearchDataSource extends PositionalDataSource<Recording> {
+
+    public static class Factory extends DataSource.Factory<Integer, Recording> {
+        private final AppDatabase database;
+        private final String query;
+
+        public Factory(AppDatabase database, String query) {
+            this.database = database;
+            this.query = query;
+        }
+
+        @Override
+        public DataSource<Integer, Recording> create() {
+            return new RecordingsSearchDataSource(database, query);
+        }
+    }
+
+    private static final String FROM_MATCHES = " FROM saved_recordings_fts JOIN saved_recordings s ON s.id = saved_recordings_fts.docid"
+            + " WHERE saved_recordings_fts MATCH ? AND s.in_progress = 0";
+
+    private final AppDatabase database;
+    private final String matchQuery; // null: nothing to search
+    private final String prefixPattern;
+
+
+    public RecordingsSearchDataSource(AppDatabase database, String query) {
+        this.database = database;
+        this.matchQuery = toMatchQuery(query);
+        this.prefixPattern = escapeLike(query.trim()) + "%";
+
+        InvalidationTracker.Observer observer = new InvalidationTracker.Observer("saved_recordings") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        database.getInvalidationTracker().addObserver(observer);
+        addInvalidatedCallback(() -> database.getInvalidationTracker().removeObserver(observer));
+    }
+
+    // Count and first page are read in the same transaction.
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams params, @NonNull LoadInitialCallback<Recording> callback) {
+        List<Recording> recordings;
+        int position;
+        int count;
+        database.beginTransaction();
+        try {
+            count = countMatches();
+            position = computeInitialLoadPosition(params, count);
+            recordings = loadMatches(position, computeInitialLoadSize(params, position, count));
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (params.placeholdersEnabled)
+            callback.onResult(recordings, position, count);
+        else
+            callback.onResult(recordings, position);
+    }
+
+    @Override
+    public void loadRange(@NonNull LoadRangeParams params, @NonNull LoadRangeCallback<Recording> callback) {
+        callback.onResult(loadMatches(params.startPosition, params.loadSize));
+    }
+
+    int countMatches() {
+        if (matchQuery == null) return 0;
+
+        try (Cursor cursor = database.query("SELECT COUNT(*)" + FROM_MATCHES, new Object[]{matchQuery})) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    List<Recording> loadMatches(int offset, int limit) {
+        if (matchQuery == null || limit <= 0) return Collections.emptyList();
+
+        String sql = "SELECT s.*" + FROM_MATCHES
+                + " ORDER BY CASE WHEN s.recording_name LIKE ? ESCAPE '\\' THEN 0 ELSE 1 END, s.time_added DESC, s.id DESC"
+                + " LIMIT ? OFFSET ?";
+        try (Cursor cursor = database.query(sql, new Object[]{matchQuery, prefixPattern, limit, offset})) {
+            List<Recording> recordings = new ArrayList<>(cursor.getCount());
+            int id = cursor.getColumnIndexOrThrow("id");
+            int name = cursor.getColumnIndexOrThrow("recording_name");
+            int path = cursor.getColumnIndexOrThrow("file_path");
+            int length = cursor.getColumnIndexOrThrow("length");
+            int timeAdded = cursor.getColumnIndexOrThrow("time_added");
+            int sessionId = cursor.getColumnIndexOrThrow("session_id");
+            int segmentIndex = cursor.getColumnIndexOrThrow("segment_index");
+            while (cursor.moveToNext()) {
+                Recording recording = new Recording(cursor.getInt(id), cursor.getString(name), cursor.getString(path),
+                        cursor.getLong(length), cursor.getLong(timeAdded));
+                recording.setSessionId(cursor.getLong(sessionId));
+                recording.setSegmentIndex(cursor.getInt(segmentIndex));
+                recordings.add(recording);
+            }
+            return recordings;
+        }
+    }
+
+    /*
+        The words of the search (letters and digits), each one as a prefix: "rec-12" ->
+        "rec* 12*". Everything else is a separator, so the search can't contain FTS syntax
+        (ASCII letters are lowercase, as in the index: "OR" isn't an operator).
+        Null if there are no words.
+     */
+    @VisibleForTesting
+    @Nullable
+    static String toMatchQuery(String query) {
+        StringBuilder match = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c < 128 ? Character.toLowerCase(c) : c);
+            } else if (word.length() > 0) {
+                if (match.length() > 0) match.append(' ');
+                match.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    @VisibleForTesting
+    static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Lazily expands the occurrences of a RecurrenceRule that start at or after a given time, in
+ * chronological order. Each occurrence is returned as a new ScheduledRecording (id = 0,
+ * rule_id = id of the rule).
+ * Occurrences are computed on the calendar of the time zone, so they keep the same local time
+ * across daylight saving changes. The first occurrence is found in constant time (no expansion
+ * from the start of the rule), even when the number of occurrences is limited (count).
+ * Exceptions count as occurrences (they are skipped after the count is applied).
+ */
+public class RecurrenceIterator implements Iterator<ScheduledRecording> {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+
+    private final RecurrenceRule rule;
+    private final long from;
+    private final Set<Long> exceptions;
+    private final Calendar calendar;
+    private final int interval;
+    private final int weekdays; // weekly rules only
+    private final int firstWeekday; // 0 = Monday, ..., 6 = Sunday
+    private int day; // days from the first occurrence
+    private ScheduledRecording next = null;
+
+
+    public RecurrenceIterator(RecurrenceRule rule, long from, TimeZone timeZone) {
+        this.rule = rule;
+        this.from = from;
+        exceptions = rule.getExceptionTimes();
+        calendar = new GregorianCalendar(timeZone);
+        calendar.setTimeInMillis(rule.getStart());
+        interval = Math.max(1, rule.getInterval());
+        firstWeekday = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        weekdays = rule.getWeekdays() != 0 ? rule.getWeekdays() & 0x7F : 1 << firstWeekday;
+
+        // Skip the days before "from" (one day earlier, because of daylight saving changes).
+        day = (int) Math.max(0, (from - rule.getStart()) / DAY_MS - 1);
+        next = findNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public ScheduledRecording next() {
+        if (next == null) throw new NoSuchElementException();
+
+        ScheduledRecording occurrence = next;
+        day++;
+        next = findNext();
+        return occurrence;
+    }
+
+    private ScheduledRecording findNext() {
+        while (true) {
+            if (!isOccurrence(day)) {
+                day = nextCandidate(day);
+                continue;
+            }
+
+            if (rule.getCount() > 0 && countBefore(day) >= rule.getCount()) return null;
+            long start = getStart(day);
+            if (rule.getUntil() > 0 && start > rule.getUntil()) return null;
+            if (start >= from && !exceptions.contains(start)) {
+                ScheduledRecording occurrence = new ScheduledRecording(start, start + rule.getDuration());
+                occurrence.setRuleId(rule.getId());
+                occurrence.setProfile(rule.getProfile());
+                return occurrence;
+            }
+            day++;
+        }
+    }
+
+    private boolean isOccurrence(int day) {
+        if (rule.getFrequency() == RecurrenceRule.FREQUENCY_DAILY)
+            return day % interval == 0;
+
+        int position = day + firstWeekday; // days from the Monday of the first week
+        return (position / 7) % interval == 0 && (weekdays & (1 << (position % 7))) != 0;
+    }
+
+    // First day after "day" that can be an occurrence.
+    private int nextCandidate(int day) {
+        if (rule.getFrequency() == RecurrenceRule.FREQUENCY_DAILY)
+            return (day / interval + 1) * interval;
+
+        int position = day + firstWeekday;
+        int week = position / 7;
+        if (week % interval != 0) // jump to the next repeated week
+            return (week / interval + 1) * interval * 7 - firstWeekday;
+        return day + 1;
+    }
+
+    // Number of occurrences before "day".
+    private int countBefore(int day) {
+        if (rule.getFrequency() == RecurrenceRule.FREQUENCY_DAILY)
+            return (day + interval - 1) / interval;
+
+        int position = day + firstWeekday;
+        int week = position / 7;
+        int perWeek = Integer.bitCount(weekdays);
+        int firstWeek = Integer.bitCount(weekdays >> firstWeekday); // the days before the first one don't count
+        if (week == 0)
+            return firstWeek - Integer.bitCount(weekdays >> position);
+
+        int count = firstWeek + ((week - 1) / interval) * perWeek;
+        if (week % interval == 0)
+            count += Integer.bitCount(weekdays & ((1 << (position % 7)) - 1));
+        return count;
+    }
+
+    private long getStart(int day) {
+        Calendar cal = (Calendar) calendar.clone();
+        cal.add(Calendar.DAY_OF_MONTH, day);
+        return cal.getTimeInMillis();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Table "recurrence_rules".
+ * A recording repeated daily or weekly. Only its next occurrence is stored in
+ * "scheduled_recordings" (with rule_id = id of the rule), the others are computed when needed
+ * by RecurrenceIterator.
+ */
+
+@Entity(tableName = "recurrence_rules")
+public class RecurrenceRule {
+
+    public static final int FREQUENCY_DAILY = 0;
+    public static final int FREQUENCY_WEEKLY = 1;
+
+    // Bits of weekdays.
+    public static final int MONDAY = 1;
+    public static final int TUESDAY = 1 << 1;
+    public static final int WEDNESDAY = 1 << 2;
+    public static final int THURSDAY = 1 << 3;
+    public static final int FRIDAY = 1 << 4;
+    public static final int SATURDAY = 1 << 5;
+    public static final int SUNDAY = 1 << 6;
+    public static final int WORKING_DAYS = MONDAY | TUESDAY | WEDNESDAY | THURSDAY | FRIDAY;
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+
+    @ColumnInfo(name = "start_time")
+    private long start; // start of the first occurrence
+    private long duration;
+    private int frequency;
+    @ColumnInfo(name = "repeat_interval")
+    private int interval = 1; // every "interval" days or weeks
+    private int weekdays; // weekly rules: days of the week (bits above), 0 = day of the first occurrence
+    @ColumnInfo(name = "repeat_count")
+    private int count; // max number of occurrences, 0 = no limit
+    @ColumnInfo(name = "repeat_until")
+    private long until; // occurrences can't start after this time, 0 = no limit
+    @Nullable
+    private String exceptions; // start times of the deleted occurrences, comma separated
+    @Nullable
+    private String profile; // key of the RecordingProfile, null to use the one in the settings
+    @ColumnInfo(name = "expanded_until")
+    private long expandedUntil; // start of the last occurrence copied in "scheduled_recordings"
+
+    // Constructor for an existing rule (it already has an id).
+    public RecurrenceRule(int id, long start, long duration, int frequency) {
+        this.id = id;
+        this.start = start;
+        this.duration = duration;
+        this.frequency = frequency;
+    }
+
+    // Constructor to create a new rule.
+    @Ignore
+    public RecurrenceRule(long start, long duration, int frequency) {
+        this.start = start;
+        this.duration = duration;
+        this.frequency = frequency;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public int getFrequency() {
+        return frequency;
+    }
+
+    public void setFrequency(int frequency) {
+        this.frequency = frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = Math.max(1, interval);
+    }
+
+    public int getWeekdays() {
+        return weekdays;
+    }
+
+    public void setWeekdays(int weekdays) {
+        this.weekdays = weekdays;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public long getUntil() {
+        return until;
+    }
+
+    public void setUntil(long until) {
+        this.until = until;
+    }
+
+    @Nullable
+    public String getExceptions() {
+        return exceptions;
+    }
+
+    public void setExceptions(@Nullable String exceptions) {
+        this.exceptions = exceptions;
+    }
+
+    @Nullable
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(@Nullable String profile) {
+        this.profile = profile;
+    }
+
+    public long getExpandedUntil() {
+        return expandedUntil;
+    }
+
+    public void setExpandedUntil(long expandedUntil) {
+        this.expandedUntil = expandedUntil;
+    }
+
+    public Set<Long> getExceptionTimes() {
+        Set<Long> times = new HashSet<>();
+        if (exceptions == null || exceptions.isEmpty()) return times;
+
+        for (String time : exceptions.split(",")) {
+            times.add(Long.parseLong(time));
+        }
+        return times;
+    }
+
+    // The occurrence starting at this time is skipped.
+    public void addException(long occurrenceStart) {
+        if (getExceptionTimes().contains(occurrenceStart)) return;
+
+        exceptions = exceptions == null || exceptions.isEmpty() ? String.valueOf(occurrenceStart) : exceptions + "," + occurrenceStart;
+    }
+
+    public void removeException(long occurrenceStart) {
+        StringBuilder builder = new StringBuilder();
+        for (Long time : getExceptionTimes()) {
+            if (time == occurrenceStart) continue;
+
+            if (builder.length() > 0) builder.append(',');
+            builder.append(time);
+        }
+        exceptions = builder.length() > 0 ? builder.toString() : null;
+    }
+}
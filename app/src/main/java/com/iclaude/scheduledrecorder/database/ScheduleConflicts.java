@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Conflicts with the whole schedule: the recordings of "scheduled_recordings" (the
+ * ScheduleIntervalTree of RecordingsRepository) and the occurrences of the recurrence rules not
+ * copied in the table yet (only the next one of each rule is, see
+ * RecordingsRepository.expandRecurrenceRules()). The occurrences are expanded with
+ * RecurrenceIterator only over the interval checked, from its start.
+ * The occurrences of a rule are checked for RULE_HORIZON: a rule without an end repeats
+ * forever, but two rules that repeat at most every few weeks clash well before.
+ * Same rules as ScheduleIntervalTree: intervals are half-open, it's not thread-safe.
+ */
+public class ScheduleConflicts {
+
+    public static final long RULE_HORIZON = 366L * 24 * 60 * 60 * 1000;
+
+    private final ScheduleIntervalTree schedule;
+    private final List<RecurrenceRule> rules;
+    private final TimeZone timeZone;
+
+
+    // schedule and rules are read only.
+    public ScheduleConflicts(ScheduleIntervalTree schedule, List<RecurrenceRule> rules, TimeZone timeZone) {
+        this.schedule = schedule;
+        this.rules = rules;
+        this.timeZone = timeZone;
+    }
+
+    /*
+        Occurrences of the rules not in the table yet (id = 0) that overlap [start, end),
+        ordered by rule. The rule with id = exceptRuleId is ignored (i.e. the one being edited).
+     */
+    public List<ScheduledRecording> getRuleOccurrences(long start, long end, int exceptRuleId) {
+        List<ScheduledRecording> occurrences = new ArrayList<>();
+        for (RecurrenceRule rule : rules) {
+            if (exceptRuleId != 0 && rule.getId() == exceptRuleId) continue;
+
+            // The ones starting up to expandedUntil are in the table, or already started.
+            long from = Math.max(start - rule.getDuration() + 1, rule.getExpandedUntil() + 1);
+            RecurrenceIterator iterator = new RecurrenceIterator(rule, from, timeZone);
+            while (iterator.hasNext()) {
+                ScheduledRecording occurrence = iterator.next();
+                if (occurrence.getStart() >= end) break;
+
+                occurrences.add(occurrence);
+            }
+        }
+        return occurrences;
+    }
+
+    // Recording with id = exceptId and rule with id = exceptRuleId are ignored.
+    public int countOverlapping(long start, long end, int exceptId, int exceptRuleId) {
+        return schedule.getOverlapping(start, end, exceptId).size() + getRuleOccurrences(start, end, exceptRuleId).size();
+    }
+
+    public boolean overlaps(long start, long end, int exceptId, int exceptRuleId) {
+        return schedule.overlaps(start, end, exceptId) || !getRuleOccurrences(start, end, exceptRuleId).isEmpty();
+    }
+
+    /*
+        Whether an occurrence of the rule starting in [from, from + RULE_HORIZON) overlaps the
+        schedule or an occurrence of the other rules. Recording with id = exceptId is ignored
+        (i.e. the one the rule is created from).
+     */
+    public boolean overlaps(RecurrenceRule rule, long from, int exceptId) {
+        RecurrenceIterator iterator = new RecurrenceIterator(rule, from, timeZone);
+        while (iterator.hasNext()) {
+            ScheduledRecording occurrence = iterator.next();
+            if (occurrence.getStart() >= from + RULE_HORIZON) break;
+
+            if (overlaps(occurrence.getStart(), occurrence.getEnd(), exceptId, rule.getId())) return true;
+        }
+        return false;
+    }
+
+    /*
+        First time >= after when a recording of the given length doesn't overlap the schedule
+        nor the occurrences of the rules (checked up to RULE_HORIZON after "after").
+     */
+    public long findFreeSlot(long after, long length) {
+        long slot = schedule.findFreeSlot(after, length);
+        while (slot - after < RULE_HORIZON) {
+            long busyUntil = slot;
+            for (ScheduledRecording occurrence : getRuleOccurrences(slot, slot + length, 0)) {
+                busyUntil = Math.max(busyUntil, occurrence.getEnd());
+            }
+            if (busyUntil == slot) break;
+
+            slot = schedule.findFreeSlot(busyUntil, length);
+        }
+        return slot;
+    }
+}
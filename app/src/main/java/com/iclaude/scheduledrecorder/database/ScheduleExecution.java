@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * Table "schedule_executions".
+ * What happened to a scheduled recording: when its alarms were delivered, when the capture
+ * actually started and ended, and why it was skipped. Used to measure the start lag and the
+ * missed recordings (see RecordingsDao).
+ * Times are in ms from epoch, 0 = didn't happen.
+ */
+
+@Entity(tableName = "schedule_executions", indices = {@Index("intended_start")})
+public class ScheduleExecution {
+
+    // Outcomes.
+    public static final int OUTCOME_PENDING = 0; // started and not finished (or the app was killed)
+    public static final int OUTCOME_COMPLETED = 1;
+    public static final int OUTCOME_SKIPPED = 2;
+    public static final int OUTCOME_FAILED = 3; // the engine couldn't be started or failed while recording
+    public static final int OUTCOME_MISSED = 4; // the alarm was never delivered
+
+    // Reasons of OUTCOME_SKIPPED, OUTCOME_FAILED and OUTCOME_MISSED (REASON_HAND_OFF: of the others).
+    public static final int REASON_NONE = 0;
+    public static final int REASON_RECORDER_BUSY = 1;
+    public static final int REASON_NO_PERMISSIONS = 2;
+    public static final int REASON_END_PASSED = 3;
+    public static final int REASON_PREPARE_FAILED = 4;
+    public static final int REASON_CANCELLED = 5; // the Service was destroyed during the warm-up
+    public static final int REASON_ALARM_NOT_DELIVERED = 6;
+    public static final int REASON_ENGINE_ERROR = 7; // the encoder or the writer failed while recording
+    public static final int REASON_HAND_OFF = 8; // not skipped: started by the engine of the previous recording, not by its alarm
+
+    public static final String CSV_HEADER = "scheduled_id,intended_start,intended_end,warm_up_time,alarm_time,capture_start,actual_end,outcome,reason";
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+
+    @ColumnInfo(name = "scheduled_id")
+    private int scheduledId;
+    @ColumnInfo(name = "intended_start")
+    private long intendedStart;
+    @ColumnInfo(name = "intended_end")
+    private long intendedEnd;
+    @ColumnInfo(name = "warm_up_time")
+    private long warmUpTime; // delivery of the warm-up alarm
+    @ColumnInfo(name = "alarm_time")
+    private long alarmTime; // delivery of the alarm at the start time
+    @ColumnInfo(name = "capture_start")
+    private long captureStart;
+    @ColumnInfo(name = "actual_end")
+    private long actualEnd;
+    private int outcome;
+    private int reason;
+
+    // Constructor for an existing execution (it already has an id).
+    public ScheduleExecution(int id, int scheduledId, long intendedStart, long intendedEnd) {
+        this.id = id;
+        this.scheduledId = scheduledId;
+        this.intendedStart = intendedStart;
+        this.intendedEnd = intendedEnd;
+    }
+
+    // Constructor to create a new execution of a scheduled recording.
+    @Ignore
+    public ScheduleExecution(ScheduledRecording scheduledRecording) {
+        this.scheduledId = scheduledRecording.getId();
+        this.intendedStart = scheduledRecording.getStart();
+        this.intendedEnd = scheduledRecording.getEnd();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getScheduledId() {
+        return scheduledId;
+    }
+
+    public void setScheduledId(int scheduledId) {
+        this.scheduledId = scheduledId;
+    }
+
+    public long getIntendedStart() {
+        return intendedStart;
+    }
+
+    public void setIntendedStart(long intendedStart) {
+        this.intendedStart = intendedStart;
+    }
+
+    public long getIntendedEnd() {
+        return intendedEnd;
+    }
+
+    public void setIntendedEnd(long intendedEnd) {
+        this.intendedEnd = intendedEnd;
+    }
+
+    public long getWarmUpTime() {
+        return warmUpTime;
+    }
+
+    public void setWarmUpTime(long warmUpTime) {
+        this.warmUpTime = warmUpTime;
+    }
+
+    public long getAlarmTime() {
+        return alarmTime;
+    }
+
+    public void setAlarmTime(long alarmTime) {
+        this.alarmTime = alarmTime;
+    }
+
+    public long getCaptureStart() {
+        return captureStart;
+    }
+
+    public void setCaptureStart(long captureStart) {
+        this.captureStart = captureStart;
+    }
+
+    public long getActualEnd() {
+        return actualEnd;
+    }
+
+    public void setActualEnd(long actualEnd) {
+        this.actualEnd = actualEnd;
+    }
+
+    public int getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(int outcome) {
+        this.outcome = outcome;
+    }
+
+    public int getReason() {
+        return reason;
+    }
+
+    public void setReason(int reason) {
+        this.reason = reason;
+    }
+
+    // Ends the execution without recording.
+    public void skip(int outcome, int reason) {
+        this.outcome = outcome;
+        this.reason = reason;
+    }
+
+    // Same columns as CSV_HEADER.
+    public String toCsv() {
+        return scheduledId + "," + intendedStart + "," + intendedEnd + "," + warmUpTime + "," + alarmTime + ","
+                + captureStart + "," + actualEnd + "," + outcome + "," + reason;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import android.support.annotation.Nullable;
+
+import com.iclaude.scheduledrecorder.audio.RecordingProfile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Reads a list of scheduled recordings from a CSV or iCalendar (.ics) file, line by line, and
+ * checks each of them against the schedule (the ScheduleConflicts of RecordingsRepository:
+ * the scheduled recordings and the occurrences of the recurrence rules) and the recordings
+ * accepted before it in the same file. Nothing is saved: the accepted
+ * recordings are inserted all together by RecordingsRepository.importScheduledRecordings().
+ * The format is detected from the first line ("BEGIN:VCALENDAR" = iCalendar).
+ * CSV: one recording per line, "start,end[,profile]", times as "yyyy-MM-dd HH:mm[:ss]" in the
+ * local time zone (a 'T' between date and time is accepted too); a header line, empty lines
+ * and lines starting with '#' are skipped.
+ * iCalendar: one recording per VEVENT, from DTSTART to DTEND (or DTSTART + DURATION). Times can
+ * be UTC, local or with a TZID; all-day and recurring events (RRULE) are not supported.
+ */
+public class ScheduleImporter {
+
+    // Result of each row.
+    public static final int ROW_ACCEPTED = 0;
+    public static final int ROW_INVALID = 1; // can't be parsed, or it doesn't end after the start
+    public static final int ROW_UNSUPPORTED = 2; // all-day or recurring event
+    public static final int ROW_PAST = 3; // starts before now
+    public static final int ROW_CONFLICT = 4; // overlaps a recording already scheduled or an occurrence of a rule
+    public static final int ROW_CONFLICT_IMPORTED = 5; // overlaps a recording accepted before in the file
+
+    public static class Row {
+        public final int line; // number of the line in the file (the BEGIN:VEVENT one for iCalendar), from 1
+        public final int result;
+        @Nullable
+        public final ScheduledRecording recording; // null if ROW_INVALID or ROW_UNSUPPORTED
+
+        Row(int line, int result, @Nullable ScheduledRecording recording) {
+            this.line = line;
+            this.result = result;
+            this.recording = recording;
+        }
+    }
+
+    public static class Report {
+        private final List<Row> rows = new ArrayList<>();
+        private final List<ScheduledRecording> accepted = new ArrayList<>();
+
+        public List<Row> getRows() {
+            return rows;
+        }
+
+        // Recordings to insert, in the order of the file.
+        public List<ScheduledRecording> getAccepted() {
+            return accepted;
+        }
+
+        public int count(int result) {
+            if (result == ROW_ACCEPTED) return accepted.size();
+
+            int count = 0;
+            for (Row row : rows) {
+                if (row.result == result) count++;
+            }
+            return count;
+        }
+    }
+
+    private final ScheduleConflicts schedule;
+    private final ScheduleIntervalTree imported = new ScheduleIntervalTree();
+    private final long now;
+    private final TimeZone timeZone;
+    private final Map<String, Calendar> calendars = new HashMap<>(); // by time zone id
+    private Report report;
+
+
+    // schedule = recordings already scheduled, read only.
+    public ScheduleImporter(ScheduleConflicts schedule, long now, TimeZone timeZone) {
+        this.schedule = schedule;
+        this.now = now;
+        this.timeZone = timeZone;
+    }
+
+    public Report read(Reader reader) throws IOException {
+        report = new Report();
+        imported.clear();
+
+        BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line = bufferedReader.readLine();
+        while (line != null && line.trim().isEmpty()) {
+            line = bufferedReader.readLine();
+        }
+        if (line != null) {
+            if (line.trim().equalsIgnoreCase("BEGIN:VCALENDAR"))
+                readICalendar(bufferedReader);
+            else
+                readCsv(bufferedReader, line);
+        }
+        return report;
+    }
+
+    private void readCsv(BufferedReader reader, String firstLine) throws IOException {
+        int lineNumber = 1;
+        String line = firstLine;
+        if (!firstLine.isEmpty() && !Character.isDigit(firstLine.trim().charAt(0))) { // header
+            line = reader.readLine();
+            lineNumber++;
+        }
+        for (; line != null; line = reader.readLine(), lineNumber++) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = line.split(",");
+            long start = fields.length >= 2 ? parseLocalTime(fields[0].trim()) : -1;
+            long end = start >= 0 ? parseLocalTime(fields[1].trim()) : -1;
+            String profile = fields.length >= 3 ? fields[2].trim() : "";
+            if (end < 0 || fields.length > 3 || !(profile.isEmpty() || isProfile(profile))) {
+                addRow(lineNumber, ROW_INVALID, null);
+                continue;
+            }
+
+            ScheduledRecording recording = new ScheduledRecording(start, end);
+            if (!profile.isEmpty()) recording.setProfile(profile);
+            check(lineNumber, recording);
+        }
+    }
+
+    private void readICalendar(BufferedReader reader) throws IOException {
+        int lineNumber = 1;
+        int eventLine = 0; // 0 = outside of a VEVENT
+        long start = -1, end = -1, duration = -1;
+        boolean unsupported = false;
+
+        // Folded lines (continuing with a space or a tab) are joined before parsing.
+        String pending = null;
+        int pendingLine = 0;
+        for (String line = reader.readLine(); ; line = reader.readLine()) {
+            lineNumber++;
+            if (line != null && !line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t') && pending != null) {
+                pending += line.substring(1);
+                continue;
+            }
+
+            if (pending != null) {
+                String property = pending;
+                int colon = property.indexOf(':');
+                String name = colon > 0 ? property.substring(0, colon) : property;
+                String value = colon > 0 ? property.substring(colon + 1).trim() : "";
+                String tzid = null;
+                int semicolon = name.indexOf(';');
+                if (semicolon > 0) {
+                    String parameters = name.substring(semicolon + 1);
+                    name = name.substring(0, semicolon);
+                    if (parameters.contains("VALUE=DATE") && !parameters.contains("VALUE=DATE-TIME"))
+                        unsupported = true;
+                    int tzidIndex = parameters.indexOf("TZID=");
+                    if (tzidIndex >= 0) {
+                        int tzidEnd = parameters.indexOf(';', tzidIndex);
+                        tzid = parameters.substring(tzidIndex + 5, tzidEnd > 0 ? tzidEnd : parameters.length());
+                    }
+                }
+                name = name.toUpperCase();
+
+                if (name.equals("BEGIN") && value.equalsIgnoreCase("VEVENT")) {
+                    eventLine = pendingLine;
+                    start = end = duration = -1;
+                    unsupported = false;
+                } else if (eventLine > 0) {
+                    switch (name) {
+                        case "DTSTART":
+                            start = parseICalendarTime(value, tzid);
+                            break;
+                        case "DTEND":
+                            end = parseICalendarTime(value, tzid);
+                            break;
+                        case "DURATION":
+                            duration = parseDuration(value);
+                            break;
+                        case "RRULE":
+                        case "RDATE":
+                            unsupported = true;
+                            break;
+                        case "END":
+                            if (value.equalsIgnoreCase("VEVENT")) {
+                                if (end < 0 && start >= 0 && duration >= 0) end = start + duration;
+                                if (unsupported)
+                                    addRow(eventLine, ROW_UNSUPPORTED, null);
+                                else if (start < 0 || end < 0)
+                                    addRow(eventLine, ROW_INVALID, null);
+                                else
+                                    check(eventLine, new ScheduledRecording(start, end));
+                                eventLine = 0;
+                            }
+                            break;
+                    }
+                }
+            }
+
+            if (line == null) break;
+            pending = line;
+            pendingLine = lineNumber;
+        }
+    }
+
+    // Validation against the schedule and the recordings accepted before.
+    private void check(int lineNumber, ScheduledRecording recording) {
+        long start = recording.getStart();
+        long end = recording.getEnd();
+        if (end <= start) {
+            addRow(lineNumber, ROW_INVALID, null);
+        } else if (start < now) {
+            addRow(lineNumber, ROW_PAST, recording);
+        } else if (schedule.overlaps(start, end, 0, 0)) {
+            addRow(lineNumber, ROW_CONFLICT, recording);
+        } else if (imported.overlaps(start, end, 0)) {
+            addRow(lineNumber, ROW_CONFLICT_IMPORTED, recording);
+        } else {
+            imported.put(lineNumber, start, end);
+            report.accepted.add(recording);
+            addRow(lineNumber, ROW_ACCEPTED, recording);
+        }
+    }
+
+    private void addRow(int lineNumber, int result, @Nullable ScheduledRecording recording) {
+        report.rows.add(new Row(lineNumber, result, recording));
+    }
+
+    private static boolean isProfile(String key) {
+        for (RecordingProfile profile : RecordingProfile.values()) {
+            if (profile.getKey().equals(key)) return true;
+        }
+        return false;
+    }
+
+    // "yyyy-MM-dd HH:mm[:ss]" (or with a 'T'), local time. Returns -1 if invalid.
+    private long parseLocalTime(String value) {
+        if ((value.length() != 16 && value.length() != 19) || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || (value.charAt(10) != ' ' && value.charAt(10) != 'T') || value.charAt(13) != ':'
+                || (value.length() == 19 && value.charAt(16) != ':'))
+            return -1;
+
+        return toMillis(timeZone, parseInt(value, 0, 4), parseInt(value, 5, 7), parseInt(value, 8, 10),
+                parseInt(value, 11, 13), parseInt(value, 14, 16), value.length() == 19 ? parseInt(value, 17, 19) : 0);
+    }
+
+    // "yyyyMMddTHHmmss", followed by 'Z' if UTC. Without 'Z' and TZID it's local time. Returns -1 if invalid.
+    private long parseICalendarTime(String value, @Nullable String tzid) {
+        boolean utc = value.length() == 16 && value.charAt(15) == 'Z';
+        if ((value.length() != 15 && !utc) || value.charAt(8) != 'T') return -1;
+
+        TimeZone zone = utc ? TimeZone.getTimeZone("UTC") : tzid != null ? TimeZone.getTimeZone(tzid) : timeZone;
+        return toMillis(zone, parseInt(value, 0, 4), parseInt(value, 4, 6), parseInt(value, 6, 8),
+                parseInt(value, 9, 11), parseInt(value, 11, 13), parseInt(value, 13, 15));
+    }
+
+    // Duration with days, hours, minutes and seconds (i.e. "PT1H30M"). Returns -1 if invalid.
+    private static long parseDuration(String value) {
+        if (value.length() < 3 || value.charAt(0) != 'P') return -1;
+
+        long duration = 0;
+        long number = -1;
+        for (int i = 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                number = (number < 0 ? 0 : number * 10) + (c - '0');
+                continue;
+            }
+            if (c == 'T') continue;
+            if (number < 0) return -1;
+            switch (c) {
+                case 'W':
+                    duration += number * 7 * 24 * 60 * 60 * 1000;
+                    break;
+                case 'D':
+                    duration += number * 24 * 60 * 60 * 1000;
+                    break;
+                case 'H':
+                    duration += number * 60 * 60 * 1000;
+                    break;
+                case 'M':
+                    duration += number * 60 * 1000;
+                    break;
+                case 'S':
+                    duration += number * 1000;
+                    break;
+                default:
+                    return -1;
+            }
+            number = -1;
+        }
+        return number < 0 ? duration : -1;
+    }
+
+    // Returns -1 if not a number.
+    private static int parseInt(String value, int from, int to) {
+        int number = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    // Returns -1 if a field is out of range. Calendars are reused: a file usually has one time zone.
+    private long toMillis(TimeZone zone, int year, int month, int day, int hour, int minute, int second) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59)
+            return -1;
+
+        Calendar calendar = calendars.get(zone.getID());
+        if (calendar == null) {
+            calendar = new GregorianCalendar(zone);
+            calendar.setLenient(false);
+            calendars.put(zone.getID(), calendar);
+        }
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute, second);
+        try {
+            return calendar.getTimeInMillis();
+        } catch (IllegalArgumentException e) { // i.e. 31 April
+            return -1;
+        }
+    }
+}
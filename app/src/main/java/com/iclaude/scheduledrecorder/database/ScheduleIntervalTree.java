@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.database;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the scheduled recordings: an interval tree (AVL tree ordered by start time,
+ * where each node keeps the max end time of its subtree) used to check conflicts and to search
+ * free slots without scanning the table.
+ * Intervals are half-open [start, end), so back-to-back recordings don't overlap (same rule as
+ * RecordingsDao.getNumRecordingsAlreadyScheduled()).
+ * - overlaps(): O(log n)
+ * - getOverlapping(): O(log n + k), k = number of results
+ * - findFreeSlot(): O(log n + k), k = number of recordings skipped to find the slot
+ * It's not thread-safe: RecordingsRepository uses it on the diskIO thread only.
+ */
+public class ScheduleIntervalTree {
+
+    private static class Node {
+        final int id;
+        final long start;
+        final long end;
+        long maxEnd;
+        int height = 1;
+        Node left, right;
+
+        Node(int id, long start, long end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.maxEnd = end;
+        }
+    }
+
+    private Node root = null;
+    private final Map<Integer, Node> nodes = new HashMap<>();
+
+
+    // Adds a recording, or replaces it if the id is already in the tree.
+    public void put(int id, long start, long end) {
+        remove(id);
+        Node node = new Node(id, start, end);
+        root = insert(root, node);
+        nodes.put(id, node);
+    }
+
+    public boolean remove(int id) {
+        Node node = nodes.remove(id);
+        if (node == null) return false;
+
+        root = delete(root, node);
+        return true;
+    }
+
+    public void clear() {
+        root = null;
+        nodes.clear();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    // Recording with id = exceptId is ignored (i.e. the one being edited).
+    public boolean overlaps(long start, long end, int exceptId) {
+        return !collectOverlapping(root, start, end, exceptId, new ArrayList<>(), 1);
+    }
+
+    // Ids of the recordings that overlap [start, end), ordered by start time.
+    public List<Integer> getOverlapping(long start, long end, int exceptId) {
+        List<Integer> ids = new ArrayList<>();
+        collectOverlapping(root, start, end, exceptId, ids, Integer.MAX_VALUE);
+        return ids;
+    }
+
+    /*
+        Returns the first time >= after when a recording of the given length can start without
+        overlapping the others.
+     */
+    public long findFreeSlot(long after, long length) {
+        // The recordings started before "after" cover it up to their max end.
+        long slot = Math.max(after, maxEndStartingBefore(after));
+
+        // The others are visited in order of start time until a gap long enough is found.
+        Deque<Node> stack = new ArrayDeque<>();
+        pushLowerBound(stack, root, after);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.start >= slot + length) break;
+
+            slot = Math.max(slot, node.end);
+            pushLowerBound(stack, node.right, after);
+        }
+        return slot;
+    }
+
+    // Returns false when the limit is reached (search stopped).
+    private boolean collectOverlapping(Node node, long start, long end, int exceptId, List<Integer> ids, int limit) {
+        if (node == null || node.maxEnd <= start) return true;
+
+        if (!collectOverlapping(node.left, start, end, exceptId, ids, limit)) return false;
+        if (node.start >= end) return true; // the right subtree starts later
+        if (node.end > start && node.id != exceptId) {
+            ids.add(node.id);
+            if (ids.size() >= limit) return false;
+        }
+        return collectOverlapping(node.right, start, end, exceptId, ids, limit);
+    }
+
+    private long maxEndStartingBefore(long time) {
+        long maxEnd = Long.MIN_VALUE;
+        Node node = root;
+        while (node != null) {
+            if (node.start < time) {
+                maxEnd = Math.max(maxEnd, node.end);
+                if (node.left != null) maxEnd = Math.max(maxEnd, node.left.maxEnd);
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return maxEnd;
+    }
+
+    // Pushes the nodes with start >= time on the path to the smallest one (in-order iteration).
+    private static void pushLowerBound(Deque<Node> stack, Node node, long time) {
+        while (node != null) {
+            if (node.start >= time) {
+                stack.push(node);
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+    }
+
+    // Nodes are ordered by start time, then by id (start times can be equal).
+    private static int compare(Node a, Node b) {
+        int result = Long.compare(a.start, b.start);
+        return result != 0 ? result : Integer.compare(a.id, b.id);
+    }
+
+    private static Node insert(Node node, Node newNode) {
+        if (node == null) return newNode;
+
+        if (compare(newNode, node) < 0)
+            node.left = insert(node.left, newNode);
+        else
+            node.right = insert(node.right, newNode);
+        return balance(node);
+    }
+
+    private static Node delete(Node node, Node target) {
+        if (node == null) return null;
+
+        int result = compare(target, node);
+        if (result < 0) {
+            node.left = delete(node.left, target);
+        } else if (result > 0) {
+            node.right = delete(node.right, target);
+        } else {
+            if (node.left == null) return node.right;
+            if (node.right == null) return node.left;
+
+            // Replace the node with its successor.
+            Node successor = node.right;
+            while (successor.left != null) successor = successor.left;
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return balance(node);
+    }
+
+    private static Node deleteMin(Node node) {
+        if (node.left == null) return node.right;
+
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private static Node balance(Node node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right))
+                node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left))
+                node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.maxEnd = node.end;
+        if (node.left != null) node.maxEnd = Math.max(node.maxEnd, node.left.maxEnd);
+        if (node.right != null) node.maxEnd = Math.max(node.maxEnd, node.right.maxEnd);
+    }
+
+    private static int height(Node node) {
+        return node != null ? node.height : 0;
+    }
+}
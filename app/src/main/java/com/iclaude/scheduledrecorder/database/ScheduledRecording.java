@@ -8,13 +8,14 @@ import android.arch.persistence.room.PrimaryKey;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 /**
  * Table "scheduled_recordings".
  */
 
 @Entity(tableName = "scheduled_recordings",
-        indices = {@Index("start_time"), @Index(value = {"start_time", "end_time"})})
+        indices = {@Index("start_time"), @Index(value = {"start_time", "end_time"}), @Index("rule_id")})
 public class ScheduledRecording implements Comparable<ScheduledRecording>, Parcelable {
     @PrimaryKey(autoGenerate = true)
     private int id;
@@ -23,6 +24,10 @@ public class ScheduledRecording implements Comparable<ScheduledRecording>, Parce
     private long start;
     @ColumnInfo(name = "end_time")
     private long end;
+    @Nullable
+    private String profile; // key of the RecordingProfile, null to use the one in the settings
+    @ColumnInfo(name = "rule_id")
+    private int ruleId; // occurrence of a RecurrenceRule, 0 = single recording
 
     // Constructor for an existing scheduled recording (it already has an id).
     public ScheduledRecording(int id, long start, long end) {
@@ -62,6 +67,23 @@ public class ScheduledRecording implements Comparable<ScheduledRecording>, Parce
         this.end = end;
     }
 
+    @Nullable
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(@Nullable String profile) {
+        this.profile = profile;
+    }
+
+    public int getRuleId() {
+        return ruleId;
+    }
+
+    public void setRuleId(int ruleId) {
+        this.ruleId = ruleId;
+    }
+
     // Implementation of Comparable interface.
     @Override
     public int compareTo(@NonNull ScheduledRecording scheduledRecording) {
@@ -73,6 +95,8 @@ public class ScheduledRecording implements Comparable<ScheduledRecording>, Parce
         id = in.readInt();
         start = in.readLong();
         end = in.readLong();
+        profile = in.readString();
+        ruleId = in.readInt();
     }
 
     @Override
@@ -85,6 +109,8 @@ public class ScheduledRecording implements Comparable<ScheduledRecording>, Parce
         dest.writeInt(id);
         dest.writeLong(start);
         dest.writeLong(end);
+        dest.writeString(profile);
+        dest.writeInt(ruleId);
     }
 
     @SuppressWarnings("unused")
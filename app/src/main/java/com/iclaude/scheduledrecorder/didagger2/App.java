@@ -7,22 +7,48 @@ package com.iclaude.scheduledrecorder.didagger2;
 
 import android.app.Application;
 
+import com.iclaude.scheduledrecorder.RecordingScheduler;
+import com.iclaude.scheduledrecorder.utils.Clock;
+
+import javax.inject.Inject;
+
 /**
  * Custom Application class.
- * It initializes AppComponent for Dagger2.
+ * It initializes AppComponent for Dagger2 and creates the RecordingScheduler, which keeps the
+ * alarms in sync with the database while the process is alive. The recordings interrupted by a
+ * crash or a reboot are recovered later, when the UI is opened (see RecordingsRecovery): the
+ * process is also started by alarms and at boot, when there's no time to scan the directory.
  */
 
 public class App extends Application {
     private static AppComponent component;
+    private static long startTime; // ms from epoch
+
+    @Inject
+    RecordingScheduler recordingScheduler;
+    @Inject
+    Clock clock;
 
     public static AppComponent getComponent() {
         return component;
     }
 
+    // When the process started.
+    public static long getStartTime() {
+        return startTime;
+    }
+
+    /*
+        Runs before every alarm and before BootUpReceiver: it must not read the database or the
+        recordings directory. Creating the RecordingScheduler only builds the Room instance, the
+        database file is opened by the first query.
+     */
     @Override
     public void onCreate() {
         super.onCreate();
         component = buildComponent();
+        component.inject(this);
+        startTime = clock.currentTimeMillis();
     }
 
     protected AppComponent buildComponent() {
@@ -5,10 +5,12 @@
 
 package com.iclaude.scheduledrecorder.didagger2;
 
+import com.iclaude.scheduledrecorder.BootUpReceiver;
 import com.iclaude.scheduledrecorder.RecordingService;
 import com.iclaude.scheduledrecorder.ScheduledRecordingService;
 import com.iclaude.scheduledrecorder.database.RecordingsRepository;
 import com.iclaude.scheduledrecorder.ui.activities.scheduled_recording.ScheduledRecordingDetailsViewModel;
+import com.iclaude.scheduledrecorder.ui.fragments.SettingsFragment;
 import com.iclaude.scheduledrecorder.ui.fragments.fileviewer.FileViewerViewModel;
 import com.iclaude.scheduledrecorder.ui.fragments.scheduledrecordings.ScheduledRecordingsFragment;
 import com.iclaude.scheduledrecorder.ui.fragments.scheduledrecordings.ScheduledRecordingsViewModel;
@@ -25,10 +27,14 @@ import dagger.Component;
 public interface AppComponent {
 
     // App.
+    void inject(App app);
+
     void inject(RecordingService recordingService);
 
     void inject(ScheduledRecordingService scheduledRecordingService);
 
+    void inject(BootUpReceiver bootUpReceiver);
+
     void inject(RecordingsRepository recordingsRepository);
 
     void inject(FileViewerViewModel fileViewerViewModel);
@@ -38,4 +44,6 @@ public interface AppComponent {
     void inject(ScheduledRecordingsFragment scheduledRecordingsFragment);
 
     void inject(ScheduledRecordingDetailsViewModel scheduledRecordingDetailsViewModel);
+
+    void inject(SettingsFragment settingsFragment);
 }
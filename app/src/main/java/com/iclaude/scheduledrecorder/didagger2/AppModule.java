@@ -5,16 +5,24 @@
 
 package com.iclaude.scheduledrecorder.didagger2;
 
+import android.app.AlarmManager;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
+import com.iclaude.scheduledrecorder.AlarmScheduler;
+import com.iclaude.scheduledrecorder.AndroidAlarmScheduler;
+import com.iclaude.scheduledrecorder.RecordingScheduler;
+import com.iclaude.scheduledrecorder.database.RecordingsRepository;
+import com.iclaude.scheduledrecorder.utils.Clock;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
 
 /**
- * Dagger @Module class providing an application Context.
+ * Dagger @Module class providing an application Context, the clock and the scheduling of the
+ * alarms.
  */
 @Module
 public class AppModule {
@@ -29,4 +37,23 @@ public class AppModule {
     Context provideContext() {
         return appContext;
     }
+
+    @Provides
+    @Singleton
+    Clock provideClock() {
+        return Clock.SYSTEM;
+    }
+
+    @Provides
+    @Singleton
+    AlarmScheduler provideAlarmScheduler(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return new AndroidAlarmScheduler(context, alarmManager);
+    }
+
+    @Provides
+    @Singleton
+    RecordingScheduler provideRecordingScheduler(Context context, Clock clock, AlarmScheduler alarmScheduler, RecordingsRepository recordingsRepository) {
+        return new RecordingScheduler(context, clock, alarmScheduler, recordingsRepository);
+    }
 }
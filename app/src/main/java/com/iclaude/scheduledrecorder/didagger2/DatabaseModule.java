@@ -5,7 +5,9 @@
 
 package com.iclaude.scheduledrecorder.didagger2;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Room;
+import android.arch.persistence.room.RoomDatabase;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
@@ -34,12 +36,32 @@ public class DatabaseModule {
         return new AppExecutors();
     }
 
+    /*
+        Write-ahead logging: the reads of AppExecutors.diskRead() don't wait for the writes of
+        diskIO() (and vice versa). Room 1.0 has no setJournalMode(), so it's enabled when the
+        database is opened. The search index isn't created by Room (see
+        AppDatabase.createSearchIndex()).
+     */
     @Provides
     @Singleton
     @NonNull
     public AppDatabase provideAppDatabase(Context context) {
         return Room.databaseBuilder(context,
                 AppDatabase.class, "Recordings.db")
+                .addMigrations(AppDatabase.MIGRATION_1_2, AppDatabase.MIGRATION_2_3, AppDatabase.MIGRATION_3_4,
+                        AppDatabase.MIGRATION_4_5, AppDatabase.MIGRATION_5_6, AppDatabase.MIGRATION_6_7,
+                        AppDatabase.MIGRATION_7_8)
+                .addCallback(new RoomDatabase.Callback() {
+                    @Override
+                    public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                        AppDatabase.createSearchIndex(db);
+                    }
+
+                    @Override
+                    public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                        db.enableWriteAheadLogging();
+                    }
+                })
                 .build();
     }
 
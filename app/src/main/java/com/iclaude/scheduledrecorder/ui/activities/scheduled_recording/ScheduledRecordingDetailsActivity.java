@@ -25,7 +25,6 @@ import com.airbnb.lottie.SimpleColorFilter;
 import com.airbnb.lottie.model.KeyPath;
 import com.airbnb.lottie.value.LottieValueCallback;
 import com.iclaude.scheduledrecorder.R;
-import com.iclaude.scheduledrecorder.ScheduledRecordingService;
 import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.databinding.ActivityScheduledRecordingDetailsBinding;
 import com.iclaude.scheduledrecorder.ui.fragments.DatePickerFragment;
@@ -210,10 +209,9 @@ public class ScheduledRecordingDetailsActivity extends AppCompatActivity impleme
             return;
         }
 
-        // Recording saved. Schedule next recording.
+        // Recording saved (RecordingScheduler sets the alarms).
         Toast.makeText(ScheduledRecordingDetailsActivity.this, getString(R.string.toast_recording_saved), Toast.LENGTH_SHORT).show();
         setResult(RESULT_OK);
-        startService(ScheduledRecordingService.makeIntent(ScheduledRecordingDetailsActivity.this));
         finish();
     }
 }
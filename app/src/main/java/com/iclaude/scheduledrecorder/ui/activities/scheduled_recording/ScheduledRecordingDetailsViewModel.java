@@ -4,20 +4,25 @@ import android.app.Application;
 import android.arch.lifecycle.AndroidViewModel;
 import android.databinding.ObservableBoolean;
 import android.databinding.ObservableField;
+import android.databinding.ObservableInt;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
 import com.iclaude.scheduledrecorder.R;
 import com.iclaude.scheduledrecorder.SingleLiveEvent;
+import com.iclaude.scheduledrecorder.audio.RecordingProfile;
 import com.iclaude.scheduledrecorder.database.RecordingsRepository;
+import com.iclaude.scheduledrecorder.database.RecurrenceRule;
 import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.didagger2.App;
+import com.iclaude.scheduledrecorder.utils.Clock;
 
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 
 import javax.inject.Inject;
 
+import static com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface.GetRecurrenceRuleCallback;
 import static com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface.GetScheduledRecordingCallback;
 import static com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface.OperationResult;
 import static com.iclaude.scheduledrecorder.ui.activities.scheduled_recording.ScheduledRecordingDetailsViewModel.DATE_TYPE.DATE_START;
@@ -51,9 +56,17 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
         SUCCESS, ERROR
     }
 
+    // Positions in R.array.schedule_repeat_entries.
+    public static final int REPEAT_NEVER = 0;
+    public static final int REPEAT_DAILY = 1;
+    public static final int REPEAT_WEEKLY = 2;
+    public static final int REPEAT_WORKING_DAYS = 3;
+
 
     @Inject
     RecordingsRepository recordingsRepository;
+    @Inject
+    Clock clock;
 
     public final ObservableField<ScheduledRecording> scheduledRecordingObservable = new ObservableField<>();
     public final ObservableBoolean dataLoading = new ObservableBoolean();
@@ -62,6 +75,9 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
     public final ObservableBoolean timeEndCorrectObservable = new ObservableBoolean();
     public final ObservableBoolean timesCorrectObservable = new ObservableBoolean();
     public final ObservableField<String> errorMsgObservable = new ObservableField<>("");
+    // Position in R.array.schedule_profile_entries: 0 = profile in the settings, then RecordingProfile.values().
+    public final ObservableInt profilePosition = new ObservableInt(0);
+    public final ObservableInt repeatPosition = new ObservableInt(REPEAT_NEVER);
     public boolean portrait = true;
 
     private final SingleLiveEvent<Void> loadedCommand = new SingleLiveEvent<>();
@@ -69,6 +85,7 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
 
     private final Calendar calStart = new GregorianCalendar();
     private final Calendar calEnd = new GregorianCalendar();
+    private RecurrenceRule recurrenceRule; // rule of the recording being edited, if any
 
 
     public ScheduledRecordingDetailsViewModel(@NonNull Application application) {
@@ -77,9 +94,10 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
     }
 
     @VisibleForTesting()
-    public ScheduledRecordingDetailsViewModel(Application application, RecordingsRepository recordingsRepository) {
+    public ScheduledRecordingDetailsViewModel(Application application, RecordingsRepository recordingsRepository, Clock clock) {
         super(application);
         this. recordingsRepository = recordingsRepository;
+        this.clock = clock;
     }
 
     public void setOrientation() {
@@ -105,10 +123,36 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
     @Override
     public void onSuccess(ScheduledRecording scheduledRecording) {
         scheduledRecordingObservable.set(scheduledRecording);
+        String profile = scheduledRecording.getProfile();
+        profilePosition.set(profile == null ? 0 : RecordingProfile.fromKey(profile).ordinal() + 1);
         updateRecordingTimes(scheduledRecording);
         dataLoading.set(false);
         dataAvailable.set(true);
         loadedCommand.call();
+        if (scheduledRecording.getRuleId() != 0)
+            loadRecurrenceRule(scheduledRecording.getRuleId());
+    }
+
+    private void loadRecurrenceRule(int ruleId) {
+        recordingsRepository.getRecurrenceRuleById(ruleId, new GetRecurrenceRuleCallback() {
+            @Override
+            public void onSuccess(RecurrenceRule rule) {
+                recurrenceRule = rule;
+                repeatPosition.set(getRepeatPosition(rule));
+            }
+
+            @Override
+            public void onFailure() {
+                recurrenceRule = null;
+                repeatPosition.set(REPEAT_NEVER);
+            }
+        });
+    }
+
+    private static int getRepeatPosition(RecurrenceRule rule) {
+        if (rule.getFrequency() == RecurrenceRule.FREQUENCY_DAILY)
+            return REPEAT_DAILY;
+        return rule.getWeekdays() == RecurrenceRule.WORKING_DAYS ? REPEAT_WORKING_DAYS : REPEAT_WEEKLY;
     }
 
     @Override
@@ -162,12 +206,12 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
 
     // Is the starting time in the future?
     private boolean timeStartFuture() {
-        return calStart.getTimeInMillis() > System.currentTimeMillis();
+        return calStart.getTimeInMillis() > clock.currentTimeMillis();
     }
 
     // Is the ending time in the future?
     private boolean timeEndFuture() {
-        return calEnd.getTimeInMillis() > System.currentTimeMillis();
+        return calEnd.getTimeInMillis() > clock.currentTimeMillis();
     }
 
     // The user clicks the save button in the action bar.
@@ -184,6 +228,9 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
             return;
         }
 
+        int position = profilePosition.get();
+        scheduledRecordingObservable.get().setProfile(position == 0 ? null : RecordingProfile.values()[position - 1].getKey());
+
         // Try updating or inserting the recording.
         if (operation == OPERATION.EDIT)
             updateScheduledRecording();
@@ -197,7 +244,7 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
             if(count > 0) {
                 saveCommand.setValue(ERROR);
             } else {
-                recordingsRepository.updateScheduledRecordings(new OperationResult() {
+                saveRecurrenceRule(scheduledRecording, () -> recordingsRepository.updateScheduledRecordings(new OperationResult() {
                     @Override
                     public void onSuccess() {
                         saveCommand.setValue(SUCCESS);
@@ -207,16 +254,82 @@ public class ScheduledRecordingDetailsViewModel extends AndroidViewModel impleme
                     public void onFailure() {
                         saveCommand.setValue(ERROR);
                     }
-                }, scheduledRecording);
+                }, scheduledRecording));
             }
         });
     }
 
+    /*
+        Creates, updates or deletes the rule of the recording being edited, then saves the
+        recording. The series restarts from this recording, so a change of time applies to all
+        the next occurrences.
+     */
+    private void saveRecurrenceRule(ScheduledRecording scheduledRecording, Runnable saveRecording) {
+        OperationResult ruleSaved = new OperationResult() {
+            @Override
+            public void onSuccess() {
+                scheduledRecording.setRuleId(recurrenceRule != null ? recurrenceRule.getId() : 0);
+                saveRecording.run();
+            }
+
+            @Override
+            public void onFailure() {
+                saveCommand.setValue(ERROR);
+            }
+        };
+
+        if (repeatPosition.get() == REPEAT_NEVER) {
+            if (recurrenceRule == null) {
+                saveRecording.run();
+            } else { // stop repeating, this recording is kept
+                int ruleId = recurrenceRule.getId();
+                recurrenceRule = null;
+                recordingsRepository.deleteRecurrenceRule(ruleId, ruleSaved);
+            }
+            return;
+        }
+
+        RecurrenceRule rule = makeRecurrenceRule(scheduledRecording);
+        rule.setExpandedUntil(scheduledRecording.getStart()); // this recording is the next occurrence
+        if (recurrenceRule == null) {
+            recurrenceRule = rule;
+            recordingsRepository.insertRecurrenceRule(rule, scheduledRecording.getId(), ruleSaved);
+        } else {
+            rule.setId(recurrenceRule.getId());
+            rule.setExceptions(recurrenceRule.getExceptions());
+            recurrenceRule = rule;
+            recordingsRepository.updateRecurrenceRule(rule, scheduledRecording.getId(), ruleSaved);
+        }
+    }
+
+    private RecurrenceRule makeRecurrenceRule(ScheduledRecording scheduledRecording) {
+        int repeat = repeatPosition.get();
+        RecurrenceRule rule = new RecurrenceRule(scheduledRecording.getStart(), scheduledRecording.getEnd() - scheduledRecording.getStart(),
+                repeat == REPEAT_DAILY ? RecurrenceRule.FREQUENCY_DAILY : RecurrenceRule.FREQUENCY_WEEKLY);
+        if (repeat == REPEAT_WORKING_DAYS)
+            rule.setWeekdays(RecurrenceRule.WORKING_DAYS);
+        rule.setProfile(scheduledRecording.getProfile());
+        return rule;
+    }
+
     private void insertScheduledRecording() {
         ScheduledRecording scheduledRecording = scheduledRecordingObservable.get();
         recordingsRepository.getNumRecordingsAlreadyScheduled(scheduledRecording.getStart(), scheduledRecording.getEnd(), scheduledRecording.getId(), count -> {
             if (count > 0) {
                 saveCommand.setValue(ERROR);
+            } else if (repeatPosition.get() != REPEAT_NEVER) {
+                // Only the rule is saved, its first occurrence is scheduled by RecordingScheduler.
+                recordingsRepository.insertRecurrenceRule(makeRecurrenceRule(scheduledRecording), 0, new OperationResult() {
+                    @Override
+                    public void onSuccess() {
+                        saveCommand.setValue(SUCCESS);
+                    }
+
+                    @Override
+                    public void onFailure() {
+                        saveCommand.setValue(ERROR);
+                    }
+                });
             } else {
                 recordingsRepository.insertScheduledRecording(scheduledRecordingObservable.get(), new OperationResult() {
                     @Override
@@ -23,6 +23,7 @@ import android.widget.SeekBar;
 import android.widget.TextView;
 
 import com.iclaude.scheduledrecorder.R;
+import com.iclaude.scheduledrecorder.audio.TimeMap;
 import com.iclaude.scheduledrecorder.database.Recording;
 
 import java.io.IOException;
@@ -37,6 +38,7 @@ public class PlaybackFragment extends DialogFragment{
 
     private static final String ARG_ITEM = "recording_item";
     private Recording recording;
+    private TimeMap timeMap; // not null if silent stretches have been skipped
 
     private Handler mHandler = new Handler();
 
@@ -68,6 +70,7 @@ public class PlaybackFragment extends DialogFragment{
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         recording = getArguments().getParcelable(ARG_ITEM);
+        timeMap = TimeMap.load(recording.getPath());
 
         long itemDuration = recording.getLength();
         minutes = TimeUnit.MILLISECONDS.toMinutes(itemDuration);
@@ -106,10 +109,7 @@ public class PlaybackFragment extends DialogFragment{
                     mMediaPlayer.seekTo(progress);
                     mHandler.removeCallbacks(mRunnable);
 
-                    long minutes = TimeUnit.MILLISECONDS.toMinutes(mMediaPlayer.getCurrentPosition());
-                    long seconds = TimeUnit.MILLISECONDS.toSeconds(mMediaPlayer.getCurrentPosition())
-                            - TimeUnit.MINUTES.toSeconds(minutes);
-                    mCurrentProgressTextView.setText(String.format("%02d:%02d", minutes,seconds));
+                    mCurrentProgressTextView.setText(formatPosition(mMediaPlayer.getCurrentPosition()));
 
                     updateSeekBar();
 
@@ -133,10 +133,7 @@ public class PlaybackFragment extends DialogFragment{
                     mHandler.removeCallbacks(mRunnable);
                     mMediaPlayer.seekTo(seekBar.getProgress());
 
-                    long minutes = TimeUnit.MILLISECONDS.toMinutes(mMediaPlayer.getCurrentPosition());
-                    long seconds = TimeUnit.MILLISECONDS.toSeconds(mMediaPlayer.getCurrentPosition())
-                            - TimeUnit.MINUTES.toSeconds(minutes);
-                    mCurrentProgressTextView.setText(String.format("%02d:%02d", minutes,seconds));
+                    mCurrentProgressTextView.setText(formatPosition(mMediaPlayer.getCurrentPosition()));
                     updateSeekBar();
                 }
             }
@@ -309,16 +306,25 @@ public class PlaybackFragment extends DialogFragment{
                 int mCurrentPosition = mMediaPlayer.getCurrentPosition();
                 mSeekBar.setProgress(mCurrentPosition);
 
-                long minutes = TimeUnit.MILLISECONDS.toMinutes(mCurrentPosition);
-                long seconds = TimeUnit.MILLISECONDS.toSeconds(mCurrentPosition)
-                        - TimeUnit.MINUTES.toSeconds(minutes);
-                mCurrentProgressTextView.setText(String.format("%02d:%02d", minutes, seconds));
+                mCurrentProgressTextView.setText(formatPosition(mCurrentPosition));
 
                 updateSeekBar();
             }
         }
     };
 
+    /*
+        If silent stretches have been skipped, the position is shown as time elapsed since the
+        start of the recording (wall-clock time).
+     */
+    private String formatPosition(int position) {
+        long time = timeMap != null ? timeMap.toWallTime(position) : position;
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(time);
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(time)
+                - TimeUnit.MINUTES.toSeconds(minutes);
+        return String.format("%02d:%02d", minutes, seconds);
+    }
+
     private void updateSeekBar() {
         mHandler.postDelayed(mRunnable, 1000);
     }
@@ -5,33 +5,143 @@
 
 package com.iclaude.scheduledrecorder.ui.fragments;
 
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Intent;
 import android.os.Bundle;
 import android.preference.CheckBoxPreference;
+import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.support.annotation.Nullable;
+import android.util.Log;
+import android.widget.Toast;
 
 import com.iclaude.scheduledrecorder.BuildConfig;
 import com.iclaude.scheduledrecorder.MySharedPreferences;
 import com.iclaude.scheduledrecorder.R;
+import com.iclaude.scheduledrecorder.database.RecordingsRepository;
+import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
+import com.iclaude.scheduledrecorder.database.ScheduleImporter;
+import com.iclaude.scheduledrecorder.didagger2.App;
 import com.iclaude.scheduledrecorder.ui.activities.SettingsActivity;
+import com.iclaude.scheduledrecorder.utils.Clock;
+import com.iclaude.scheduledrecorder.utils.Utils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
 
 /**
  * Created by Daniel on 5/22/2017.
  */
 
 public class SettingsFragment extends PreferenceFragment {
+    private static final String TAG = "SCHEDULED_RECORDER_TAG";
+    private final String CLASS_NAME = getClass().getSimpleName();
+
+    private static final long STATS_PERIOD = 1000L * 60 * 60 * 24 * 30; // 30 days
+    private static final int REQUEST_IMPORT_SCHEDULE = 1;
+
+    @Inject
+    RecordingsRepository recordingsRepository;
+    @Inject
+    Clock clock;
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        App.getComponent().inject(this);
         addPreferencesFromResource(R.xml.preferences);
 
-        CheckBoxPreference highQualityPref = (CheckBoxPreference) findPreference(getResources().getString(R.string.pref_high_quality_key));
-        highQualityPref.setChecked(MySharedPreferences.getPrefHighQuality(getActivity()));
-        highQualityPref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+        ListPreference profilePref = (ListPreference) findPreference(getResources().getString(R.string.pref_recording_profile_key));
+        profilePref.setValue(MySharedPreferences.getPrefRecordingProfile(getActivity()));
+        profilePref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
             @Override
             public boolean onPreferenceChange(Preference preference, Object newValue) {
-                MySharedPreferences.setPrefHighQuality(getActivity(), (boolean) newValue);
+                MySharedPreferences.setPrefRecordingProfile(getActivity(), (String) newValue);
+                return true;
+            }
+        });
+
+        CheckBoxPreference pcmEnginePref = (CheckBoxPreference) findPreference(getResources().getString(R.string.pref_pcm_engine_key));
+        pcmEnginePref.setChecked(MySharedPreferences.getPrefPcmEngine(getActivity()));
+        pcmEnginePref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                MySharedPreferences.setPrefPcmEngine(getActivity(), (boolean) newValue);
+                return true;
+            }
+        });
+
+        CheckBoxPreference preRollPref = (CheckBoxPreference) findPreference(getResources().getString(R.string.pref_pre_roll_key));
+        preRollPref.setChecked(MySharedPreferences.getPrefPreRoll(getActivity()));
+        preRollPref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                MySharedPreferences.setPrefPreRoll(getActivity(), (boolean) newValue);
+                return true;
+            }
+        });
+
+        CheckBoxPreference vadPref = (CheckBoxPreference) findPreference(getResources().getString(R.string.pref_vad_key));
+        vadPref.setChecked(MySharedPreferences.getPrefVad(getActivity()));
+        vadPref.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                MySharedPreferences.setPrefVad(getActivity(), (boolean) newValue);
+                return true;
+            }
+        });
+
+        // Statistics of the scheduled recordings (see ScheduleExecution).
+        Preference statsPref = findPreference(getString(R.string.pref_schedule_stats_key));
+        recordingsRepository.getStartLagPercentiles(clock.currentTimeMillis() - STATS_PERIOD, new RecordingsRepositoryInterface.GetStartLagCallback() {
+            @Override
+            public void onSuccess(long p50, long p95, long p99) {
+                if (isAdded())
+                    statsPref.setSummary(getString(R.string.pref_schedule_stats_lag, p50, p95, p99));
+            }
+
+            @Override
+            public void onFailure() {
+                // No scheduled recordings yet: keep the description.
+            }
+        });
+        statsPref.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                File file = new File(Utils.getDirectoryPath(getActivity()), "schedule_executions.csv");
+                recordingsRepository.exportScheduleExecutions(file, new RecordingsRepositoryInterface.OperationResult() {
+                    @Override
+                    public void onSuccess() {
+                        if (isAdded())
+                            Toast.makeText(getActivity(), getString(R.string.toast_schedule_stats_exported, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+                    }
+
+                    @Override
+                    public void onFailure() {
+                        if (isAdded())
+                            Toast.makeText(getActivity(), getString(R.string.toast_schedule_stats_error), Toast.LENGTH_LONG).show();
+                    }
+                });
+                return true;
+            }
+        });
+
+        Preference importPref = findPreference(getString(R.string.pref_import_schedule_key));
+        importPref.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                intent.setType("*/*");
+                intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"text/csv", "text/comma-separated-values", "text/calendar", "text/plain"});
+                startActivityForResult(intent, REQUEST_IMPORT_SCHEDULE);
                 return true;
             }
         });
@@ -47,4 +157,67 @@ public class SettingsFragment extends PreferenceFragment {
             }
         });
     }
+
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_IMPORT_SCHEDULE || resultCode != Activity.RESULT_OK || data == null || data.getData() == null)
+            return;
+
+        InputStream inputStream;
+        try {
+            inputStream = getActivity().getContentResolver().openInputStream(data.getData());
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, CLASS_NAME + " - onActivityResult(): " + e.toString());
+            inputStream = null;
+        }
+        if (inputStream == null) {
+            Toast.makeText(getActivity(), getString(R.string.toast_import_schedule_error), Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        recordingsRepository.importScheduledRecordings(inputStream, new RecordingsRepositoryInterface.ImportScheduledRecordingsCallback() {
+            @Override
+            public void onSuccess(ScheduleImporter.Report report) {
+                if (isAdded())
+                    showImportReport(report);
+            }
+
+            @Override
+            public void onFailure() {
+                if (isAdded())
+                    Toast.makeText(getActivity(), getString(R.string.toast_import_schedule_error), Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    // Number of recordings imported and the lines skipped, with the reason.
+    private void showImportReport(ScheduleImporter.Report report) {
+        List<String> skipped = new ArrayList<>();
+        for (ScheduleImporter.Row row : report.getRows()) {
+            switch (row.result) {
+                case ScheduleImporter.ROW_INVALID:
+                    skipped.add(getString(R.string.import_schedule_row_invalid, row.line));
+                    break;
+                case ScheduleImporter.ROW_UNSUPPORTED:
+                    skipped.add(getString(R.string.import_schedule_row_unsupported, row.line));
+                    break;
+                case ScheduleImporter.ROW_PAST:
+                    skipped.add(getString(R.string.import_schedule_row_past, row.line));
+                    break;
+                case ScheduleImporter.ROW_CONFLICT:
+                    skipped.add(getString(R.string.import_schedule_row_conflict, row.line));
+                    break;
+                case ScheduleImporter.ROW_CONFLICT_IMPORTED:
+                    skipped.add(getString(R.string.import_schedule_row_conflict_imported, row.line));
+                    break;
+            }
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setTitle(getString(R.string.dialog_title_import_schedule, report.count(ScheduleImporter.ROW_ACCEPTED), report.getRows().size()));
+        builder.setItems(skipped.toArray(new CharSequence[skipped.size()]), null);
+        builder.setPositiveButton(getString(R.string.dialog_action_ok), (dialog, id) -> dialog.dismiss());
+        builder.create().show();
+    }
 }
@@ -16,18 +16,25 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.FileProvider;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.helper.ItemTouchHelper;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
 import android.widget.Toast;
 
 import com.iclaude.scheduledrecorder.R;
+import com.iclaude.scheduledrecorder.audio.RecordingProfile;
 import com.iclaude.scheduledrecorder.database.Recording;
 import com.iclaude.scheduledrecorder.databinding.FragmentFileViewerBinding;
 import com.iclaude.scheduledrecorder.ui.fragments.PlaybackFragment;
@@ -49,6 +56,7 @@ public class FileViewerFragment extends Fragment implements RecordingUserActions
     private RecyclerViewListAdapter adapter;
     private Context context;
     private RecyclerViewSwipeCallback swipeController;
+    private ActionMode actionMode;
 
     public static FileViewerFragment newInstance(int position) {
         FileViewerFragment f = new FileViewerFragment();
@@ -69,6 +77,7 @@ public class FileViewerFragment extends Fragment implements RecordingUserActions
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
 
         viewModel = ViewModelProviders.of(this).get(FileViewerViewModel.class);
 
@@ -81,6 +90,8 @@ public class FileViewerFragment extends Fragment implements RecordingUserActions
         viewModel.getDeleteCommand().observe(this, msgId -> Toast.makeText(context, getString(msgId), Toast.LENGTH_SHORT).show());
 
         viewModel.getUpdateCommand().observe(this, msgId -> Toast.makeText(context, getString(msgId), Toast.LENGTH_SHORT).show());
+
+        viewModel.getSelectionCount().observe(this, this::showSelection);
     }
 
     @Override
@@ -101,17 +112,23 @@ public class FileViewerFragment extends Fragment implements RecordingUserActions
         swipeController = new RecyclerViewSwipeCallback(new SwipeControllerActions() {
             @Override
             public void shareFile(int position) {
-                FileViewerFragment.this.shareFile(adapter.getRecordingFromPosition(position));
+                Recording recording = adapter.getRecordingFromPosition(position);
+                if (recording != null) // null = placeholder
+                    FileViewerFragment.this.shareFile(recording);
             }
 
             @Override
             public void renameFile(int position) {
-                FileViewerFragment.this.renameFile(adapter.getRecordingFromPosition(position));
+                Recording recording = adapter.getRecordingFromPosition(position);
+                if (recording != null)
+                    FileViewerFragment.this.renameFile(recording);
             }
 
             @Override
             public void deleteFile(int position) {
-                FileViewerFragment.this.deleteFile(adapter.getRecordingFromPosition(position));
+                Recording recording = adapter.getRecordingFromPosition(position);
+                if (recording != null)
+                    FileViewerFragment.this.deleteFile(recording);
             }
         }, getActivity());
         ItemTouchHelper itemTouchhelper = new ItemTouchHelper(swipeController);
@@ -130,6 +147,33 @@ public class FileViewerFragment extends Fragment implements RecordingUserActions
         return rootView;
     }
 
+    // Search.
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.menu_fileviewer, menu);
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+
+        String query = viewModel.getSearchQuery();
+        if (query != null && !query.isEmpty()) {
+            searchItem.expandActionView();
+            searchView.setQuery(query, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                viewModel.setSearchQuery(query);
+                return true;
+            }
+        });
+    }
+
     // Play.
     @Override
     public void playRecording(Recording recording) {
@@ -183,7 +227,7 @@ public class FileViewerFragment extends Fragment implements RecordingUserActions
         Intent shareIntent = new Intent();
         shareIntent.setAction(Intent.ACTION_SEND);
         shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
-        shareIntent.setType("audio/mp4");
+        shareIntent.setType(RecordingProfile.getMimeType(recording.getPath()));
         context.startActivity(Intent.createChooser(shareIntent, context.getText(R.string.send_to)));
     }
 
@@ -235,8 +279,65 @@ public class FileViewerFragment extends Fragment implements RecordingUserActions
         AlertDialog alert = confirmDelete.create();
         alert.show();
     }
-}
 
+    // Multi-selection: contextual action bar while recordings are selected.
+    private void showSelection(Integer count) {
+        if (count == null || count == 0) {
+            if (actionMode != null) actionMode.finish();
+            return;
+        }
 
+        if (actionMode == null)
+            actionMode = ((AppCompatActivity) Objects.requireNonNull(getActivity())).startSupportActionMode(actionModeCallback);
+        if (actionMode != null)
+            actionMode.setTitle(getString(R.string.fileviewer_selected, count));
+    }
 
+    private final ActionMode.Callback actionModeCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.menu_fileviewer_selection, menu);
+            return true;
+        }
 
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            if (item.getItemId() == R.id.action_delete) {
+                deleteSelectedFiles();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            actionMode = null;
+            viewModel.clearSelection();
+            adapter.notifyDataSetChanged();
+        }
+    };
+
+    private void deleteSelectedFiles() {
+        Integer count = viewModel.getSelectionCount().getValue();
+        AlertDialog.Builder confirmDelete = new AlertDialog.Builder(context);
+        confirmDelete.setTitle(context.getString(R.string.dialog_title_delete));
+        confirmDelete.setMessage(context.getString(R.string.dialog_text_delete_selected, count != null ? count : 0));
+        confirmDelete.setCancelable(true);
+        confirmDelete.setPositiveButton(context.getString(R.string.dialog_action_yes),
+                (dialog, id) -> {
+                    viewModel.deleteSelectedRecordings();
+
+                    dialog.cancel();
+                });
+        confirmDelete.setNegativeButton(context.getString(R.string.dialog_action_no),
+                (dialog, id) -> dialog.cancel());
+
+        AlertDialog alert = confirmDelete.create();
+        alert.show();
+    }
+}
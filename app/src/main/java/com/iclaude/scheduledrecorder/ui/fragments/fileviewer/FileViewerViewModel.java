@@ -10,6 +10,8 @@ import android.arch.lifecycle.AndroidViewModel;
 import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.MutableLiveData;
 import android.arch.lifecycle.Transformations;
+import android.arch.paging.LivePagedListBuilder;
+import android.arch.paging.PagedList;
 import android.databinding.ObservableBoolean;
 import android.support.annotation.VisibleForTesting;
 
@@ -20,7 +22,10 @@ import com.iclaude.scheduledrecorder.database.RecordingsRepository;
 import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
 import com.iclaude.scheduledrecorder.didagger2.App;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -30,6 +35,7 @@ import javax.inject.Inject;
  */
 
 public class FileViewerViewModel extends AndroidViewModel {
+    private static final int PAGE_SIZE = 30;
 
     @Inject
     RecordingsRepository recordingsRepository;
@@ -42,32 +48,59 @@ public class FileViewerViewModel extends AndroidViewModel {
     private final SingleLiveEvent<Integer> updateCommand = new SingleLiveEvent<>();
     private final SingleLiveEvent<Integer> deleteCommand = new SingleLiveEvent<>();
 
+    // Multi-selection (contextual action bar of FileViewerFragment), by id.
+    private final Map<Integer, Recording> selectedRecordings = new LinkedHashMap<>();
+    private final MutableLiveData<Integer> selectionCount = new MutableLiveData<>();
 
+    private final MutableLiveData<String> searchQuery = new MutableLiveData<>();
+
+
+    // The saved recordings are shown for the first time: the interrupted ones are recovered.
     public FileViewerViewModel(Application application) {
         super(application);
         App.getComponent().inject(this);
+        searchQuery.setValue("");
+        recordingsRepository.recoverUnfinishedRecordings(application, App.getStartTime());
     }
 
     @VisibleForTesting()
     public FileViewerViewModel(Application application, RecordingsRepository recordingsRepository) {
         super(application);
         this.recordingsRepository = recordingsRepository;
+        searchQuery.setValue("");
     }
 
-    public LiveData<List<Recording>> getRecordings() {
+    /*
+        Only the pages around the visible recordings are loaded. With placeholders the size of
+        the list is the total number of recordings (the scrollbar is right from the start).
+        With a search (see setSearchQuery()) the list contains the recordings found.
+     */
+    public LiveData<PagedList<Recording>> getRecordings() {
         dataLoading.set(true);
-        LiveData<List<Recording>> recordingsLive = recordingsRepository.getAllRecordings();
-
-        LiveData<List<Recording>> recordingsLive2 = Transformations.switchMap(recordingsLive, recordings -> {
+        PagedList.Config config = new PagedList.Config.Builder()
+                .setPageSize(PAGE_SIZE)
+                .setPrefetchDistance(PAGE_SIZE)
+                .setEnablePlaceholders(true)
+                .build();
+        LiveData<PagedList<Recording>> recordingsLive = Transformations.switchMap(searchQuery, query -> query.trim().isEmpty()
+                ? new LivePagedListBuilder<Recording, Recording>(recordingsRepository.getRecordingsDataSourceFactory(), config).build()
+                : new LivePagedListBuilder<Integer, Recording>(recordingsRepository.searchRecordings(query), config).build());
+
+        return Transformations.map(recordingsLive, recordings -> {
             dataLoading.set(false);
             dataAvailable.set(!recordings.isEmpty());
-
-            MutableLiveData<List<Recording>> result = new MutableLiveData<>();
-            result.setValue(recordings);
-            return result;
+            return recordings;
         });
+    }
 
-        return recordingsLive2;
+    public String getSearchQuery() {
+        return searchQuery.getValue();
+    }
+
+    public void setSearchQuery(String query) {
+        if (query == null) query = "";
+        if (!query.equals(searchQuery.getValue()))
+            searchQuery.setValue(query);
     }
 
     public SingleLiveEvent<Recording> getPlayRecordingEvent() {
@@ -121,4 +154,40 @@ public class FileViewerViewModel extends AndroidViewModel {
             }
         });
     }
+
+    public LiveData<Integer> getSelectionCount() {
+        return selectionCount;
+    }
+
+    public boolean isSelectionMode() {
+        return !selectedRecordings.isEmpty();
+    }
+
+    public boolean isSelected(Recording recording) {
+        return recording != null && selectedRecordings.containsKey(recording.getId());
+    }
+
+    public void toggleSelection(Recording recording) {
+        if (recording == null) return; // placeholder
+
+        if (selectedRecordings.remove(recording.getId()) == null)
+            selectedRecordings.put(recording.getId(), recording);
+        selectionCount.setValue(selectedRecordings.size());
+    }
+
+    public void clearSelection() {
+        if (selectedRecordings.isEmpty()) return;
+
+        selectedRecordings.clear();
+        selectionCount.setValue(0);
+    }
+
+    public void deleteSelectedRecordings() {
+        List<Recording> recordings = new ArrayList<>(selectedRecordings.values());
+        clearSelection();
+        if (recordings.isEmpty()) return;
+
+        recordingsRepository.deleteRecordings(recordings, (deleted, failed) ->
+                deleteCommand.setValue(failed.isEmpty() ? R.string.toast_recordings_deleted : R.string.toast_recordings_deleted_error));
+    }
 }
@@ -1,8 +1,10 @@
 package com.iclaude.scheduledrecorder.ui.fragments.fileviewer;
 
+import android.arch.paging.PagedListAdapter;
 import android.support.annotation.NonNull;
-import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.annotation.Nullable;
 import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
@@ -11,8 +13,10 @@ import com.iclaude.scheduledrecorder.databinding.FragmentFileViewerItemBinding;
 
 /**
  * Adapter for RecyclerView using data binding.
+ * Recordings are paged (see FileViewerViewModel): items not loaded yet are null (placeholders).
+ * A long click starts the multi-selection: then a click selects or deselects a recording.
  */
-public class RecyclerViewListAdapter extends ListAdapter<Recording, RecyclerViewViewHolder> {
+public class RecyclerViewListAdapter extends PagedListAdapter<Recording, RecyclerViewViewHolder> {
 
     private final FileViewerViewModel fileViewerViewModel;
     private final RecyclerViewSwipeCallback swipeCallback;
@@ -27,13 +31,16 @@ public class RecyclerViewListAdapter extends ListAdapter<Recording, RecyclerView
     public RecyclerViewViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         LayoutInflater layoutInflater = LayoutInflater.from(parent.getContext());
         FragmentFileViewerItemBinding binding = FragmentFileViewerItemBinding.inflate(layoutInflater, parent, false);
+        RecyclerViewViewHolder holder = new RecyclerViewViewHolder(binding);
 
         RecordingItemUserActionListener listener = new RecordingItemUserActionListener() {
             @Override
             public void onClick(Recording recording) {
                 if(swipeCallback.buttonsAreVisible())
                     swipeCallback.restoreLayout();
-                else
+                else if (fileViewerViewModel.isSelectionMode())
+                    toggleSelection(holder, recording);
+                else if (recording != null)
                     fileViewerViewModel.playRecording(recording);
             }
 
@@ -41,22 +48,31 @@ public class RecyclerViewListAdapter extends ListAdapter<Recording, RecyclerView
             public boolean onLongClick(Recording recording) {
                 if(swipeCallback.buttonsAreVisible())
                     swipeCallback.restoreLayout();
-                //else
-                    // actions to perform on long click
-                    //fileViewerViewModel.showLongClickDialogOptions(recording);
+                else
+                    toggleSelection(holder, recording);
 
                 return true;
             }
         };
         binding.setListener(listener);
 
-        return new RecyclerViewViewHolder(binding);
+        return holder;
     }
 
     public void onBindViewHolder(@NonNull RecyclerViewViewHolder holder, int position) {
-        holder.bind(getItem(position));
+        Recording recording = getItem(position);
+        holder.bind(recording, fileViewerViewModel.isSelected(recording));
+    }
+
+    private void toggleSelection(RecyclerViewViewHolder holder, Recording recording) {
+        fileViewerViewModel.toggleSelection(recording);
+        int position = holder.getAdapterPosition();
+        if (position != RecyclerView.NO_POSITION)
+            notifyItemChanged(position);
     }
 
+    // Null if not loaded yet.
+    @Nullable
     public Recording getRecordingFromPosition(int position) {
         return getItem(position);
     }
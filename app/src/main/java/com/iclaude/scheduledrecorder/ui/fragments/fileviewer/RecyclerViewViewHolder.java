@@ -24,9 +24,10 @@ public class RecyclerViewViewHolder extends RecyclerView.ViewHolder {
 
     }
 
-    public void bind(Recording recording) {
+    public void bind(Recording recording, boolean selected) {
         binding.setRecording(recording);
         binding.executePendingBindings();
+        itemView.setActivated(selected);
     }
 
 }
@@ -41,7 +41,6 @@ import com.iclaude.scheduledrecorder.utils.PermissionsManager;
 import java.util.Objects;
 
 
-// TODO implement pause recording
 public class RecordFragment extends Fragment {
     private static final String TAG = "SCHEDULED_RECORDER_TAG";
 
@@ -91,6 +90,15 @@ public class RecordFragment extends Fragment {
                 }
             }
         });
+        recordViewModel.servicePaused.addOnPropertyChangedCallback(new Observable.OnPropertyChangedCallback() {
+            @Override
+            public void onPropertyChanged(Observable sender, int propertyId) {
+                if (((ObservableBoolean) sender).get())
+                    lottieView.pauseAnimation();
+                else if (recordViewModel.serviceRecording.get())
+                    lottieView.resumeAnimation();
+            }
+        });
 
     }
 
@@ -140,9 +148,18 @@ public class RecordFragment extends Fragment {
         };
         recordViewModel.secondsElapsed.addOnPropertyChangedCallback(secsCallback);
 
-        if(recordViewModel.serviceRecording.get()) {
+        if(recordViewModel.serviceRecording.get() && !recordViewModel.servicePaused.get()) {
             lottieView.playAnimation();
         }
+        recordViewModel.setArmed(getUserVisibleHint());
+    }
+
+    // The ViewPager keeps the fragment resumed when another tab is selected.
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+        if (recordViewModel != null && isResumed())
+            recordViewModel.setArmed(isVisibleToUser);
     }
 
     @Override
@@ -151,6 +168,7 @@ public class RecordFragment extends Fragment {
 
         recordViewModel.secondsElapsed.removeOnPropertyChangedCallback(secsCallback);
         lottieView.pauseAnimation();
+        recordViewModel.setArmed(false);
     }
 
     // Check dangerous permissions for Android Marshmallow+.
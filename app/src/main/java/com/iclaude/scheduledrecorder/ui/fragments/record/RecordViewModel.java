@@ -21,6 +21,7 @@ import com.iclaude.scheduledrecorder.SingleLiveEvent;
 
 import static android.content.Context.BIND_AUTO_CREATE;
 import static com.iclaude.scheduledrecorder.RecordingService.OnRecordingStatusChangedListener;
+import static com.iclaude.scheduledrecorder.RecordingService.RecorderState;
 
 /**
  * View model for RecordFragment.
@@ -33,11 +34,14 @@ public class RecordViewModel extends AndroidViewModel {
 
     public final ObservableBoolean serviceConnected = new ObservableBoolean(false);
     public final ObservableBoolean serviceRecording = new ObservableBoolean(false);
+    public final ObservableBoolean servicePaused = new ObservableBoolean(false);
+    public final ObservableBoolean serviceBusy = new ObservableBoolean(false); // recorder starting or stopping
     public final ObservableInt secondsElapsed = new ObservableInt(0);
     private final SingleLiveEvent<Integer> toastMsg = new SingleLiveEvent<>();
     private final MutableLiveData<Integer> amplitudeLive = new MutableLiveData<>();
 
     private RecordingService recordingService;
+    private boolean armed = false; // pre-roll requested by the UI
 
 
     public RecordViewModel(@NonNull Application application) {
@@ -59,6 +63,7 @@ public class RecordViewModel extends AndroidViewModel {
         if (!serviceConnected.get()) return;
 
         getApplication().unbindService(serviceConnection);
+        recordingService.disarmRecorder();
         if (!serviceRecording.get())
             getApplication().stopService(intent);
         recordingService.setOnRecordingStatusChangedListener(null);
@@ -66,6 +71,20 @@ public class RecordViewModel extends AndroidViewModel {
         serviceConnected.set(false);
     }
 
+    /*
+        While the Record tab is visible the Service keeps the last seconds of audio in memory
+        (if pre-roll is enabled in the settings).
+     */
+    public void setArmed(boolean armed) {
+        this.armed = armed;
+        if (recordingService == null) return;
+
+        if (armed)
+            recordingService.armRecorder();
+        else
+            recordingService.disarmRecorder();
+    }
+
     public void startRecording() {
         recordingService.startRecording(0);
         serviceRecording.set(true);
@@ -75,6 +94,14 @@ public class RecordViewModel extends AndroidViewModel {
         recordingService.stopRecording();
     }
 
+    public void pauseOrResumeRecording() {
+        if (!servicePaused.get()) {
+            if (recordingService.pauseRecording()) servicePaused.set(true);
+        } else {
+            if (recordingService.resumeRecording()) servicePaused.set(false);
+        }
+    }
+
     public SingleLiveEvent<Integer> getToastMsg() {
         return toastMsg;
     }
@@ -94,6 +121,9 @@ public class RecordViewModel extends AndroidViewModel {
             serviceConnected.set(true);
             recordingService.setOnRecordingStatusChangedListener(onScheduledRecordingListener);
             serviceRecording.set(recordingService.isRecording());
+            servicePaused.set(recordingService.isPaused());
+            serviceBusy.set(isBusy(recordingService.getState()));
+            if (armed) recordingService.armRecorder();
         }
 
         @Override
@@ -120,9 +150,18 @@ public class RecordViewModel extends AndroidViewModel {
             toastMsg.postValue(R.string.toast_recording_start);
         }
 
+        @Override
+        public void onStateChanged(RecorderState state) {
+            serviceRecording.set(state == RecorderState.PREPARING || state == RecorderState.RECORDING);
+            serviceBusy.set(isBusy(state));
+            if (state == RecorderState.IDLE) servicePaused.set(false);
+        }
+
         @Override
         public void onRecordingStopped(String filePath) {
             serviceRecording.set(false);
+            servicePaused.set(false);
+            if (armed) recordingService.armRecorder(); // ready for the next recording
             secondsElapsed.set(0);
             toastMsg.postValue(R.string.toast_recording_saved);
         }
@@ -133,12 +172,18 @@ public class RecordViewModel extends AndroidViewModel {
             secondsElapsed.set(seconds);
         }
 
+        // This method is called from a separate thread.
         @Override
-        public void onAmplitudeInfo(int amplitude) {
-            amplitudeLive.postValue(amplitude);
+        public void onAmplitudeInfo(int peak, int rms, int clippedSamples) {
+            amplitudeLive.postValue(peak);
         }
     };
 
+    // The record button is disabled until the recorder is RECORDING or IDLE again.
+    private static boolean isBusy(RecorderState state) {
+        return state == RecorderState.PREPARING || state == RecorderState.STOPPING || state == RecorderState.FINALIZING;
+    }
+
     @VisibleForTesting
     public RecordingService getRecordingService() {
         return recordingService;
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.ui.fragments.scheduledrecordings;
+
+import com.iclaude.scheduledrecorder.database.ScheduledRecording;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the scheduled recordings shown in the calendar and, when a new list arrives,
+ * computes which ones have to be removed and added (same identity of
+ * ScheduledRecordingDiffCallback), so that only the changed events of CompactCalendarView are
+ * replaced. A recording whose start changed (moved) is both removed and added; other changes
+ * don't affect the calendar.
+ */
+public class CalendarEventsDiff {
+
+    private final Map<String, ScheduledRecording> shown = new HashMap<>();
+    private final List<ScheduledRecording> removed = new ArrayList<>();
+    private final List<ScheduledRecording> added = new ArrayList<>();
+
+
+    // Computes the differences with the recordings shown until now, which are replaced by the new ones.
+    public void update(List<ScheduledRecording> recordings) {
+        removed.clear();
+        added.clear();
+
+        Map<String, ScheduledRecording> old = new HashMap<>(shown);
+        shown.clear();
+        for (ScheduledRecording recording : recordings) {
+            String key = keyOf(recording);
+            ScheduledRecording oldRecording = old.remove(key);
+            if (oldRecording == null) {
+                added.add(recording);
+            } else if (oldRecording.getStart() != recording.getStart()) {
+                removed.add(oldRecording);
+                added.add(recording);
+            } else {
+                recording = oldRecording; // the event already shown is kept
+            }
+            shown.put(key, recording);
+        }
+        removed.addAll(old.values());
+    }
+
+    // Old versions of the recordings deleted or moved.
+    public List<ScheduledRecording> getRemoved() {
+        return removed;
+    }
+
+    // New and moved recordings.
+    public List<ScheduledRecording> getAdded() {
+        return added;
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty();
+    }
+
+    // Recordings are identified by id, computed occurrences of a recurrence rule by rule and start.
+    public static String keyOf(ScheduledRecording recording) {
+        if (recording.getId() == 0)
+            return "rule:" + recording.getRuleId() + ":" + recording.getStart();
+        return "id:" + recording.getId();
+    }
+}
@@ -7,6 +7,8 @@ import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 class ScheduledRecordingDiffCallback extends DiffUtil.ItemCallback<ScheduledRecording> {
     @Override
     public boolean areItemsTheSame(ScheduledRecording oldItem, ScheduledRecording newItem) {
+        if (oldItem.getId() == 0 && newItem.getId() == 0) // computed occurrences of a recurrence rule
+            return oldItem.getRuleId() == newItem.getRuleId() && oldItem.getStart() == newItem.getStart();
         return oldItem.getId() == newItem.getId();
     }
 
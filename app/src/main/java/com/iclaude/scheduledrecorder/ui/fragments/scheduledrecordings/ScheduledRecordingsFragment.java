@@ -29,15 +29,15 @@ import android.widget.Toast;
 import com.github.sundeepk.compactcalendarview.CompactCalendarView;
 import com.github.sundeepk.compactcalendarview.domain.Event;
 import com.iclaude.scheduledrecorder.R;
-import com.iclaude.scheduledrecorder.ScheduledRecordingService;
 import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.databinding.FragmentScheduledRecordingsBinding;
 import com.iclaude.scheduledrecorder.ui.activities.scheduled_recording.ScheduledRecordingDetailsActivity;
 import com.iclaude.scheduledrecorder.utils.PermissionsManager;
 
-import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 
@@ -55,10 +55,11 @@ public class ScheduledRecordingsFragment extends Fragment {
 
     private CoordinatorLayout coordinatorLayout;
     private CompactCalendarView calendarView;
+    private CalendarEventsDiff calendarEventsDiff;
+    private final Map<String, Event> calendarEvents = new HashMap<>(); // events in calendarView by CalendarEventsDiff key
 
     private ScheduledRecordingsViewModel viewModel;
     private RecyclerViewListAdapter adapter;
-    private List<ScheduledRecording> scheduledRecordings = new ArrayList<>();
     private ScheduledRecording deletedRecording;
 
 
@@ -77,13 +78,12 @@ public class ScheduledRecordingsFragment extends Fragment {
 
         viewModel = ViewModelProviders.of(this).get(ScheduledRecordingsViewModel.class);
 
-        // Observables.
+        // Observables (recordings of the month shown in the calendar).
         viewModel.getScheduledRecordings().observe(this, scheduledRecordings -> {
             viewModel.dataAvailable.set(scheduledRecordings != null && !scheduledRecordings.isEmpty());
-            this.scheduledRecordings = scheduledRecordings;
-            updateCalendarView(Objects.requireNonNull(scheduledRecordings));
-            viewModel.filterList();
+            updateCalendarView(viewModel.getMonthRecordings());
         });
+        viewModel.getRecurrenceRules().observe(this, rules -> updateCalendarView(viewModel.getMonthRecordings()));
 
         viewModel.getScheduledRecordingsFiltered().observe(this,
                 scheduledRecordings -> adapter.submitList(scheduledRecordings)
@@ -93,15 +93,11 @@ public class ScheduledRecordingsFragment extends Fragment {
         viewModel.getAddCommand().observe(this, aVoid -> checkPermissionsAndSchedule());
         viewModel.getEditCommand().observe(this, this::editScheduledRecording);
         viewModel.getDeleteCommand().observe(this, msgId -> {
-            if(msgId != null) {
+            if(msgId != null)
                 showDeletedSnackbar();
-                Objects.requireNonNull(getActivity()).startService(ScheduledRecordingService.makeIntent(getActivity())); // schedule next recording
-            }
         });
         viewModel.getUndoDeleteCommand().observe(this, success -> {
-            if(success)
-                Objects.requireNonNull(getActivity()).startService(ScheduledRecordingService.makeIntent(getActivity())); // schedule next recording
-            else
+            if(!success)
                 Toast.makeText(getActivity(), getString(R.string.toast_undo_delete_error), Toast.LENGTH_LONG).show();
         });
     }
@@ -117,11 +113,13 @@ public class ScheduledRecordingsFragment extends Fragment {
 
         // Calendar view.
         viewModel.setSelectedDate(viewModel.selectedDate.get());
-        viewModel.selectedMonth.set(viewModel.selectedDate.get());
+        viewModel.setSelectedMonth(viewModel.selectedDate.get());
         calendarView = rootView.findViewById(R.id.compactcalendar_view);
+        calendarEventsDiff = new CalendarEventsDiff();
+        calendarEvents.clear();
         calendarView.setListener(myCalendarViewListener);
         calendarView.setCurrentDate(viewModel.selectedDate.get());
-        updateCalendarView(scheduledRecordings);
+        updateCalendarView(viewModel.getMonthRecordings());
 
         // List of events for the selected day.
         RecyclerView recyclerView = rootView.findViewById(R.id.rvRecordings);
@@ -152,14 +150,26 @@ public class ScheduledRecordingsFragment extends Fragment {
 
         @Override
         public void onMonthScroll(Date date) {
-            viewModel.selectedMonth.set(date);
+            viewModel.setSelectedMonth(date); // the calendar is updated when the recordings of the month are loaded
         }
     };
 
     private void updateCalendarView(List<ScheduledRecording> scheduledRecordings) {
-        calendarView.removeAllEvents();
-        for (ScheduledRecording item : scheduledRecordings) {
-            Event event = new Event(ContextCompat.getColor(Objects.requireNonNull(getActivity()), R.color.accent), item.getStart(), item);
+        if (calendarView == null) return; // view not created yet
+
+        // Only the events of the recordings added, deleted or moved are replaced.
+        calendarEventsDiff.update(scheduledRecordings);
+        if (calendarEventsDiff.isEmpty()) return;
+
+        for (ScheduledRecording item : calendarEventsDiff.getRemoved()) {
+            Event event = calendarEvents.remove(CalendarEventsDiff.keyOf(item));
+            if (event != null)
+                calendarView.removeEvent(event, false);
+        }
+        int color = ContextCompat.getColor(Objects.requireNonNull(getActivity()), R.color.accent);
+        for (ScheduledRecording item : calendarEventsDiff.getAdded()) {
+            Event event = new Event(color, item.getStart(), item);
+            calendarEvents.put(CalendarEventsDiff.keyOf(item), event);
             calendarView.addEvent(event, false);
         }
         calendarView.postInvalidate(); // refresh the calendar view
@@ -167,6 +177,11 @@ public class ScheduledRecordingsFragment extends Fragment {
 
     // Click on a scheduled recording.
     private void editScheduledRecording(ScheduledRecording item) {
+        if (ScheduledRecordingsViewModel.isComputedOccurrence(item)) { // only the next occurrence of a rule can be edited
+            Toast.makeText(getActivity(), getString(R.string.toast_occurrence_not_editable), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         Intent intent = ScheduledRecordingDetailsActivity.makeIntent(getActivity(), item.getId());
         startActivity(intent);
     }
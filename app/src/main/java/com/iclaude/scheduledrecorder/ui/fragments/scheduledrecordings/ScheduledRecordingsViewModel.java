@@ -6,7 +6,9 @@
 package com.iclaude.scheduledrecorder.ui.fragments.scheduledrecordings;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
 import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Transformations;
 import android.arch.lifecycle.ViewModel;
 import android.databinding.ObservableBoolean;
 import android.databinding.ObservableField;
@@ -16,8 +18,11 @@ import com.iclaude.scheduledrecorder.R;
 import com.iclaude.scheduledrecorder.SingleLiveEvent;
 import com.iclaude.scheduledrecorder.database.RecordingsRepository;
 import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
+import com.iclaude.scheduledrecorder.database.RecurrenceIterator;
+import com.iclaude.scheduledrecorder.database.RecurrenceRule;
 import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.didagger2.App;
+import com.iclaude.scheduledrecorder.utils.Clock;
 import com.iclaude.scheduledrecorder.utils.Utils;
 
 import java.util.ArrayList;
@@ -25,11 +30,14 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.TimeZone;
 
 import javax.inject.Inject;
 
 /**
  * ViewModel for ScheduledRecordingsFragment.
+ * Only the scheduled recordings of the month shown in the calendar and of the selected day are
+ * loaded from the database: the queries are switched when the month or the day change.
  */
 
 public class ScheduledRecordingsViewModel extends ViewModel {
@@ -37,15 +45,21 @@ public class ScheduledRecordingsViewModel extends ViewModel {
     private static final String TAG = "SCHEDULED_RECORDER_TAG";
     @Inject
     RecordingsRepository recordingsRepository;
+    @Inject
+    Clock clock;
     private ScheduledRecording deletedRecording;
 
     // Observables.
-    private LiveData<List<ScheduledRecording>> listLive;
-    private final MutableLiveData<List<ScheduledRecording>> listFilteredLive = new MutableLiveData<>();
+    private final MutableLiveData<Date> monthWindow = new MutableLiveData<>();
+    private final MutableLiveData<Date> dayWindow = new MutableLiveData<>();
+    private LiveData<List<ScheduledRecording>> listLive; // month
+    private LiveData<List<ScheduledRecording>> dayListLive;
+    private LiveData<List<RecurrenceRule>> rulesLive;
+    private final MediatorLiveData<List<ScheduledRecording>> listFilteredLive = new MediatorLiveData<>();
     public final ObservableBoolean dataLoading = new ObservableBoolean(false);
     public final ObservableBoolean dataAvailable = new ObservableBoolean(false);
-    public final ObservableField<Date> selectedDate = new ObservableField<>(new Date(System.currentTimeMillis()));
-    public final ObservableField<Date> selectedMonth = new ObservableField<>(new Date(System.currentTimeMillis()));
+    public final ObservableField<Date> selectedDate = new ObservableField<>();
+    public final ObservableField<Date> selectedMonth = new ObservableField<>();
 
     // Commands.
     private final SingleLiveEvent<Void> addCommand = new SingleLiveEvent<>();
@@ -56,49 +70,125 @@ public class ScheduledRecordingsViewModel extends ViewModel {
 
     public ScheduledRecordingsViewModel() {
         App.getComponent().inject(this);
+        selectToday();
     }
 
     @VisibleForTesting()
-    public ScheduledRecordingsViewModel(RecordingsRepository recordingsRepository) {
+    public ScheduledRecordingsViewModel(RecordingsRepository recordingsRepository, Clock clock) {
         this.recordingsRepository = recordingsRepository;
+        this.clock = clock;
+        selectToday();
+    }
+
+    private void selectToday() {
+        selectedDate.set(new Date(clock.currentTimeMillis()));
+        selectedMonth.set(new Date(clock.currentTimeMillis()));
     }
 
     // Observables.
+    // Scheduled recordings of the selected month.
     public LiveData<List<ScheduledRecording>> getScheduledRecordings() {
         if(listLive != null)
             return listLive; // we already have the list cached and there are no changes
 
         dataLoading.set(true);
-        listLive = recordingsRepository.getAllScheduledRecordings();
+        listLive = Transformations.switchMap(monthWindow, month ->
+                recordingsRepository.getScheduledRecordingsInRange(Utils.getMonthStartTimeLong(month), Utils.getMonthEndTimeLong(month)));
+        if(monthWindow.getValue() == null)
+            monthWindow.setValue(selectedMonth.get());
         dataLoading.set(false);
 
         return listLive;
     }
 
+    public LiveData<List<RecurrenceRule>> getRecurrenceRules() {
+        if(rulesLive == null)
+            rulesLive = recordingsRepository.getAllRecurrenceRules();
+        if(rulesLive == null)
+            rulesLive = new MutableLiveData<>();
+
+        return rulesLive;
+    }
+
+    // Scheduled recordings of the selected day, including the occurrences of the recurrence rules.
     public LiveData<List<ScheduledRecording>> getScheduledRecordingsFiltered() {
+        if(dayListLive != null)
+            return listFilteredLive;
+
+        dayListLive = Transformations.switchMap(dayWindow, day ->
+                recordingsRepository.getScheduledRecordingsInRange(Utils.getDayStartTimeLong(day), Utils.getDayEndTimeLong(day) + 1));
+        listFilteredLive.addSource(dayListLive, recordings -> filterList());
+        listFilteredLive.addSource(getRecurrenceRules(), rules -> filterList());
+        if(dayWindow.getValue() == null)
+            dayWindow.setValue(selectedDate.get());
+
         return listFilteredLive;
     }
 
+    // Adds the occurrences of the recurrence rules to the recordings of the selected day.
     public void filterList() {
-        if(listLive == null || listLive.getValue() == null)
+        if(dayListLive == null || dayListLive.getValue() == null)
             return;
 
         long filterStart = Utils.getDayStartTimeLong(Objects.requireNonNull(selectedDate.get()));
         long filterEnd = Utils.getDayEndTimeLong(Objects.requireNonNull(selectedDate.get()));
 
-        List<ScheduledRecording> scheduledRecordingsFiltered = new ArrayList<>();
-        for(ScheduledRecording rec : listLive.getValue()) {
-            if ((rec.getStart() >= filterStart && rec.getStart() <= filterEnd) || (rec.getEnd() >= filterStart && rec.getEnd() <= filterEnd))
-                scheduledRecordingsFiltered.add(rec);
+        List<ScheduledRecording> scheduledRecordingsFiltered = new ArrayList<>(dayListLive.getValue());
+        List<ScheduledRecording> occurrences = expandRules(filterStart, filterEnd + 1);
+        if(!occurrences.isEmpty()) {
+            scheduledRecordingsFiltered.addAll(occurrences);
+            Collections.sort(scheduledRecordingsFiltered);
         }
-
-        Collections.sort(scheduledRecordingsFiltered);
         listFilteredLive.setValue(scheduledRecordingsFiltered);
     }
 
+    /*
+        Scheduled recordings of the selected month (for the calendar), including the occurrences
+        of the recurrence rules not yet copied in the database.
+     */
+    public List<ScheduledRecording> getMonthRecordings() {
+        List<ScheduledRecording> recordings = new ArrayList<>();
+        if(listLive != null && listLive.getValue() != null)
+            recordings.addAll(listLive.getValue());
+
+        Date month = Objects.requireNonNull(selectedMonth.get());
+        recordings.addAll(expandRules(Utils.getMonthStartTimeLong(month), Utils.getMonthEndTimeLong(month)));
+        return recordings;
+    }
+
+    /*
+        Occurrences of the recurrence rules starting between "from" (inclusive) and "to"
+        (exclusive). Only the next occurrence of a rule is stored in the database, the others are
+        computed here (id = 0), and only for the period shown on screen.
+     */
+    private List<ScheduledRecording> expandRules(long from, long to) {
+        List<ScheduledRecording> occurrences = new ArrayList<>();
+        if(rulesLive == null || rulesLive.getValue() == null)
+            return occurrences;
+
+        long now = clock.currentTimeMillis();
+        for(RecurrenceRule rule : rulesLive.getValue()) {
+            long start = Math.max(Math.max(from, now), rule.getExpandedUntil() + 1);
+            RecurrenceIterator iterator = new RecurrenceIterator(rule, start, TimeZone.getDefault());
+            while(iterator.hasNext()) {
+                ScheduledRecording occurrence = iterator.next();
+                if(occurrence.getStart() >= to)
+                    break;
+
+                occurrences.add(occurrence);
+            }
+        }
+        return occurrences;
+    }
+
     public void setSelectedDate(Date selectedDate) {
         this.selectedDate.set(selectedDate);
-        filterList();
+        dayWindow.setValue(selectedDate);
+    }
+
+    public void setSelectedMonth(Date selectedMonth) {
+        this.selectedMonth.set(selectedMonth);
+        monthWindow.setValue(selectedMonth);
     }
 
     // Commands.
@@ -127,6 +217,23 @@ public class ScheduledRecordingsViewModel extends ViewModel {
     }
 
     public void deleteScheduledRecording(ScheduledRecording scheduledRecording) {
+        if(isComputedOccurrence(scheduledRecording)) {
+            // Not in the database: the occurrence is skipped by its rule.
+            recordingsRepository.setRecurrenceException(scheduledRecording.getRuleId(), scheduledRecording.getStart(), true, new RecordingsRepositoryInterface.OperationResult() {
+                @Override
+                public void onSuccess() {
+                    deletedRecording = scheduledRecording;
+                    deleteCommand.setValue(R.string.toast_recording_deleted);
+                }
+
+                @Override
+                public void onFailure() {
+                    deleteCommand.setValue(R.string.toast_recording_deleted_error);
+                }
+            });
+            return;
+        }
+
         recordingsRepository.deleteScheduledRecording(scheduledRecording, new RecordingsRepositoryInterface.OperationResult() {
             @Override
             public void onSuccess() {
@@ -147,7 +254,7 @@ public class ScheduledRecordingsViewModel extends ViewModel {
             return;
         }
 
-        recordingsRepository.insertScheduledRecording(deletedRecording, new RecordingsRepositoryInterface.OperationResult() {
+        RecordingsRepositoryInterface.OperationResult callback = new RecordingsRepositoryInterface.OperationResult() {
             @Override
             public void onSuccess() {
                 deletedRecording = null;
@@ -158,6 +265,15 @@ public class ScheduledRecordingsViewModel extends ViewModel {
             public void onFailure() {
                 undoDeleteCommand.setValue(false);
             }
-        });
+        };
+        if(isComputedOccurrence(deletedRecording))
+            recordingsRepository.setRecurrenceException(deletedRecording.getRuleId(), deletedRecording.getStart(), false, callback);
+        else
+            recordingsRepository.insertScheduledRecording(deletedRecording, callback);
+    }
+
+    // Occurrence of a recurrence rule computed by expandRules() (not stored in the database).
+    public static boolean isComputedOccurrence(ScheduledRecording scheduledRecording) {
+        return scheduledRecording.getId() == 0 && scheduledRecording.getRuleId() != 0;
     }
 }
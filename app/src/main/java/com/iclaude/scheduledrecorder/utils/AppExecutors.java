@@ -8,36 +8,45 @@ package com.iclaude.scheduledrecorder.utils;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 /**
  * Global executor pools for the whole application.
  * <p>
  * Grouping tasks like this avoids the effects of task starvation (e.g. disk reads don't wait behind
- * webservice requests).
+ * file renames and deletions).
+ * diskIO: a single thread, for the changes to the database and the files (they run in order).
+ * diskRead: a small pool, for the reads (they can run in parallel, see DatabaseModule).
+ * fileIO: a small pool, for file operations started by a task on diskIO that waits for them
+ * (e.g. the files of a bulk delete are unlinked in parallel).
  */
 public class AppExecutors {
 
-    private static final int THREAD_COUNT = 3;
+    private static final int READER_COUNT = 3;
+    private static final int FILE_THREAD_COUNT = 4;
 
     private final Executor diskIO;
 
-    private final Executor networkIO;
+    private final Executor diskRead;
+
+    private final Executor fileIO;
 
     private final Executor mainThread;
 
     @VisibleForTesting
-    AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread) {
+    AppExecutors(Executor diskIO, Executor diskRead, Executor fileIO, Executor mainThread) {
         this.diskIO = diskIO;
-        this.networkIO = networkIO;
+        this.diskRead = diskRead;
+        this.fileIO = fileIO;
         this.mainThread = mainThread;
     }
 
     public AppExecutors() {
-        this(new DiskIOThreadExecutor(), Executors.newFixedThreadPool(THREAD_COUNT),
+        this(new DiskIOThreadExecutor("disk-write", 1), new DiskIOThreadExecutor("disk-read", READER_COUNT),
+                new DiskIOThreadExecutor("file-io", FILE_THREAD_COUNT),
                 new MainThreadExecutor());
     }
 
@@ -45,14 +54,24 @@ public class AppExecutors {
         return diskIO;
     }
 
-    public Executor networkIO() {
-        return networkIO;
+    public Executor diskRead() {
+        return diskRead;
+    }
+
+    public Executor fileIO() {
+        return fileIO;
     }
 
     public Executor mainThread() {
         return mainThread;
     }
 
+    // Counters of diskIO or diskRead, null if the executor doesn't keep them (tests).
+    @Nullable
+    public DiskIOThreadExecutor.Stats getStats(Executor executor) {
+        return executor instanceof DiskIOThreadExecutor ? ((DiskIOThreadExecutor) executor).getStats() : null;
+    }
+
     private static class MainThreadExecutor implements Executor {
         private Handler mainThreadHandler = new Handler(Looper.getMainLooper());
 
@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2018 Claudio "iClaude" Agostini <agostini.claudio1@gmail.com>
+ * Licensed under the Apache License, Version 2.0
+ */
+
+package com.iclaude.scheduledrecorder.utils;
+
+/**
+ * Source of the wall clock time used by the scheduling code (provided by AppModule), so that
+ * tests can replace it with a virtual clock.
+ */
+public interface Clock {
+
+    Clock SYSTEM = System::currentTimeMillis;
+
+    // Milliseconds from epoch.
+    long currentTimeMillis();
+}
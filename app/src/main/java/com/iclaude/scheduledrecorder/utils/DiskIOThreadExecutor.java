@@ -9,20 +9,77 @@ import android.support.annotation.NonNull;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Executor that runs a task on a new background thread.
+ * Executor that runs tasks on a fixed number of background threads: with one thread tasks run
+ * in order. It counts the tasks waiting to start and how long they waited (see Stats).
  */
 public class DiskIOThreadExecutor implements Executor {
 
+    // Snapshot of the counters.
+    public static class Stats {
+        public final int queueDepth; // tasks waiting now
+        public final int maxQueueDepth;
+        public final long taskCount; // tasks started
+        public final long totalWaitMs;
+        public final long maxWaitMs;
+
+        Stats(int queueDepth, int maxQueueDepth, long taskCount, long totalWaitMs, long maxWaitMs) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.taskCount = taskCount;
+            this.totalWaitMs = totalWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        public long getAverageWaitMs() {
+            return taskCount > 0 ? totalWaitMs / taskCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "queue=" + queueDepth + " maxQueue=" + maxQueueDepth + " tasks=" + taskCount
+                    + " avgWait=" + getAverageWaitMs() + "ms maxWait=" + maxWaitMs + "ms";
+        }
+    }
+
     private final Executor mDiskIO;
 
-    public DiskIOThreadExecutor() {
-        mDiskIO = Executors.newSingleThreadExecutor();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong totalWaitNs = new AtomicLong();
+    private final AtomicLong maxWaitNs = new AtomicLong();
+
+    public DiskIOThreadExecutor(String name, int threadCount) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        mDiskIO = Executors.newFixedThreadPool(threadCount, runnable ->
+                new Thread(runnable, threadCount == 1 ? name : name + "-" + threadNumber.incrementAndGet()));
     }
 
     @Override
     public void execute(@NonNull Runnable command) {
-        mDiskIO.execute(command);
+        long queued = System.nanoTime();
+        int depth = queueDepth.incrementAndGet();
+        int max;
+        while (depth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, depth)) ;
+
+        mDiskIO.execute(() -> {
+            long wait = System.nanoTime() - queued;
+            queueDepth.decrementAndGet();
+            taskCount.incrementAndGet();
+            totalWaitNs.addAndGet(wait);
+            long maxWait;
+            while (wait > (maxWait = maxWaitNs.get()) && !maxWaitNs.compareAndSet(maxWait, wait)) ;
+
+            command.run();
+        });
+    }
+
+    public Stats getStats() {
+        return new Stats(queueDepth.get(), maxQueueDepth.get(), taskCount.get(),
+                totalWaitNs.get() / 1000000, maxWaitNs.get() / 1000000);
     }
 }
@@ -134,6 +134,22 @@ public class Utils {
         return calCmd.getTimeInMillis();
     }
 
+    // Given a Date, returns the long value for the time at 00:00 of the first day of that month.
+    public static long getMonthStartTimeLong(Date date) {
+        Calendar calCmd = new GregorianCalendar();
+        calCmd.setTimeInMillis(getDayStartTimeLong(date));
+        calCmd.set(Calendar.DAY_OF_MONTH, 1);
+        return calCmd.getTimeInMillis();
+    }
+
+    // Given a Date, returns the long value for the time at 00:00 of the first day of the next month.
+    public static long getMonthEndTimeLong(Date date) {
+        Calendar calCmd = new GregorianCalendar();
+        calCmd.setTimeInMillis(getMonthStartTimeLong(date));
+        calCmd.add(Calendar.MONTH, 1);
+        return calCmd.getTimeInMillis();
+    }
+
     public static int convertDpToPixel(Context context, float dp) {
         return (int) (dp * context.getResources().getDisplayMetrics().density + 0.5f);
     }
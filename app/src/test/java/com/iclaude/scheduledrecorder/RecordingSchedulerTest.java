@@ -0,0 +1,147 @@
+package com.iclaude.scheduledrecorder;
+
+import com.iclaude.scheduledrecorder.database.RecordingsRepository;
+import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
+import com.iclaude.scheduledrecorder.database.ScheduledRecording;
+import com.iclaude.scheduledrecorder.utils.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests that RecordingScheduler merges the changes of the schedule and sets the alarms only when
+ * the next recording changes.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class RecordingSchedulerTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Mock
+    private RecordingsRepository repository;
+    @Mock
+    private AlarmScheduler alarmScheduler;
+    private RecordingScheduler scheduler;
+    private ScheduledRecording next;
+
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        next = new ScheduledRecording(1, System.currentTimeMillis() + HOUR, System.currentTimeMillis() + 2 * HOUR);
+
+        doAnswer(invocation -> {
+            ((RecordingsRepositoryInterface.OperationResult) invocation.getArgument(1)).onSuccess();
+            return null;
+        }).when(repository).deleteOldScheduledRecordings(anyLong(), any(RecordingsRepositoryInterface.OperationResult.class));
+        doAnswer(invocation -> {
+            ((RecordingsRepositoryInterface.OperationResult) invocation.getArgument(1)).onSuccess();
+            return null;
+        }).when(repository).expandRecurrenceRules(anyLong(), any(RecordingsRepositoryInterface.OperationResult.class));
+        doAnswer(invocation -> {
+            RecordingsRepositoryInterface.GetScheduledRecordingCallback callback = invocation.getArgument(0);
+            if (next != null)
+                callback.onSuccess(next);
+            else
+                callback.onFailure();
+            return null;
+        }).when(repository).getNextScheduledRecording(any(RecordingsRepositoryInterface.GetScheduledRecordingCallback.class));
+
+        scheduler = new RecordingScheduler(RuntimeEnvironment.application, Clock.SYSTEM, alarmScheduler, repository);
+    }
+
+    @Test
+    public void testBurstOfChanges() {
+        for (int i = 0; i < 10; i++) {
+            scheduler.onScheduleChanged();
+        }
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        verify(repository, times(1)).getNextScheduledRecording(any(RecordingsRepositoryInterface.GetScheduledRecordingCallback.class));
+        verifyAlarmsSet(2); // warm-up and start
+
+        NextAlarmSnapshot snapshot = NextAlarmSnapshot.read(RuntimeEnvironment.application);
+        assertNotNull(snapshot);
+        assertEquals(next.getId(), snapshot.getId());
+        assertEquals(next.getStart(), snapshot.getStart());
+    }
+
+    @Test
+    public void testHeadNotChanged() {
+        scheduler.onScheduleChanged();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        scheduler.onScheduleChanged(); // i.e. a recording added after the next one
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        verify(repository, times(2)).getNextScheduledRecording(any(RecordingsRepositoryInterface.GetScheduledRecordingCallback.class));
+        verifyAlarmsSet(2);
+    }
+
+    @Test
+    public void testHeadChanged() {
+        scheduler.onScheduleChanged();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        next = new ScheduledRecording(2, next.getStart() - HOUR / 2, next.getStart());
+        scheduler.onScheduleChanged();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        verifyAlarmsSet(4);
+
+        next = null; // all deleted
+        scheduler.onScheduleChanged();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        verify(alarmScheduler, times(2)).cancel(anyInt());
+        assertNull(NextAlarmSnapshot.read(RuntimeEnvironment.application));
+    }
+
+    @Test
+    public void testRestoreAlarms() {
+        boolean[] done = new boolean[1];
+        scheduler.restoreAlarms(new NextAlarmSnapshot(next.getId(), next.getStart()), () -> done[0] = true);
+        ShadowLooper.runUiThreadTasks();
+
+        assertTrue(done[0]);
+        verifyAlarmsSet(2);
+        verify(repository, times(0)).getNextScheduledRecording(any(RecordingsRepositoryInterface.GetScheduledRecordingCallback.class));
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks(); // deferred full pass: same recording
+        verify(repository, times(1)).getNextScheduledRecording(any(RecordingsRepositoryInterface.GetScheduledRecordingCallback.class));
+        verifyAlarmsSet(2);
+    }
+
+    @Test
+    public void testReschedule() {
+        scheduler.onScheduleChanged();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        boolean[] done = new boolean[1];
+        scheduler.reschedule(() -> done[0] = true); // alarms set again even if the head didn't change
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertTrue(done[0]);
+        verifyAlarmsSet(4);
+    }
+
+    private void verifyAlarmsSet(int count) {
+        verify(alarmScheduler, times(count)).set(anyInt(), anyLong());
+    }
+}
@@ -0,0 +1,154 @@
+package com.iclaude.scheduledrecorder;
+
+import com.iclaude.scheduledrecorder.database.ScheduleExecution;
+import com.iclaude.scheduledrecorder.testutils.ScheduleSimulator;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs RecordingScheduler against a virtual clock (see ScheduleSimulator): a year of scheduled
+ * recordings with edits, reboots and clock changes.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class ScheduleSimulatorTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long T0 = 1514764800000L; // 1 January 2018 00:00 UTC
+
+    @Test
+    public void testYearOfRecordings() {
+        ScheduleSimulator simulator = new ScheduleSimulator(RuntimeEnvironment.application, T0);
+        Random random = new Random(42);
+
+        // 8 slots of 3 hours per day, a recording in some of them (never overlapping).
+        List<Integer> ids = new ArrayList<>();
+        List<Long> slots = new ArrayList<>();
+        List<Long> ats = new ArrayList<>();
+        for (long slot = T0 + HOUR; slot < T0 + 365 * DAY; slot += 3 * HOUR) {
+            if (random.nextInt(3) != 0) continue;
+            long start = slot + random.nextInt(60) * MINUTE;
+            long at = Math.max(T0, start - random.nextInt(30) * DAY); // scheduled some days before
+            ids.add(simulator.add(at, start, start + (5 + random.nextInt(60)) * MINUTE));
+            slots.add(slot);
+            ats.add(at);
+        }
+        // Moved inside their slot or deleted an hour before the slot.
+        int deleted = 0;
+        for (int i = 0; i < ids.size(); i += 7) {
+            long slot = slots.get(i);
+            if (ats.get(i) > slot - HOUR) continue; // not scheduled yet
+            if (random.nextBoolean()) {
+                long start = slot + random.nextInt(90) * MINUTE;
+                simulator.edit(slot - HOUR, ids.get(i), start, start + 30 * MINUTE);
+            } else {
+                simulator.delete(slot - HOUR, ids.get(i));
+                deleted++;
+            }
+        }
+
+        ScheduleSimulator.Report report = simulator.run(T0 + 366 * DAY);
+        assertEquals(report.toString(), ids.size() - deleted, report.recorded);
+        assertEquals(report.toString(), 0, report.missed);
+        assertEquals(report.toString(), 0, report.overlapping);
+        assertEquals(report.toString(), 0, report.late);
+    }
+
+    @Test
+    public void testBurstOfEdits() {
+        ScheduleSimulator simulator = new ScheduleSimulator(RuntimeEnvironment.application, T0);
+
+        // 100 recordings added at the same time, the earliest last.
+        for (int i = 100; i > 0; i--) {
+            simulator.add(T0 + MINUTE, T0 + i * HOUR, T0 + i * HOUR + 10 * MINUTE);
+        }
+
+        ScheduleSimulator.Report report = simulator.run(T0 + 2 * HOUR - MINUTE);
+        assertEquals(1, report.recorded);
+        // Warm-up and start of the first recording, then of the second one.
+        assertEquals(report.toString(), 4, report.alarmsSet);
+    }
+
+    @Test
+    public void testBackToBack() {
+        ScheduleSimulator simulator = new ScheduleSimulator(RuntimeEnvironment.application, T0);
+        simulator.add(T0, T0 + 10 * HOUR, T0 + 11 * HOUR);
+        simulator.add(T0, T0 + 11 * HOUR, T0 + 12 * HOUR); // its alarm comes before the hand-off
+        simulator.add(T0, T0 + 12 * HOUR, T0 + 13 * HOUR);
+        simulator.add(T0, T0 + 15 * HOUR, T0 + 16 * HOUR);
+
+        ScheduleSimulator.Report report = simulator.run(T0 + DAY);
+        assertEquals(report.toString(), 4, report.recorded);
+        assertEquals(report.toString(), 2, report.handedOff);
+        assertEquals(report.toString(), 0, report.overlapping);
+        assertEquals(report.toString(), 0, report.late);
+    }
+
+    @Test
+    public void testOneExecutionPerRecording() {
+        ScheduleSimulator simulator = new ScheduleSimulator(RuntimeEnvironment.application, T0);
+        simulator.add(T0, T0 + 10 * HOUR, T0 + 11 * HOUR);
+        simulator.add(T0, T0 + 11 * HOUR, T0 + 12 * HOUR); // handed off after its alarm
+        simulator.add(T0, T0 + 12 * HOUR, T0 + 13 * HOUR);
+
+        ScheduleSimulator.Report report = simulator.run(T0 + DAY);
+        assertEquals(report.toString(), 3, report.executions.size());
+        Set<Integer> ids = new HashSet<>();
+        for (ScheduleExecution execution : report.executions) {
+            assertTrue("more than one execution of " + execution.getScheduledId(), ids.add(execution.getScheduledId()));
+            assertTrue(execution.getCaptureStart() > 0);
+            assertTrue(execution.getAlarmTime() > 0); // kept by the hand-off
+            if (execution.getScheduledId() != 1)
+                assertEquals(ScheduleExecution.REASON_HAND_OFF, execution.getReason());
+        }
+    }
+
+    @Test
+    public void testReboot() {
+        ScheduleSimulator simulator = new ScheduleSimulator(RuntimeEnvironment.application, T0);
+        simulator.add(T0, T0 + 10 * HOUR, T0 + 11 * HOUR);
+        simulator.add(T0, T0 + 12 * HOUR, T0 + 13 * HOUR);
+        simulator.add(T0, T0 + 14 * HOUR, T0 + 15 * HOUR);
+
+        simulator.reboot(T0 + 9 * HOUR, 10 * MINUTE); // alarms restored from the snapshot
+        simulator.reboot(T0 + 11 * HOUR + 50 * MINUTE, 30 * MINUTE); // off at the start of the second one
+
+        ScheduleSimulator.Report report = simulator.run(T0 + DAY);
+        assertEquals(report.toString(), 2, report.recorded);
+        assertEquals(report.toString(), 1, report.missed);
+        assertEquals(report.toString(), 0, report.late);
+    }
+
+    @Test
+    public void testClockChanges() {
+        ScheduleSimulator simulator = new ScheduleSimulator(RuntimeEnvironment.application, T0);
+        simulator.add(T0, T0 + 10 * HOUR, T0 + 11 * HOUR);
+        simulator.add(T0, T0 + 12 * HOUR, T0 + 13 * HOUR);
+        simulator.add(T0, T0 + 14 * HOUR, T0 + 15 * HOUR);
+
+        // Forward across the start of the first one, backward before the second one.
+        simulator.setClock(T0 + 10 * HOUR - MINUTE, T0 + 10 * HOUR + 30 * 1000);
+        simulator.setClock(T0 + 11 * HOUR + 59 * MINUTE, T0 + 11 * HOUR);
+
+        ScheduleSimulator.Report report = simulator.run(T0 + DAY);
+        assertEquals(report.toString(), 3, report.recorded);
+        assertEquals(report.toString(), 1, report.late);
+        assertTrue(report.toString(), report.maxLag >= 30 * 1000);
+    }
+}
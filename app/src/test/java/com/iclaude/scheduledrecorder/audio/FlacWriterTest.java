@@ -0,0 +1,32 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for FlacWriter headers.
+ */
+public class FlacWriterTest {
+
+    @Test
+    public void testFlacStreamInfo() {
+        byte[] header = FlacWriter.buildHeader(44100, 1);
+        assertEquals(42, header.length);
+        assertEquals('f', header[0]);
+        assertEquals((byte) 0x80, header[4]); // last metadata block, STREAMINFO
+        int sampleRate = ((header[18] & 0xFF) << 12) | ((header[19] & 0xFF) << 4) | ((header[20] & 0xFF) >> 4);
+        assertEquals(44100, sampleRate);
+        assertEquals(0, (header[20] >> 1) & 0x07); // 1 channel
+        assertEquals(15, ((header[20] & 0x01) << 4) | ((header[21] & 0xFF) >> 4)); // 16 bits
+    }
+
+    @Test
+    public void testFlacLastMetadataBlock() {
+        // STREAMINFO (4 bytes, not last) followed by PADDING (2 bytes, not last).
+        byte[] header = {'f', 'L', 'a', 'C', 0, 0, 0, 4, 1, 2, 3, 4, 1, 0, 0, 2, 0, 0};
+        FlacWriter.setLastMetadataBlock(header);
+        assertEquals(0, header[4]);
+        assertEquals((byte) 0x81, header[12]);
+    }
+}
@@ -0,0 +1,53 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for LevelMeter.
+ */
+public class LevelMeterTest {
+
+    private LevelMeter levelMeter;
+    private int calls, peak, rms, clipped;
+
+    @Before
+    public void setup() {
+        levelMeter = new LevelMeter(1000, 4); // blocks of 4 samples
+        levelMeter.setListener((peak, rms, clippedSamples) -> {
+            calls++;
+            this.peak = peak;
+            this.rms = rms;
+            this.clipped = clippedSamples;
+        });
+    }
+
+    @Test
+    public void testPublishedOncePerBlock() {
+        levelMeter.process(new short[]{100, -200, 300}, 0, 3);
+        assertEquals(0, calls);
+
+        levelMeter.process(new short[]{-400, 10, 10}, 0, 3);
+        assertEquals(1, calls);
+        assertEquals(400, peak);
+        assertEquals(273, rms); // sqrt((100^2 + 200^2 + 300^2 + 400^2) / 4)
+        assertEquals(0, clipped);
+    }
+
+    @Test
+    public void testClippedSamples() {
+        levelMeter.process(new short[]{Short.MAX_VALUE, Short.MIN_VALUE, 0, 5}, 0, 4);
+        assertEquals(1, calls);
+        assertEquals(Short.MAX_VALUE, peak);
+        assertEquals(2, clipped);
+    }
+
+    @Test
+    public void testOffsetAndLength() {
+        levelMeter.process(new short[]{30000, 1, 2, 3, 4, 30000}, 1, 4);
+        assertEquals(1, calls);
+        assertEquals(4, peak);
+    }
+}
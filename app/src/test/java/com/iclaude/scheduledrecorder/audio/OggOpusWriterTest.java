@@ -0,0 +1,114 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for OggOpusWriter.
+ */
+public class OggOpusWriterTest {
+
+    private static final int SERIAL = 1234;
+    private static final int PRE_SKIP = 312;
+
+    private ByteArrayOutputStream out;
+    private OggOpusWriter writer;
+
+    @Before
+    public void setup() throws IOException {
+        out = new ByteArrayOutputStream();
+        writer = new OggOpusWriter(out, SERIAL);
+        writer.start(16000, 1, PRE_SKIP);
+    }
+
+    @Test
+    public void testPacketSamples() {
+        // CELT 20 ms, 1 frame.
+        assertEquals(960, OggOpusWriter.getPacketSamples(new byte[]{(byte) (31 << 3)}, 1));
+        // SILK 20 ms, 2 frames.
+        assertEquals(1920, OggOpusWriter.getPacketSamples(new byte[]{(byte) ((1 << 3) | 1)}, 1));
+        // SILK 60 ms, code 3 with 2 frames.
+        assertEquals(5760, OggOpusWriter.getPacketSamples(new byte[]{(byte) ((3 << 3) | 3), 2}, 2));
+        assertEquals(0, OggOpusWriter.getPacketSamples(new byte[0], 0));
+    }
+
+    @Test
+    public void testHeaderPages() throws IOException {
+        writer.stop();
+        ByteBuffer pages = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+
+        // OpusHead: first page, beginning of stream.
+        assertPage(pages, 0x02, 0, 0);
+        assertEquals(1, pages.get(26)); // 1 segment
+        assertEquals(19, pages.get(27));
+        assertEquals('O', pages.get(28));
+        assertEquals(PRE_SKIP, pages.getShort(28 + 10));
+        assertEquals(16000, pages.getInt(28 + 12));
+
+        // OpusTags and the empty end of stream page.
+        int second = 28 + 19;
+        pages.position(second);
+        assertPage(pages.slice().order(ByteOrder.LITTLE_ENDIAN), 0, 0, 1);
+        int tagsLength = pages.get(second + 27);
+        pages.position(second + 28 + tagsLength);
+        assertPage(pages.slice().order(ByteOrder.LITTLE_ENDIAN), 0x04, 0, 2);
+    }
+
+    @Test
+    public void testGranulePosition() throws IOException {
+        out.reset();
+        writePacket(300); // 2 lacing values
+        writePacket(20);
+        writer.stop();
+
+        ByteBuffer page = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertPage(page, 0x04, 2 * 960, 2);
+        assertEquals(3, page.get(26));
+        assertEquals((byte) 255, page.get(27));
+        assertEquals(300 - 255, page.get(28));
+        assertEquals(20, page.get(29));
+        assertEquals(27 + 3 + 320, out.size());
+    }
+
+    @Test
+    public void testCrc() {
+        // Ogg CRC: polynomial 0x04C11DB7, initial value 0, no reflection, no final xor.
+        byte[] data = "123456789".getBytes();
+        assertEquals(0x89A1897F, OggOpusWriter.crc(0, data, data.length));
+    }
+
+    private void writePacket(int length) throws IOException {
+        byte[] packet = new byte[length];
+        packet[0] = (byte) (31 << 3); // CELT 20 ms
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        info.size = length;
+        writer.writeSampleData(ByteBuffer.wrap(packet), info);
+    }
+
+    private void assertPage(ByteBuffer page, int flags, long granule, int sequence) {
+        assertEquals('O', page.get(0));
+        assertEquals('S', page.get(3));
+        assertEquals(flags, page.get(5));
+        assertEquals(granule, page.getLong(6));
+        assertEquals(SERIAL, page.getInt(14));
+        assertEquals(sequence, page.getInt(18));
+
+        // The CRC is computed with the CRC field set to 0.
+        int length = 27 + (page.get(26) & 0xFF);
+        for (int i = 0; i < (page.get(26) & 0xFF); i++) length += page.get(27 + i) & 0xFF;
+        byte[] bytes = new byte[length];
+        page.duplicate().get(bytes);
+        int crc = page.getInt(22);
+        bytes[22] = bytes[23] = bytes[24] = bytes[25] = 0;
+        assertEquals(crc, OggOpusWriter.crc(0, bytes, length));
+    }
+}
@@ -0,0 +1,95 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for PcmRingBuffer.
+ */
+public class PcmRingBufferTest {
+
+    private PcmRingBuffer ringBuffer;
+
+    @Before
+    public void setup() {
+        ringBuffer = new PcmRingBuffer(6); // rounded up to 8
+    }
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, ringBuffer.getCapacity());
+        assertEquals(0, ringBuffer.available());
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        short[] src = {1, 2, 3, 4, 5};
+        assertEquals(5, ringBuffer.write(src, 0, src.length));
+        assertEquals(5, ringBuffer.available());
+
+        short[] dst = new short[5];
+        assertEquals(5, ringBuffer.read(dst, 0, dst.length));
+        for (int i = 0; i < src.length; i++)
+            assertEquals(src[i], dst[i]);
+        assertEquals(0, ringBuffer.available());
+    }
+
+    @Test
+    public void testWrapAround() {
+        short[] dst = new short[8];
+        ringBuffer.write(new short[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        ringBuffer.read(dst, 0, 6);
+
+        // This write crosses the end of the internal array.
+        assertEquals(5, ringBuffer.write(new short[]{7, 8, 9, 10, 11}, 0, 5));
+        assertEquals(5, ringBuffer.read(dst, 0, 8));
+        assertEquals(7, dst[0]);
+        assertEquals(8, dst[1]);
+        assertEquals(9, dst[2]);
+        assertEquals(11, dst[4]);
+    }
+
+    @Test
+    public void testOverrunIsCounted() {
+        assertEquals(8, ringBuffer.write(new short[10], 0, 10));
+        assertEquals(1, ringBuffer.getOverrunCount());
+        assertEquals(2, ringBuffer.getDroppedSamples());
+        assertEquals(8, ringBuffer.getHighWaterMark());
+
+        ringBuffer.clear();
+        assertEquals(0, ringBuffer.getOverrunCount());
+        assertEquals(0, ringBuffer.available());
+    }
+
+    @Test
+    public void testConcurrentProducerConsumer() throws Exception {
+        PcmRingBuffer buffer = new PcmRingBuffer(1024);
+        final int total = 200000;
+
+        Thread producer = new Thread(() -> {
+            short[] chunk = new short[64];
+            int next = 0;
+            while (next < total) {
+                int n = Math.min(chunk.length, total - next);
+                for (int i = 0; i < n; i++) chunk[i] = (short) (next + i);
+                int written = buffer.write(chunk, 0, n);
+                next += written;
+                if (written < n) Thread.yield();
+            }
+        });
+        producer.start();
+
+        short[] chunk = new short[100];
+        int expected = 0;
+        while (expected < total) {
+            int read = buffer.read(chunk, 0, chunk.length);
+            for (int i = 0; i < read; i++) {
+                assertEquals((short) expected, chunk[i]);
+                expected++;
+            }
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,56 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for PreRollBuffer.
+ */
+public class PreRollBufferTest {
+
+    private PreRollBuffer preRollBuffer;
+    private PcmRingBuffer ringBuffer;
+
+    @Before
+    public void setup() {
+        preRollBuffer = new PreRollBuffer(4);
+        ringBuffer = new PcmRingBuffer(16);
+    }
+
+    @Test
+    public void testDrainNotFull() {
+        preRollBuffer.write(new short[]{1, 2}, 0, 2);
+        assertEquals(2, preRollBuffer.size());
+
+        assertEquals(2, preRollBuffer.drainTo(ringBuffer));
+        assertRingContent(1, 2);
+        assertEquals(0, preRollBuffer.size());
+    }
+
+    @Test
+    public void testOldestSamplesOverwritten() {
+        preRollBuffer.write(new short[]{1, 2, 3}, 0, 3);
+        preRollBuffer.write(new short[]{4, 5, 6}, 0, 3);
+        assertEquals(4, preRollBuffer.size());
+
+        assertEquals(4, preRollBuffer.drainTo(ringBuffer));
+        assertRingContent(3, 4, 5, 6);
+    }
+
+    @Test
+    public void testWriteLongerThanCapacity() {
+        preRollBuffer.write(new short[]{0, 1, 2, 3, 4, 5, 6, 7}, 1, 6);
+        assertEquals(4, preRollBuffer.drainTo(ringBuffer));
+        assertRingContent(3, 4, 5, 6);
+    }
+
+    private void assertRingContent(int... expected) {
+        assertEquals(expected.length, ringBuffer.available());
+        short[] dst = new short[expected.length];
+        ringBuffer.read(dst, 0, dst.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], dst[i]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.AudioRecord;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for ReadErrorPolicy.
+ */
+public class ReadErrorPolicyTest {
+
+    private ReadErrorPolicy policy;
+
+    @Before
+    public void setup() {
+        policy = new ReadErrorPolicy();
+    }
+
+    @Test
+    public void testBackoffDoubles() {
+        assertEquals(0, policy.onRead(960));
+        assertEquals(5, policy.onRead(AudioRecord.ERROR_INVALID_OPERATION));
+        assertEquals(10, policy.onRead(AudioRecord.ERROR_INVALID_OPERATION));
+        assertEquals(20, policy.onRead(AudioRecord.ERROR));
+        assertEquals(3, policy.getConsecutiveErrors());
+
+        // A successful read resets the back-off.
+        assertEquals(0, policy.onRead(960));
+        assertEquals(0, policy.getConsecutiveErrors());
+        assertEquals(5, policy.onRead(AudioRecord.ERROR_INVALID_OPERATION));
+    }
+
+    @Test
+    public void testPersistentErrorIsFatal() {
+        for (int i = 1; i < ReadErrorPolicy.MAX_CONSECUTIVE_ERRORS; i++) {
+            long backoff = policy.onRead(AudioRecord.ERROR_INVALID_OPERATION);
+            assertEquals(Math.min(ReadErrorPolicy.MIN_BACKOFF_MS << (i - 1), ReadErrorPolicy.MAX_BACKOFF_MS), backoff);
+        }
+        assertEquals(ReadErrorPolicy.FATAL, policy.onRead(AudioRecord.ERROR_INVALID_OPERATION));
+    }
+
+    @Test
+    public void testDeadObjectIsFatal() {
+        assertEquals(0, policy.onRead(0));
+        assertEquals(ReadErrorPolicy.FATAL, policy.onRead(AudioRecord.ERROR_DEAD_OBJECT));
+    }
+}
@@ -0,0 +1,178 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit tests for SegmentedMuxer, with a ContainerWriter that can fail.
+ */
+public class SegmentedMuxerTest {
+
+    private static class FakeWriter implements ContainerWriter {
+        final String filePath;
+        int frames = 0;
+        int failAtFrame = -1; // writeSampleData() throws at this frame
+        boolean failOnStop = false;
+        boolean stopped = false;
+        boolean released = false;
+
+        FakeWriter(String filePath) throws IOException {
+            this.filePath = filePath;
+            new File(filePath).createNewFile();
+        }
+
+        @Override
+        public void start(MediaFormat format, ByteBuffer codecConfig) {
+        }
+
+        @Override
+        public void writeSampleData(ByteBuffer data, MediaCodec.BufferInfo info) throws IOException {
+            if (frames == failAtFrame) throw new IOException("No space left on device");
+            frames++;
+        }
+
+        @Override
+        public void stop() throws IOException {
+            if (failOnStop) throw new IOException("No space left on device");
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<FakeWriter> writers = new ArrayList<>();
+    private final List<String> finished = new ArrayList<>();
+    private final List<String> discarded = new ArrayList<>();
+    private int failAtFrame = -1;
+    private boolean failOnStop = false;
+    private String basePath;
+    private SegmentedMuxer muxer;
+
+
+    @Before
+    public void setup() {
+        basePath = new File(folder.getRoot(), "myrec.m4a").getAbsolutePath();
+        muxer = createMuxer(0);
+    }
+
+    // maxSegmentMs = 0: a single file.
+    private SegmentedMuxer createMuxer(long maxSegmentMs) {
+        SegmentedMuxer muxer = new SegmentedMuxer(basePath, filePath -> {
+            FakeWriter writer = new FakeWriter(filePath);
+            writer.failAtFrame = failAtFrame;
+            writer.failOnStop = failOnStop;
+            writers.add(writer);
+            return writer;
+        }, maxSegmentMs, 0);
+        muxer.setListener(new SegmentedMuxer.Listener() {
+            @Override
+            public void onSegmentFinished(String filePath, int index, long startUs, long endUs) {
+                finished.add(filePath);
+            }
+
+            @Override
+            public void onSegmentDiscarded(String filePath, int index) {
+                discarded.add(filePath);
+            }
+        });
+        return muxer;
+    }
+
+    @Test
+    public void testWriterErrorFinalizesFile() throws IOException {
+        failAtFrame = 2;
+        muxer.open();
+        writeFrame(0);
+        writeFrame(20000);
+        try {
+            writeFrame(40000);
+            fail("The error of the writer must reach the encoder thread");
+        } catch (IOException e) {
+            // expected: the engine stops the capture and notifies onError()
+        }
+
+        muxer.stop();
+        muxer.release();
+        assertTrue(writers.get(0).stopped);
+        assertTrue(writers.get(0).released);
+        assertEquals(1, finished.size()); // saved, not left in progress
+        assertEquals(basePath, finished.get(0));
+    }
+
+    @Test
+    public void testWriterErrorOnStop() throws IOException {
+        failOnStop = true;
+        muxer.open();
+        writeFrame(0);
+        try {
+            muxer.stop();
+            fail("The error of the writer must be reported");
+        } catch (IOException e) {
+            // expected
+        }
+
+        muxer.release();
+        assertTrue(writers.get(0).released);
+        assertEquals(1, finished.size());
+    }
+
+    @Test
+    public void testEmptyFileDiscarded() throws IOException {
+        muxer.open();
+        muxer.stop(); // no frames
+
+        assertEquals(0, finished.size());
+        assertEquals(1, discarded.size());
+        assertFalse(new File(basePath).exists());
+        assertTrue(writers.get(0).released);
+        assertFalse(writers.get(0).stopped);
+    }
+
+    @Test
+    public void testEmptySegmentAfterSwitchDiscarded() throws IOException {
+        muxer = createMuxer(1000); // segments of 1 s
+        muxer.open();
+        writeFrame(0);
+        writeFrame(1000000); // rotation: segment 2
+        String nextPath = new File(folder.getRoot(), "myrec2.m4a").getAbsolutePath();
+        muxer.switchTo(nextPath, 1020000);
+        muxer.stop(); // stopped right after the hand-off
+
+        assertEquals(2, finished.size());
+        assertEquals(SegmentedMuxer.getSegmentPath(basePath, 1), finished.get(0));
+        assertEquals(SegmentedMuxer.getSegmentPath(basePath, 2), finished.get(1));
+        assertEquals(1, discarded.size());
+        assertEquals(SegmentedMuxer.getSegmentPath(nextPath, 1), discarded.get(0));
+        assertFalse(new File(discarded.get(0)).exists());
+        assertTrue(new File(finished.get(1)).exists());
+    }
+
+    private void writeFrame(long presentationTimeUs) throws IOException {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        info.presentationTimeUs = presentationTimeUs;
+        info.size = 100;
+        muxer.writeSampleData(ByteBuffer.allocate(100), info);
+    }
+}
@@ -0,0 +1,80 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Unit tests for TimeMap.
+ */
+public class TimeMapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeMap timeMap;
+
+    @Before
+    public void setup() {
+        // Units of 1 ms: 10 s of media, 50 s of silence skipped, then media again.
+        timeMap = new TimeMap(8);
+        timeMap.add(10000, 60000);
+        timeMap.add(20000, 100000);
+    }
+
+    @Test
+    public void testToWallTime() {
+        assertEquals(5000, timeMap.toWallTime(5000));
+        assertEquals(60000, timeMap.toWallTime(10000));
+        assertEquals(65000, timeMap.toWallTime(15000));
+        assertEquals(101000, timeMap.toWallTime(21000));
+    }
+
+    @Test
+    public void testFullMapDropsEntries() {
+        TimeMap small = new TimeMap(1);
+        small.add(1, 2);
+        small.add(3, 4);
+        assertEquals(1, small.size());
+    }
+
+    @Test
+    public void testWriteSegmentAndLoad() throws IOException {
+        File audio = folder.newFile("myrec1000_2");
+        // Segment from 15 s to 25 s of media.
+        timeMap.write(new File(audio.getAbsolutePath() + TimeMap.EXTENSION), 15000, 25000, 0, 1000);
+
+        TimeMap loaded = TimeMap.load(audio.getAbsolutePath());
+        assertNotNull(loaded);
+        assertEquals(2, loaded.size());
+        assertEquals(65000, loaded.toWallTime(0));
+        assertEquals(100000, loaded.toWallTime(5000));
+        assertEquals(102000, loaded.toWallTime(7000));
+    }
+
+    @Test
+    public void testWriteAfterHandOff() throws IOException {
+        // The capture continued in a new recording at 62 s of wall-clock time (12 s of media).
+        File audio = folder.newFile("myrec62000");
+        timeMap.write(new File(audio.getAbsolutePath() + TimeMap.EXTENSION), 12000, 30000, 62000, 1000);
+
+        TimeMap loaded = TimeMap.load(audio.getAbsolutePath());
+        assertNotNull(loaded);
+        assertEquals(0, loaded.toWallTime(0));
+        assertEquals(38000, loaded.toWallTime(8000)); // silence skipped from 8 s to 38 s
+        assertEquals(40000, loaded.toWallTime(10000));
+    }
+
+    @Test
+    public void testLoadMissing() {
+        assertNull(TimeMap.load(new File(folder.getRoot(), "missing").getAbsolutePath()));
+    }
+}
@@ -0,0 +1,50 @@
+package com.iclaude.scheduledrecorder.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for VoiceActivityDetector.
+ */
+public class VoiceActivityDetectorTest {
+
+    private static final short[] SILENCE = {1, -1, 2, -2};
+    private static final short[] VOICE = {10000, -10000, 10000, -10000};
+
+    private VoiceActivityDetector detector;
+
+    @Before
+    public void setup() {
+        detector = new VoiceActivityDetector(1000, -40, 8); // hangover of 8 samples
+    }
+
+    @Test
+    public void testVoiceKept() {
+        assertTrue(detector.process(VOICE, 0, VOICE.length));
+    }
+
+    @Test
+    public void testSilenceSkippedAfterHangover() {
+        assertTrue(detector.process(VOICE, 0, VOICE.length));
+        assertTrue(detector.process(SILENCE, 0, SILENCE.length));
+        assertTrue(detector.process(SILENCE, 0, SILENCE.length));
+        assertFalse(detector.process(SILENCE, 0, SILENCE.length));
+
+        // Voice again.
+        assertTrue(detector.process(VOICE, 0, VOICE.length));
+        assertTrue(detector.process(SILENCE, 0, SILENCE.length));
+    }
+
+    @Test
+    public void testBeginningKeptForHangover() {
+        assertTrue(detector.process(SILENCE, 0, SILENCE.length));
+        assertTrue(detector.process(SILENCE, 0, SILENCE.length));
+        assertFalse(detector.process(SILENCE, 0, SILENCE.length));
+
+        detector.reset();
+        assertTrue(detector.process(SILENCE, 0, SILENCE.length));
+    }
+}
@@ -0,0 +1,127 @@
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.persistence.room.RoomDatabase;
+
+import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface.OperationResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for MutationBatcher.
+ */
+public class MutationBatcherTest {
+
+    private RoomDatabase database;
+    private MutationBatcher.Listener listener;
+    private MutationBatcher batcher;
+
+    @Before
+    public void setup() {
+        database = mock(RoomDatabase.class);
+        listener = mock(MutationBatcher.Listener.class);
+        // Long window: the batches are applied by flush() and execute().
+        batcher = new MutationBatcher(database, Runnable::run, Runnable::run, 60000, listener);
+    }
+
+    @Test
+    public void testOneTransactionPerBatch() {
+        List<Integer> applied = new ArrayList<>();
+        List<OperationResult> callbacks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            int change = i;
+            OperationResult callback = mock(OperationResult.class);
+            callbacks.add(callback);
+            batcher.submit(() -> applied.add(change), false, callback);
+        }
+        batcher.flush();
+
+        assertEquals(50, applied.size());
+        assertEquals(49, (int) applied.get(49)); // in order
+        verify(database, times(1)).beginTransaction();
+        verify(database, times(1)).setTransactionSuccessful();
+        verify(database, times(1)).endTransaction();
+        verify(listener).onBatchCommitted(false);
+        for (OperationResult callback : callbacks) {
+            verify(callback).onSuccess();
+        }
+
+        batcher.flush(); // nothing left
+        verify(database, times(1)).beginTransaction();
+    }
+
+    @Test
+    public void testFailedChangeDoesntUndoTheOthers() {
+        OperationResult ok = mock(OperationResult.class);
+        OperationResult notFound = mock(OperationResult.class);
+        OperationResult conflict = mock(OperationResult.class);
+        batcher.submit(() -> true, false, ok);
+        batcher.submit(() -> false, true, notFound);
+        batcher.submit(() -> {
+            throw new IllegalStateException("constraint");
+        }, true, conflict);
+        batcher.submit(() -> true, false, null);
+        batcher.flush();
+
+        verify(database).setTransactionSuccessful();
+        verify(listener).onBatchCommitted(false); // the schedule changes failed
+        verify(ok).onSuccess();
+        verify(notFound).onFailure();
+        verify(conflict).onFailure();
+    }
+
+    @Test
+    public void testRollback() {
+        doThrow(new IllegalStateException("disk full")).when(database).endTransaction();
+        OperationResult callback = mock(OperationResult.class);
+        batcher.submit(() -> true, true, callback);
+        batcher.flush();
+
+        verify(listener).onBatchRolledBack();
+        verify(callback).onFailure();
+    }
+
+    @Test
+    public void testExecuteAfterPendingChanges() {
+        List<String> done = new ArrayList<>();
+        batcher.submit(() -> done.add("change"), true, null);
+        batcher.execute(() -> done.add("task"));
+
+        assertEquals(2, done.size());
+        assertEquals("change", done.get(0));
+        verify(listener).onBatchCommitted(true);
+    }
+
+    @Test
+    public void testFlushAfterWindow() throws InterruptedException {
+        batcher = new MutationBatcher(database, Runnable::run, Runnable::run, 10, listener);
+        CountDownLatch done = new CountDownLatch(2);
+        OperationResult callback = new OperationResult() {
+            @Override
+            public void onSuccess() {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure() {
+            }
+        };
+        batcher.submit(() -> true, false, callback);
+        batcher.submit(() -> true, false, callback);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        verify(database, times(1)).beginTransaction();
+    }
+}
@@ -0,0 +1,117 @@
+package com.iclaude.scheduledrecorder.database;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for RecordingsBulkDelete.
+ */
+@SuppressWarnings("unchecked")
+public class RecordingsBulkDeleteTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private AppDatabase database;
+    @Mock
+    private RecordingsDao recordingsDao;
+
+    private final ExecutorService fileIO = Executors.newFixedThreadPool(4);
+    private RecordingsBulkDelete bulkDelete;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(database.recordingsDao()).thenReturn(recordingsDao);
+
+        bulkDelete = new RecordingsBulkDelete(database, fileIO);
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        // 1200 files: 3 statements in one transaction.
+        List<Recording> recordings = new ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            File file = folder.newFile("rec" + i);
+            recordings.add(new Recording(i, file.getName(), file.getAbsolutePath(), 1000, 10000));
+        }
+        // Already deleted.
+        recordings.add(new Recording(1201, "rec1201", new File(folder.getRoot(), "rec1201").getAbsolutePath(), 1000, 10000));
+
+        RecordingsBulkDelete.Result result = bulkDelete.delete(recordings);
+
+        assertEquals(1201, result.deleted.size());
+        assertTrue(result.failed.isEmpty());
+        assertEquals(0, folder.getRoot().list().length);
+        ArgumentCaptor<List<Integer>> captor = ArgumentCaptor.forClass(List.class);
+        verify(recordingsDao, times(3)).deleteRecordings(captor.capture());
+        assertEquals(RecordingsBulkDelete.MAX_IDS, captor.getAllValues().get(0).size());
+        assertEquals(1201 - 2 * RecordingsBulkDelete.MAX_IDS, captor.getAllValues().get(2).size());
+        assertEquals(1201, (int) captor.getAllValues().get(2).get(1201 - 2 * RecordingsBulkDelete.MAX_IDS - 1));
+        verify(database, times(1)).beginTransaction();
+        verify(database, times(1)).setTransactionSuccessful();
+    }
+
+    @Test
+    public void testFileNotDeleted() throws IOException {
+        File file = folder.newFile("rec1");
+        // A non empty directory can't be deleted.
+        File directory = folder.newFolder("rec2");
+        assertTrue(new File(directory, "child").createNewFile());
+        Recording deletable = new Recording(1, "rec1", file.getAbsolutePath(), 1000, 10000);
+        Recording notDeletable = new Recording(2, "rec2", directory.getAbsolutePath(), 1000, 10000);
+
+        List<Recording> recordings = new ArrayList<>();
+        recordings.add(deletable);
+        recordings.add(notDeletable);
+        RecordingsBulkDelete.Result result = bulkDelete.delete(recordings);
+
+        assertEquals(1, result.deleted.size());
+        assertEquals(deletable, result.deleted.get(0));
+        assertEquals(1, result.failed.size());
+        assertEquals(notDeletable, result.failed.get(0));
+        ArgumentCaptor<List<Integer>> captor = ArgumentCaptor.forClass(List.class);
+        verify(recordingsDao).deleteRecordings(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(1, (int) captor.getValue().get(0));
+    }
+
+    @Test
+    public void testTransactionFailed() throws IOException {
+        File file = folder.newFile("rec1");
+        doThrow(new IllegalStateException("disk full")).when(recordingsDao).deleteRecordings(anyList());
+
+        List<Recording> recordings = new ArrayList<>();
+        recordings.add(new Recording(1, "rec1", file.getAbsolutePath(), 1000, 10000));
+        RecordingsBulkDelete.Result result = bulkDelete.delete(recordings);
+
+        assertTrue(result.deleted.isEmpty());
+        assertEquals(1, result.failed.size());
+        assertFalse(file.exists());
+        verify(database, never()).setTransactionSuccessful();
+        verify(database).endTransaction();
+    }
+}
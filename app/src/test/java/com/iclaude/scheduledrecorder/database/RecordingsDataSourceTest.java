@@ -0,0 +1,102 @@
+package com.iclaude.scheduledrecorder.database;
+
+import android.arch.paging.ItemKeyedDataSource;
+
+import com.iclaude.scheduledrecorder.testutils.FakeRecordingsDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for RecordingsDataSource (keyset pagination of the saved recordings).
+ */
+@SuppressWarnings("unchecked")
+public class RecordingsDataSourceTest {
+
+    private final List<Recording> recordings = new ArrayList<>();
+    private RecordingsDataSource dataSource;
+
+    @Before
+    public void setup() {
+        // 100 recordings, 2 at a time with the same time_added.
+        for (int i = 1; i <= 100; i++) {
+            recordings.add(new Recording(i, "name" + i, "path" + i, 1000, 10000 + (i + 1) / 2 * 1000));
+        }
+        dataSource = new RecordingsDataSource(FakeRecordingsDatabase.create(recordings));
+    }
+
+    @Test
+    public void testLoadInitial() {
+        ItemKeyedDataSource.LoadInitialCallback<Recording> callback = mock(ItemKeyedDataSource.LoadInitialCallback.class);
+        ArgumentCaptor<List<Recording>> captor = ArgumentCaptor.forClass(List.class);
+        dataSource.loadInitial(new ItemKeyedDataSource.LoadInitialParams<>(null, 30, true), callback);
+
+        verify(callback).onResult(captor.capture(), eq(0), eq(100));
+        List<Recording> page = captor.getValue();
+        assertEquals(30, page.size());
+        assertEquals(100, page.get(0).getId());
+        assertEquals(99, page.get(1).getId()); // same time_added: by id
+        assertEquals(71, page.get(29).getId());
+    }
+
+    @Test
+    public void testLoadAfterAndBefore() {
+        ItemKeyedDataSource.LoadCallback<Recording> callback = mock(ItemKeyedDataSource.LoadCallback.class);
+        ArgumentCaptor<List<Recording>> captor = ArgumentCaptor.forClass(List.class);
+
+        // Key between two recordings with the same time_added.
+        dataSource.loadAfter(new ItemKeyedDataSource.LoadParams<>(recordings.get(49), 10), callback); // id 50
+        dataSource.loadBefore(new ItemKeyedDataSource.LoadParams<>(recordings.get(49), 10), callback);
+        verify(callback, times(2)).onResult(captor.capture());
+
+        List<Recording> after = captor.getAllValues().get(0);
+        assertEquals(10, after.size());
+        assertEquals(49, after.get(0).getId());
+        assertEquals(40, after.get(9).getId());
+        List<Recording> before = captor.getAllValues().get(1);
+        assertEquals(10, before.size());
+        assertEquals(60, before.get(0).getId());
+        assertEquals(51, before.get(9).getId()); // adjacent to the key
+    }
+
+    @Test
+    public void testLoadInitialAroundKey() {
+        // The recording shown is deleted and a new one is added at the top.
+        Recording key = recordings.remove(49); // id 50
+        recordings.add(new Recording(101, "name101", "path101", 1000, 100000));
+
+        ItemKeyedDataSource.LoadInitialCallback<Recording> callback = mock(ItemKeyedDataSource.LoadInitialCallback.class);
+        ArgumentCaptor<List<Recording>> captor = ArgumentCaptor.forClass(List.class);
+        dataSource.loadInitial(new ItemKeyedDataSource.LoadInitialParams<>(key, 20, true), callback);
+
+        // 10 newer recordings (60 to 51), then the older ones.
+        verify(callback).onResult(captor.capture(), eq(101 - 60), eq(100));
+        List<Recording> page = captor.getValue();
+        assertEquals(20, page.size());
+        assertEquals(60, page.get(0).getId());
+        assertEquals(51, page.get(9).getId());
+        assertEquals(49, page.get(10).getId());
+    }
+
+    @Test
+    public void testLoadInitialWithoutPlaceholders() {
+        ItemKeyedDataSource.LoadInitialCallback<Recording> callback = mock(ItemKeyedDataSource.LoadInitialCallback.class);
+        dataSource.loadInitial(new ItemKeyedDataSource.LoadInitialParams<>(null, 30, false), callback);
+
+        verify(callback).onResult(ArgumentMatchers.<List<Recording>>any());
+        verify(callback, never()).onResult(ArgumentMatchers.<List<Recording>>any(), anyInt(), anyInt());
+    }
+}
@@ -0,0 +1,158 @@
+package com.iclaude.scheduledrecorder.database;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for RecordingsRecovery.
+ */
+public class RecordingsRecoveryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private RecordingsDao recordingsDao;
+
+    private File readable, damaged;
+    private long processStart;
+    private RecordingsRecovery recovery;
+
+    @Before
+    public void setup() throws IOException {
+        MockitoAnnotations.initMocks(this);
+
+        readable = newAudioFile("myrec1000_1");
+        damaged = newAudioFile("myrec1000_2");
+        processStart = System.currentTimeMillis() + 60000; // the files are older
+        // Only "readable" has a valid index.
+        recovery = new RecordingsRecovery(recordingsDao, path -> path.equals(readable.getAbsolutePath()) ? 5000 : -1);
+
+        when(recordingsDao.getAllRecordingPaths()).thenReturn(new ArrayList<>());
+    }
+
+    @Test
+    public void testUnfinishedRecordings() {
+        Recording first = new Recording(1, readable.getName(), readable.getAbsolutePath(), 0, 0);
+        Recording second = new Recording(2, damaged.getName(), damaged.getAbsolutePath(), 0, 0);
+        when(recordingsDao.getUnfinishedRecordings()).thenReturn(Lists.newArrayList(first, second));
+        when(recordingsDao.getAllRecordingPaths()).thenReturn(Lists.newArrayList(readable.getAbsolutePath()));
+
+        RecordingsRecovery.Result result = recovery.recover(folder.getRoot(), processStart);
+
+        assertEquals(1, result.recovered);
+        assertEquals(1, result.damaged);
+        assertEquals(0, result.registered);
+        verify(recordingsDao).finishRecording(eq(readable.getAbsolutePath()), eq(5000L), anyLong());
+        // The damaged file is kept and registered without duration.
+        verify(recordingsDao).finishRecording(eq(damaged.getAbsolutePath()), eq(0L), anyLong());
+        verify(recordingsDao, never()).deleteRecording(any());
+        assertTrue(readable.exists());
+        assertTrue(damaged.exists());
+    }
+
+    @Test
+    public void testUnfinishedRecordingsWithoutAudio() throws IOException {
+        File empty = folder.newFile("myrec2000");
+        File missing = new File(folder.getRoot(), "myrec3000");
+        Recording first = new Recording(1, empty.getName(), empty.getAbsolutePath(), 0, 0);
+        Recording second = new Recording(2, missing.getName(), missing.getAbsolutePath(), 0, 0);
+        when(recordingsDao.getUnfinishedRecordings()).thenReturn(Lists.newArrayList(first, second));
+
+        RecordingsRecovery.Result result = recovery.recover(folder.getRoot(), processStart);
+
+        assertEquals(2, result.removed);
+        verify(recordingsDao).deleteRecording(first);
+        verify(recordingsDao).deleteRecording(second);
+        assertFalse(empty.exists());
+    }
+
+    @Test
+    public void testFilesOfThisProcessIgnored() {
+        Recording recording = new Recording(1, damaged.getName(), damaged.getAbsolutePath(), 0, 0);
+        when(recordingsDao.getUnfinishedRecordings()).thenReturn(Lists.newArrayList(recording));
+
+        // The process started before the files were written: they may be recording now.
+        RecordingsRecovery.Result result = recovery.recover(folder.getRoot(), readable.lastModified() - 60000);
+
+        assertEquals(0, result.recovered + result.damaged + result.removed + result.registered);
+        verify(recordingsDao, never()).finishRecording(any(), anyLong(), anyLong());
+        verify(recordingsDao, never()).deleteRecording(any());
+        verify(recordingsDao, never()).insertRecording(any());
+        assertTrue(damaged.exists());
+    }
+
+    @Test
+    public void testUntrackedFiles() throws IOException {
+        folder.newFile("other_file");
+        when(recordingsDao.getUnfinishedRecordings()).thenReturn(new ArrayList<>());
+
+        RecordingsRecovery.Result result = recovery.recover(folder.getRoot(), processStart);
+
+        assertEquals(1, result.registered);
+        ArgumentCaptor<Recording> captor = ArgumentCaptor.forClass(Recording.class);
+        verify(recordingsDao).insertRecording(captor.capture());
+        assertEquals(readable.getAbsolutePath(), captor.getValue().getPath());
+        assertEquals(5000, captor.getValue().getLength());
+        assertTrue(damaged.exists()); // untracked files are never deleted
+    }
+
+    @Test
+    public void testTemporaryFilesIgnored() throws IOException {
+        File joined = newAudioFile("myrec3000.m4a.tmp");
+        when(recordingsDao.getUnfinishedRecordings()).thenReturn(new ArrayList<>());
+        recovery = new RecordingsRecovery(recordingsDao, path -> 5000);
+
+        RecordingsRecovery.Result result = recovery.recover(folder.getRoot(), processStart);
+
+        assertEquals(2, result.registered); // readable and damaged
+        ArgumentCaptor<Recording> captor = ArgumentCaptor.forClass(Recording.class);
+        verify(recordingsDao, times(2)).insertRecording(captor.capture());
+        for (Recording recording : captor.getAllValues()) {
+            assertFalse(recording.getPath().equals(joined.getAbsolutePath()));
+        }
+        assertTrue(joined.exists());
+    }
+
+    @Test
+    public void testTrackedFilesIgnored() {
+        when(recordingsDao.getUnfinishedRecordings()).thenReturn(new ArrayList<>());
+        when(recordingsDao.getAllRecordingPaths()).thenReturn(Lists.newArrayList(readable.getAbsolutePath(), damaged.getAbsolutePath()));
+
+        RecordingsRecovery.Result result = recovery.recover(folder.getRoot(), processStart);
+
+        assertEquals(0, result.registered);
+        verify(recordingsDao, never()).insertRecording(any());
+    }
+
+    private File newAudioFile(String name) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[1024]);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,33 @@
+package com.iclaude.scheduledrecorder.database;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Unit tests for the search expressions of RecordingsSearchDataSource.
+ */
+public class RecordingsSearchDataSourceTest {
+
+    @Test
+    public void testMatchQuery() {
+        assertEquals("interview* 12*", RecordingsSearchDataSource.toMatchQuery("Interview 12"));
+        assertEquals("rec* 12*", RecordingsSearchDataSource.toMatchQuery("  rec-12 "));
+        assertEquals("città*", RecordingsSearchDataSource.toMatchQuery("città"));
+    }
+
+    @Test
+    public void testMatchQueryWithoutSyntax() {
+        // Operators, phrases, column filters and NEAR are plain words.
+        assertEquals("a* or* b*", RecordingsSearchDataSource.toMatchQuery("a OR b"));
+        assertEquals("name* x* near* 3* y*", RecordingsSearchDataSource.toMatchQuery("name:\"x\" NEAR/3 -y*"));
+        assertNull(RecordingsSearchDataSource.toMatchQuery(""));
+        assertNull(RecordingsSearchDataSource.toMatchQuery(" *\"- "));
+    }
+
+    @Test
+    public void testEscapeLike() {
+        assertEquals("100\\%\\_a\\\\b", RecordingsSearchDataSource.escapeLike("100%_a\\b"));
+    }
+}
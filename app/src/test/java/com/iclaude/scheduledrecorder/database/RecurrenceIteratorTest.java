@@ -0,0 +1,122 @@
+package com.iclaude.scheduledrecorder.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+/**
+ * Unit tests for RecurrenceIterator.
+ */
+public class RecurrenceIteratorTest {
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Rome");
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Test
+    public void testDaily() {
+        RecurrenceRule rule = new RecurrenceRule(1, time(2018, Calendar.MARCH, 1, 7), HOUR, RecurrenceRule.FREQUENCY_DAILY);
+
+        List<ScheduledRecording> occurrences = expand(rule, time(2018, Calendar.MARCH, 10, 8), 3);
+        assertEquals(time(2018, Calendar.MARCH, 11, 7), occurrences.get(0).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 11, 8), occurrences.get(0).getEnd());
+        assertEquals(time(2018, Calendar.MARCH, 12, 7), occurrences.get(1).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 13, 7), occurrences.get(2).getStart());
+        assertEquals(1, occurrences.get(0).getRuleId());
+    }
+
+    @Test
+    public void testDaylightSavingTime() {
+        RecurrenceRule rule = new RecurrenceRule(1, time(2018, Calendar.MARCH, 24, 7), HOUR, RecurrenceRule.FREQUENCY_DAILY);
+
+        // Summer time starts on 25 March: the occurrences stay at 7:00 local time.
+        List<ScheduledRecording> occurrences = expand(rule, 0, 3);
+        assertEquals(time(2018, Calendar.MARCH, 25, 7), occurrences.get(1).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 26, 7), occurrences.get(2).getStart());
+        assertEquals(23 * HOUR, occurrences.get(1).getStart() - occurrences.get(0).getStart());
+    }
+
+    @Test
+    public void testEveryOtherDayWithCount() {
+        RecurrenceRule rule = new RecurrenceRule(1, time(2018, Calendar.MARCH, 1, 7), HOUR, RecurrenceRule.FREQUENCY_DAILY);
+        rule.setInterval(2);
+        rule.setCount(5); // 1, 3, 5, 7, 9 March
+
+        List<ScheduledRecording> occurrences = expand(rule, time(2018, Calendar.MARCH, 4, 0), 10);
+        assertEquals(3, occurrences.size());
+        assertEquals(time(2018, Calendar.MARCH, 5, 7), occurrences.get(0).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 9, 7), occurrences.get(2).getStart());
+    }
+
+    @Test
+    public void testWorkingDaysWithUntilAndExceptions() {
+        // Thursday 1 March.
+        RecurrenceRule rule = new RecurrenceRule(1, time(2018, Calendar.MARCH, 1, 7), HOUR, RecurrenceRule.FREQUENCY_WEEKLY);
+        rule.setWeekdays(RecurrenceRule.WORKING_DAYS);
+        rule.setUntil(time(2018, Calendar.MARCH, 8, 0));
+        rule.addException(time(2018, Calendar.MARCH, 5, 7));
+
+        List<ScheduledRecording> occurrences = expand(rule, 0, 10);
+        assertEquals(4, occurrences.size()); // 1, 2, 6, 7 March
+        assertEquals(time(2018, Calendar.MARCH, 1, 7), occurrences.get(0).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 2, 7), occurrences.get(1).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 6, 7), occurrences.get(2).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 7, 7), occurrences.get(3).getStart());
+
+        rule.removeException(time(2018, Calendar.MARCH, 5, 7));
+        assertEquals(5, expand(rule, 0, 10).size());
+    }
+
+    @Test
+    public void testEveryOtherWeekWithCount() {
+        // Thursday 1 March, on Monday and Thursday every other week.
+        RecurrenceRule rule = new RecurrenceRule(1, time(2018, Calendar.MARCH, 1, 7), HOUR, RecurrenceRule.FREQUENCY_WEEKLY);
+        rule.setWeekdays(RecurrenceRule.MONDAY | RecurrenceRule.THURSDAY);
+        rule.setInterval(2);
+        rule.setCount(4); // 1, 12, 15, 26 March
+
+        List<ScheduledRecording> all = expand(rule, 0, 10);
+        assertEquals(4, all.size());
+        assertEquals(time(2018, Calendar.MARCH, 12, 7), all.get(1).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 15, 7), all.get(2).getStart());
+        assertEquals(time(2018, Calendar.MARCH, 26, 7), all.get(3).getStart());
+
+        // Starting in the middle: the count is applied from the first occurrence.
+        List<ScheduledRecording> occurrences = expand(rule, time(2018, Calendar.MARCH, 14, 0), 10);
+        assertEquals(2, occurrences.size());
+        assertEquals(time(2018, Calendar.MARCH, 15, 7), occurrences.get(0).getStart());
+    }
+
+    @Test
+    public void testWeeklyOnStartDay() {
+        RecurrenceRule rule = new RecurrenceRule(1, time(2018, Calendar.MARCH, 1, 7), HOUR, RecurrenceRule.FREQUENCY_WEEKLY);
+        rule.setCount(2);
+
+        RecurrenceIterator iterator = new RecurrenceIterator(rule, 0, TIME_ZONE);
+        assertEquals(time(2018, Calendar.MARCH, 1, 7), iterator.next().getStart());
+        assertEquals(time(2018, Calendar.MARCH, 8, 7), iterator.next().getStart());
+        assertFalse(iterator.hasNext());
+    }
+
+    private List<ScheduledRecording> expand(RecurrenceRule rule, long from, int max) {
+        List<ScheduledRecording> occurrences = new ArrayList<>();
+        RecurrenceIterator iterator = new RecurrenceIterator(rule, from, TIME_ZONE);
+        while (iterator.hasNext() && occurrences.size() < max) {
+            occurrences.add(iterator.next());
+        }
+        return occurrences;
+    }
+
+    private static long time(int year, int month, int day, int hour) {
+        Calendar calendar = new GregorianCalendar(TIME_ZONE);
+        calendar.clear();
+        calendar.set(year, month, day, hour, 0);
+        return calendar.getTimeInMillis();
+    }
+}
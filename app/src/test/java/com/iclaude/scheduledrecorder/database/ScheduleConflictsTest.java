@@ -0,0 +1,82 @@
+package com.iclaude.scheduledrecorder.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for ScheduleConflicts.
+ */
+public class ScheduleConflictsTest {
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Rome");
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private ScheduleIntervalTree schedule;
+    private final List<RecurrenceRule> rules = new ArrayList<>();
+    private ScheduleConflicts conflicts;
+
+    @Before
+    public void setup() {
+        // Every day 7:00-8:00: the first occurrence is in the table (id 10).
+        RecurrenceRule rule = new RecurrenceRule(1, time(2018, Calendar.MARCH, 1, 7), HOUR, RecurrenceRule.FREQUENCY_DAILY);
+        rule.setExpandedUntil(rule.getStart());
+        rules.add(rule);
+        schedule = new ScheduleIntervalTree();
+        schedule.put(10, time(2018, Calendar.MARCH, 1, 7), time(2018, Calendar.MARCH, 1, 8));
+        conflicts = new ScheduleConflicts(schedule, rules, TIME_ZONE);
+    }
+
+    @Test
+    public void testLaterOccurrences() {
+        long start = time(2018, Calendar.MARCH, 20, 7) + HOUR / 2;
+        assertTrue(conflicts.overlaps(start, start + HOUR, 0, 0));
+        assertEquals(1, conflicts.countOverlapping(start, start + HOUR, 0, 0));
+        assertEquals(time(2018, Calendar.MARCH, 20, 7), conflicts.getRuleOccurrences(start, start + HOUR, 0).get(0).getStart());
+        assertFalse(conflicts.overlaps(start, start + HOUR, 0, 1)); // the rule being edited
+        assertFalse(conflicts.overlaps(time(2018, Calendar.MARCH, 20, 8), time(2018, Calendar.MARCH, 20, 9), 0, 0)); // back-to-back
+
+        // The occurrence in the table isn't counted twice.
+        assertEquals(1, conflicts.countOverlapping(time(2018, Calendar.MARCH, 1, 7), time(2018, Calendar.MARCH, 1, 9), 0, 0));
+    }
+
+    @Test
+    public void testRuleAgainstRules() {
+        RecurrenceRule mondays = new RecurrenceRule(0, time(2018, Calendar.MARCH, 5, 7) + HOUR / 2, HOUR, RecurrenceRule.FREQUENCY_WEEKLY);
+        assertTrue(conflicts.overlaps(mondays, mondays.getStart(), 0));
+
+        RecurrenceRule evenings = new RecurrenceRule(0, time(2018, Calendar.MARCH, 5, 20), HOUR, RecurrenceRule.FREQUENCY_DAILY);
+        assertFalse(conflicts.overlaps(evenings, evenings.getStart(), 0));
+
+        // A recording the rule is created from is ignored.
+        schedule.put(11, time(2018, Calendar.APRIL, 2, 20), time(2018, Calendar.APRIL, 2, 21));
+        assertTrue(conflicts.overlaps(evenings, evenings.getStart(), 0));
+        assertFalse(conflicts.overlaps(evenings, evenings.getStart(), 11));
+    }
+
+    @Test
+    public void testFindFreeSlot() {
+        long after = time(2018, Calendar.MARCH, 10, 6) + HOUR / 2;
+        assertEquals(time(2018, Calendar.MARCH, 10, 8), conflicts.findFreeSlot(after, HOUR));
+
+        schedule.put(11, time(2018, Calendar.MARCH, 10, 8), time(2018, Calendar.MARCH, 10, 9));
+        assertEquals(time(2018, Calendar.MARCH, 10, 9), conflicts.findFreeSlot(after, HOUR));
+        assertEquals(after, conflicts.findFreeSlot(after, HOUR / 2));
+    }
+
+    private static long time(int year, int month, int day, int hour) {
+        Calendar calendar = new GregorianCalendar(TIME_ZONE);
+        calendar.clear();
+        calendar.set(year, month, day, hour, 0);
+        return calendar.getTimeInMillis();
+    }
+}
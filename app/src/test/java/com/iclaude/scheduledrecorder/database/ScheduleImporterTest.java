@@ -0,0 +1,168 @@
+package com.iclaude.scheduledrecorder.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Unit tests for ScheduleImporter.
+ */
+public class ScheduleImporterTest {
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Rome");
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private ScheduleIntervalTree schedule;
+    private final List<RecurrenceRule> rules = new ArrayList<>();
+    private ScheduleImporter importer;
+
+    @Before
+    public void setup() {
+        schedule = new ScheduleIntervalTree();
+        schedule.put(1, time(2018, Calendar.SEPTEMBER, 10, 14, 0), time(2018, Calendar.SEPTEMBER, 10, 15, 0));
+        importer = new ScheduleImporter(new ScheduleConflicts(schedule, rules, TIME_ZONE), time(2018, Calendar.SEPTEMBER, 1, 0, 0), TIME_ZONE);
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        String csv = "start,end,profile\n"
+                + "2018-09-10 09:00,2018-09-10 11:00\n"
+                + "\n"
+                + "# comment\n"
+                + "2018-09-10T11:00:00,2018-09-10T12:30:00,speech\n" // back-to-back with the previous one
+                + "2018-09-10 12:00,2018-09-10 13:00\n" // overlaps the previous one
+                + "2018-09-10 14:30,2018-09-10 16:00\n" // overlaps the scheduled one
+                + "2018-08-31 09:00,2018-08-31 10:00\n"
+                + "2018-09-11 10:00,2018-09-11 09:00\n"
+                + "2018-09-31 10:00,2018-10-01 11:00\n"
+                + "2018-09-12 10:00,2018-09-12 11:00,unknown\n"
+                + "not a recording\n";
+        ScheduleImporter.Report report = importer.read(new StringReader(csv));
+
+        assertEquals(9, report.getRows().size());
+        assertRow(report.getRows().get(0), 2, ScheduleImporter.ROW_ACCEPTED);
+        assertRow(report.getRows().get(1), 5, ScheduleImporter.ROW_ACCEPTED);
+        assertRow(report.getRows().get(2), 6, ScheduleImporter.ROW_CONFLICT_IMPORTED);
+        assertRow(report.getRows().get(3), 7, ScheduleImporter.ROW_CONFLICT);
+        assertRow(report.getRows().get(4), 8, ScheduleImporter.ROW_PAST);
+        assertRow(report.getRows().get(5), 9, ScheduleImporter.ROW_INVALID);
+        assertRow(report.getRows().get(6), 10, ScheduleImporter.ROW_INVALID); // 31 September
+        assertRow(report.getRows().get(7), 11, ScheduleImporter.ROW_INVALID);
+        assertRow(report.getRows().get(8), 12, ScheduleImporter.ROW_INVALID);
+
+        assertEquals(2, report.count(ScheduleImporter.ROW_ACCEPTED));
+        assertEquals(4, report.count(ScheduleImporter.ROW_INVALID));
+        assertNull(report.getRows().get(5).recording); // ends before the start
+        ScheduledRecording recording = report.getAccepted().get(1);
+        assertEquals(time(2018, Calendar.SEPTEMBER, 10, 11, 0), recording.getStart());
+        assertEquals(time(2018, Calendar.SEPTEMBER, 10, 12, 30), recording.getEnd());
+        assertEquals("speech", recording.getProfile());
+        assertNull(report.getAccepted().get(0).getProfile());
+        assertEquals(1, schedule.size()); // the schedule is not changed
+    }
+
+    @Test
+    public void testICalendar() throws IOException {
+        String ics = "BEGIN:VCALENDAR\r\n"
+                + "VERSION:2.0\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "SUMMARY:Lecture\r\n"
+                + "DTSTART:20180910T070000Z\r\n" // 9:00 in Rome
+                + "DTEND:20180910T090000Z\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "DTSTART;TZID=Europe/London:20180911T090000\r\n" // 10:00 in Rome
+                + "DURATION:PT1H30M\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "DESCRIPTION:A long description fold\r\n"
+                + " ed on two lines\r\n"
+                + "DTSTART:20180912T090000\r\n"
+                + "DTEND:20180912T10\r\n"
+                + " 0000\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "DTSTART;VALUE=DATE:20180913\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "DTSTART:20180914T090000\r\n"
+                + "DTEND:20180914T100000\r\n"
+                + "RRULE:FREQ=WEEKLY;COUNT=10\r\n"
+                + "END:VEVENT\r\n"
+                + "BEGIN:VEVENT\r\n"
+                + "DTSTART:20180915T090000\r\n"
+                + "END:VEVENT\r\n"
+                + "END:VCALENDAR\r\n";
+        ScheduleImporter.Report report = importer.read(new StringReader(ics));
+
+        assertEquals(6, report.getRows().size());
+        assertRow(report.getRows().get(0), 3, ScheduleImporter.ROW_ACCEPTED);
+        assertRow(report.getRows().get(1), 8, ScheduleImporter.ROW_ACCEPTED);
+        assertRow(report.getRows().get(2), 12, ScheduleImporter.ROW_ACCEPTED);
+        assertRow(report.getRows().get(3), 19, ScheduleImporter.ROW_UNSUPPORTED);
+        assertRow(report.getRows().get(4), 22, ScheduleImporter.ROW_UNSUPPORTED);
+        assertRow(report.getRows().get(5), 27, ScheduleImporter.ROW_INVALID); // no end
+
+        assertEquals(time(2018, Calendar.SEPTEMBER, 10, 9, 0), report.getAccepted().get(0).getStart());
+        assertEquals(time(2018, Calendar.SEPTEMBER, 10, 11, 0), report.getAccepted().get(0).getEnd());
+        assertEquals(time(2018, Calendar.SEPTEMBER, 11, 10, 0), report.getAccepted().get(1).getStart());
+        assertEquals(time(2018, Calendar.SEPTEMBER, 11, 11, 30), report.getAccepted().get(1).getEnd());
+        assertEquals(time(2018, Calendar.SEPTEMBER, 12, 10, 0), report.getAccepted().get(2).getEnd());
+    }
+
+    @Test
+    public void testSemester() throws IOException {
+        // 4 lectures a day for 15 weeks, one of them already scheduled.
+        StringBuilder csv = new StringBuilder();
+        Calendar day = new GregorianCalendar(TIME_ZONE);
+        day.clear();
+        day.set(2018, Calendar.SEPTEMBER, 10);
+        for (int i = 0; i < 15 * 7; i++, day.add(Calendar.DAY_OF_MONTH, 1)) {
+            for (int hour = 9; hour < 17; hour += 2) {
+                csv.append(String.format("%1$tF %2$02d:00,%1$tF %3$02d:00\n", day, hour, hour + 2));
+            }
+        }
+        ScheduleImporter.Report report = importer.read(new StringReader(csv.toString()));
+
+        assertEquals(15 * 7 * 4, report.getRows().size());
+        assertEquals(15 * 7 * 4 - 1, report.count(ScheduleImporter.ROW_ACCEPTED));
+        assertEquals(1, report.count(ScheduleImporter.ROW_CONFLICT));
+        assertEquals(2 * HOUR, report.getAccepted().get(0).getEnd() - report.getAccepted().get(0).getStart());
+    }
+
+    @Test
+    public void testConflictWithRule() throws IOException {
+        // Every day 18:00-19:00: only the first occurrence is in the table.
+        RecurrenceRule rule = new RecurrenceRule(2, time(2018, Calendar.SEPTEMBER, 5, 18, 0), HOUR, RecurrenceRule.FREQUENCY_DAILY);
+        rule.setExpandedUntil(rule.getStart());
+        rules.add(rule);
+        String csv = "2018-09-20 18:30,2018-09-20 20:00\n"
+                + "2018-09-20 19:00,2018-09-20 20:00\n"; // back-to-back with the occurrence
+        ScheduleImporter.Report report = importer.read(new StringReader(csv));
+
+        assertRow(report.getRows().get(0), 1, ScheduleImporter.ROW_CONFLICT);
+        assertRow(report.getRows().get(1), 2, ScheduleImporter.ROW_ACCEPTED);
+    }
+
+    private void assertRow(ScheduleImporter.Row row, int line, int result) {
+        assertEquals("Wrong line", line, row.line);
+        assertEquals("Wrong result at line " + line, result, row.result);
+    }
+
+    private long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = new GregorianCalendar(TIME_ZONE);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,123 @@
+package com.iclaude.scheduledrecorder.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for ScheduleIntervalTree.
+ */
+public class ScheduleIntervalTreeTest {
+
+    private ScheduleIntervalTree tree;
+
+    @Before
+    public void setup() {
+        tree = new ScheduleIntervalTree();
+        tree.put(1, 100, 200);
+        tree.put(2, 300, 400);
+        tree.put(3, 500, 600);
+    }
+
+    @Test
+    public void testOverlaps() {
+        assertTrue(tree.overlaps(50, 150, -1));
+        assertTrue(tree.overlaps(350, 360, -1));
+        assertTrue(tree.overlaps(0, 1000, -1));
+        assertFalse(tree.overlaps(200, 300, -1)); // back-to-back
+        assertFalse(tree.overlaps(600, 700, -1));
+        assertFalse(tree.overlaps(350, 360, 2)); // the recording being edited
+    }
+
+    @Test
+    public void testGetOverlapping() {
+        List<Integer> ids = tree.getOverlapping(150, 550, -1);
+        assertEquals(3, ids.size());
+        assertEquals(1, (int) ids.get(0));
+        assertEquals(2, (int) ids.get(1));
+        assertEquals(3, (int) ids.get(2));
+
+        assertEquals(2, tree.getOverlapping(150, 550, 2).size());
+        assertEquals(0, tree.getOverlapping(400, 500, -1).size());
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        tree.put(2, 700, 800); // moved
+        assertFalse(tree.overlaps(300, 400, -1));
+        assertTrue(tree.overlaps(750, 760, -1));
+        assertEquals(3, tree.size());
+
+        assertTrue(tree.remove(2));
+        assertFalse(tree.remove(2));
+        assertFalse(tree.overlaps(750, 760, -1));
+        assertEquals(2, tree.size());
+
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertFalse(tree.overlaps(0, 1000, -1));
+    }
+
+    @Test
+    public void testFindFreeSlot() {
+        assertEquals(0, tree.findFreeSlot(0, 100));
+        assertEquals(200, tree.findFreeSlot(1, 100)); // doesn't fit before the first one
+        assertEquals(200, tree.findFreeSlot(150, 100));
+        assertEquals(600, tree.findFreeSlot(150, 101));
+        assertEquals(650, tree.findFreeSlot(650, 1000));
+
+        // Nested recordings.
+        tree.put(4, 50, 450);
+        assertEquals(450, tree.findFreeSlot(120, 50));
+        assertEquals(600, tree.findFreeSlot(120, 51));
+    }
+
+    // Compares the tree with a brute force search on random recordings.
+    @Test
+    public void testRandomAgainstBruteForce() {
+        Random random = new Random(42);
+        tree.clear();
+        Map<Integer, long[]> intervals = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            int id = random.nextInt(300);
+            if (random.nextInt(4) == 0) {
+                assertEquals(intervals.remove(id) != null, tree.remove(id));
+            } else {
+                long start = random.nextInt(10000);
+                long end = start + 1 + random.nextInt(200);
+                intervals.put(id, new long[]{start, end});
+                tree.put(id, start, end);
+            }
+            assertEquals(intervals.size(), tree.size());
+
+            long start = random.nextInt(10000);
+            long end = start + 1 + random.nextInt(300);
+            int exceptId = random.nextInt(300);
+            List<Integer> expected = new ArrayList<>();
+            for (Map.Entry<Integer, long[]> entry : intervals.entrySet()) {
+                if (start < entry.getValue()[1] && end > entry.getValue()[0] && entry.getKey() != exceptId)
+                    expected.add(entry.getKey());
+            }
+            List<Integer> found = tree.getOverlapping(start, end, exceptId);
+            assertEquals(expected.size(), found.size());
+            assertTrue(found.containsAll(expected));
+            assertEquals(!expected.isEmpty(), tree.overlaps(start, end, exceptId));
+
+            long length = 1 + random.nextInt(100);
+            long slot = tree.findFreeSlot(start, length);
+            assertTrue(slot >= start);
+            assertFalse(tree.overlaps(slot, slot + length, -1));
+            for (long t = start; t < slot; t++) // no earlier slot
+                assertTrue(tree.overlaps(t, t + length, -1));
+        }
+    }
+}
@@ -3,14 +3,19 @@ package com.iclaude.scheduledrecorder.fileviewer;
 import android.app.Application;
 import android.arch.core.executor.testing.InstantTaskExecutorRule;
 import android.arch.lifecycle.LiveData;
-import android.arch.lifecycle.MutableLiveData;
 import android.arch.lifecycle.Observer;
+import android.arch.paging.DataSource;
+import android.arch.paging.PagedList;
+import android.arch.paging.PositionalDataSource;
+import android.support.annotation.NonNull;
 
 import com.google.common.collect.Lists;
+import com.iclaude.scheduledrecorder.testutils.FakeRecordingsDatabase;
 import com.iclaude.scheduledrecorder.testutils.LiveDataTestUtil;
 import com.iclaude.scheduledrecorder.R;
 import com.iclaude.scheduledrecorder.testutils.TestUtils;
 import com.iclaude.scheduledrecorder.database.Recording;
+import com.iclaude.scheduledrecorder.database.RecordingsDataSource;
 import com.iclaude.scheduledrecorder.database.RecordingsRepository;
 import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
 import com.iclaude.scheduledrecorder.ui.fragments.fileviewer.FileViewerViewModel;
@@ -29,6 +34,7 @@ import java.util.List;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -60,6 +66,8 @@ public class FileViewerViewModelTest {
     private Application mContext;
     @Captor
     private ArgumentCaptor<RecordingsRepositoryInterface.OperationResult> operationResultCaptor;
+    @Captor
+    private ArgumentCaptor<RecordingsRepositoryInterface.DeleteRecordingsCallback> deleteRecordingsCaptor;
 
 
     @Before
@@ -77,21 +85,22 @@ public class FileViewerViewModelTest {
         assertFalse(viewModel.dataLoading.get());
         assertFalse(viewModel.dataAvailable.get());
 
-        Observer<List<Recording>> observer = mock(Observer.class);
-        viewModel.getRecordings().observe(TestUtils.TEST_OBSERVER, observer);
-        LiveData<List<Recording>> recordingsLive = repository.getAllRecordings();
-        List<Recording> recordings = LiveDataTestUtil.getValue(recordingsLive);
+        Observer<PagedList<Recording>> observer = mock(Observer.class);
+        LiveData<PagedList<Recording>> recordingsLive = viewModel.getRecordings();
+        recordingsLive.observe(TestUtils.TEST_OBSERVER, observer);
+        PagedList<Recording> recordings = LiveDataTestUtil.getValue(recordingsLive);
 
+        // Newest first.
         assertNotNull(recordings);
         assertEquals(3, recordings.size());
-        assertEquals("name1", recordings.get(0).getName());
+        assertEquals("name3", recordings.get(0).getName());
         assertEquals("path2", recordings.get(1).getPath());
-        assertEquals(13000, recordings.get(2).getTimeAdded());
+        assertEquals(11000, recordings.get(2).getTimeAdded());
 
         assertFalse(viewModel.dataLoading.get());
         assertTrue(viewModel.dataAvailable.get());
 
-        verify(observer).onChanged(RECORDINGS);
+        verify(observer).onChanged(recordings);
     }
 
     @Test
@@ -100,16 +109,64 @@ public class FileViewerViewModelTest {
         assertFalse(viewModel.dataLoading.get());
         assertFalse(viewModel.dataAvailable.get());
 
-        Observer<List<Recording>> observer = mock(Observer.class);
-        viewModel.getRecordings().observe(TestUtils.TEST_OBSERVER, observer);
-        LiveData<List<Recording>> recordingsLive = repository.getAllRecordings();
-        List<Recording> recordings = LiveDataTestUtil.getValue(recordingsLive);
+        Observer<PagedList<Recording>> observer = mock(Observer.class);
+        LiveData<PagedList<Recording>> recordingsLive = viewModel.getRecordings();
+        recordingsLive.observe(TestUtils.TEST_OBSERVER, observer);
+        PagedList<Recording> recordings = LiveDataTestUtil.getValue(recordingsLive);
 
         assertNotNull(recordings);
+        assertTrue(recordings.isEmpty());
         assertFalse(viewModel.dataLoading.get());
         assertFalse(viewModel.dataAvailable.get());
 
-        verify(observer).onChanged(RECORDINGS_EMPTY);
+        verify(observer).onChanged(recordings);
+    }
+
+    @Test
+    public void testGetRecordingsPaged() throws Exception {
+        List<Recording> recordings = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            recordings.add(new Recording(i, "name" + i, "path" + i, 1000, 10000 + i));
+        }
+        loadRecordings(recordings);
+
+        PagedList<Recording> pagedList = LiveDataTestUtil.getValue(viewModel.getRecordings());
+
+        // All the recordings are counted (placeholders), only the first pages are loaded.
+        assertEquals(1000, pagedList.size());
+        assertEquals("name1000", pagedList.get(0).getName());
+        assertNull(pagedList.get(999));
+
+        // Scrolling to the end loads the last page.
+        for (int i = 0; i < pagedList.size(); i += 30) {
+            pagedList.loadAround(i);
+        }
+        pagedList.loadAround(999);
+        assertEquals("name1", pagedList.get(999).getName());
+    }
+
+    @Test
+    public void testSearchRecordings() throws Exception {
+        loadRecordings(RECORDINGS);
+        when(repository.searchRecordings("name2")).thenReturn(listFactory(Lists.newArrayList(RECORDINGS.get(1))));
+        when(repository.searchRecordings("xyz")).thenReturn(listFactory(new ArrayList<>()));
+        LiveData<PagedList<Recording>> recordingsLive = viewModel.getRecordings();
+        assertEquals(3, LiveDataTestUtil.getValue(recordingsLive).size());
+
+        viewModel.setSearchQuery("name2");
+        PagedList<Recording> found = LiveDataTestUtil.getValue(recordingsLive);
+        assertEquals(1, found.size());
+        assertEquals("name2", found.get(0).getName());
+        assertEquals("name2", viewModel.getSearchQuery());
+
+        viewModel.setSearchQuery("xyz");
+        assertTrue(LiveDataTestUtil.getValue(recordingsLive).isEmpty());
+        assertFalse(viewModel.dataAvailable.get());
+
+        // Search closed.
+        viewModel.setSearchQuery("");
+        assertEquals(3, LiveDataTestUtil.getValue(recordingsLive).size());
+        assertTrue(viewModel.dataAvailable.get());
     }
 
     @Test
@@ -158,6 +215,32 @@ public class FileViewerViewModelTest {
         verify(observer).onChanged(R.string.toast_recording_deleted_error);
     }
 
+    @Test
+    public void testDeleteSelectedRecordings() {
+        Observer<Integer> observer = mock(Observer.class);
+        viewModel.getDeleteCommand().observe(TestUtils.TEST_OBSERVER, observer);
+
+        // Recording 2 is selected and deselected.
+        for (Recording recording : RECORDINGS) {
+            viewModel.toggleSelection(recording);
+        }
+        viewModel.toggleSelection(RECORDINGS.get(1));
+        viewModel.toggleSelection(null); // placeholder
+        assertTrue(viewModel.isSelectionMode());
+        assertTrue(viewModel.isSelected(RECORDINGS.get(0)));
+        assertFalse(viewModel.isSelected(RECORDINGS.get(1)));
+        assertEquals(2, (int) viewModel.getSelectionCount().getValue());
+
+        viewModel.deleteSelectedRecordings();
+        verify(repository).deleteRecordings(eq(Lists.newArrayList(RECORDINGS.get(0), RECORDINGS.get(2))), deleteRecordingsCaptor.capture());
+        assertFalse(viewModel.isSelectionMode());
+        assertEquals(0, (int) viewModel.getSelectionCount().getValue());
+
+        // One file can't be deleted.
+        deleteRecordingsCaptor.getValue().onResult(Lists.newArrayList(RECORDINGS.get(0)), Lists.newArrayList(RECORDINGS.get(2)));
+        verify(observer).onChanged(R.string.toast_recordings_deleted_error);
+    }
+
     @Test
     public void testUpdateRecordingOK() {
         // Set up observer.
@@ -188,9 +271,28 @@ public class FileViewerViewModelTest {
         verify(observer).onChanged(R.string.toast_file_renamed_error);
     }
 
+    // Factory of a search result.
+    private DataSource.Factory<Integer, Recording> listFactory(List<Recording> recordings) {
+        return new DataSource.Factory<Integer, Recording>() {
+            @Override
+            public DataSource<Integer, Recording> create() {
+                return new PositionalDataSource<Recording>() {
+                    @Override
+                    public void loadInitial(@NonNull LoadInitialParams params, @NonNull LoadInitialCallback<Recording> callback) {
+                        callback.onResult(recordings, 0, recordings.size());
+                    }
+
+                    @Override
+                    public void loadRange(@NonNull LoadRangeParams params, @NonNull LoadRangeCallback<Recording> callback) {
+                        int end = Math.min(recordings.size(), params.startPosition + params.loadSize);
+                        callback.onResult(recordings.subList(params.startPosition, end));
+                    }
+                };
+            }
+        };
+    }
+
     private void loadRecordings(List<Recording> recordings) {
-        MutableLiveData<List<Recording>> recordingsLive = new MutableLiveData<>();
-        recordingsLive.setValue(recordings);
-        when(repository.getAllRecordings()).thenReturn(recordingsLive);
+        when(repository.getRecordingsDataSourceFactory()).thenReturn(new RecordingsDataSource.Factory(FakeRecordingsDatabase.create(recordings)));
     }
 }
@@ -91,6 +91,67 @@ public class RecordViewModelTest {
         verify(recordingService).stopRecording();
     }
 
+    @Test
+    public void testPauseAndResume() {
+        when(recordingService.pauseRecording()).thenReturn(true);
+        when(recordingService.resumeRecording()).thenReturn(true);
+
+        recordViewModel.pauseOrResumeRecording();
+        verify(recordingService).pauseRecording();
+        assertTrue(recordViewModel.servicePaused.get());
+
+        recordViewModel.pauseOrResumeRecording();
+        verify(recordingService).resumeRecording();
+        assertFalse(recordViewModel.servicePaused.get());
+    }
+
+    @Test
+    public void testPauseNotAllowed() {
+        when(recordingService.pauseRecording()).thenReturn(false); // i.e. scheduled recording
+
+        recordViewModel.pauseOrResumeRecording();
+        assertFalse(recordViewModel.servicePaused.get());
+    }
+
+    @Test
+    public void testStateChanges() {
+        recordViewModel.connectService(intent);
+        verify(context).bindService(eq(intent), serviceConnectionArgumentCaptor.capture(), eq(BIND_AUTO_CREATE));
+        serviceConnectionArgumentCaptor.getValue().onServiceConnected(componentName, iBinder);
+        verify(recordingService).setOnRecordingStatusChangedListener(onRecordingStatusChangedListenerArgumentCaptor.capture());
+        RecordingService.OnRecordingStatusChangedListener listener = onRecordingStatusChangedListenerArgumentCaptor.getValue();
+        assertFalse(recordViewModel.serviceBusy.get());
+
+        listener.onStateChanged(RecordingService.RecorderState.PREPARING);
+        assertTrue(recordViewModel.serviceRecording.get());
+        assertTrue(recordViewModel.serviceBusy.get());
+
+        listener.onStateChanged(RecordingService.RecorderState.RECORDING);
+        assertTrue(recordViewModel.serviceRecording.get());
+        assertFalse(recordViewModel.serviceBusy.get());
+
+        recordViewModel.servicePaused.set(true);
+        listener.onStateChanged(RecordingService.RecorderState.STOPPING);
+        assertFalse(recordViewModel.serviceRecording.get());
+        assertTrue(recordViewModel.serviceBusy.get());
+
+        listener.onStateChanged(RecordingService.RecorderState.FINALIZING);
+        assertTrue(recordViewModel.serviceBusy.get());
+
+        listener.onStateChanged(RecordingService.RecorderState.IDLE);
+        assertFalse(recordViewModel.serviceBusy.get());
+        assertFalse(recordViewModel.servicePaused.get());
+    }
+
+    @Test
+    public void testArmAndDisarm() {
+        recordViewModel.setArmed(true);
+        verify(recordingService).armRecorder();
+
+        recordViewModel.setArmed(false);
+        verify(recordingService).disarmRecorder();
+    }
+
     @Test
     public void testServiceConnectionAndStop() {
 
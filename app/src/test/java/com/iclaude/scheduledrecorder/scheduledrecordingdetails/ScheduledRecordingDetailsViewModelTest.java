@@ -9,6 +9,7 @@ import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
 import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface.GetRecordingsCountCallback;
 import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.ui.activities.scheduled_recording.ScheduledRecordingDetailsViewModel;
+import com.iclaude.scheduledrecorder.utils.Clock;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -85,7 +86,7 @@ public class ScheduledRecordingDetailsViewModelTest {
         MockitoAnnotations.initMocks(this);
 
         // Create the class under test and the object that it manages.
-        viewModel = new ScheduledRecordingDetailsViewModel(mContext, recordingsRepository);
+        viewModel = new ScheduledRecordingDetailsViewModel(mContext, recordingsRepository, Clock.SYSTEM);
         scheduledRecording = new ScheduledRecording(ID, START, END);
         scheduledRecordingPast = new ScheduledRecording(ID, START_PAST, END_PAST);
         scheduledRecordingError = new ScheduledRecording(ID, START, END_ERROR);
@@ -0,0 +1,77 @@
+package com.iclaude.scheduledrecorder.scheduledrecordings;
+
+import com.google.common.collect.Lists;
+import com.iclaude.scheduledrecorder.database.ScheduledRecording;
+import com.iclaude.scheduledrecorder.ui.fragments.scheduledrecordings.CalendarEventsDiff;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class CalendarEventsDiffTest {
+
+    private CalendarEventsDiff diff;
+
+    @Before
+    public void setup() {
+        diff = new CalendarEventsDiff();
+        diff.update(Lists.newArrayList(
+                new ScheduledRecording(1, 1000, 2000),
+                new ScheduledRecording(2, 3000, 4000),
+                new ScheduledRecording(3, 5000, 6000)));
+        assertEquals(3, diff.getAdded().size());
+        assertEquals(0, diff.getRemoved().size());
+    }
+
+    @Test
+    public void testNoChanges() {
+        diff.update(Lists.newArrayList(
+                new ScheduledRecording(1, 1000, 2000),
+                new ScheduledRecording(2, 3000, 4500), // the end is not shown in the calendar
+                new ScheduledRecording(3, 5000, 6000)));
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void testAddRemoveMove() {
+        ScheduledRecording moved = new ScheduledRecording(2, 3500, 4000);
+        ScheduledRecording added = new ScheduledRecording(4, 7000, 8000);
+        diff.update(Lists.newArrayList(new ScheduledRecording(1, 1000, 2000), moved, added));
+
+        assertEquals(2, diff.getAdded().size());
+        assertTrue(diff.getAdded().contains(moved));
+        assertTrue(diff.getAdded().contains(added));
+        assertEquals(2, diff.getRemoved().size()); // old version of 2 and 3
+        for (ScheduledRecording removed : diff.getRemoved()) {
+            assertTrue(removed.getId() == 2 && removed.getStart() == 3000 || removed.getId() == 3);
+        }
+
+        diff.update(Collections.emptyList());
+        assertEquals(3, diff.getRemoved().size());
+        assertTrue(diff.getRemoved().contains(moved));
+    }
+
+    @Test
+    public void testComputedOccurrences() {
+        ScheduledRecording occurrence = new ScheduledRecording(10000, 11000);
+        occurrence.setRuleId(5);
+        diff.update(Lists.newArrayList(new ScheduledRecording(1, 1000, 2000), new ScheduledRecording(2, 3000, 4000),
+                new ScheduledRecording(3, 5000, 6000), occurrence));
+        assertEquals(1, diff.getAdded().size());
+        assertSame(occurrence, diff.getAdded().get(0));
+
+        // The next occurrence of the same rule is another event.
+        ScheduledRecording nextOccurrence = new ScheduledRecording(20000, 21000);
+        nextOccurrence.setRuleId(5);
+        diff.update(Lists.newArrayList(new ScheduledRecording(1, 1000, 2000), new ScheduledRecording(2, 3000, 4000),
+                new ScheduledRecording(3, 5000, 6000), nextOccurrence));
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(1, diff.getRemoved().size());
+        assertSame(occurrence, diff.getRemoved().get(0));
+    }
+}
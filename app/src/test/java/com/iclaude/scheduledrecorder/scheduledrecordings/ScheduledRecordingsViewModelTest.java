@@ -14,6 +14,8 @@ import com.iclaude.scheduledrecorder.database.RecordingsRepository;
 import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
 import com.iclaude.scheduledrecorder.database.ScheduledRecording;
 import com.iclaude.scheduledrecorder.ui.fragments.scheduledrecordings.ScheduledRecordingsViewModel;
+import com.iclaude.scheduledrecorder.utils.Clock;
+import com.iclaude.scheduledrecorder.utils.Utils;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -23,12 +25,14 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -63,7 +67,7 @@ public class ScheduledRecordingsViewModelTest {
     public void setup() {
         MockitoAnnotations.initMocks(this);
 
-        viewModel = new ScheduledRecordingsViewModel(repository);
+        viewModel = new ScheduledRecordingsViewModel(repository, Clock.SYSTEM);
     }
 
     @Test
@@ -112,9 +116,28 @@ public class ScheduledRecordingsViewModelTest {
         verify(observer).onChanged(R.string.toast_recording_deleted_error);
     }
 
+    @Test
+    public void testDeleteComputedOccurrence() {
+        Observer<Integer> observer = mock(Observer.class);
+        viewModel.getDeleteCommand().observe(TestUtils.TEST_OBSERVER, observer);
+
+        // An occurrence of a recurrence rule not stored in the database is skipped by its rule.
+        ScheduledRecording occurrence = new ScheduledRecording(1000, 2000);
+        occurrence.setRuleId(5);
+        viewModel.deleteScheduledRecording(occurrence);
+        verify(repository).setRecurrenceException(eq(5), eq(1000L), eq(true), operationResultCaptor.capture());
+        operationResultCaptor.getValue().onSuccess();
+        verify(observer).onChanged(R.string.toast_recording_deleted);
+
+        // Undo.
+        viewModel.undoDelete();
+        verify(repository).setRecurrenceException(eq(5), eq(1000L), eq(false), operationResultCaptor.capture());
+    }
+
     @Test
     public void testGetScheduledRecordingsOK() throws Exception {
         loadScheduledRecordings(SCHEDULED_RECORDINGS);
+        viewModel.setSelectedMonth(new Date(1523262600000L)); // april 2018
         assertFalse(viewModel.dataLoading.get());
         assertFalse(viewModel.dataAvailable.get());
 
@@ -160,11 +183,10 @@ public class ScheduledRecordingsViewModelTest {
     @Test
     public void testUseCachedList() throws Exception {
         loadScheduledRecordings(SCHEDULED_RECORDINGS);
-        viewModel.getScheduledRecordings(); // returns SCHEDULED_RECORDINGS
+        viewModel.setSelectedMonth(new Date(1523262600000L)); // april 2018
+        viewModel.getScheduledRecordings().observe(TestUtils.TEST_OBSERVER, mock(Observer.class)); // returns SCHEDULED_RECORDINGS
 
-        MutableLiveData<List<ScheduledRecording>> scheduledRecordingsLive = new MutableLiveData<>();
-        scheduledRecordingsLive.setValue(SCHEDULED_RECORDINGS_TEST);
-        when(repository.getAllScheduledRecordings()).thenReturn(scheduledRecordingsLive);
+        loadScheduledRecordings(SCHEDULED_RECORDINGS_TEST);
 
         Observer<List<ScheduledRecording>> observer = mock(Observer.class);
         viewModel.getScheduledRecordings().observe(TestUtils.TEST_OBSERVER, observer);
@@ -172,10 +194,41 @@ public class ScheduledRecordingsViewModelTest {
         verify(observer).onChanged(SCHEDULED_RECORDINGS); // should return SCHEDULED_RECORDINGS, and not SCHEDULED_RECORDINGS_TEST, because the list is cached
     }
 
-    // Return our test list when calling repository.getAllScheduledRecordings().
+    @Test
+    public void testSwitchMonth() throws Exception {
+        loadScheduledRecordings(SCHEDULED_RECORDINGS);
+        viewModel.setSelectedMonth(new Date(1523262600000L)); // april 2018
+
+        Observer<List<ScheduledRecording>> observer = mock(Observer.class);
+        viewModel.getScheduledRecordings().observe(TestUtils.TEST_OBSERVER, observer);
+        verify(observer).onChanged(SCHEDULED_RECORDINGS);
+
+        // Only the recordings of the month shown are loaded.
+        Date may = new Date(1525694400000L); // 7 may 2018
+        viewModel.setSelectedMonth(may);
+        verify(repository).getScheduledRecordingsInRange(Utils.getMonthStartTimeLong(may), Utils.getMonthEndTimeLong(may));
+        List<ScheduledRecording> recordings = LiveDataTestUtil.getValue(viewModel.getScheduledRecordings());
+        assertNotNull(recordings);
+        assertEquals(0, recordings.size());
+    }
+
+    /*
+        Return the recordings of our test list in the interval requested when calling
+        repository.getScheduledRecordingsInRange() (same condition of the query).
+     */
     private void loadScheduledRecordings(List<ScheduledRecording> scheduledRecordings) {
-        MutableLiveData<List<ScheduledRecording>> scheduledRecordingsLive = new MutableLiveData<>();
-        scheduledRecordingsLive.setValue(scheduledRecordings);
-        when(repository.getAllScheduledRecordings()).thenReturn(scheduledRecordingsLive);
+        when(repository.getScheduledRecordingsInRange(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long from = invocation.getArgument(0);
+            long to = invocation.getArgument(1);
+            List<ScheduledRecording> recordingsInRange = new ArrayList<>();
+            for (ScheduledRecording recording : scheduledRecordings) {
+                if (recording.getStart() < to && recording.getEnd() > from)
+                    recordingsInRange.add(recording);
+            }
+
+            MutableLiveData<List<ScheduledRecording>> scheduledRecordingsLive = new MutableLiveData<>();
+            scheduledRecordingsLive.setValue(recordingsInRange);
+            return scheduledRecordingsLive;
+        });
     }
 }
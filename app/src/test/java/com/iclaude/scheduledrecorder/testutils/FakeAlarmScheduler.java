@@ -0,0 +1,47 @@
+package com.iclaude.scheduledrecorder.testutils;
+
+import com.iclaude.scheduledrecorder.AlarmScheduler;
+
+/**
+ * AlarmScheduler that only remembers the alarms: they are delivered by the test (see
+ * ScheduleSimulator).
+ */
+
+public class FakeAlarmScheduler implements AlarmScheduler {
+
+    public static final long NONE = Long.MAX_VALUE;
+
+    private final long[] times = {NONE, NONE}; // indexed by alarm
+    private int setCount = 0;
+
+    @Override
+    public void set(int alarm, long time) {
+        times[alarm] = time;
+        setCount++;
+    }
+
+    @Override
+    public void cancel(int alarm) {
+        times[alarm] = NONE;
+    }
+
+    // The alarms are lost (reboot).
+    public void clear() {
+        times[ALARM_START] = NONE;
+        times[ALARM_WARM_UP] = NONE;
+    }
+
+    public long getTime(int alarm) {
+        return times[alarm];
+    }
+
+    // Alarm that goes off first (the warm-up if they are at the same time).
+    public int getNextAlarm() {
+        return times[ALARM_WARM_UP] <= times[ALARM_START] ? ALARM_WARM_UP : ALARM_START;
+    }
+
+    // Number of alarms set (each call is an AlarmManager operation).
+    public int getSetCount() {
+        return setCount;
+    }
+}
@@ -0,0 +1,25 @@
+package com.iclaude.scheduledrecorder.testutils;
+
+import com.iclaude.scheduledrecorder.utils.Clock;
+
+/**
+ * Virtual clock: the time changes only when it's set.
+ */
+
+public class FakeClock implements Clock {
+
+    private long now;
+
+    public FakeClock(long now) {
+        this.now = now;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    public void set(long now) {
+        this.now = now;
+    }
+}
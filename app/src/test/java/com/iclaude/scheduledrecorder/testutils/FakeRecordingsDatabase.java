@@ -0,0 +1,82 @@
+package com.iclaude.scheduledrecorder.testutils;
+
+import android.arch.persistence.room.InvalidationTracker;
+
+import com.iclaude.scheduledrecorder.database.AppDatabase;
+import com.iclaude.scheduledrecorder.database.Recording;
+import com.iclaude.scheduledrecorder.database.RecordingsDao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mock of AppDatabase whose table "saved_recordings" is a list: the queries used by
+ * RecordingsDataSource are answered from it (recordings added to the list later are seen
+ * by the next queries).
+ */
+public class FakeRecordingsDatabase {
+
+    // Newest first, as in the file viewer.
+    private static final Comparator<Recording> NEWEST_FIRST = (r1, r2) -> r1.getTimeAdded() != r2.getTimeAdded()
+            ? Long.compare(r2.getTimeAdded(), r1.getTimeAdded()) : Integer.compare(r2.getId(), r1.getId());
+
+    public static AppDatabase create(List<Recording> recordings) {
+        RecordingsDao recordingsDao = mock(RecordingsDao.class);
+        when(recordingsDao.getRecordingsCount()).thenAnswer(invocation -> recordings.size());
+        when(recordingsDao.getNewestRecordings(anyInt())).thenAnswer(invocation ->
+                older(recordings, null, true, invocation.getArgument(0)));
+        when(recordingsDao.getRecordingsOlderThan(anyLong(), anyInt(), anyInt())).thenAnswer(invocation ->
+                older(recordings, key(invocation.getArgument(0), invocation.getArgument(1)), false, invocation.getArgument(2)));
+        when(recordingsDao.getRecordingsFrom(anyLong(), anyInt(), anyInt())).thenAnswer(invocation ->
+                older(recordings, key(invocation.getArgument(0), invocation.getArgument(1)), true, invocation.getArgument(2)));
+        when(recordingsDao.getRecordingsNewerThan(anyLong(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            List<Recording> newer = newer(recordings, key(invocation.getArgument(0), invocation.getArgument(1)));
+            Collections.reverse(newer);
+            int limit = invocation.getArgument(2);
+            return new ArrayList<>(newer.subList(0, Math.min(newer.size(), limit)));
+        });
+        when(recordingsDao.getRecordingsCountNewerThan(anyLong(), anyInt())).thenAnswer(invocation ->
+                newer(recordings, key(invocation.getArgument(0), invocation.getArgument(1))).size());
+
+        AppDatabase database = mock(AppDatabase.class);
+        when(database.recordingsDao()).thenReturn(recordingsDao);
+        when(database.getInvalidationTracker()).thenReturn(mock(InvalidationTracker.class));
+        return database;
+    }
+
+    private static Recording key(long timeAdded, int id) {
+        return new Recording(id, "", "", 0, timeAdded);
+    }
+
+    // Recordings after the key in the list (null = from the start), newest first.
+    private static List<Recording> older(List<Recording> recordings, Recording key, boolean inclusive, int limit) {
+        List<Recording> sorted = new ArrayList<>(recordings);
+        Collections.sort(sorted, NEWEST_FIRST);
+        List<Recording> result = new ArrayList<>();
+        for (Recording recording : sorted) {
+            int comparison = key == null ? 1 : NEWEST_FIRST.compare(recording, key);
+            if ((comparison > 0 || (inclusive && comparison == 0)) && result.size() < limit)
+                result.add(recording);
+        }
+        return result;
+    }
+
+    // Recordings before the key in the list, newest first.
+    private static List<Recording> newer(List<Recording> recordings, Recording key) {
+        List<Recording> sorted = new ArrayList<>(recordings);
+        Collections.sort(sorted, NEWEST_FIRST);
+        List<Recording> result = new ArrayList<>();
+        for (Recording recording : sorted) {
+            if (NEWEST_FIRST.compare(recording, key) < 0)
+                result.add(recording);
+        }
+        return result;
+    }
+}
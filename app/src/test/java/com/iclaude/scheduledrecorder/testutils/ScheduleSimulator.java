@@ -0,0 +1,338 @@
+package com.iclaude.scheduledrecorder.testutils;
+
+import android.content.Context;
+
+import com.iclaude.scheduledrecorder.AlarmScheduler;
+import com.iclaude.scheduledrecorder.NextAlarmSnapshot;
+import com.iclaude.scheduledrecorder.PendingHandOff;
+import com.iclaude.scheduledrecorder.RecordingScheduler;
+import com.iclaude.scheduledrecorder.database.RecordingsContract;
+import com.iclaude.scheduledrecorder.database.RecordingsRepository;
+import com.iclaude.scheduledrecorder.database.RecordingsRepositoryInterface;
+import com.iclaude.scheduledrecorder.database.ScheduleExecution;
+import com.iclaude.scheduledrecorder.database.ScheduledRecording;
+
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Discrete-event simulator of the scheduled recordings (to be used with Robolectric).
+ * The real RecordingScheduler runs against a virtual clock, an in-memory schedule (a mock of
+ * RecordingsRepository) and a FakeAlarmScheduler; the start alarms are delivered as
+ * RecordingService does: the next recording is taken from the schedule, started if the recorder
+ * is free and deleted. A recording that starts when the current one ends is continued by the
+ * engine (PendingHandOff), which switches file HAND_OFF_DELAY after the end, so after the alarm.
+ * Additions, edits, reboots and clock changes are scripted at wall clock times, then run()
+ * replays them and reports what happened to each recording.
+ * Scripted events at the same time are a burst: the scheduler runs only after all of them.
+ */
+
+public class ScheduleSimulator {
+
+    public static final long LATE_THRESHOLD = 1000; // starts later than this are late
+    public static final long HAND_OFF_DELAY = 20; // boundary of the sample clock after the end
+
+    /*
+        Outcome of the recordings starting before the end of the simulation (deleted ones
+        excluded).
+     */
+    public static class Report {
+        public int recorded;
+        public int missed; // never started
+        public int overlapping; // skipped because the recorder was busy
+        public int late; // recorded, but started more than LATE_THRESHOLD after the start time
+        public int handedOff; // recorded, continued by the engine of the previous one
+        public long maxLag;
+        public int alarmsSet;
+        public final List<ScheduleExecution> executions = new ArrayList<>(); // as saved by RecordingService
+
+        @Override
+        public String toString() {
+            return "recorded=" + recorded + " missed=" + missed + " overlapping=" + overlapping + " late=" + late
+                    + " handedOff=" + handedOff + " maxLag=" + maxLag + " alarmsSet=" + alarmsSet;
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final int seq;
+        final Runnable action;
+
+        Event(long time, int seq, Runnable action) {
+            this.time = time;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Integer.compare(seq, other.seq);
+        }
+    }
+
+    private final Context context;
+    private final FakeClock clock;
+    private final FakeAlarmScheduler alarmScheduler = new FakeAlarmScheduler();
+    private final RecordingsRepository repository = mock(RecordingsRepository.class);
+    private RecordingsRepositoryInterface.OnScheduleChangedListener listener;
+    private RecordingScheduler scheduler;
+
+    // Schedule as saved in the database.
+    private final Map<Integer, ScheduledRecording> byId = new HashMap<>();
+    private final TreeSet<ScheduledRecording> byStart = new TreeSet<>((r1, r2) ->
+            r1.getStart() != r2.getStart() ? Long.compare(r1.getStart(), r2.getStart()) : Integer.compare(r1.getId(), r2.getId()));
+
+    // Schedule as made by the user and what happened.
+    private final Map<Integer, ScheduledRecording> planned = new HashMap<>();
+    private final Map<Integer, Long> lags = new HashMap<>();
+    private final Set<Integer> skippedBusy = new HashSet<>();
+    private final Set<Integer> handedOff = new HashSet<>();
+    private final List<ScheduleExecution> executions = new ArrayList<>();
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private int seq = 0;
+    private int nextId = 1;
+    private long recorderBusyUntil = 0;
+    private PendingHandOff handOff = null;
+    private Event bootEvent = null; // the device is off until then
+
+
+    public ScheduleSimulator(Context context, long startTime) {
+        this.context = context;
+        this.clock = new FakeClock(startTime);
+        NextAlarmSnapshot.clear(context);
+
+        doAnswer(invocation -> {
+            listener = invocation.getArgument(0);
+            return null;
+        }).when(repository).setOnScheduleChangedListener(any());
+        doAnswer(invocation -> {
+            long time = invocation.getArgument(0);
+            boolean deleted = false;
+            while (!byStart.isEmpty() && byStart.first().getStart() < time) {
+                byId.remove(byStart.pollFirst().getId());
+                deleted = true;
+            }
+            if (deleted) notifyChanged();
+            ((RecordingsRepositoryInterface.OperationResult) invocation.getArgument(1)).onSuccess();
+            return null;
+        }).when(repository).deleteOldScheduledRecordings(anyLong(), any(RecordingsRepositoryInterface.OperationResult.class));
+        doAnswer(invocation -> { // recurrence rules are not simulated
+            ((RecordingsRepositoryInterface.OperationResult) invocation.getArgument(1)).onSuccess();
+            return null;
+        }).when(repository).expandRecurrenceRules(anyLong(), any(RecordingsRepositoryInterface.OperationResult.class));
+        doAnswer(invocation -> {
+            RecordingsRepositoryInterface.GetScheduledRecordingCallback callback = invocation.getArgument(0);
+            if (byStart.isEmpty())
+                callback.onFailure();
+            else
+                callback.onSuccess(byStart.first());
+            return null;
+        }).when(repository).getNextScheduledRecording(any(RecordingsRepositoryInterface.GetScheduledRecordingCallback.class));
+
+        scheduler = new RecordingScheduler(context, clock, alarmScheduler, repository);
+    }
+
+    public FakeClock getClock() {
+        return clock;
+    }
+
+    // Returns the id of the new recording.
+    public int add(long at, long start, long end) {
+        int id = nextId++;
+        schedule(at, () -> {
+            ScheduledRecording recording = new ScheduledRecording(id, start, end);
+            planned.put(id, recording);
+            save(recording);
+        });
+        return id;
+    }
+
+    public void edit(long at, int id, long start, long end) {
+        schedule(at, () -> {
+            if (!byId.containsKey(id)) return; // already started or deleted
+            ScheduledRecording recording = new ScheduledRecording(id, start, end);
+            planned.put(id, recording);
+            remove(id);
+            save(recording);
+        });
+    }
+
+    public void delete(long at, int id) {
+        schedule(at, () -> {
+            planned.remove(id);
+            if (remove(id)) notifyChanged();
+        });
+    }
+
+    // The device is off for downtime ms: the alarms are lost and the process is restarted.
+    public void reboot(long at, long downtime) {
+        schedule(at, () -> {
+            alarmScheduler.clear();
+            handOff = null;
+            listener = null;
+            scheduler = null;
+            bootEvent = new Event(clock.currentTimeMillis() + downtime, seq++, this::boot);
+            events.add(bootEvent);
+        });
+    }
+
+    // The user (or the network) sets the wall clock.
+    public void setClock(long at, long time) {
+        schedule(at, () -> clock.set(time));
+    }
+
+    public Report run(long until) {
+        while (true) {
+            long next = nextTime();
+            if (next > clock.currentTimeMillis()) { // the burst at the current time is over
+                flush();
+                next = nextTime();
+            }
+            if (next > until) break;
+
+            clock.set(Math.max(clock.currentTimeMillis(), next));
+            if (events.isEmpty() || events.peek().time != next) {
+                deliverAlarm(alarmScheduler.getNextAlarm());
+                continue;
+            }
+
+            Event event = events.poll();
+            if (scheduler == null && event != bootEvent) // nothing can be changed while the device is off
+                events.add(new Event(bootEvent.time, seq++, event.action));
+            else
+                event.action.run();
+        }
+        flush();
+
+        return makeReport(until);
+    }
+
+    private void schedule(long at, Runnable action) {
+        events.add(new Event(at, seq++, action));
+    }
+
+    private long nextTime() {
+        long nextAlarm = scheduler != null ? Math.min(alarmScheduler.getTime(AlarmScheduler.ALARM_START), alarmScheduler.getTime(AlarmScheduler.ALARM_WARM_UP)) : FakeAlarmScheduler.NONE;
+        long nextEvent = events.isEmpty() ? Long.MAX_VALUE : events.peek().time;
+        return Math.min(nextAlarm, nextEvent);
+    }
+
+    // Runs the pending work of RecordingScheduler (debounce included).
+    private void flush() {
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    // Same as BootUpReceiver.
+    private void boot() {
+        scheduler = new RecordingScheduler(context, clock, alarmScheduler, repository);
+        NextAlarmSnapshot snapshot = NextAlarmSnapshot.read(context);
+        if (snapshot != null && snapshot.getStart() > clock.currentTimeMillis())
+            scheduler.restoreAlarms(snapshot, () -> {});
+        else
+            scheduler.reschedule(null);
+    }
+
+    /*
+        Same as RecordingService.onStartCommand() and doScheduledStart() (the warm-up doesn't
+        change the schedule).
+     */
+    private void deliverAlarm(int alarm) {
+        alarmScheduler.cancel(alarm);
+        if (alarm == AlarmScheduler.ALARM_WARM_UP || byStart.isEmpty()) return;
+
+        long now = clock.currentTimeMillis();
+        ScheduledRecording recording = byStart.first();
+        if (recording.getStart() > now + RecordingsContract.SCHEDULE_TOLERANCE) return;
+
+        remove(recording.getId());
+        notifyChanged();
+        if (handOff != null && handOff.onStartAlarm(recording, now, 0)) return;
+
+        ScheduleExecution execution = new ScheduleExecution(recording);
+        execution.setAlarmTime(now);
+        if (recorderBusyUntil > now) {
+            skippedBusy.add(recording.getId());
+            execution.skip(ScheduleExecution.OUTCOME_SKIPPED, ScheduleExecution.REASON_RECORDER_BUSY);
+        } else if (recording.getEnd() > now) {
+            lags.put(recording.getId(), now - recording.getStart());
+            recorderBusyUntil = recording.getEnd();
+            execution.setCaptureStart(now);
+            prepareHandOff(recording);
+        } else {
+            execution.skip(ScheduleExecution.OUTCOME_SKIPPED, ScheduleExecution.REASON_END_PASSED);
+        }
+        executions.add(execution);
+    }
+
+    // Same as RecordingService.prepareHandOff() and handOff().
+    private void prepareHandOff(ScheduledRecording current) {
+        if (byStart.isEmpty() || byStart.first().getStart() - current.getEnd() > RecordingsContract.SCHEDULE_TOLERANCE) return;
+
+        PendingHandOff pending = new PendingHandOff(byStart.first(), "");
+        handOff = pending;
+        schedule(current.getEnd() + HAND_OFF_DELAY, () -> {
+            if (handOff != pending) return; // rebooted
+
+            handOff = null;
+            ScheduledRecording next = pending.getNext();
+            long now = clock.currentTimeMillis();
+            lags.put(next.getId(), now - next.getStart());
+            handedOff.add(next.getId());
+            executions.add(pending.createExecution(now));
+            recorderBusyUntil = next.getEnd();
+            if (!pending.isAlarmDelivered() && remove(next.getId())) notifyChanged();
+            prepareHandOff(next);
+        });
+    }
+
+    private void save(ScheduledRecording recording) {
+        byId.put(recording.getId(), recording);
+        byStart.add(recording);
+        notifyChanged();
+    }
+
+    private boolean remove(int id) {
+        ScheduledRecording recording = byId.remove(id);
+        return recording != null && byStart.remove(recording);
+    }
+
+    private void notifyChanged() {
+        if (listener != null) listener.onScheduleChanged();
+    }
+
+    private Report makeReport(long until) {
+        Report report = new Report();
+        for (ScheduledRecording recording : planned.values()) {
+            if (recording.getStart() >= until) continue;
+
+            Long lag = lags.get(recording.getId());
+            if (lag != null) {
+                report.recorded++;
+                if (handedOff.contains(recording.getId())) report.handedOff++;
+                if (lag > LATE_THRESHOLD) report.late++;
+                report.maxLag = Math.max(report.maxLag, lag);
+            } else if (skippedBusy.contains(recording.getId())) {
+                report.overlapping++;
+            } else {
+                report.missed++;
+            }
+        }
+        report.alarmsSet = alarmScheduler.getSetCount();
+        report.executions.addAll(executions);
+        return report;
+    }
+}
@@ -0,0 +1,88 @@
+package com.iclaude.scheduledrecorder.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Unit tests for DiskIOThreadExecutor.
+ */
+public class DiskIOThreadExecutorTest {
+
+    @Test
+    public void testSingleThreadKeepsOrder() throws InterruptedException {
+        DiskIOThreadExecutor executor = new DiskIOThreadExecutor("test", 1);
+        List<Integer> done = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int task = i;
+            executor.execute(() -> {
+                done.add(task);
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) done.get(i));
+        }
+    }
+
+    @Test
+    public void testReadsDontWaitBehindSlowTask() throws InterruptedException {
+        DiskIOThreadExecutor executor = new DiskIOThreadExecutor("test", 3);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await(); // i.e. a slow file rename
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CountDownLatch read = new CountDownLatch(1);
+        executor.execute(read::countDown);
+        assertTrue("The read waited for the slow task", read.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testStats() throws InterruptedException {
+        DiskIOThreadExecutor executor = new DiskIOThreadExecutor("test", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            executor.execute(done::countDown);
+        }
+        assertEquals(5, executor.getStats().queueDepth);
+
+        Thread.sleep(50);
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        DiskIOThreadExecutor.Stats stats = executor.getStats();
+        assertEquals(0, stats.queueDepth);
+        assertEquals(5, stats.maxQueueDepth);
+        assertEquals(6, stats.taskCount);
+        assertTrue(stats.toString(), stats.maxWaitMs >= 50);
+        assertTrue(stats.toString(), stats.getAverageWaitMs() > 0);
+    }
+}